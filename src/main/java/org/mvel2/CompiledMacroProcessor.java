@@ -0,0 +1,160 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2;
+
+import org.mvel2.util.KeywordTable;
+import org.mvel2.util.StringAppender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mvel2.util.ParseTools.isIdentifierPart;
+import static org.mvel2.util.ParseTools.isWhitespace;
+
+/**
+ * 预编译的宏处理器,在构建时即将所有宏名称编译为一个字典树,展开时对输入只扫描一遍,
+ * 标识符直接在字典树中按字符数组区间查找,不再为每个标识符创建字符串
+ * <p>
+ * 处理器可以包含多个阶段,每个阶段对应一组宏,效果与依次使用多个{@link MacroProcessor}处理相同:
+ * 某个阶段展开的内容会继续交由之后的阶段处理,但不会再被本阶段及之前的阶段处理.
+ * 与依次处理不同的是,展开的内容作为一个独立的片段交由后续阶段处理,不会与前后的原始内容拼接为同一个标识符
+ * <p>
+ * 词法规则(注释,字符串,转义以及宏的激活条件)与{@link MacroProcessor}保持一致.处理器构建完成后不再修改,可以在多个线程中共享
+ */
+public class CompiledMacroProcessor implements PreProcessor {
+  /** 各个阶段的宏定义 */
+  private final List<Map<String, Macro>> stages;
+  /** 宏名称到各个阶段中相应宏的映射,某个阶段中未定义时对应位置为null */
+  private final KeywordTable<Macro[]> table = new KeywordTable<Macro[]>();
+
+  /** 只包含一个阶段的处理器,多个阶段时使用{@link #CompiledMacroProcessor(List)} */
+  public CompiledMacroProcessor(Map<String, Macro> macros) {
+    this(Collections.singletonList(macros));
+  }
+
+  public CompiledMacroProcessor(List<Map<String, Macro>> stages) {
+    this.stages = new ArrayList<Map<String, Macro>>(stages.size());
+    for (int i = 0; i < stages.size(); i++) {
+      Map<String, Macro> macros = new HashMap<String, Macro>(stages.get(i));
+      this.stages.add(macros);
+
+      for (Map.Entry<String, Macro> entry : macros.entrySet()) {
+        Macro[] m = table.get(entry.getKey());
+        if (m == null) table.put(entry.getKey(), m = new Macro[stages.size()]);
+        m[i] = entry.getValue();
+      }
+    }
+
+    //预先构建字典树
+    table.lookup(new char[0], 0, 0);
+  }
+
+  /**
+   * 将预处理器序列中相邻的宏处理器合并为一个预编译的处理器,其它的预处理器保持不变
+   * 合并之后的序列与原序列的处理效果相同,但每一段相邻的宏处理只需要扫描一遍
+   */
+  public static PreProcessor[] fuse(PreProcessor... preprocessors) {
+    List<PreProcessor> fused = new ArrayList<PreProcessor>(preprocessors.length);
+    List<Map<String, Macro>> pending = new ArrayList<Map<String, Macro>>();
+
+    for (PreProcessor proc : preprocessors) {
+      if (proc instanceof MacroProcessor && ((MacroProcessor) proc).getMacros() != null) {
+        pending.add(((MacroProcessor) proc).getMacros());
+      }
+      else if (proc instanceof CompiledMacroProcessor) {
+        pending.addAll(((CompiledMacroProcessor) proc).stages);
+      }
+      else {
+        if (!pending.isEmpty()) {
+          fused.add(new CompiledMacroProcessor(pending));
+          pending.clear();
+        }
+        fused.add(proc);
+      }
+    }
+    if (!pending.isEmpty()) fused.add(new CompiledMacroProcessor(pending));
+
+    return fused.toArray(new PreProcessor[fused.size()]);
+  }
+
+  public char[] parse(char[] input) {
+    StringAppender appender = new StringAppender(input.length + (input.length >> 2) + 16);
+    boolean[] armed = new boolean[stages.size()];
+    Arrays.fill(armed, true);
+    expand(input, trimmedLength(input), 0, armed, appender);
+    return appender.toChars();
+  }
+
+  public String parse(String input) {
+    return new String(parse(input.toCharArray()));
+  }
+
+  /** 与{@link MacroProcessor}一致,输入末尾的空白不参与处理 */
+  private static int trimmedLength(char[] input) {
+    int length = input.length;
+    while (length != 0 && isWhitespace(input[length - 1])) length--;
+    return length;
+  }
+
+  /** 获取阶段数 */
+  public int getStageCount() {
+    return stages.size();
+  }
+
+  /**
+   * 从指定的阶段开始处理一段输入,结果直接追加到appender中
+   * 每个阶段的宏激活状态独立记录,因为每个阶段看到的输入流并不相同
+   */
+  private void expand(char[] expr, int length, int stage, boolean[] armed, StringAppender appender) {
+    int start;
+
+    for (int cursor = 0; cursor < length; cursor++) {
+      start = cursor;
+      while (cursor < length && isIdentifierPart(expr[cursor])) cursor++;
+      if (cursor > start) {
+        Macro macro = null;
+        int hit = stage;
+        Object m = table.lookup(expr, start, cursor - start);
+        if (m != KeywordTable.NOT_FOUND) {
+          Macro[] macros = (Macro[]) m;
+          for (; hit < macros.length; hit++) {
+            if (macros[hit] != null && armed[hit]) {
+              macro = macros[hit];
+              break;
+            }
+          }
+        }
+
+        if (macro == null) {
+          appender.append(expr, start, cursor - start);
+        }
+        else {
+          String text = macro.doMacro();
+          if (text != null) expand(text.toCharArray(), text.length(), hit + 1, armed, appender);
+        }
+      }
+
+      if (cursor < length) cursor = MacroProcessor.copyNonIdentifier(expr, cursor, length, armed, stage, appender);
+    }
+  }
+}
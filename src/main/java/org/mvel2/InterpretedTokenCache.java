@@ -0,0 +1,307 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2;
+
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.EndOfStatement;
+import org.mvel2.ast.LiteralDeepPropertyNode;
+import org.mvel2.ast.LiteralNode;
+import org.mvel2.ast.OperatorNode;
+import org.mvel2.ast.Substatement;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Boolean.getBoolean;
+
+/**
+ * 解释运行模式下的记号缓存,在所有解释执行之间共享.{@link MVELInterpretedRuntime}第一次执行某个表达式时记录扫描出的节点以及扫描后的解析状态,
+ * 之后同一表达式的执行在相同位置以相同的解析状态取记号时直接重放记录,而不再重新扫描字符以及解析字面量,操作符等
+ * <p>
+ * 只有执行时不修改自身状态的节点(属性,字面量,操作符,子表达式等)会被记录并在并发的执行之间共享,语句块,赋值等节点每次仍然实时扫描,
+ * 依赖于执行期数据的记号(如解释模式下的类型变量声明)同样不会被记录.字符串表达式按内容缓存,
+ * 字符数组表达式(如语句块中的子表达式)按数组实例以及区间缓存,并在命中时校验区间内容未被修改
+ * <p>
+ * 默认不开启,可通过系统属性mvel2.interpreted_token_cache或者{@link #setEnabled(boolean)}开启,
+ * 缓存的表达式个数上限可以通过系统属性mvel2.interpreted_token_cache.size进行配置,超过上限时会随机淘汰已有的项
+ */
+public class InterpretedTokenCache {
+  /** 默认的缓存上限 */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private static volatile boolean enabled = getBoolean("mvel2.interpreted_token_cache");
+  private static volatile int maxSize = Integer.getInteger("mvel2.interpreted_token_cache.size", DEFAULT_MAX_SIZE);
+
+  private static final ConcurrentMap<Object, TokenStream> cache = new ConcurrentHashMap<Object, TokenStream>();
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong evictions = new AtomicLong();
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    InterpretedTokenCache.enabled = enabled;
+  }
+
+  /** 获取字符串表达式已缓存的记号流,未缓存时返回null */
+  static TokenStream lookup(String expression) {
+    TokenStream stream = cache.get(expression);
+    if (stream != null) {
+      hits.incrementAndGet();
+      return stream;
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /** 为字符串表达式创建并缓存记号流,表达式的字符数组及区间由首次执行时的解析器确定 */
+  static TokenStream register(String expression, char[] expr, int start, int end, int length) {
+    return store(expression, new TokenStream(expr, start, end, length, null));
+  }
+
+  /** 获取(或创建并缓存)字符数组指定区间的记号流,数组内容被修改过时重新创建 */
+  static TokenStream forRange(char[] expr, int start, int end) {
+    RangeKey key = new RangeKey(expr, start, end);
+    TokenStream stream = cache.get(key);
+    if (stream != null && stream.matches(expr)) {
+      hits.incrementAndGet();
+      return stream;
+    }
+
+    misses.incrementAndGet();
+    char[] snapshot = new char[Math.max(end - start, 0)];
+    System.arraycopy(expr, start, snapshot, 0, snapshot.length);
+    stream = new TokenStream(expr, start, end, end - start, snapshot);
+    if (maxSize <= 0) return stream;
+
+    evict();
+    cache.put(key, stream);
+    return stream;
+  }
+
+  private static TokenStream store(Object key, TokenStream stream) {
+    if (maxSize <= 0) return stream;
+
+    evict();
+    TokenStream existing = cache.putIfAbsent(key, stream);
+    return existing == null ? stream : existing;
+  }
+
+  private static void evict() {
+    while (cache.size() >= maxSize) {
+      Iterator<Object> iter = cache.keySet().iterator();
+      if (!iter.hasNext()) break;
+      iter.next();
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** 缓存命中次数 */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /** 缓存未命中(即需要重新扫描)的次数 */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  /** 因超过上限而被淘汰的次数 */
+  public static long getEvictions() {
+    return evictions.get();
+  }
+
+  /** 当前缓存的表达式个数 */
+  public static int size() {
+    return cache.size();
+  }
+
+  public static int getMaxSize() {
+    return maxSize;
+  }
+
+  /** 设置缓存上限,小于等于0时表示不进行缓存 */
+  public static void setMaxSize(int size) {
+    maxSize = size;
+    while (cache.size() > Math.max(size, 0)) {
+      Iterator<Object> iter = cache.keySet().iterator();
+      if (!iter.hasNext()) break;
+      iter.next();
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** 清除缓存及统计信息 */
+  public static void clear() {
+    cache.clear();
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+  }
+
+  /**
+   * 指定节点是否可以在多次(以及并发的)执行之间共享,仅包括解释执行时不修改自身状态,也不在执行时使用解析上下文重新扫描的节点
+   * 其余节点(如语句块,赋值,函数定义等)每次执行时均重新扫描,以得到新的节点实例
+   */
+  static boolean isReplayable(ASTNode node) {
+    Class<?> cls = node.getClass();
+    return (cls == ASTNode.class || cls == LiteralNode.class || cls == OperatorNode.class || cls == EndOfStatement.class
+        || cls == Substatement.class || cls == LiteralDeepPropertyNode.class) && (node.fields & ASTNode.STACKLANG) == 0;
+  }
+
+  /**
+   * 一个表达式(或表达式区间)的记号流,按扫描起始位置记录扫描结果
+   * 记录由一次完整的执行在其私有的数组中完成,执行成功结束并且扫描过程中没有修改已记录的节点时才发布,发布后不再修改,
+   * 因此重放时不需要加锁.每次执行仍然使用各自的解析上下文
+   */
+  static final class TokenStream {
+    final char[] expr;
+    final int start;
+    final int end;
+    final int length;
+    /** 字符数组区间缓存时的内容快照,用于校验数组是否被修改,字符串表达式为null */
+    private final char[] snapshot;
+    /** 已发布的记号,按扫描起始位置(相对于start)存放 */
+    private final AtomicReference<Token[]> published = new AtomicReference<Token[]>();
+    /** 扫描过程中修改了可共享的节点时置为true,之后既不重放也不发布 */
+    private volatile boolean invalid;
+
+    private TokenStream(char[] expr, int start, int end, int length, char[] snapshot) {
+      this.expr = expr;
+      this.start = start;
+      this.end = end;
+      this.length = length;
+      this.snapshot = snapshot;
+    }
+
+    private boolean matches(char[] expr) {
+      if (this.expr != expr) return false;
+      for (int i = 0; i < snapshot.length; i++) {
+        if (snapshot[i] != expr[start + i]) return false;
+      }
+      return true;
+    }
+
+    /** 开始一次记录,已发布或已失效时返回null,即当前执行不需要记录 */
+    Token[] beginRecording() {
+      return invalid || published.get() != null ? null : new Token[Math.max(end - start, 0)];
+    }
+
+    /** 记录指定位置扫描出的记号 */
+    void record(Token[] recording, int cursor, Token token) {
+      if (cursor >= start && cursor < end && recording[cursor - start] == null) recording[cursor - start] = token;
+    }
+
+    /**
+     * 发布一次完整执行的记录,只有第一个发布的记录生效
+     * 使用了包引入的表达式不发布,因为共享节点在执行时可能通过解析上下文动态引入类,即修改记录时的解析上下文
+     */
+    void publish(Token[] recording, ParserContext pCtx) {
+      if (invalid) return;
+      if (pCtx.getParserConfiguration().getPackageImports() != null
+          && !pCtx.getParserConfiguration().getPackageImports().isEmpty()) return;
+      published.compareAndSet(null, recording);
+    }
+
+    /** 获取指定位置在指定解析状态下扫描出的记号,没有记录,记录时的解析状态不同或者节点已被修改过时返回null */
+    Token get(int cursor, ASTNode lastNode, boolean lastWasIdentifier) {
+      Token[] tokens;
+      if (invalid || (tokens = published.get()) == null || cursor < start || cursor >= end) return null;
+      Token token = tokens[cursor - start];
+      if (token == null || !token.matchesEntry(lastNode, lastWasIdentifier) || token.node.isDiscard()) {
+        return null;
+      }
+      return token;
+    }
+
+    /** 记号流中可共享的节点被扫描修改过,之后不再重放 */
+    void invalidate() {
+      invalid = true;
+    }
+  }
+
+  /**
+   * 一次扫描的结果,包括扫描前的解析状态(用于判断是否可以重放)以及扫描后的解析状态
+   * 扫描前的上一个节点按类型及位置比较,因为实时扫描出的节点每次均为新的实例
+   */
+  static final class Token {
+    final Class<?> entryType;
+    final int entryStart;
+    final int entryOffset;
+    final boolean entryLastWasIdentifier;
+
+    final ASTNode node;
+    final boolean lastWasIdentifier;
+    final int cursor;
+    final int st;
+    final int line;
+    final int lastLineStart;
+
+    Token(ASTNode entryLastNode, boolean entryLastWasIdentifier, ASTNode node,
+          boolean lastWasIdentifier, int cursor, int st, int line, int lastLineStart) {
+      this.entryType = entryLastNode == null ? null : entryLastNode.getClass();
+      this.entryStart = entryLastNode == null ? 0 : entryLastNode.getStart();
+      this.entryOffset = entryLastNode == null ? 0 : entryLastNode.getOffset();
+      this.entryLastWasIdentifier = entryLastWasIdentifier;
+      this.node = node;
+      this.lastWasIdentifier = lastWasIdentifier;
+      this.cursor = cursor;
+      this.st = st;
+      this.line = line;
+      this.lastLineStart = lastLineStart;
+    }
+
+    private boolean matchesEntry(ASTNode lastNode, boolean lastWasIdentifier) {
+      if (lastWasIdentifier != entryLastWasIdentifier) return false;
+      if (lastNode == null) return entryType == null;
+      return lastNode.getClass() == entryType && lastNode.getStart() == entryStart && lastNode.getOffset() == entryOffset;
+    }
+  }
+
+  /** 字符数组区间的缓存key,按数组实例比较 */
+  private static final class RangeKey {
+    private final char[] expr;
+    private final int start;
+    private final int end;
+
+    private RangeKey(char[] expr, int start, int end) {
+      this.expr = expr;
+      this.start = start;
+      this.end = end;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof RangeKey)) return false;
+      RangeKey k = (RangeKey) o;
+      return expr == k.expr && start == k.start && end == k.end;
+    }
+
+    public int hashCode() {
+      return (31 * System.identityHashCode(expr) + start) * 31 + end;
+    }
+  }
+}
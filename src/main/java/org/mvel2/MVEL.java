@@ -14,13 +14,17 @@
  */
 package org.mvel2;
 
+import org.mvel2.compiler.BatchCompiler;
+import org.mvel2.compiler.BatchExecutor;
 import org.mvel2.compiler.CompiledAccExpression;
 import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.compiler.CompiledRuleSet;
 import org.mvel2.compiler.ExecutableStatement;
 import org.mvel2.compiler.ExpressionCompiler;
 import org.mvel2.integration.Interceptor;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.*;
+import org.mvel2.optimizers.Prewarmer;
 import org.mvel2.optimizers.impl.refl.nodes.GetterAccessor;
 
 import java.io.File;
@@ -28,8 +32,12 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static java.lang.Boolean.getBoolean;
 import static java.lang.String.valueOf;
@@ -68,6 +76,11 @@ public class MVEL {
    * 如 import java.lang.String;String 这种处理
    */
   public static boolean COMPILER_OPT_ALLOCATE_TYPE_LITERALS_TO_SHARED_SYMBOL_TABLE = getBoolean("mvel2.compiler.allocate_type_literals_to_shared_symbol_table");
+  /**
+   * 编译期全部由常量组成的内联集合(如 [1,2,3] 或 ['a':1])默认每次执行均返回从模板复制出的新的可修改实例
+   * 开启此开关之后,集合和map会被折叠为一个共享的不可修改实例,适用于不会修改集合的调用方
+   */
+  public static boolean COMPILER_OPT_SHARE_CONSTANT_INLINE_COLLECTIONS = getBoolean("mvel2.compiler.share_constant_inline_collections");
 
   /** 此字段实际上当前未使用到 */
   static boolean OPTIMIZER = true;
@@ -884,6 +897,29 @@ public class MVEL {
     return optimizeTree(new ExpressionCompiler(expression, ctx).compile());
   }
 
+  /**
+   * 并行编译多个源,每个源使用基于同一配置快照的独立解析上下文,原配置不会被修改
+   *
+   * @param sources  需要编译的源
+   * @param conf     共享的解析配置
+   * @param executor 执行编译任务的执行器,为null时在当前线程中依次编译
+   * @return 包含每个源的编译结果,错误信息以及编译耗时统计的报告
+   */
+  public static BatchCompiler.Report compileAll(Collection<BatchCompiler.Source> sources, ParserConfiguration conf, Executor executor) {
+    return BatchCompiler.compileAll(sources, conf, executor);
+  }
+
+  /**
+   * 将一组针对同一上下文执行的表达式编译为规则集,多个表达式中重复出现的无副作用子表达式在一次执行中只计算一次
+   *
+   * @param rules 规则名与表达式
+   * @param ctx   编译使用的解析上下文,为null时使用默认上下文
+   * @see CompiledRuleSet
+   */
+  public static CompiledRuleSet compileRuleSet(Map<String, String> rules, ParserContext ctx) {
+    return CompiledRuleSet.compile(rules, ctx);
+  }
+
   /** 对指定的字符数组+解析上下文进行编译 */
   public static Serializable compileExpression(char[] expression, int start, int offset, ParserContext ctx) {
     ExpressionCompiler c = new ExpressionCompiler(expression, start, offset, ctx);
@@ -1021,6 +1057,89 @@ public class MVEL {
     }
   }
 
+  /**
+   * 使用同一个编译表达式对一批上下文依次求值,整个批次共享一个变量工厂,结果按下标写入results中
+   *
+   * @param compiledExpression 编译好的表达式
+   * @param contexts           每次执行所使用的上下文
+   * @param vars               所有执行共享的变量,可以为null
+   * @param results            保存结果的数组,长度不能小于上下文个数
+   * @see BatchExecutor
+   */
+  public static void executeBatch(final Object compiledExpression, final Object[] contexts, final Map vars, final Object[] results) {
+    BatchExecutor.execute(compiledExpression, Arrays.asList(contexts), vars, results, null);
+  }
+
+  /**
+   * 批量求值,并使用指定的执行器将批次拆分为多个分片并行执行
+   *
+   * @param executor 执行分片的执行器,为null时在当前线程中依次执行
+   * @see BatchExecutor
+   */
+  public static void executeBatch(final Object compiledExpression, final List<?> contexts, final Map vars, final Object[] results,
+                                  final Executor executor) {
+    BatchExecutor.execute(compiledExpression, contexts, vars, results, executor);
+  }
+
+  /** 批量求值结果为布尔的表达式,结果直接写入基本类型数组 */
+  public static void executeBatch(final Object compiledExpression, final Object[] contexts, final Map vars, final boolean[] results) {
+    BatchExecutor.execute(compiledExpression, Arrays.asList(contexts), vars, results, null);
+  }
+
+  /** 使用指定的执行器并行地批量求值结果为布尔的表达式 */
+  public static void executeBatch(final Object compiledExpression, final List<?> contexts, final Map vars, final boolean[] results,
+                                  final Executor executor) {
+    BatchExecutor.execute(compiledExpression, contexts, vars, results, executor);
+  }
+
+  /** 批量求值结果为整数的表达式,结果直接写入基本类型数组 */
+  public static void executeBatch(final Object compiledExpression, final Object[] contexts, final Map vars, final int[] results) {
+    BatchExecutor.execute(compiledExpression, Arrays.asList(contexts), vars, results, null);
+  }
+
+  /** 使用指定的执行器并行地批量求值结果为整数的表达式 */
+  public static void executeBatch(final Object compiledExpression, final List<?> contexts, final Map vars, final int[] results,
+                                  final Executor executor) {
+    BatchExecutor.execute(compiledExpression, contexts, vars, results, executor);
+  }
+
+  /** 批量求值结果为长整数的表达式,结果直接写入基本类型数组 */
+  public static void executeBatch(final Object compiledExpression, final Object[] contexts, final Map vars, final long[] results) {
+    BatchExecutor.execute(compiledExpression, Arrays.asList(contexts), vars, results, null);
+  }
+
+  /** 使用指定的执行器并行地批量求值结果为长整数的表达式 */
+  public static void executeBatch(final Object compiledExpression, final List<?> contexts, final Map vars, final long[] results,
+                                  final Executor executor) {
+    BatchExecutor.execute(compiledExpression, contexts, vars, results, executor);
+  }
+
+  /** 批量求值结果为浮点数的表达式,结果直接写入基本类型数组 */
+  public static void executeBatch(final Object compiledExpression, final Object[] contexts, final Map vars, final double[] results) {
+    BatchExecutor.execute(compiledExpression, Arrays.asList(contexts), vars, results, null);
+  }
+
+  /** 使用指定的执行器并行地批量求值结果为浮点数的表达式 */
+  public static void executeBatch(final Object compiledExpression, final List<?> contexts, final Map vars, final double[] results,
+                                  final Executor executor) {
+    BatchExecutor.execute(compiledExpression, contexts, vars, results, executor);
+  }
+
+  /**
+   * 在对外提供服务之前,使用有代表性的样例输入驱动编译表达式中所有节点的访问器优化到指定的层级
+   *
+   * @param compiledExpression 编译好的表达式
+   * @param sampleContext      样例上下文
+   * @param sampleVars         样例变量,执行时使用其副本
+   * @param tier               要求达到的优化层级
+   * @return 未能达到要求层级的节点以及原因
+   * @see Prewarmer
+   */
+  public static Prewarmer.Report prewarm(final Serializable compiledExpression, final Object sampleContext, final Map sampleVars,
+                                         final Prewarmer.Tier tier) {
+    return Prewarmer.prewarm(compiledExpression, sampleContext, sampleVars, tier);
+  }
+
   /** 使用上下文+变量工厂执行编译表达式 */
   public static Object executeExpression(final Object compiledExpression, final Object ctx, final VariableResolverFactory resolverFactory) {
     return ((ExecutableStatement) compiledExpression).getValue(ctx, resolverFactory);
@@ -40,15 +40,34 @@ import static org.mvel2.Operator.*;
  */
 @SuppressWarnings({"CaughtExceptionImmediatelyRethrown"})
 public class MVELInterpretedRuntime extends AbstractParser {
+  /** 当前表达式使用的记号缓存,为null时表示每次均实时扫描 */
+  private InterpretedTokenCache.TokenStream tokens;
+  /** 是否可以使用记号缓存,使用外部传入的解析上下文时扫描结果依赖于该上下文,因此不使用缓存 */
+  private boolean tokenCacheable = true;
+  /** 当前是否正在实时扫描记号(扫描过程中的递归取记号不再经过缓存) */
+  private boolean scanning;
+  /** 当前执行的记号记录,在执行成功结束时发布,为null表示不需要记录 */
+  private InterpretedTokenCache.Token[] recording;
 
   /** 进行主要的解析和解释运算工作 */
   public Object parse() {
     try {
+      if (tokens == null && tokenCacheable && expr != null && InterpretedTokenCache.isEnabled()) {
+        tokens = InterpretedTokenCache.forRange(expr, start, end);
+      }
+      if (tokens != null) {
+        recording = tokens.beginRecording();
+      }
       stk = new ExecutionStack();
       dStack = new ExecutionStack();
       variableFactory.setTiltFlag(false);
       cursor = start;
-      return parseAndExecuteInterpreted();
+      Object result = parseAndExecuteInterpreted();
+      if (recording != null) {
+        tokens.publish(recording, pCtx);
+        recording = null;
+      }
+      return result;
     }
     catch (ArrayIndexOutOfBoundsException e) {
       e.printStackTrace();
@@ -69,6 +88,73 @@ public class MVELInterpretedRuntime extends AbstractParser {
     }
   }
 
+  /**
+   * 使用记号缓存时,如果当前位置在相同的解析状态下已经扫描过,则直接重放扫描结果,否则实时扫描并记录
+   * 只记录可共享的节点,扫描后还有待处理节点(即一次扫描产生了多个节点)的记号不会被记录
+   */
+  @Override
+  protected ASTNode nextToken() {
+    if (tokens == null || scanning || !splitAccumulator.isEmpty()) {
+      return super.nextToken();
+    }
+
+    InterpretedTokenCache.Token token = tokens.get(cursor, lastNode, lastWasIdentifier);
+    if (token != null) {
+      cursor = token.cursor;
+      st = token.st;
+      line = token.line;
+      lastLineStart = token.lastLineStart;
+      lastNode = token.node;
+      lastWasIdentifier = token.lastWasIdentifier;
+      return token.node;
+    }
+
+    int entryCursor = cursor;
+    ASTNode entryLastNode = lastNode;
+    boolean entryLastWasIdentifier = lastWasIdentifier;
+    boolean entryDiscard = entryLastNode != null && entryLastNode.isDiscard();
+
+    ASTNode tk;
+    scanning = true;
+    try {
+      tk = super.nextToken();
+    }
+    finally {
+      scanning = false;
+    }
+
+    //扫描修改了之前的节点(如将类型名节点替换为类型声明),可共享的节点不再可信
+    if (entryLastNode != null && entryLastNode.isDiscard() != entryDiscard) {
+      tokens.invalidate();
+      recording = null;
+    }
+    else if (recording != null && tk != null && tk == lastNode && splitAccumulator.isEmpty()
+        && InterpretedTokenCache.isReplayable(tk)) {
+      tokens.record(recording, entryCursor, new InterpretedTokenCache.Token(entryLastNode, entryLastWasIdentifier,
+          tk, lastWasIdentifier, cursor, st, line, lastLineStart));
+    }
+    return tk;
+  }
+
+  /** 设置字符串表达式,开启记号缓存时直接使用缓存中的表达式字符数组,以避免每次均对表达式进行预处理 */
+  private void setCachedExpression(String expression) {
+    if (!InterpretedTokenCache.isEnabled() || expression == null || expression.length() == 0) {
+      setExpression(expression);
+      return;
+    }
+
+    InterpretedTokenCache.TokenStream stream = InterpretedTokenCache.lookup(expression);
+    if (stream == null) {
+      setExpression(expression);
+      stream = InterpretedTokenCache.register(expression, expr, start, end, length);
+    }
+    this.tokens = stream;
+    this.expr = stream.expr;
+    this.start = stream.start;
+    this.end = stream.end;
+    this.length = stream.length;
+  }
+
   /** 临时持有相应的结果信息,即在每一个语句执行完当前语句的结果值 */
   private Object holdOverRegister;
 
@@ -376,7 +462,7 @@ public class MVELInterpretedRuntime extends AbstractParser {
 
 
   MVELInterpretedRuntime(String expression) {
-    setExpression(expression);
+    setCachedExpression(expression);
     this.variableFactory = new ImmutableDefaultFactory();
   }
 
@@ -401,6 +487,7 @@ public class MVELInterpretedRuntime extends AbstractParser {
 
   public MVELInterpretedRuntime(char[] expr, int start, int offset, Object ctx, VariableResolverFactory resolverFactory, ParserContext pCtx) {
     super(pCtx);
+    this.tokenCacheable = false;
     this.expr = expr;
     this.start = start;
     this.end = start + offset;
@@ -410,25 +497,26 @@ public class MVELInterpretedRuntime extends AbstractParser {
   }
 
   public MVELInterpretedRuntime(String expression, Object ctx, VariableResolverFactory resolverFactory) {
-    setExpression(expression);
+    setCachedExpression(expression);
     this.ctx = ctx;
     this.variableFactory = resolverFactory;
   }
 
   public MVELInterpretedRuntime(String expression, Object ctx, VariableResolverFactory resolverFactory, ParserContext pCtx) {
     super(pCtx);
+    this.tokenCacheable = false;
     setExpression(expression);
     this.ctx = ctx;
     this.variableFactory = resolverFactory;
   }
 
   MVELInterpretedRuntime(String expression, VariableResolverFactory resolverFactory) {
-    setExpression(expression);
+    setCachedExpression(expression);
     this.variableFactory = resolverFactory;
   }
 
   MVELInterpretedRuntime(String expression, Object ctx) {
-    setExpression(expression);
+    setCachedExpression(expression);
     this.ctx = ctx;
     this.variableFactory = new ImmutableDefaultFactory();
   }
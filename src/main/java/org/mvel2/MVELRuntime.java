@@ -23,6 +23,8 @@ import org.mvel2.ast.LineLabel;
 import org.mvel2.compiler.CompiledExpression;
 import org.mvel2.debug.Debugger;
 import org.mvel2.debug.DebuggerContext;
+import org.mvel2.debug.LineLabelRegistry;
+import org.mvel2.debug.Profiler;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.optimizers.OptimizerFactory;
 import org.mvel2.util.ExecutionStack;
@@ -64,6 +66,13 @@ public class MVELRuntime {
     //本身就没有可执行节点，则直接返回null
     if (tk == null) return null;
 
+    //挂载了分析器的表达式设置为当前分析器,嵌套的语句块则沿用外层表达式的分析器
+    Profiler profiler = expression.getProfiler();
+    Profiler outerProfiler = null;
+    boolean entered = profiler != null;
+    if (entered) outerProfiler = profiler.enter();
+    else profiler = Profiler.current();
+
     try {
       do {
         //这里表示当前节点为调试节点，因此尝试设置相应的调试上下文，fields 为 1 为调试节点
@@ -75,8 +84,8 @@ public class MVELRuntime {
            * encounter a debugging symbol, we check the thread local to see if there is are registered
            * breakpoints.  If we find them, we assume that we are debugging.
            *
-           * The consequence of this of course, is that it's not ideal to compileShared expressions with
-           * debugging symbols which you plan to use in a production enviroment.
+           * 调试行标记平时并不在执行链中,仅在注册了相应行的断点或者有线程处于单步调试时才由LineLabelRegistry接入,
+           * 因此带调试信息编译的表达式在没有断点时不会执行到这里
            */
           if (debugger || (debugger = hasDebuggerContext())) {
             try {
@@ -90,7 +99,8 @@ public class MVELRuntime {
         }
         //当前操作栈为空的，则压入当前值，以进行处理
         else if (stk.isEmpty()) {
-          stk.push(tk.getReducedValueAccelerated(ctx, ctx, variableFactory));
+          stk.push(profiler == null ? tk.getReducedValueAccelerated(ctx, ctx, variableFactory)
+              : profiler.profile(tk, ctx, ctx, variableFactory));
         }
 
         //如果标识已结束了则直接返回数据信息
@@ -137,7 +147,8 @@ public class MVELRuntime {
 
         //这里继续圧入下一个节点值
         //到这里这里的tk.nextASTNode肯定不为null，因为如果为null,则在上一个switch中已经处理掉，这里只要是支持一些当前还未支持到的处理
-        stk.push(tk.nextASTNode.getReducedValueAccelerated(ctx, ctx, variableFactory), operator);
+        stk.push(profiler == null ? tk.nextASTNode.getReducedValueAccelerated(ctx, ctx, variableFactory)
+            : profiler.profile(tk.nextASTNode, ctx, ctx, variableFactory), operator);
 
         try {
           //这里保证当前栈中只有一个操作数，因为之前的操作数均没有用处
@@ -183,6 +194,7 @@ public class MVELRuntime {
       }
     }
     finally {
+      if (entered) profiler.exit(outerProfiler);
       OptimizerFactory.clearThreadAccessorOptimizer();
     }
   }
@@ -271,5 +283,6 @@ public class MVELRuntime {
    */
   public static void resetDebugger() {
     debuggerContext = null;
+    LineLabelRegistry.reset();
   }
 }
@@ -43,13 +43,15 @@ public class MacroProcessor extends AbstractParser implements PreProcessor {
 
   /** 使用宏处理相应的字符串,并返回处理后的值 */
   public char[] parse(char[] input) {
+    //重置位置,以支持同一个处理器多次使用
+    cursor = start = 0;
     setExpression(input);
 
     StringAppender appender = new StringAppender();
 
     int start;
     //当前状态下是否可能有宏被命中 因为在某些情况下是不可能有宏替换的,比如字符串中.或者是字段中这种情况
-    boolean macroArmed = true;
+    boolean[] macroArmed = {true};
     String token;
 
     for (; cursor < length; cursor++) {
@@ -59,7 +61,7 @@ public class MacroProcessor extends AbstractParser implements PreProcessor {
         //因为当前会拿到一个token,即全属性,那么就可能是一个宏占位符
         //如果确定是宏占位符,则进行相应的处理动作
         //这里的判断前提就是宏是被激活的状态下,即只有在当前为可被命中的情况下才进行.如果是字段等,则不会被激活的
-        if (macros.containsKey(token = new String(expr, start, cursor - start)) && macroArmed) {
+        if (macros.containsKey(token = new String(expr, start, cursor - start)) && macroArmed[0]) {
           appender.append(macros.get(token).doMacro());
         }
         else {
@@ -67,65 +69,76 @@ public class MacroProcessor extends AbstractParser implements PreProcessor {
         }
       }
 
-      if (cursor < length) {
+      if (cursor < length) cursor = copyNonIdentifier(expr, cursor, length, macroArmed, 0, appender);
+    }
+
+    return appender.toChars();
+  }
+
+  /**
+   * 原样复制cursor处的非标识符内容(转义,注释,字符串或者单个字符),并根据碰到的字符更新宏的激活状态,
+   * 返回处理结束时的位置.{@link CompiledMacroProcessor}同样使用此方法,以保证两者的词法规则一致
+   *
+   * @param armed 各个阶段当前的宏激活状态,仅更新从from开始的部分
+   */
+  static int copyNonIdentifier(char[] expr, int cursor, int length, boolean[] armed, int from, StringAppender appender) {
+    int start;
+    switch (expr[cursor]) {
+      case '\\':
+        cursor++;
+        break;
+      //处理注释
+      case '/':
+        start = cursor;
+
+        if (cursor + 1 != length) {
+          switch (expr[cursor + 1]) {
+            case '/':
+              while (cursor != length && expr[cursor] != '\n') cursor++;
+              break;
+            case '*':
+              int len = length - 1;
+              while (cursor != len && !(expr[cursor] == '*' && expr[cursor + 1] == '/')) cursor++;
+              cursor += 2;
+              break;
+          }
+        }
+
+        if (cursor < length) cursor++;
+
+        appender.append(expr, start, Math.min(cursor, length) - start);
+
+        if (cursor < length) cursor--;
+        break;
+
+      //引号,表示碰到了字符串,整个字符串中不可能有宏,则整个一块跳过
+      case '"':
+      case '\'':
+        start = cursor;
+        cursor = captureStringLiteral(expr[cursor], expr, cursor, length);
+        appender.append(expr, start, Math.min(cursor, length) - start);
+
+        if (cursor >= length) break;
+        else if (isIdentifierPart(expr[cursor])) cursor--;
+
+        //剩下的,在指定的标识符号之后,处理可能的宏命中状态
+      default:
         switch (expr[cursor]) {
-          case '\\':
-            cursor++;
+          //碰到了.表示后面的为属性访问(字段或方法).那么就不能激活宏处理
+          case '.':
+            for (int i = from; i < armed.length; i++) armed[i] = false;
             break;
-          //处理注释
-          case '/':
-            start = cursor;
-
-            if (cursor + 1 != length) {
-              switch (expr[cursor + 1]) {
-                case '/':
-                  while (cursor != length && expr[cursor] != '\n') cursor++;
-                  break;
-                case '*':
-                  int len = length - 1;
-                  while (cursor != len && !(expr[cursor] == '*' && expr[cursor + 1] == '/')) cursor++;
-                  cursor += 2;
-                  break;
-              }
-            }
-
-            if (cursor < length) cursor++;
-
-            appender.append(new String(expr, start, cursor - start));
-
-            if (cursor < length) cursor--;
+          //一个语句结束了,那么后面的起始阶段,就可能会激活宏处理
+          case ';':
+          case '{':
+          case '(':
+            for (int i = from; i < armed.length; i++) armed[i] = true;
             break;
-
-          //引号,表示碰到了中,则整个过程中不可能有宏,则整个一块解析跳过
-          case '"':
-          case '\'':
-            appender.append(new String(expr, (start = cursor),
-                (cursor = captureStringLiteral(expr[cursor], expr, cursor, length)) - start));
-
-            if (cursor >= length) break;
-            else if (isIdentifierPart(expr[cursor])) cursor--;
-
-            //剩下的,在指定的标识符号之后,处理可能的宏命中状态
-          default:
-            switch (expr[cursor]) {
-            //碰到了.表示后面的为属性访问(字段或方法).那么就不能激活宏处理
-              case '.':
-                macroArmed = false;
-                break;
-              //一个语句结束了,那么后面的起始阶段,就可能会激活宏处理
-              case ';':
-              case '{':
-              case '(':
-                macroArmed = true;
-                break;
-            }
-
-            appender.append(expr[cursor]);
         }
-      }
-    }
 
-    return appender.toChars();
+        appender.append(expr[cursor]);
+    }
+    return cursor;
   }
 
   public String parse(String input) {
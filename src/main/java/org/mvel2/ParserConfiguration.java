@@ -18,9 +18,12 @@
 
 package org.mvel2;
 
+import org.mvel2.ast.FunctionCache;
 import org.mvel2.ast.Proto;
 import org.mvel2.compiler.AbstractParser;
 import org.mvel2.integration.Interceptor;
+import org.mvel2.integration.ProjectionSettings;
+import org.mvel2.integration.impl.ImportTable;
 import org.mvel2.util.MethodStub;
 
 import java.io.Serializable;
@@ -61,6 +64,11 @@ public class ParserConfiguration implements Serializable {
   /** 用于存储一些实际上不能成功使用的import列表，即在动态引入中实际上引入失效的类,上限为1000 */
   private transient Set<String> nonValidImports;
 
+  /** 通过配置方法修改引入信息的次数,用于判定引入快照是否过期 */
+  private transient volatile int importModCount;
+  /** 当前引入信息的共享快照,引入信息变化后重新创建 */
+  private transient volatile ImportTables importTables;
+
   /** 是否允许伪方法调用 使用Mvel中的系统变量配置 */
   private boolean allowNakedMethCall = MVEL.COMPILER_OPT_ALLOW_NAKED_METH_CALL;
 
@@ -70,6 +78,24 @@ public class ParserConfiguration implements Serializable {
    */
   private boolean allowBootstrapBypass = true;
 
+  /** 常量内联集合是否折叠为共享的不可修改实例,而不是每次返回新的可修改实例 使用Mvel中的系统变量配置 */
+  private boolean shareConstantInlineCollections = MVEL.COMPILER_OPT_SHARE_CONSTANT_INLINE_COLLECTIONS;
+
+  /** 是否在编译期对常量参数的纯静态方法调用以及静态常量字段的读取进行求值,并替换为常量 */
+  private boolean constantFolding = false;
+
+  /** 投影(fold)表达式的执行方式,默认顺序且立即执行 */
+  private ProjectionSettings projectionSettings = new ProjectionSettings();
+
+  /** 其中所有公共静态方法均视为纯方法的类(即结果只依赖于参数,并且没有副作用) */
+  private Set<Class> pureClasses;
+
+  /** 单独注册的纯静态方法,方法对象不能被序列化,因此不参与序列化 */
+  private transient Set<Method> pureMethods;
+
+  /** 声明为纯函数并需要缓存调用结果的用户函数(即def定义的函数),按函数名注册 */
+  private Map<String, FunctionCache.Policy> memoizedFunctions;
+
   static {
     String negCacheSize = System.getProperty("mvel2.compiler.max_neg_cache_size");
     if (negCacheSize != null) {
@@ -97,12 +123,33 @@ public class ParserConfiguration implements Serializable {
     this.interceptors = interceptors;
   }
 
+  /**
+   * 复制一个已有的解析配置,引用信息会被复制,因此在编译过程中对新配置的修改不会影响到原配置
+   * 类加载器会在复制时即确定下来,以避免在其它线程中使用时取到不同的上下文类加载器
+   */
+  public ParserConfiguration(ParserConfiguration conf) {
+    if (conf.imports != null) setAllImports(conf.imports);
+    if (conf.packageImports != null) this.packageImports = new LinkedHashSet<String>(conf.packageImports);
+    this.interceptors = conf.interceptors;
+    this.classLoader = conf.getClassLoader();
+    this.allowNakedMethCall = conf.allowNakedMethCall;
+    this.allowBootstrapBypass = conf.allowBootstrapBypass;
+    this.shareConstantInlineCollections = conf.shareConstantInlineCollections;
+    this.constantFolding = conf.constantFolding;
+    this.projectionSettings = new ProjectionSettings(conf.projectionSettings);
+    if (conf.pureClasses != null) this.pureClasses = new HashSet<Class>(conf.pureClasses);
+    if (conf.pureMethods != null) this.pureMethods = new HashSet<Method>(conf.pureMethods);
+    if (conf.memoizedFunctions != null)
+      this.memoizedFunctions = new HashMap<String, FunctionCache.Policy>(conf.memoizedFunctions);
+  }
+
   public HashSet<String> getPackageImports() {
     return packageImports;
   }
 
   public void setPackageImports(HashSet<String> packageImports) {
     this.packageImports = packageImports;
+    importModCount++;
   }
 
   /** 通过引用名获取之前已import进来的类名，并且期望相应的类型为class类型 */
@@ -131,6 +178,7 @@ public class ParserConfiguration implements Serializable {
    */
   public void addPackageImport(String packageName) {
     if (packageImports == null) packageImports = new LinkedHashSet<String>();
+    importModCount++;
     packageImports.add(packageName);
     if (!addClassMemberStaticImports(packageName)) packageImports.add(packageName);
   }
@@ -232,10 +280,12 @@ public class ParserConfiguration implements Serializable {
         checkForDynamicImport(name);
   }
 
+  /** 初始化引入映射,所有修改引入信息的方法均先调用此方法,因此同时记录一次修改 */
   private void initImports() {
     if (this.imports == null) {
       this.imports = new ConcurrentHashMap<String, Object>();
     }
+    importModCount++;
   }
 
   /** 对指定类进行引入 */
@@ -309,6 +359,34 @@ public class ParserConfiguration implements Serializable {
     }
   }
 
+  /**
+   * 获取当前引入信息的共享快照,同一配置下的多次执行共享同一个快照,包括其中缓存的包引入查找结果.
+   * 通过配置方法修改引入信息或者更换类加载器之后会重新创建;直接修改{@link #getImports()}返回的映射时,
+   * 仅在引入个数变化时才能被发现
+   *
+   * @param includePackageImports 是否在执行期通过配置中的包引入查找未直接引入的类名
+   */
+  public ImportTable getImportTable(boolean includePackageImports) {
+    int modCount = importModCount;
+    int importCount = imports == null ? 0 : imports.size();
+    int packageCount = packageImports == null ? 0 : packageImports.size();
+    ClassLoader loader = getClassLoader();
+
+    ImportTables tables = importTables;
+    if (tables == null || !tables.matches(modCount, importCount, packageCount, loader)) {
+      importTables = tables = new ImportTables(modCount, importCount, packageCount, loader);
+    }
+
+    //并发创建时各自的结果内容相同,因此不需要加锁
+    ImportTable table = includePackageImports ? tables.withPackages : tables.direct;
+    if (table == null) {
+      table = ImportTable.of(this, includePackageImports);
+      if (includePackageImports) tables.withPackages = table;
+      else tables.direct = table;
+    }
+    return table;
+  }
+
   /** 当前配置中是否有引用信息 */
   public boolean hasImports() {
     return !(imports != null && imports.isEmpty()) || (packageImports != null && packageImports.size() != 0);
@@ -372,4 +450,100 @@ public class ParserConfiguration implements Serializable {
   public void setAllowBootstrapBypass(boolean allowBootstrapBypass) {
     this.allowBootstrapBypass = allowBootstrapBypass;
   }
+
+  public boolean isShareConstantInlineCollections() {
+    return shareConstantInlineCollections;
+  }
+
+  /** 设置常量内联集合是否折叠为共享的不可修改实例,修改共享实例时会抛出UnsupportedOperationException */
+  public void setShareConstantInlineCollections(boolean shareConstantInlineCollections) {
+    this.shareConstantInlineCollections = shareConstantInlineCollections;
+  }
+
+  public boolean isConstantFolding() {
+    return constantFolding;
+  }
+
+  /**
+   * 设置是否开启常量折叠,开启后在编译期即对常量参数的纯静态方法调用(如Math.max(10, 20))
+   * 以及static final字段的读取进行求值,并替换为常量节点
+   */
+  public void setConstantFolding(boolean constantFolding) {
+    this.constantFolding = constantFolding;
+  }
+
+  public ProjectionSettings getProjectionSettings() {
+    return projectionSettings;
+  }
+
+  /** 设置投影(fold)表达式的执行方式(延迟,并行),对使用此配置编译的表达式生效 */
+  public void setProjectionSettings(ProjectionSettings projectionSettings) {
+    this.projectionSettings = projectionSettings == null ? new ProjectionSettings() : projectionSettings;
+  }
+
+  /** 将指定类中的所有公共静态方法声明为纯方法,默认已包含java.lang.Math和java.lang.StrictMath(random除外) */
+  public void addPureClass(Class cls) {
+    if (pureClasses == null) pureClasses = new HashSet<Class>();
+    pureClasses.add(cls);
+  }
+
+  /** 将单个静态方法声明为纯方法 */
+  public void addPureMethod(Method method) {
+    if (pureMethods == null) pureMethods = new HashSet<Method>();
+    pureMethods.add(method);
+  }
+
+  /** 指定的静态方法是否可以在编译期使用常量参数求值 */
+  public boolean isPureMethod(Method method) {
+    if (!Modifier.isStatic(method.getModifiers())) return false;
+    if (pureMethods != null && pureMethods.contains(method)) return true;
+
+    Class cls = method.getDeclaringClass();
+    if (pureClasses != null && pureClasses.contains(cls)) return true;
+    return (cls == Math.class || cls == StrictMath.class) && !"random".equals(method.getName());
+  }
+
+  /** 将指定名字的用户函数声明为纯函数,使用默认上限的全局缓存记录其调用结果 */
+  public void addMemoizedFunction(String name) {
+    addMemoizedFunction(name, FunctionCache.DEFAULT_MAX_SIZE, FunctionCache.Scope.GLOBAL);
+  }
+
+  /**
+   * 将指定名字的用户函数声明为纯函数,其调用结果按参数缓存,缓存按最近最少使用淘汰
+   * 只对注册之后编译的函数定义生效,函数的结果应只依赖于其参数,否则缓存的结果可能与实际执行不一致
+   *
+   * @param maxSize 每个函数定义最多缓存的参数组合数
+   * @param scope   缓存是全局共享还是仅在单次执行范围内有效
+   */
+  public void addMemoizedFunction(String name, int maxSize, FunctionCache.Scope scope) {
+    if (memoizedFunctions == null) memoizedFunctions = new HashMap<String, FunctionCache.Policy>();
+    memoizedFunctions.put(name, new FunctionCache.Policy(maxSize, scope));
+  }
+
+  /** 获取指定用户函数的缓存策略,未声明为纯函数时返回null */
+  public FunctionCache.Policy getMemoizationPolicy(String name) {
+    return memoizedFunctions == null || name == null ? null : memoizedFunctions.get(name);
+  }
+
+  /** 某一版本引入信息的快照,分为是否通过包引入查找两种 */
+  private static final class ImportTables {
+    private final int modCount;
+    private final int importCount;
+    private final int packageCount;
+    private final ClassLoader classLoader;
+    private volatile ImportTable direct;
+    private volatile ImportTable withPackages;
+
+    private ImportTables(int modCount, int importCount, int packageCount, ClassLoader classLoader) {
+      this.modCount = modCount;
+      this.importCount = importCount;
+      this.packageCount = packageCount;
+      this.classLoader = classLoader;
+    }
+
+    private boolean matches(int modCount, int importCount, int packageCount, ClassLoader classLoader) {
+      return this.modCount == modCount && this.importCount == importCount
+          && this.packageCount == packageCount && this.classLoader == classLoader;
+    }
+  }
 }
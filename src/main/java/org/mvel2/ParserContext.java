@@ -18,11 +18,13 @@
 
 package org.mvel2;
 
+import org.mvel2.ast.AdaptivePredicate;
 import org.mvel2.ast.Function;
 import org.mvel2.ast.LineLabel;
 import org.mvel2.ast.Proto;
 import org.mvel2.compiler.AbstractParser;
 import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.compiler.IncrementalCompiler;
 import org.mvel2.compiler.Parser;
 import org.mvel2.integration.Interceptor;
 import org.mvel2.util.LineMapper;
@@ -93,6 +95,20 @@ public class ParserContext implements Serializable {
   /** 描述在编译过程中的错误信息 */
   private transient List<ErrorDetail> errorList;
 
+  /** 增量编译器,存在时,未修改的顶层函数会直接复用上一次编译的结果 */
+  private transient IncrementalCompiler incrementalCompiler;
+
+  /**
+   * 编译期作用域分析,每个正在分析的语句块对应一个集合,记录块内可能在执行时创建变量的声明名称(名称未知时记为null)
+   * 仅在当前上下文中有效,不会复制到子上下文
+   */
+  private transient ArrayList<Set<String>> declarationScopes;
+
+  /** 编译产生的自适应条件链,不为null时表示开启了条件链的自适应排序,与子上下文共享 */
+  private transient List<AdaptivePredicate> adaptivePredicates;
+  /** 除默认白名单之外,额外声明为无副作用的方法名,与子上下文共享 */
+  private transient Set<String> pureMethods;
+
   /** 表达式对应表达式行的一些映射(调试使用) */
   private transient Map<String, LineMapper.LineLookup> sourceLineLookups;
   /** 描述已经在编译过程中处理过的行(调试使用) */
@@ -118,6 +134,8 @@ public class ParserContext implements Serializable {
   private boolean strictTypeEnforcement = false;
   /** 是否是强类型处理 */
   private boolean strongTyping = false;
+  /** 强类型编译时是否在编译期即根据声明的类型构建属性链的访问器 */
+  private boolean eagerOptimization = false;
   /** 设置当前的优化状态，表示正在进行优化 */
   private boolean optimizationMode = false;
 
@@ -173,6 +191,10 @@ public class ParserContext implements Serializable {
     this(parserConfiguration);
     this.parent = parent;
     this.functionContext = functionContext;
+    if (parent != null) {
+      this.adaptivePredicates = parent.adaptivePredicates;
+      this.pureMethods = parent.pureMethods;
+    }
   }
 
   /** 使用一个针对对象引入+拦截器构建的解析配置,以及相应的脚本源文构建起解析上下文 */
@@ -206,6 +228,7 @@ public class ParserContext implements Serializable {
     ctx.compiled = compiled;
     ctx.strictTypeEnforcement = strictTypeEnforcement;
     ctx.strongTyping = strongTyping;
+    ctx.eagerOptimization = eagerOptimization;
 
     ctx.fatalError = fatalError;
     ctx.retainParserState = retainParserState;
@@ -213,6 +236,8 @@ public class ParserContext implements Serializable {
     ctx.blockSymbols = blockSymbols;
     ctx.executableCodeReached = executableCodeReached;
     ctx.indexAllocation = indexAllocation;
+    ctx.adaptivePredicates = adaptivePredicates;
+    ctx.pureMethods = pureMethods;
 
     return ctx;
   }
@@ -276,6 +301,7 @@ public class ParserContext implements Serializable {
     ctx.compiled = compiled;
     ctx.strictTypeEnforcement = strictTypeEnforcement;
     ctx.strongTyping = strongTyping;
+    ctx.eagerOptimization = eagerOptimization;
 
     ctx.fatalError = fatalError;
     ctx.retainParserState = retainParserState;
@@ -283,6 +309,8 @@ public class ParserContext implements Serializable {
     ctx.blockSymbols = blockSymbols;
     ctx.executableCodeReached = executableCodeReached;
     ctx.indexAllocation = indexAllocation;
+    ctx.adaptivePredicates = adaptivePredicates;
+    ctx.pureMethods = pureMethods;
 
     return ctx;
   }
@@ -725,6 +753,18 @@ public class ParserContext implements Serializable {
     }
   }
 
+  public boolean isEagerOptimization() {
+    return eagerOptimization;
+  }
+
+  /**
+   * 开启提前优化,在强类型编译下,对于根据声明类型即可确定访问方式的属性链(如声明了类型的输入a的a.b.c),
+   * 在编译期即生成相应的访问器,以避免首次执行时的优化开销.仅在开启强类型时生效
+   */
+  public void setEagerOptimization(boolean eagerOptimization) {
+    this.eagerOptimization = eagerOptimization;
+  }
+
   @Deprecated
   public boolean isRetainParserState() {
     return retainParserState;
@@ -927,6 +967,15 @@ public class ParserContext implements Serializable {
     globalFunctions.put(function.getName(), function);
   }
 
+  public IncrementalCompiler getIncrementalCompiler() {
+    return incrementalCompiler;
+  }
+
+  /** 设置增量编译器,用于在编译顶层函数时复用之前的编译结果 */
+  public void setIncrementalCompiler(IncrementalCompiler incrementalCompiler) {
+    this.incrementalCompiler = incrementalCompiler;
+  }
+
   /** 在全局函数中获取指定名字的函数定义 */
   public Function getFunction(String name) {
     return globalFunctions == null ? null : globalFunctions.get(name);
@@ -1217,4 +1266,71 @@ public class ParserContext implements Serializable {
 
     return this;
   }
+
+  /** 开始对一个语句块进行作用域分析,之后编译的声明将记录到此语句块中,直到{@link #endScopeAnalysis()} */
+  public void beginScopeAnalysis() {
+    if (declarationScopes == null) declarationScopes = new ArrayList<Set<String>>();
+    declarationScopes.add(new LinkedHashSet<String>());
+  }
+
+  /** 当前是否正在进行作用域分析 */
+  public boolean isScopeAnalysis() {
+    return declarationScopes != null && !declarationScopes.isEmpty();
+  }
+
+  /** 记录当前语句块中的一个变量声明,name为null表示在执行时才能确定名称的声明 */
+  public void declareLocal(String name) {
+    if (isScopeAnalysis()) declarationScopes.get(declarationScopes.size() - 1).add(name);
+  }
+
+  /**
+   * 结束当前语句块的作用域分析
+   *
+   * @return 语句块中声明的变量名,没有任何声明时返回空数组,名称未知的声明以null表示
+   */
+  public String[] endScopeAnalysis() {
+    Set<String> names = declarationScopes.remove(declarationScopes.size() - 1);
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * 开启或关闭 && 及 || 条件链的自适应排序.开启之后编译的无副作用条件链将在执行时根据统计数据调整条件的执行顺序
+   *
+   * @see AdaptivePredicate
+   */
+  public ParserContext setAdaptivePredicates(boolean adaptive) {
+    if (!adaptive) adaptivePredicates = null;
+    else if (adaptivePredicates == null) adaptivePredicates = new ArrayList<AdaptivePredicate>();
+    return this;
+  }
+
+  public boolean isAdaptivePredicates() {
+    return adaptivePredicates != null;
+  }
+
+  /** 登记一个编译产生的自适应条件链 */
+  public void addAdaptivePredicate(AdaptivePredicate predicate) {
+    if (adaptivePredicates != null) adaptivePredicates.add(predicate);
+  }
+
+  /**
+   * 使用此上下文编译产生的自适应条件链,以便查看及重置其执行顺序,未开启时返回空列表
+   * 括号中的子语句在编译时可能被编译多次,因此列表中可能包含未被实际使用的副本
+   */
+  public List<AdaptivePredicate> getAdaptivePredicates() {
+    if (adaptivePredicates == null) return Collections.emptyList();
+    return Collections.unmodifiableList(adaptivePredicates);
+  }
+
+  /** 声明无副作用的方法名,条件中对这些方法的调用不会阻止条件链的自适应排序 */
+  public ParserContext addPureMethods(String... names) {
+    if (pureMethods == null) pureMethods = new HashSet<String>();
+    pureMethods.addAll(Arrays.asList(names));
+    return this;
+  }
+
+  /** 额外声明的无副作用方法名,默认的白名单见{@link org.mvel2.util.CompilerTools#isSideEffectFree} */
+  public Set<String> getPureMethods() {
+    return pureMethods == null ? Collections.<String>emptySet() : pureMethods;
+  }
 }
@@ -19,6 +19,8 @@ package org.mvel2;
 
 import org.mvel2.ast.*;
 import org.mvel2.integration.GlobalListenerFactory;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.ImmutableDefaultFactory;
 import org.mvel2.util.ErrorUtil;
@@ -578,6 +580,15 @@ public class PropertyAccessor {
     }
   }
 
+  /** 获取各个内部缓存当前缓存的类数量,以便外部的监控系统读取 */
+  public static Map<String, Integer> getCacheSizes() {
+    Map<String, Integer> sizes = new LinkedHashMap<String, Integer>();
+    sizes.put(Instrumentation.CACHE_READ_PROPERTY, READ_PROPERTY_RESOLVER_CACHE.size());
+    sizes.put(Instrumentation.CACHE_WRITE_PROPERTY, WRITE_PROPERTY_RESOLVER_CACHE.size());
+    sizes.put(Instrumentation.CACHE_METHOD, METHOD_RESOLVER_CACHE.size());
+    return sizes;
+  }
+
   /** 在相应的读缓存中添加相应的类的成员信息 */
   private static void addReadCache(Class cls, Integer property, Member member) {
     synchronized (READ_PROPERTY_RESOLVER_CACHE) {
@@ -594,11 +605,15 @@ public class PropertyAccessor {
   /** 尝试从读类缓存中获取相应的成员信息 */
   private static Member checkReadCache(Class cls, Integer property) {
     WeakHashMap<Integer, WeakReference<Member>> map = READ_PROPERTY_RESOLVER_CACHE.get(cls);
+    Member member = null;
     if (map != null) {
-      WeakReference<Member> member = map.get(property);
-      if (member != null) return member.get();
+      WeakReference<Member> ref = map.get(property);
+      if (ref != null) member = ref.get();
     }
-    return null;
+    if (InstrumentationFactory.isEnabled()) {
+      InstrumentationFactory.notifyCache(Instrumentation.CACHE_READ_PROPERTY, member != null);
+    }
+    return member;
   }
 
   /** 添加相应的写入类属性的缓存信息 */
@@ -615,11 +630,15 @@ public class PropertyAccessor {
   /** 检查从写属性缓存中获取相应的成员信息 */
   private static Member checkWriteCache(Class cls, Integer property) {
     Map<Integer, WeakReference<Member>> map = WRITE_PROPERTY_RESOLVER_CACHE.get(cls);
+    Member member = null;
     if (map != null) {
-      WeakReference<Member> member = map.get(property);
-      if (member != null) return member.get();
+      WeakReference<Member> ref = map.get(property);
+      if (ref != null) member = ref.get();
     }
-    return null;
+    if (InstrumentationFactory.isEnabled()) {
+      InstrumentationFactory.notifyCache(Instrumentation.CACHE_WRITE_PROPERTY, member != null);
+    }
+    return member;
   }
 
   /** 检查从方法的参数类型信息缓存中获取相应的类型信息值 */
@@ -647,11 +666,15 @@ public class PropertyAccessor {
 
   private static Object[] checkMethodCache(Class cls, Integer property) {
     Map<Integer, WeakReference<Object[]>> map = METHOD_RESOLVER_CACHE.get(cls);
+    Object[] cached = null;
     if (map != null) {
       WeakReference<Object[]> ref = map.get(property);
-      if (ref != null) return ref.get();
+      if (ref != null) cached = ref.get();
     }
-    return null;
+    if (InstrumentationFactory.isEnabled()) {
+      InstrumentationFactory.notifyCache(Instrumentation.CACHE_METHOD, cached != null);
+    }
+    return cached;
   }
 
   /** 使用支持类型重写的处理方式来获取属性信息 */
@@ -23,6 +23,8 @@ import org.mvel2.ParserConfiguration;
 import org.mvel2.ParserContext;
 import org.mvel2.compiler.Accessor;
 import org.mvel2.debug.DebugTools;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.optimizers.AccessorOptimizer;
 import org.mvel2.optimizers.OptimizationNotSupported;
@@ -183,6 +185,9 @@ public class ASTNode implements Cloneable, Serializable {
     if ((fields & DEOP) == 0) {
       accessor = null;
       fields |= DEOP | NOJIT;
+      if (InstrumentationFactory.isEnabled()) {
+        InstrumentationFactory.notifyDeoptimized(Instrumentation.DEOPT_CLASS_CAST);
+      }
 
       synchronized (this) {
         return getReducedValueAccelerated(ctx, thisValue, factory);
@@ -0,0 +1,282 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.ast;
+
+import org.mvel2.ParserContext;
+import org.mvel2.integration.VariableResolverFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 自适应的 && 或 || 条件链,由编译期判定为无副作用的一组条件(属性读取,比较,白名单中的纯方法)构成
+ * 执行时统计每个条件的通过率以及(抽样的)执行耗时,每执行一定次数后按照期望代价重新排列条件的执行顺序:
+ * && 链中 耗时/不通过率 越小的条件越先执行, || 链中 耗时/通过率 越小的条件越先执行
+ * <p>
+ * 由于条件之间可能存在隐含的依赖(如 a != null && a.b > 1),调整顺序之后执行出现异常时,
+ * 会按照源码顺序继续完成本次执行,并固定为源码顺序不再调整,以保证与原有语义一致.
+ * 本次执行中已经执行过的条件不会被重复执行
+ * <p>
+ * 统计数据在多线程下不加锁更新,仅为近似值;执行顺序整体替换,因此每次执行使用的都是一个完整的顺序
+ */
+public class AdaptivePredicate extends BooleanNode {
+  /** 默认的调整间隔,即每执行多少次重新计算一次顺序 */
+  public static final int DEFAULT_REORDER_INTERVAL = 1024;
+  /** 耗时抽样的掩码,每16次执行计时一次,以降低计时本身的开销 */
+  private static final int SAMPLE_MASK = 15;
+
+  /** 按源码顺序排列的条件 */
+  private final ASTNode[] terms;
+  /** 是否是 && 链,否则为 || 链 */
+  private final boolean conjunction;
+  /** 当前的执行顺序,元素为条件在源码中的下标 */
+  private volatile int[] order;
+  /** 是否已固定为源码顺序 */
+  private volatile boolean pinned;
+  /** 调整间隔 */
+  private int reorderInterval = DEFAULT_REORDER_INTERVAL;
+
+  /** 整个条件链的执行次数 */
+  private long executions;
+  /** 每个条件的执行次数 */
+  private final long[] evaluated;
+  /** 每个条件的结果为true的次数 */
+  private final long[] passed;
+  /** 每个条件被计时的次数 */
+  private final long[] timed;
+  /** 每个条件被计时的总耗时(纳秒) */
+  private final long[] nanos;
+
+  public AdaptivePredicate(ASTNode[] terms, boolean conjunction, ParserContext pCtx) {
+    super(pCtx);
+    this.terms = terms;
+    this.conjunction = conjunction;
+    this.left = terms[0];
+    this.right = terms[terms.length - 1];
+    this.egressType = Boolean.class;
+
+    this.evaluated = new long[terms.length];
+    this.passed = new long[terms.length];
+    this.timed = new long[terms.length];
+    this.nanos = new long[terms.length];
+    this.order = sourceOrder();
+  }
+
+  public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    int[] ord = order;
+    long n = ++executions;
+    boolean sample = (n & SAMPLE_MASK) == 0;
+
+    Boolean result = evaluate(ord, sample, ctx, thisValue, factory);
+
+    if (n % reorderInterval == 0 && !pinned) reorder();
+    return result;
+  }
+
+  /** 按照指定的顺序执行条件,并记录统计数据 */
+  private Boolean evaluate(int[] ord, boolean sample, Object ctx, Object thisValue, VariableResolverFactory factory) {
+    int i = 0;
+    try {
+      for (; i < ord.length; i++) {
+        int t = ord[i];
+        boolean v;
+        if (sample) {
+          long s = System.nanoTime();
+          v = (Boolean) terms[t].getReducedValueAccelerated(ctx, thisValue, factory);
+          nanos[t] += System.nanoTime() - s;
+          timed[t]++;
+        }
+        else {
+          v = (Boolean) terms[t].getReducedValueAccelerated(ctx, thisValue, factory);
+        }
+
+        evaluated[t]++;
+        if (v) passed[t]++;
+
+        // && 遇到false, || 遇到true 即可提前结束
+        if (v != conjunction) return v;
+      }
+      return conjunction;
+    }
+    catch (RuntimeException e) {
+      if (pinned || isSourceOrder(ord)) throw e;
+
+      //调整后的顺序破坏了条件之间的依赖,回到源码顺序
+      pinned = true;
+      order = sourceOrder();
+      return resume(ord, i, e, ctx, thisValue, factory);
+    }
+  }
+
+  /**
+   * 调整后的顺序在第failed个条件处出错时,按照源码顺序完成本次执行.
+   * 出错之前执行过的条件都没有提前结束,即结果均为 && 链中的true或 || 链中的false,直接沿用而不再重复执行;
+   * 源码顺序下仍然执行到出错的条件时,其结果同样是出错,直接抛出原有的异常
+   */
+  private Boolean resume(int[] ord, int failed, RuntimeException e, Object ctx, Object thisValue,
+                         VariableResolverFactory factory) {
+    boolean[] done = new boolean[terms.length];
+    for (int i = 0; i < failed; i++) {
+      done[ord[i]] = true;
+    }
+
+    for (int t = 0; t < terms.length; t++) {
+      if (done[t]) continue;
+      if (t == ord[failed]) throw e;
+
+      boolean v = (Boolean) terms[t].getReducedValueAccelerated(ctx, thisValue, factory);
+      if (v != conjunction) return v;
+    }
+    return conjunction;
+  }
+
+  /**
+   * 根据当前的统计数据重新计算执行顺序.没有计时数据的条件代价记为0,以使其尽快被执行并得到统计数据
+   * 计算之后统计数据减半,以使顺序能够跟随数据分布的变化
+   */
+  public synchronized void reorder() {
+    if (pinned) return;
+
+    final double[] rank = new double[terms.length];
+    Integer[] idx = new Integer[terms.length];
+    for (int t = 0; t < terms.length; t++) {
+      idx[t] = t;
+      double cost = timed[t] == 0 ? 0 : (double) nanos[t] / timed[t];
+      double stop = conjunction ? 1 - getPassRate(t) : getPassRate(t);
+      rank[t] = stop <= 0 ? Double.POSITIVE_INFINITY : cost / stop;
+    }
+
+    //稳定排序,代价相同的条件保持源码顺序
+    Arrays.sort(idx, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return Double.compare(rank[a], rank[b]);
+      }
+    });
+
+    int[] ord = new int[terms.length];
+    for (int i = 0; i < ord.length; i++) {
+      ord[i] = idx[i];
+    }
+
+    for (int t = 0; t < terms.length; t++) {
+      evaluated[t] >>= 1;
+      passed[t] >>= 1;
+      timed[t] >>= 1;
+      nanos[t] >>= 1;
+    }
+    order = ord;
+  }
+
+  /** 清除统计数据,恢复为源码顺序并重新开始自适应调整 */
+  public synchronized void reset() {
+    for (int t = 0; t < terms.length; t++) {
+      evaluated[t] = passed[t] = timed[t] = nanos[t] = 0;
+    }
+    executions = 0;
+    pinned = false;
+    order = sourceOrder();
+  }
+
+  /** 当前的执行顺序,元素为条件在源码中的下标 */
+  public int[] getOrder() {
+    return order.clone();
+  }
+
+  /** 按源码顺序排列的条件 */
+  public ASTNode[] getTerms() {
+    return terms.clone();
+  }
+
+  public boolean isConjunction() {
+    return conjunction;
+  }
+
+  /** 是否因调整顺序后执行出错而固定为源码顺序 */
+  public boolean isPinned() {
+    return pinned;
+  }
+
+  public long getExecutions() {
+    return executions;
+  }
+
+  /** 指定条件(源码下标)的通过率,没有执行过时为0.5 */
+  public double getPassRate(int term) {
+    long e = evaluated[term];
+    return e == 0 ? 0.5 : (double) passed[term] / e;
+  }
+
+  /** 指定条件(源码下标)的平均耗时(纳秒),没有计时数据时为0 */
+  public double getAverageCost(int term) {
+    long c = timed[term];
+    return c == 0 ? 0 : (double) nanos[term] / c;
+  }
+
+  public int getReorderInterval() {
+    return reorderInterval;
+  }
+
+  public void setReorderInterval(int reorderInterval) {
+    if (reorderInterval < 1) throw new IllegalArgumentException("reorder interval must be positive");
+    this.reorderInterval = reorderInterval;
+  }
+
+  private int[] sourceOrder() {
+    int[] ord = new int[terms.length];
+    for (int i = 0; i < ord.length; i++) {
+      ord[i] = i;
+    }
+    return ord;
+  }
+
+  private static boolean isSourceOrder(int[] ord) {
+    for (int i = 0; i < ord.length; i++) {
+      if (ord[i] != i) return false;
+    }
+    return true;
+  }
+
+  /** 不支持解释模式 */
+  public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    throw new RuntimeException("improper use of AST element");
+  }
+
+  /** 替换最后一个条件 */
+  public void setRightMost(ASTNode right) {
+    terms[terms.length - 1] = this.right = right;
+  }
+
+  public ASTNode getRightMost() {
+    return terms[terms.length - 1];
+  }
+
+  public Class getEgressType() {
+    return Boolean.class;
+  }
+
+  /** 按照当前的执行顺序输出 */
+  public String toString() {
+    int[] ord = order;
+    StringBuilder sb = new StringBuilder("(");
+    for (int i = 0; i < ord.length; i++) {
+      if (i != 0) sb.append(conjunction ? " && " : " || ");
+      sb.append(terms[ord[i]]);
+    }
+    return sb.append(")").toString();
+  }
+}
@@ -34,6 +34,12 @@ public class BlockNode extends ASTNode {
   /** 表示当前的执行块 */
   protected ExecutableStatement compiledBlock;
 
+  /**
+   * 编译期作用域分析得到的执行块中声明的变量,为空数组时执行块直接使用外部作用域,
+   * 为null表示未经分析(如没有解析上下文),此时按照原来的方式为执行块创建Map作用域
+   */
+  protected String[] blockLocals;
+
   public BlockNode(ParserContext pCtx) {
     super(pCtx);
   }
@@ -49,5 +55,9 @@ public class BlockNode extends ASTNode {
   public int getBlockOffset() {
     return blockOffset;
   }
+
+  public String[] getBlockLocals() {
+    return blockLocals;
+  }
 }
 
@@ -20,6 +20,7 @@ package org.mvel2.ast;
 
 import org.mvel2.ParserContext;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.util.ConstantMembership;
 
 import static org.mvel2.util.ParseTools.containsCheck;
 
@@ -29,14 +30,25 @@ public class Contains extends ASTNode {
   private ASTNode stmt;
   /** 右节点 即 a contains b 中的 b */
   private ASTNode stmt2;
+  /** 左侧为常量集合时预先建立的成员判定结构 */
+  private ConstantMembership membership;
 
   public Contains(ASTNode stmt, ASTNode stmt2, ParserContext pCtx) {
     super(pCtx);
     this.stmt = stmt;
     this.stmt2 = stmt2;
+
+    //左侧为内联的常量集合,如['NY','CA'] contains state,则在编译期建立哈希索引,执行时不再创建集合
+    if (stmt instanceof InlineCollectionNode) {
+      Object constant = ((InlineCollectionNode) stmt).getConstantValue();
+      if (constant != null) membership = ConstantMembership.of(constant);
+    }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    if (membership != null) {
+      return membership.contains(stmt2.getReducedValueAccelerated(ctx, thisValue, factory));
+    }
     //分别计算两边的值,再进行contains检查
     return containsCheck(stmt.getReducedValueAccelerated(ctx, thisValue, factory), stmt2.getReducedValueAccelerated(ctx, thisValue, factory));
   }
@@ -25,6 +25,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 import java.util.HashMap;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -56,18 +57,20 @@ public class DoNode extends BlockNode {
 
     if (pCtx != null) {
       pCtx.pushVariableScope();
+      pCtx.beginScopeAnalysis();
     }
 
     this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
     if (pCtx != null) {
+      blockLocals = pCtx.endScopeAnalysis();
       pCtx.popVariableScope();
     }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //接下来的while循环,如果有相应的变量,则表示在整个循环中变量都是重用的,因此这里采用mapVarFactory以重用相应的处理
-    VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap<String, Object>(0), factory);
+    VariableResolverFactory ctxFactory = scopeOf(blockLocals, factory);
 
     //整个过程即采用标准的do while循环处理
     do {
@@ -25,6 +25,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 import java.util.HashMap;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -50,18 +51,20 @@ public class DoUntilNode extends BlockNode {
 
     if (pCtx != null) {
       pCtx.pushVariableScope();
+      pCtx.beginScopeAnalysis();
     }
 
     this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
     if (pCtx != null) {
+      blockLocals = pCtx.endScopeAnalysis();
       pCtx.popVariableScope();
     }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //整个逻辑与do while相同,除了在while的判定不同
-    VariableResolverFactory lc = new MapVariableResolverFactory(new HashMap(0), factory);
+    VariableResolverFactory lc = scopeOf(blockLocals, factory);
 
     do {
       compiledBlock.getValue(ctx, thisValue, lc);
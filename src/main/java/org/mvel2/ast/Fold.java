@@ -21,28 +21,50 @@ package org.mvel2.ast;
 import org.mvel2.CompileException;
 import org.mvel2.ParserContext;
 import org.mvel2.compiler.ExecutableStatement;
+import org.mvel2.integration.ProjectionSettings;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.DefaultLocalVariableResolverFactory;
 import org.mvel2.integration.impl.ItemResolverFactory;
+import org.mvel2.integration.impl.ResolverFactoryPool;
+import org.mvel2.integration.impl.StackResetResolverFactory;
 
+import java.lang.reflect.Array;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.*;
 
-/** 用于描述特殊的fold语法节点  */
+/**
+ * 用于描述特殊的fold语法节点,即(expr in data if cond)的投影处理
+ * 数据源支持集合,可迭代对象以及数组,执行方式(顺序,并行,延迟)由编译时解析配置中的{@link ProjectionSettings}决定
+ */
 public class Fold extends ASTNode {
+  /** 并行执行时每个分段的最小元素数 */
+  private static final int MIN_CHUNK_SIZE = 1024;
+  /** 延迟视图中尚未计算的投影值 */
+  private static final Object NOT_COMPUTED = new Object();
+
   private ExecutableStatement subEx;
   private ExecutableStatement dataEx;
   private ExecutableStatement constraintEx;
+  /** 执行方式设置,来自编译时的解析配置 */
+  private ProjectionSettings settings;
 
   public Fold(char[] expr, int start, int offset, int fields, ParserContext pCtx) {
     super(pCtx);
     this.expr = expr;
     this.start = start;
     this.offset = offset;
+    this.settings = pCtx == null ? new ProjectionSettings() : pCtx.getParserConfiguration().getProjectionSettings();
 
     int cursor = start;
     int end = start + offset;
@@ -73,76 +95,294 @@ public class Fold extends ASTNode {
 
     while (isWhitespace(expr[cursor])) cursor--;
 
-    expectType(pCtx, dataEx = (ExecutableStatement) subCompileExpression(expr, st, cursor - st, pCtx),
-        Collection.class, ((fields & COMPILE_IMMEDIATE) != 0));
+    dataEx = (ExecutableStatement) subCompileExpression(expr, st, cursor - st, pCtx);
+
+    //数组以及可迭代对象同样可以作为数据源,其它类型则要求为集合
+    Class dataType = dataEx.getKnownEgressType();
+    if (dataType == null || !(dataType.isArray() || Iterable.class.isAssignableFrom(dataType))) {
+      expectType(pCtx, dataEx, Collection.class, ((fields & COMPILE_IMMEDIATE) != 0));
+    }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
-    ItemResolverFactory itemFactory = new ItemResolverFactory(itemR, new DefaultLocalVariableResolverFactory(factory));
+    Object data = dataEx.getValue(ctx, thisValue, factory);
 
-    List list;
+    if (settings.isLazy()) {
+      return lazy(ctx, thisValue, factory, data);
+    }
 
-    if (constraintEx != null) {
-      Collection col = ((Collection) dataEx.getValue(ctx, thisValue, factory));
-      list = new ArrayList(col.size());
+    int size = sizeOf(data);
+    if (size != -1 && settings.isParallel(size)) {
+      return parallel(ctx, thisValue, factory, toArray(data, size));
+    }
 
-      for (Object o : col) {
-        itemR.value = o;
-        if ((Boolean) constraintEx.getValue(ctx, thisValue, itemFactory)) {
-          list.add(subEx.getValue(o, thisValue, itemFactory));
-        }
-      }
+    ResolverFactoryPool pool = ResolverFactoryPool.current();
+    if (pool == null) {
+      return project(ctx, thisValue, newItemFactory(factory), data, size);
+    }
 
+    //开启了工厂复用时,投影作用域从线程池中借用
+    ItemResolverFactory itemFactory = pool.acquireItemFactory("$", factory);
+    try {
+      return project(ctx, thisValue, itemFactory, data, size);
     }
-    else {
-      Collection col = ((Collection) dataEx.getValue(ctx, thisValue, factory));
-      list = new ArrayList(col.size());
-      for (Object o : col) {
-        list.add(subEx.getValue(itemR.value = o, thisValue, itemFactory));
-      }
+    finally {
+      pool.release(itemFactory);
     }
-    return list;
   }
 
   public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
-    ItemResolverFactory itemFactory = new ItemResolverFactory(itemR, new DefaultLocalVariableResolverFactory(factory));
+    Object data = dataEx.getValue(ctx, thisValue, factory);
+    if (settings.isLazy()) {
+      return lazy(ctx, thisValue, factory, data);
+    }
+    return project(ctx, thisValue, newItemFactory(factory), data, sizeOf(data));
+  }
 
-    List list;
+  /** 创建投影使用的作用域,$变量即为当前元素 */
+  private static ItemResolverFactory newItemFactory(VariableResolverFactory factory) {
+    return new ItemResolverFactory(new ItemResolverFactory.ItemResolver("$"), new DefaultLocalVariableResolverFactory(factory));
+  }
 
-    if (constraintEx != null) {
-      Object x = dataEx.getValue(ctx, thisValue, factory);
+  /** 对单个元素进行投影,满足条件时将投影值加入结果中 */
+  private void apply(List<Object> out, Object o, Object ctx, Object thisValue, ItemResolverFactory itemFactory) {
+    if (accepts(o, ctx, thisValue, itemFactory)) {
+      out.add(project(o, thisValue, itemFactory));
+    }
+  }
 
-      if (!(x instanceof Collection))
-        throw new CompileException("was expecting type: Collection; but found type: "
-            + (x == null ? "null" : x.getClass().getName()), expr, start);
+  /** 元素是否满足投影条件 */
+  private boolean accepts(Object o, Object ctx, Object thisValue, ItemResolverFactory itemFactory) {
+    if (constraintEx == null) return true;
+    itemFactory.getItemResolver().value = o;
+    return (Boolean) constraintEx.getValue(ctx, thisValue, itemFactory);
+  }
 
-      list = new ArrayList(((Collection) x).size());
-      for (Object o : (Collection) x) {
-        itemR.value = o;
-        if ((Boolean) constraintEx.getValue(ctx, thisValue, itemFactory)) {
-          list.add(subEx.getValue(o, thisValue, itemFactory));
-        }
+  /** 计算元素的投影值 */
+  private Object project(Object o, Object thisValue, ItemResolverFactory itemFactory) {
+    itemFactory.getItemResolver().value = o;
+    return subEx.getValue(o, thisValue, itemFactory);
+  }
+
+  /** 顺序执行整个投影 */
+  private List<Object> project(Object ctx, Object thisValue, ItemResolverFactory itemFactory, Object data, int size) {
+    List<Object> list = new ArrayList<Object>(size == -1 ? 10 : size);
+
+    if (data instanceof Object[]) {
+      for (Object o : (Object[]) data) {
+        apply(list, o, ctx, thisValue, itemFactory);
+      }
+    }
+    else if (data instanceof Iterable) {
+      for (Object o : (Iterable) data) {
+        apply(list, o, ctx, thisValue, itemFactory);
+      }
+    }
+    else if (data != null && data.getClass().isArray()) {
+      for (int i = 0; i < size; i++) {
+        apply(list, Array.get(data, i), ctx, thisValue, itemFactory);
       }
     }
     else {
-      Object x = dataEx.getValue(ctx, thisValue, factory);
+      throw unsupported(data);
+    }
+    return list;
+  }
+
+  /** 将数据拆分为连续的分段并行执行,第一个分段由调用线程执行,结果按分段顺序合并 */
+  private List<Object> parallel(final Object ctx, final Object thisValue, final VariableResolverFactory factory, final Object[] items) {
+    ExecutorService executor = settings.getExecutor();
+    int chunks = Math.max(1, Math.min(settings.getParallelism() * 4, items.length / MIN_CHUNK_SIZE));
+    final int chunkSize = (items.length + chunks - 1) / chunks;
 
-      if (!(x instanceof Collection))
-        throw new CompileException("was expecting type: Collection; but found type: "
-            + (x == null ? "null" : x.getClass().getName()), expr, start);
+    List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>(chunks);
+    //先在调用线程中执行第一个分段,使各个访问器以及外部作用域中的解析器在并发访问之前完成初始化
+    List<Object> result = projectRange(ctx, thisValue, factory, items, 0, Math.min(chunkSize, items.length));
+
+    try {
+      for (int from = chunkSize; from < items.length; from += chunkSize) {
+        final int f = from;
+        final int t = Math.min(from + chunkSize, items.length);
+        futures.add(executor.submit(new Callable<List<Object>>() {
+          public List<Object> call() throws Exception {
+            return projectRange(ctx, thisValue, factory, items, f, t);
+          }
+        }));
+      }
 
-      list = new ArrayList(((Collection) x).size());
-      for (Object o : (Collection) x) {
-        list.add(subEx.getValue(itemR.value = o, thisValue, itemFactory));
+      for (Future<List<Object>> future : futures) {
+        result.addAll(future.get());
       }
     }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompileException("interrupted while waiting for parallel projection", expr, start, e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new CompileException("parallel projection failed", expr, start, cause);
+    }
+    finally {
+      for (Future<List<Object>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
 
+  /** 使用单独的作用域对指定区间内的元素执行投影 */
+  private List<Object> projectRange(Object ctx, Object thisValue, VariableResolverFactory factory, Object[] items, int from, int to) {
+    ItemResolverFactory itemFactory = newItemFactory(factory);
+    List<Object> list = new ArrayList<Object>(to - from);
+    for (int i = from; i < to; i++) {
+      apply(list, items[i], ctx, thisValue, itemFactory);
+    }
     return list;
   }
 
+  /** 创建延迟执行的投影视图 */
+  private List<Object> lazy(Object ctx, Object thisValue, VariableResolverFactory factory, Object data) {
+    //执行包装的栈重置工厂可能在执行结束后被复用,视图直接引用外部传入的工厂
+    if (factory instanceof StackResetResolverFactory) {
+      factory = ((StackResetResolverFactory) factory).getDelegate();
+    }
+    //视图在执行结束之后仍会使用这些作用域,因此不能再被工厂池复用
+    ResolverFactoryPool.capture(factory);
+    return new LazyProjection(ctx, thisValue, newItemFactory(factory), iteratorOf(data), sizeOf(data));
+  }
+
+  /** 获取数据源的元素数,不能直接确定时返回-1 */
+  private static int sizeOf(Object data) {
+    if (data instanceof Collection) return ((Collection) data).size();
+    if (data != null && data.getClass().isArray()) return Array.getLength(data);
+    return -1;
+  }
+
+  private static Object[] toArray(Object data, int size) {
+    if (data instanceof Collection) return ((Collection) data).toArray();
+    if (data instanceof Object[]) return (Object[]) data;
+
+    Object[] items = new Object[size];
+    for (int i = 0; i < size; i++) {
+      items[i] = Array.get(data, i);
+    }
+    return items;
+  }
+
+  private Iterator iteratorOf(final Object data) {
+    if (data instanceof Iterable) return ((Iterable) data).iterator();
+    if (data == null || !data.getClass().isArray()) throw unsupported(data);
+
+    return new Iterator() {
+      private final int length = Array.getLength(data);
+      private int cursor;
+
+      public boolean hasNext() {
+        return cursor < length;
+      }
+
+      public Object next() {
+        if (cursor >= length) throw new NoSuchElementException();
+        return Array.get(data, cursor++);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private CompileException unsupported(Object data) {
+    return new CompileException("was expecting type: Collection, Iterable or array; but found type: "
+        + (data == null ? "null" : data.getClass().getName()), expr, start);
+  }
+
   public Class getEgressType() {
     return Collection.class;
   }
+
+  /**
+   * 延迟执行的投影结果,条件在遍历到元素时计算,投影值在元素被访问时才计算并缓存
+   * isEmpty,contains以及迭代只计算到所需的位置为止;没有过滤条件时size及isEmpty直接由数据源的大小得出,
+   * 有过滤条件时size只计算所有元素的条件,而不计算投影值.此视图不是线程安全的
+   */
+  private class LazyProjection extends AbstractList<Object> {
+    private final Object ctx;
+    private final Object thisValue;
+    private final ItemResolverFactory itemFactory;
+    private Iterator source;
+    /** 数据源的元素数,不能直接确定时为-1 */
+    private final int sourceSize;
+    /** 已经遍历到的满足条件的元素 */
+    private final List<Object> accepted = new ArrayList<Object>();
+    /** 与accepted对应的投影值,未计算的为NOT_COMPUTED */
+    private final List<Object> values = new ArrayList<Object>();
+
+    private LazyProjection(Object ctx, Object thisValue, ItemResolverFactory itemFactory, Iterator source, int sourceSize) {
+      this.ctx = ctx;
+      this.thisValue = thisValue;
+      this.itemFactory = itemFactory;
+      this.source = source;
+      this.sourceSize = sourceSize;
+    }
+
+    /** 遍历直到已有n个满足条件的元素或者数据源结束,返回是否已有n个元素 */
+    private boolean fill(int n) {
+      while (accepted.size() < n && source != null) {
+        if (!source.hasNext()) {
+          source = null;
+          break;
+        }
+        Object o = source.next();
+        if (accepts(o, ctx, thisValue, itemFactory)) {
+          accepted.add(o);
+          values.add(NOT_COMPUTED);
+        }
+      }
+      return accepted.size() >= n;
+    }
+
+    public Object get(int index) {
+      if (index < 0 || !fill(index + 1)) {
+        throw new IndexOutOfBoundsException("Index: " + index);
+      }
+      Object v = values.get(index);
+      if (v == NOT_COMPUTED) {
+        values.set(index, v = project(accepted.get(index), thisValue, itemFactory));
+      }
+      return v;
+    }
+
+    public int size() {
+      if (constraintEx == null && sourceSize != -1) return sourceSize;
+      fill(Integer.MAX_VALUE);
+      return accepted.size();
+    }
+
+    public boolean isEmpty() {
+      if (constraintEx == null && sourceSize != -1) return sourceSize == 0;
+      return !fill(1);
+    }
+
+    public Iterator<Object> iterator() {
+      return new Iterator<Object>() {
+        private int cursor;
+
+        public boolean hasNext() {
+          return fill(cursor + 1);
+        }
+
+        public Object next() {
+          if (!fill(cursor + 1)) throw new NoSuchElementException();
+          return get(cursor++);
+        }
+
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
 }
@@ -25,10 +25,12 @@ import org.mvel2.compiler.ExecutableStatement;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.DefaultLocalVariableResolverFactory;
 import org.mvel2.integration.impl.ItemResolverFactory;
+import org.mvel2.integration.impl.ResolverFactoryPool;
 import org.mvel2.util.ParseTools;
 
 import java.lang.reflect.Array;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.ParseTools.*;
 
 /**
@@ -75,23 +77,43 @@ public class ForEachNode extends BlockNode {
       pCtx.pushVariableScope();
       //当前变量在子上下文中可见,即在循环体中可使用到此变量
       pCtx.makeVisible(item);
+      pCtx.beginScopeAnalysis();
 
       this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
       //编译完,结束临时上下文
+      blockLocals = pCtx.endScopeAnalysis();
       pCtx.popVariableScope();
     }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    //这里面有单独的一个变量,因此创建一个优先级最高的单独解析器并通过封装此解析器来完成后面执行块的处理
-    ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver(item);
-    //因为这里要执行方法体,因此需要一个新的作用域,因此在原factory的基础上创建新的解析器作用域
-    ItemResolverFactory itemFactory = new ItemResolverFactory(itemR, new DefaultLocalVariableResolverFactory(factory));
-
     //一次性获取到相应的循环的值(不会多次求值)
     Object iterCond = condition.getValue(ctx, thisValue, factory);
 
+    //开启了工厂复用时,循环作用域从线程池中借用
+    ResolverFactoryPool pool = ResolverFactoryPool.current();
+    if (pool == null) {
+      //这里面有单独的一个变量,因此创建一个优先级最高的单独解析器并通过封装此解析器来完成后面执行块的处理
+      //因为这里要执行方法体,因此需要一个新的作用域,因此在原factory的基础上创建新的解析器作用域
+      //循环体中没有声明变量时,循环变量之外不再需要单独的局部作用域
+      return iterate(ctx, thisValue, iterCond, new ItemResolverFactory(new ItemResolverFactory.ItemResolver(item),
+          blockLocals == null ? new DefaultLocalVariableResolverFactory(factory) : scopeOf(blockLocals, factory)));
+    }
+
+    ItemResolverFactory itemFactory = pool.acquireItemFactory(item, factory);
+    try {
+      return iterate(ctx, thisValue, iterCond, itemFactory);
+    }
+    finally {
+      pool.release(itemFactory);
+    }
+  }
+
+  /** 使用指定的循环作用域对循环值进行迭代执行 */
+  private Object iterate(Object ctx, Object thisValue, Object iterCond, ItemResolverFactory itemFactory) {
+    ItemResolverFactory.ItemResolver itemR = itemFactory.getItemResolver();
+
     //如果变量类型还没有确定,则这里根据相应的值类型再进行判定
     if (type == -1) {
       determineIterType(iterCond.getClass());
@@ -27,6 +27,7 @@ import org.mvel2.util.ParseTools;
 
 import java.util.HashMap;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -71,7 +72,7 @@ public class ForNode extends BlockNode {
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //根据解析时上下文情况考虑新建作用域
-    VariableResolverFactory ctxFactory = indexAlloc ? factory : new MapVariableResolverFactory(new HashMap<String, Object>(1), factory);
+    VariableResolverFactory ctxFactory = indexAlloc ? factory : scopeOf(blockLocals, factory);
     Object v;
     //标准的for循环3段式处理,初始化,条件,递增处理
     for (initializer.getValue(ctx, thisValue, ctxFactory); (Boolean) condition.getValue(ctx, thisValue, ctxFactory); after.getValue(ctx, thisValue, ctxFactory)) {
@@ -112,6 +113,9 @@ public class ForNode extends BlockNode {
         spCtx = new ParserContext();
       }
 
+      //初始化,条件,递增以及执行块中的声明都属于循环自身的作用域
+      spCtx.beginScopeAnalysis();
+
       //起始节点
       this.initializer = (ExecutableStatement) subCompileExpression(condition, start, cursor - start - 1, spCtx);
 
@@ -158,6 +162,7 @@ public class ForNode extends BlockNode {
 
       //执行节点
       this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockEnd, spCtx);
+      blockLocals = spCtx.endScopeAnalysis();
       if (pCtx != null) {
         pCtx.setInputs(spCtx.getInputs());
       }
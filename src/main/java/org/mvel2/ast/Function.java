@@ -27,6 +27,7 @@ import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.DefaultLocalVariableResolverFactory;
 import org.mvel2.integration.impl.FunctionVariableResolverFactory;
 import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.mvel2.integration.impl.ResolverFactoryPool;
 import org.mvel2.integration.impl.StackDemarcResolverFactory;
 
 import java.util.Map;
@@ -51,6 +52,12 @@ public class Function extends ASTNode implements Safe {
   protected boolean compiledMode = false;
   /** 是否是单列的，可以理解为是否是静态方法 */
   protected boolean singleton;
+  /** 函数既没有参数,函数体中也没有声明任何变量(由编译期作用域分析得出),调用时不需要单独的局部变量作用域 */
+  protected boolean scopeFree;
+  /** 函数被声明为纯函数时的结果缓存策略,未声明时为null */
+  protected FunctionCache.Policy memoization;
+  /** 全局作用域的结果缓存,在首次调用时创建 */
+  private transient volatile FunctionCache globalCache;
 
   /**
    * 构建出函数构建对象
@@ -131,7 +138,9 @@ public class Function extends ASTNode implements Safe {
     ctx.getVariables().clear();
 
     //编译相应的执行块
+    ctx.beginScopeAnalysis();
     this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, ctx);
+    String[] locals = ctx.endScopeAnalysis();
 
     this.parameters = new String[ctx.getIndexedInputs().size()];
 
@@ -139,15 +148,40 @@ public class Function extends ASTNode implements Safe {
     for (String s : ctx.getIndexedInputs()) {
       this.parameters[i++] = s;
     }
+    this.scopeFree = parameters.length == 0 && locals.length == 0;
 
     compiledMode = (fields & COMPILE_IMMEDIATE) != 0;
 
+    if (pCtx.getParserConfiguration() != null)
+      this.memoization = pCtx.getParserConfiguration().getMemoizationPolicy(this.name);
+
     this.egressType = this.compiledBlock.getKnownEgressType();
 
     //最后把自己也添加进变量，以支持递归
     pCtx.addVariable(name, Function.class);
   }
 
+  /**
+   * 复制一个已编译的函数定义,新的函数节点共享原有的已编译(以及已优化)的执行代码块
+   * 用于增量编译时复用未修改的函数,因为语法树节点本身是链表的一部分,不能直接在多个编译结果之间共享
+   */
+  public Function(Function function, ParserContext pCtx) {
+    super(pCtx);
+    this.name = function.name;
+    this.expr = function.expr;
+    this.start = function.start;
+    this.offset = function.offset;
+    this.fields = function.fields;
+    this.compiledBlock = function.compiledBlock;
+    this.parameters = function.parameters;
+    this.parmNum = function.parmNum;
+    this.compiledMode = function.compiledMode;
+    this.singleton = function.singleton;
+    this.scopeFree = function.scopeFree;
+    this.memoization = function.memoization;
+    this.egressType = function.egressType;
+  }
+
   /** 函数定义执行，即产生一个函数实体对象 */
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //执行即创建起整个函数,如果有name就加入到变量作用域中,同时返回其处理,以方便在后续处理
@@ -173,6 +207,37 @@ public class Function extends ASTNode implements Safe {
 
   /** 执行真正的调用过程,即在已经产生了一个函数实例之后，再进行函数调用 */
   public Object call(Object ctx, Object thisValue, VariableResolverFactory factory, Object[] parms) {
+    //声明为纯函数时,相同参数的调用直接返回缓存的结果(递归调用同样经过这里,因此也会被缓存)
+    FunctionCache cache;
+    if (memoization != null && (cache = getCache()) != null) {
+      Object value = cache.get(parms);
+      if (value == FunctionCache.MISS) {
+        cache.put(parms, value = invoke(ctx, thisValue, factory, parms));
+      }
+      return value;
+    }
+    return invoke(ctx, thisValue, factory, parms);
+  }
+
+  /** 获取当前调用应使用的结果缓存,单次执行作用域的函数在未划定执行范围时返回null */
+  private FunctionCache getCache() {
+    if (memoization.getScope() == FunctionCache.Scope.EVALUATION) {
+      return FunctionCache.current(this, memoization.getMaxSize());
+    }
+    FunctionCache cache = globalCache;
+    if (cache == null) {
+      synchronized (this) {
+        if ((cache = globalCache) == null) globalCache = cache = new FunctionCache(memoization.getMaxSize());
+      }
+    }
+    return cache;
+  }
+
+  /** 实际执行函数体 */
+  private Object invoke(Object ctx, Object thisValue, VariableResolverFactory factory, Object[] parms) {
+    //开启了工厂复用时,函数作用域从线程池中借用
+    ResolverFactoryPool pool = ResolverFactoryPool.current();
+
     if (parms != null && parms.length != 0) {
       // detect tail recursion
       //这里处理递归化调用,则当前函数递归调用当前函数,那么相应的工厂就是之前在当前函数内创建好地变量工厂
@@ -193,11 +258,20 @@ public class Function extends ASTNode implements Safe {
           }
         }
       }
+      if (pool != null) return callPooled(pool, thisValue, factory, parms);
+
       //正常的调用,有参数信息,就使用函数变量工厂来表示相应的作用域
       return compiledBlock.getValue(thisValue,
           new StackDemarcResolverFactory(new FunctionVariableResolverFactory(this, factory, parameters, parms)));
     }
     //因为没有参数信息,则直接使用一个默认的变量工厂即可,因为不需要对参数作处理,函数内部的值都是由新的作用域来处理
+    else if (pool != null) {
+      return callPooled(pool, thisValue, factory, parms);
+    }
+    //没有任何局部变量时,函数体直接在外部作用域上执行,仅通过StackDemarcResolverFactory隔离return的终止标记
+    else if (scopeFree) {
+      return compiledBlock.getValue(thisValue, new StackDemarcResolverFactory(factory));
+    }
     else if (compiledMode) {
       return compiledBlock.getValue(thisValue,
           new StackDemarcResolverFactory(new DefaultLocalVariableResolverFactory(factory, parameters)));
@@ -209,6 +283,27 @@ public class Function extends ASTNode implements Safe {
 
   }
 
+  /** 使用线程池中借用的作用域执行函数体 */
+  private Object callPooled(ResolverFactoryPool pool, Object thisValue, VariableResolverFactory factory, Object[] parms) {
+    StackDemarcResolverFactory scope = pool.acquireFunctionScope(this, factory, parameters, parms);
+    try {
+      return compiledBlock.getValue(thisValue, scope);
+    }
+    finally {
+      pool.release(scope);
+    }
+  }
+
+  /** 是否被声明为纯函数,即调用结果会被缓存 */
+  public boolean isMemoized() {
+    return memoization != null;
+  }
+
+  /** 获取全局作用域的结果缓存(含命中统计),函数未声明为全局缓存或尚未被调用时返回null */
+  public FunctionCache getMemoCache() {
+    return globalCache;
+  }
+
   public String getName() {
     return name;
   }
@@ -221,6 +316,11 @@ public class Function extends ASTNode implements Safe {
     return parameters;
   }
 
+  /** 声明的参数个数 */
+  public int getParameterCount() {
+    return parmNum;
+  }
+
   public boolean hasParameters() {
     return this.parameters != null && this.parameters.length != 0;
   }
@@ -0,0 +1,230 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.ast;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 纯函数(结果只依赖于参数,并且没有副作用)的调用结果缓存,以参数元组作为键,按最近最少使用淘汰,并记录命中统计
+ * 缓存的作用域可以是全局(即与函数定义同生命周期,跨执行共享),也可以是单次执行(通过 {@link #beginEvaluation()} 划定)
+ * 参数对象在缓存期间不应再被修改,否则缓存的结果将不再对应其参数
+ */
+public class FunctionCache {
+  /** 缓存未命中时返回的标记值,以区分缓存的null结果 */
+  public static final Object MISS = new Object();
+
+  /** 默认的每函数缓存上限 */
+  public static final int DEFAULT_MAX_SIZE = 1024;
+
+  /** 缓存的作用域 */
+  public enum Scope {
+    /** 缓存挂在函数定义上,被所有执行(以及所有线程)共享 */
+    GLOBAL,
+    /** 缓存只在当前线程的单次执行范围内有效,未划定执行范围时不进行缓存 */
+    EVALUATION
+  }
+
+  /** 函数的缓存策略,即缓存上限以及作用域,由解析配置注册并在编译函数定义时带入 */
+  public static final class Policy implements Serializable {
+    private final int maxSize;
+    private final Scope scope;
+
+    public Policy(int maxSize, Scope scope) {
+      if (maxSize <= 0) throw new IllegalArgumentException("cache size must be positive: " + maxSize);
+      if (scope == null) throw new IllegalArgumentException("scope must not be null");
+      this.maxSize = maxSize;
+      this.scope = scope;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public Scope getScope() {
+      return scope;
+    }
+  }
+
+  /** 当前线程正在进行的执行范围,支持嵌套 */
+  private static final ThreadLocal<Evaluation> evaluations = new ThreadLocal<Evaluation>();
+
+  private final int maxSize;
+  private final LinkedHashMap<Key, Object> entries;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public FunctionCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+        if (size() > FunctionCache.this.maxSize) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** 按参数读取缓存的结果,未命中时返回 {@link #MISS} */
+  public synchronized Object get(Object[] parms) {
+    Key key = new Key(parms);
+    Object value = entries.get(key);
+    if (value == null && !entries.containsKey(key)) {
+      misses++;
+      return MISS;
+    }
+    hits++;
+    return value;
+  }
+
+  /** 记录指定参数的调用结果,参数数组会被复制,以避免调用方后续对数组的复用影响到缓存键 */
+  public synchronized void put(Object[] parms, Object value) {
+    entries.put(new Key(parms == null ? null : parms.clone()), value);
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** 命中率,尚无任何调用时为0 */
+  public synchronized double getHitRatio() {
+    long total = hits + misses;
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** 清除所有缓存的结果以及统计 */
+  public synchronized void clear() {
+    entries.clear();
+    hits = misses = evictions = 0;
+  }
+
+  public synchronized String toString() {
+    return "FunctionCache[size=" + entries.size() + "/" + maxSize + ", hits=" + hits + ", misses=" + misses
+        + ", evictions=" + evictions + "]";
+  }
+
+  /**
+   * 在当前线程上开始一个执行范围,范围内调用的单次执行作用域的纯函数共享同一组缓存,直到 {@link Evaluation#end()} 为止
+   * 使用方式为:
+   * <pre>
+   * FunctionCache.Evaluation evaluation = FunctionCache.beginEvaluation();
+   * try {
+   *   MVEL.executeExpression(compiled, vars);
+   * }
+   * finally {
+   *   evaluation.end();
+   * }
+   * </pre>
+   */
+  public static Evaluation beginEvaluation() {
+    Evaluation evaluation = new Evaluation(evaluations.get());
+    evaluations.set(evaluation);
+    return evaluation;
+  }
+
+  /** 获取指定函数在当前执行范围内的缓存,未划定执行范围时返回null */
+  static FunctionCache current(Function function, int maxSize) {
+    Evaluation evaluation = evaluations.get();
+    return evaluation == null ? null : evaluation.cacheFor(function, maxSize);
+  }
+
+  /** 单次执行范围,持有范围内各函数的缓存 */
+  public static final class Evaluation {
+    private final Evaluation outer;
+    private final Map<Function, FunctionCache> caches = new IdentityHashMap<Function, FunctionCache>();
+    private boolean ended;
+
+    private Evaluation(Evaluation outer) {
+      this.outer = outer;
+    }
+
+    private FunctionCache cacheFor(Function function, int maxSize) {
+      FunctionCache cache = caches.get(function);
+      if (cache == null) caches.put(function, cache = new FunctionCache(maxSize));
+      return cache;
+    }
+
+    /** 获取指定函数在此范围内的缓存(含命中统计),此范围内未调用过时返回null */
+    public FunctionCache getCache(Function function) {
+      return caches.get(function);
+    }
+
+    /** 按函数名获取此范围内的缓存,存在同名的多个函数定义时返回其中任意一个 */
+    public FunctionCache getCache(String functionName) {
+      for (Map.Entry<Function, FunctionCache> entry : caches.entrySet()) {
+        if (functionName.equals(entry.getKey().getName())) return entry.getValue();
+      }
+      return null;
+    }
+
+    /** 结束此执行范围并丢弃其缓存,恢复外层范围 */
+    public void end() {
+      if (ended) return;
+      ended = true;
+      if (evaluations.get() == this) {
+        if (outer == null) evaluations.remove();
+        else evaluations.set(outer);
+      }
+    }
+  }
+
+  /** 参数元组键,按数组内容(包括嵌套数组)比较 */
+  private static final class Key {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object[] parms;
+    private final int hash;
+
+    private Key(Object[] parms) {
+      this.parms = parms == null ? EMPTY : parms;
+      this.hash = Arrays.deepHashCode(this.parms);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof Key && hash == ((Key) o).hash && Arrays.deepEquals(parms, ((Key) o).parms);
+    }
+  }
+}
@@ -27,6 +27,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
 import java.util.HashMap;
 
 import static org.mvel2.MVEL.eval;
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -48,6 +49,9 @@ public class IfNode extends BlockNode implements NestedStatement {
   /** 当前解析上下文是否可创建新变量 */
   protected boolean idxAlloc = false;
 
+  /** 编译期分析得到的else代码块中声明的变量,if代码块的见{@link #blockLocals} */
+  protected String[] elseLocals;
+
   public IfNode(char[] expr, int start, int offset, int blockStart, int blockOffset, int fields, ParserContext pCtx) {
     super(pCtx);
     if ((this.expr = expr) == null || offset == 0) {
@@ -69,10 +73,12 @@ public class IfNode extends BlockNode implements NestedStatement {
       //内部代码块,在编译时使用新的作用域空间,编译完再删除此空间,即内部新的变量信息单独在一个编译作用域当中
       if (pCtx != null) {
         pCtx.pushVariableScope();
+        pCtx.beginScopeAnalysis();
       }
       this.nestedStatement = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
       if (pCtx != null) {
+        blockLocals = pCtx.endScopeAnalysis();
         pCtx.popVariableScope();
       }
     }
@@ -80,14 +86,17 @@ public class IfNode extends BlockNode implements NestedStatement {
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //标准的if elseif else逻辑,在创建变量作用域时,需要根据当前的作用域是否可创建新变量才判定是否要使用新的作用域
+    //没有声明变量的代码块直接使用外部作用域,有声明的使用定长的块作用域
     if ((Boolean) condition.getValue(ctx, thisValue, factory)) {
-      return nestedStatement.getValue(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+      return nestedStatement.getValue(ctx, thisValue, idxAlloc ? factory : scopeOf(blockLocals, factory));
     }
     else if (elseIf != null) {
-      return elseIf.getReducedValueAccelerated(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+      //elseIf自身会为其代码块创建作用域
+      return elseIf.getReducedValueAccelerated(ctx, thisValue, idxAlloc || elseIf.blockLocals != null ? factory
+          : new MapVariableResolverFactory(new HashMap(0), factory));
     }
     else if (elseBlock != null) {
-      return elseBlock.getValue(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+      return elseBlock.getValue(ctx, thisValue, idxAlloc ? factory : scopeOf(elseLocals, factory));
     }
     //只有if,并且if不满足条件,返回null
     else {
@@ -127,7 +136,9 @@ public class IfNode extends BlockNode implements NestedStatement {
 
   /** 设置相应的else 代码块. else代码块即没有条件的普通执行单元 */
   public IfNode setElseBlock(char[] block, int cursor, int offset, ParserContext ctx) {
+    if (ctx != null) ctx.beginScopeAnalysis();
     elseBlock = (ExecutableStatement) subCompileExpression(block, cursor, offset, ctx);
+    if (ctx != null) elseLocals = ctx.endScopeAnalysis();
     return this;
   }
 
@@ -21,11 +21,16 @@ package org.mvel2.ast;
 import org.mvel2.CompileException;
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
+import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ImmutableDefaultFactory;
 import org.mvel2.optimizers.AccessorOptimizer;
 import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.optimizers.impl.refl.collection.ConstantCollectionAccessor;
 import org.mvel2.util.CollectionParser;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -60,6 +65,7 @@ public class InlineCollectionNode extends ASTNode {
         AccessorOptimizer ao = OptimizerFactory.getThreadAccessorOptimizer();
         accessor = ao.optimizeCollection(pctx, collectionGraph, egressType, expr, trailingStart, trailingOffset, null, null, null);
         egressType = ao.getEgressType();
+        foldConstant(pctx);
       }
       finally {
         OptimizerFactory.clearThreadAccessorOptimizer();
@@ -80,6 +86,7 @@ public class InlineCollectionNode extends ASTNode {
         AccessorOptimizer ao = OptimizerFactory.getThreadAccessorOptimizer();
         accessor = ao.optimizeCollection(pctx, collectionGraph, egressType, expr, this.trailingStart, trailingOffset, null, null, null);
         egressType = ao.getEgressType();
+        foldConstant(pctx);
       }
       finally {
         OptimizerFactory.clearThreadAccessorOptimizer();
@@ -111,6 +118,66 @@ public class InlineCollectionNode extends ASTNode {
 
   }
 
+  /**
+   * 编译期常量折叠,如果集合的所有元素均为常量,则使用预先计算好的值来代替每次执行时的逐项计算
+   * 默认每次执行时复制出新的可修改实例,配置了共享时集合和map直接返回共享的不可修改实例
+   */
+  private void foldConstant(ParserContext pctx) {
+    Object constant = getConstantValue();
+    if (!ConstantCollectionAccessor.isFoldable(constant)) return;
+
+    boolean share = pctx != null && pctx.getParserConfiguration() != null
+        ? pctx.getParserConfiguration().isShareConstantInlineCollections() : MVEL.COMPILER_OPT_SHARE_CONSTANT_INLINE_COLLECTIONS;
+    accessor = new ConstantCollectionAccessor(constant, share && ConstantCollectionAccessor.isShareable(constant),
+        new String(expr, start, offset));
+  }
+
+  /**
+   * 如果当前集合的所有元素均为常量(并且后面没有级联的访问),返回在编译期计算出的集合值,否则返回null
+   * 每次调用均返回新的实例(配置了共享时,已折叠的集合和map除外,其返回共享的不可修改实例)
+   */
+  public Object getConstantValue() {
+    if (accessor == null || collectionGraph == null || trailingOffset > 0 || !isConstantGraph(collectionGraph)) {
+      return null;
+    }
+    try {
+      return accessor.getValue(null, null, new ImmutableDefaultFactory());
+    }
+    catch (RuntimeException e) {
+      //无法在编译期计算的,保留到运行期再处理,以保证原有的报错行为
+      return null;
+    }
+  }
+
+  /** 判断集合描述中的所有元素是否均为常量 */
+  private boolean isConstantGraph(Object o) {
+    if (o instanceof List) {
+      for (Object item : (List) o) {
+        if (!isConstantGraph(item)) return false;
+      }
+      return true;
+    }
+    else if (o instanceof Map) {
+      for (Object item : ((Map) o).entrySet()) {
+        Map.Entry entry = (Map.Entry) item;
+        if (!isConstantGraph(entry.getKey()) || !isConstantGraph(entry.getValue())) return false;
+      }
+      return true;
+    }
+    else if (o instanceof Object[]) {
+      for (Object item : (Object[]) o) {
+        if (!isConstantGraph(item)) return false;
+      }
+      return true;
+    }
+    else if (o instanceof String) {
+      Serializable s = subCompileExpression(((String) o).toCharArray(), pCtx);
+      return s instanceof ExecutableLiteral
+          || (s instanceof CompiledExpression && ((CompiledExpression) s).isLiteralOnly());
+    }
+    return false;
+  }
+
   /** 采用解释运行方式进行解释并获取相应的数据 */
   public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
     parseGraph(false, egressType, pCtx);
@@ -29,6 +29,10 @@ public class LineLabel extends ASTNode {
   private String sourceFile;
   /** 代码行数 */
   private int lineNumber;
+  /** 执行链中此标记之前的节点,为null时表示此标记为表达式的第一个节点 */
+  private ASTNode previous;
+  /** 此标记当前是否接入了执行链 */
+  private boolean attached;
 
   public LineLabel(String sourceFile, int lineNumber, ParserContext pCtx) {
     super(pCtx);
@@ -54,6 +58,22 @@ public class LineLabel extends ASTNode {
     this.lineNumber = lineNumber;
   }
 
+  public ASTNode getPrevious() {
+    return previous;
+  }
+
+  public void setPrevious(ASTNode previous) {
+    this.previous = previous;
+  }
+
+  public boolean isAttached() {
+    return attached;
+  }
+
+  public void setAttached(boolean attached) {
+    this.attached = attached;
+  }
+
 
   /** 不需要处理数据 */
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
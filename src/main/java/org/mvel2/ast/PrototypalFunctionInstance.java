@@ -1,6 +1,7 @@
 package org.mvel2.ast;
 
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ResolverFactoryPool;
 
 /**
  * 描述一个函数产生的调用实例,即每一次的function调用都是一个调用实例
@@ -13,6 +14,8 @@ public class PrototypalFunctionInstance extends FunctionInstance {
   public PrototypalFunctionInstance(Function function, VariableResolverFactory resolverFactory) {
     super(function);
     this.resolverFactory = resolverFactory;
+    //实例在创建它的作用域结束之后仍会通过此作用域访问变量,因此这些作用域不能再被工厂池复用
+    ResolverFactoryPool.capture(resolverFactory);
   }
 
   @Override
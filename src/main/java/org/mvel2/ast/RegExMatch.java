@@ -22,6 +22,7 @@ import org.mvel2.ParserContext;
 import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.compiler.ExecutableStatement;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.util.PatternCache;
 
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -44,6 +45,8 @@ public class RegExMatch extends ASTNode {
   private int patternOffset;
   /** 相应的正则表达式 */
   private Pattern p;
+  /** 常量正则式中不包含任何元字符时,完全匹配即为字符串相等,此时为该字符串 */
+  private String literal;
 
   public RegExMatch(char[] expr, int start, int offset, int fields, int patternStart, int patternOffset, ParserContext pCtx) {
     super(pCtx);
@@ -62,7 +65,9 @@ public class RegExMatch extends ASTNode {
 
         //如果是常量,则尝试直接进行编译此正则式
         try {
-          p = compile(valueOf(patternStmt.getValue(null, null)));
+          String regex = valueOf(patternStmt.getValue(null, null));
+          p = compile(regex);
+          if (isPlainText(regex)) literal = regex;
         }
         catch (PatternSyntaxException e) {
           throw new CompileException("bad regular expression", expr, patternStart, e);
@@ -75,18 +80,32 @@ public class RegExMatch extends ASTNode {
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //根据正则式是否已处理好决定如何运行
     if (p == null) {
-      //这里因为正则式是一个表达式,因此不能够直接进行缓存,而是每次都重新编译
-      return compile(valueOf(patternStmt.getValue(ctx, thisValue, factory))).matcher(valueOf(stmt.getValue(ctx, thisValue, factory))).matches();
+      //这里因为正则式是一个表达式,因此不能够直接在节点上保存,而是从共享的缓存中获取
+      return PatternCache.matches(PatternCache.compile(valueOf(patternStmt.getValue(ctx, thisValue, factory))),
+          valueOf(stmt.getValue(ctx, thisValue, factory)));
+    }
+    else if (literal != null) {
+      return literal.equals(valueOf(stmt.getValue(ctx, thisValue, factory)));
     }
     else {
+      //常量正则式直接使用节点上的Pattern,不经过缓存以及线程内的matcher复用
       return p.matcher(valueOf(stmt.getValue(ctx, thisValue, factory))).matches();
     }
   }
 
+  /** 正则式是否不包含任何元字符,即只能匹配其自身 */
+  static boolean isPlainText(String regex) {
+    for (int i = 0; i < regex.length(); i++) {
+      if ("\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) != -1) return false;
+    }
+    return true;
+  }
+
   public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //与编译运行相同,不过相应的计算过程为解释运行
     try {
-      return compile(valueOf(eval(expr, patternStart, patternOffset, ctx, factory))).matcher(valueOf(eval(expr, start, offset, ctx, factory))).matches();
+      return PatternCache.matches(PatternCache.compile(valueOf(eval(expr, patternStart, patternOffset, ctx, factory))),
+          valueOf(eval(expr, start, offset, ctx, factory)));
     }
     catch (PatternSyntaxException e) {
       throw new CompileException("bad regular expression", expr, patternStart, e);
@@ -18,35 +18,69 @@
 
 package org.mvel2.ast;
 
+import org.mvel2.CompileException;
 import org.mvel2.ParserContext;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.util.PatternCache;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static java.lang.String.valueOf;
 import static java.util.regex.Pattern.compile;
 import static org.mvel2.MVEL.eval;
 
-/** 对于 ~= 正确表达式的优化节点(实际上正式表达式由RegExMatch描述) 此对象并不会实际存在用处 */
+/**
+ * 对于 ~= 正则表达式的优化节点,由操作符形式的匹配(如(a) ~= b)在优化时创建,其它情况由RegExMatch描述.
+ * 与RegExMatch相同,常量正则式在创建时即编译,其它情况从共享的缓存中获取编译后的正则式
+ */
 public class RegExMatchNode extends ASTNode {
   /** 要进行匹配的节点 */
   private ASTNode node;
   /** 正则表达式节点 */
   private ASTNode patternNode;
+  /** 常量正则式编译后的结果,正则式不为常量时为null */
+  private Pattern p;
+  /** 常量正则式中不包含任何元字符时,完全匹配即为字符串相等,此时为该字符串 */
+  private String literal;
 
   public RegExMatchNode(ASTNode matchNode, ASTNode patternNode, ParserContext pCtx) {
     super(pCtx);
     this.node = matchNode;
     this.patternNode = patternNode;
+
+    if (patternNode.isLiteral()) {
+      String regex = valueOf(patternNode.getLiteralValue());
+      try {
+        p = compile(regex);
+      }
+      catch (PatternSyntaxException e) {
+        throw new CompileException("bad regular expression", patternNode.getExpr(), patternNode.getStart(), e);
+      }
+      if (RegExMatch.isPlainText(regex)) literal = regex;
+    }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    return compile(valueOf(patternNode.getReducedValueAccelerated(ctx, thisValue, factory))).matcher(valueOf(node.getReducedValueAccelerated(ctx, thisValue, factory))).matches();
+    if (p == null) {
+      return PatternCache.matches(PatternCache.compile(valueOf(patternNode.getReducedValueAccelerated(ctx, thisValue, factory))),
+          valueOf(node.getReducedValueAccelerated(ctx, thisValue, factory)));
+    }
+    return matchesConstant(valueOf(node.getReducedValueAccelerated(ctx, thisValue, factory)));
   }
 
   public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    return compile(valueOf(eval(expr, patternNode.start, patternNode.offset, ctx, factory)))
-        .matcher(valueOf(eval(expr, node.start, node.offset, ctx, factory))).matches();
+    if (p == null) {
+      return PatternCache.matches(PatternCache.compile(valueOf(eval(expr, patternNode.start, patternNode.offset, ctx, factory))),
+          valueOf(eval(expr, node.start, node.offset, ctx, factory)));
+    }
+    return matchesConstant(valueOf(eval(expr, node.start, node.offset, ctx, factory)));
   }
 
+  /** 使用常量正则式进行匹配,不经过缓存 */
+  private boolean matchesConstant(String value) {
+    return literal != null ? literal.equals(value) : p.matcher(value).matches();
+  }
   /** 正则匹配返回为boolean */
   public Class getEgressType() {
     return Boolean.class;
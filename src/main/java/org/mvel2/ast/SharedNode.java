@@ -0,0 +1,70 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.ast;
+
+import org.mvel2.ParserContext;
+import org.mvel2.compiler.CompiledRuleSet;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * 规则集中被多个表达式共用的无副作用子表达式,在规则集的一次执行中只计算一次,
+ * 之后的引用直接使用第一次计算的结果.不在所属规则集的执行过程中时,每次均直接计算
+ *
+ * @see CompiledRuleSet
+ */
+public class SharedNode extends ASTNode {
+  /** 所属的规则集 */
+  private final CompiledRuleSet owner;
+  /** 在规则集中的结果槽位 */
+  private final int slot;
+  /** 实际的子表达式 */
+  private final ASTNode node;
+
+  public SharedNode(CompiledRuleSet owner, int slot, ASTNode node, ParserContext pCtx) {
+    super(pCtx);
+    this.owner = owner;
+    this.slot = slot;
+    this.node = node;
+    this.egressType = node.getEgressType();
+  }
+
+  public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    return owner.shared(slot, node, ctx, thisValue, factory);
+  }
+
+  public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    return node.getReducedValue(ctx, thisValue, factory);
+  }
+
+  public int getSlot() {
+    return slot;
+  }
+
+  public ASTNode getNode() {
+    return node;
+  }
+
+  @Override
+  public boolean isLiteral() {
+    return false;
+  }
+
+  public String toString() {
+    return node.toString();
+  }
+}
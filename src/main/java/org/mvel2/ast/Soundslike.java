@@ -5,24 +5,43 @@ import org.mvel2.ParserContext;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.util.CompilerTools;
 
-import static org.mvel2.util.Soundex.soundex;
+import static org.mvel2.util.Soundex.NO_CODE;
+import static org.mvel2.util.Soundex.soundexCode;
+import static org.mvel2.util.Soundex.soundsLike;
 
 /** 描述一个soundsLike操作符运算节点,即两个字符串之间是否有一定的相似性 */
 public class Soundslike extends ASTNode {
   private ASTNode stmt;
   private ASTNode soundslike;
+  /** 右侧为常量时在编译期预先计算好的soundex编码,-1表示未预先计算 */
+  private int soundslikeCode = -1;
+  /** 左侧为常量字符串时在编译期预先计算好的soundex编码,-1表示未预先计算 */
+  private int stmtCode = -1;
 
   public Soundslike(ASTNode stmt, ASTNode clsStmt, ParserContext pCtx) {
     super(pCtx);
     this.stmt = stmt;
     this.soundslike = clsStmt;
     CompilerTools.expectType(pCtx, clsStmt, String.class, true);
+
+    //常量一侧的编码在编译期即可确定
+    if (clsStmt.isLiteral()) {
+      soundslikeCode = soundexCode(String.valueOf(clsStmt.getLiteralValue()));
+    }
+    if (stmt.isLiteral() && stmt.getLiteralValue() instanceof String) {
+      stmtCode = soundexCode((String) stmt.getLiteralValue());
+    }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-    String str1 = String.valueOf(soundslike.getReducedValueAccelerated(ctx, thisValue, factory));
+    int code1 = soundslikeCode != -1 ? soundslikeCode
+        : soundexCode(String.valueOf(soundslike.getReducedValueAccelerated(ctx, thisValue, factory)));
+    //无法映射为soundex编码的字符串与任何字符串均不匹配
+    if (code1 == NO_CODE) return false;
+    if (stmtCode != -1) return code1 == stmtCode;
+
     String str2 = (String) stmt.getReducedValueAccelerated(ctx, thisValue, factory);
-    return str1 == null ? str2 == null : ( str2 == null ? false : soundex(str1).equals(soundex(str2)) );
+    return str2 != null && code1 == soundexCode(str2);
   }
 
   public Object getReducedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
@@ -33,7 +52,7 @@ public class Soundslike extends ASTNode {
       String x = (String) stmt.getReducedValue(ctx, thisValue, factory);
       if (x == null) throw new CompileException("not a string: " + stmt.getName(), stmt.getExpr(), stmt.getStart());
 
-      return soundex(i).equals(soundex(x));
+      return soundsLike(i, x);
     }
     catch (ClassCastException e) {
       throw new CompileException("not a string: " + soundslike.getName(), soundslike.getExpr(), soundslike.getStart());
@@ -11,15 +11,33 @@ import static org.mvel2.util.ParseTools.similarity;
 public class Strsim extends ASTNode {
   private ASTNode stmt;
   private ASTNode soundslike;
+  /** 右侧为常量时在编译期预先准备好的字符数据 */
+  private char[] soundslikeChars;
+  /** 左侧为常量字符串时在编译期预先准备好的字符数据 */
+  private char[] stmtChars;
 
   public Strsim(ASTNode stmt, ASTNode clsStmt, ParserContext pCtx) {
     super(pCtx);
     this.stmt = stmt;
     this.soundslike = clsStmt;
     CompilerTools.expectType(pCtx, clsStmt, String.class, true);
+
+    //常量一侧的字符数据在编译期即可确定,运行时仅需要访问另一侧的字符串
+    if (clsStmt.isLiteral()) {
+      soundslikeChars = String.valueOf(clsStmt.getLiteralValue()).toCharArray();
+    }
+    else if (stmt.isLiteral() && stmt.getLiteralValue() instanceof String) {
+      stmtChars = ((String) stmt.getLiteralValue()).toCharArray();
+    }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+    if (soundslikeChars != null) {
+      return similarity(soundslikeChars, (String) stmt.getReducedValueAccelerated(ctx, thisValue, factory));
+    }
+    if (stmtChars != null) {
+      return similarity(stmtChars, String.valueOf(soundslike.getReducedValueAccelerated(ctx, thisValue, factory)));
+    }
     return similarity(String.valueOf(soundslike.getReducedValueAccelerated(ctx, thisValue, factory)),
         ((String) stmt.getReducedValueAccelerated(ctx, thisValue, factory)));
   }
@@ -25,6 +25,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 import java.util.HashMap;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -48,18 +49,20 @@ public class UntilNode extends BlockNode {
     //开启新编译作用域进行内部语法块编译
     if (pCtx != null) {
       pCtx.pushVariableScope();
+      pCtx.beginScopeAnalysis();
     }
 
     this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
     if (pCtx != null) {
+      blockLocals = pCtx.endScopeAnalysis();
       pCtx.popVariableScope();
     }
   }
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //开启单独的循环解析作用域,按照与while相反的判断条件进行循环执行
-    VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap(0), factory);
+    VariableResolverFactory ctxFactory = scopeOf(blockLocals, factory);
     while (!(Boolean) condition.getValue(ctx, thisValue, factory)) {
       compiledBlock.getValue(ctx, thisValue, ctxFactory);
     }
@@ -25,6 +25,7 @@ import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 import java.util.HashMap;
 
+import static org.mvel2.integration.impl.BlockVariableResolverFactory.scopeOf;
 import static org.mvel2.util.CompilerTools.expectType;
 import static org.mvel2.util.ParseTools.subCompileExpression;
 
@@ -48,10 +49,12 @@ public class WhileNode extends BlockNode {
     //为执行块单独开启变量作用域,编译执行块,最后弹出相应的作用域
     if (pCtx != null) {
       pCtx.pushVariableScope();
+      pCtx.beginScopeAnalysis();
     }
     this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockEnd, pCtx);
 
     if (pCtx != null) {
+      blockLocals = pCtx.endScopeAnalysis();
       pCtx.popVariableScope();
 
     }
@@ -59,7 +62,7 @@ public class WhileNode extends BlockNode {
 
   public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
     //为执行作用域单独创建变量解析域,在整个处理完之后,即不会再使用
-    VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap<String, Object>(), factory);
+    VariableResolverFactory ctxFactory = scopeOf(blockLocals, factory);
     //标准的while执行过程
     while ((Boolean) condition.getValue(ctx, thisValue, factory)) {
       compiledBlock.getValue(ctx, thisValue, ctxFactory);
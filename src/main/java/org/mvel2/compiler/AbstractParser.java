@@ -78,12 +78,17 @@ import org.mvel2.ast.Union;
 import org.mvel2.ast.UntilNode;
 import org.mvel2.ast.WhileNode;
 import org.mvel2.ast.WithNode;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.util.ErrorUtil;
 import org.mvel2.util.ExecutionStack;
 import org.mvel2.util.FunctionParser;
+import org.mvel2.util.KeywordTable;
+import org.mvel2.util.PatternCache;
 import org.mvel2.util.PropertyTools;
 import org.mvel2.util.ProtoParser;
+import org.mvel2.util.SymbolTable;
 
 import java.io.Serializable;
 import java.util.HashMap;
@@ -98,7 +103,7 @@ import static org.mvel2.ast.TypeDescriptor.getClassReference;
 import static org.mvel2.util.ArrayTools.findFirst;
 import static org.mvel2.util.ParseTools.*;
 import static org.mvel2.util.PropertyTools.isEmpty;
-import static org.mvel2.util.Soundex.soundex;
+import static org.mvel2.util.Soundex.soundsLike;
 
 /**
  * 核心解析器，用于解析相应的表达式，即词法分析器，将相应的表达式分块转换为节点
@@ -208,9 +213,9 @@ public class AbstractParser implements Parser, Serializable {
    */
   public static void setupParser() {
     if (LITERALS == null || LITERALS.isEmpty()) {
-      LITERALS = new HashMap<String, Object>();
+      LITERALS = new KeywordTable<Object>();
       CLASS_LITERALS = new HashMap<String, Object>();
-      OPERATORS = new HashMap<String, Integer>();
+      OPERATORS = new KeywordTable<Integer>();
 
       /**
        * Add System and all the class wrappers from the JCL.
@@ -399,10 +404,14 @@ public class AbstractParser implements Parser, Serializable {
 
         //因为第一个操作关键字已经找到，则根据不同的类型看怎么进行处理
         if (capture) {
-          String t;//当前处理的操作符
+          //当前捕获的标识符区间,只有在确定其为属性或变量时才转换为字符串,关键字和操作符不需要
+          int tokenStart = st, tokenEnd = cursor;
+          Object opCode;
           //首先看其是否是语法关键字,判断是否指定的操作关键字 以根据不同的关键字作相应的处理
-          if (OPERATORS.containsKey(t = new String(expr, st, cursor - st)) && !Character.isDigit(expr[st])) {
-            switch (OPERATORS.get(t)) {
+          //关键字直接基于字符区间在关键字表中查找,不需要创建字符串
+          if (!Character.isDigit(expr[st])
+              && (opCode = KeywordTable.lookup(OPERATORS, expr, st, cursor - st)) != KeywordTable.NOT_FOUND) {
+            switch ((Integer) opCode) {
               //new 关键字处理，表示是一个新建对象操作
               //处理的逻辑，包括Date(),Date(1),Date{}，以及Date[2][3]这种情况
               case NEW:
@@ -612,7 +621,7 @@ public class AbstractParser implements Parser, Serializable {
                   }
                   else {
                     //没有=,则认为是声明一个变量定义
-                    name = new String(expr, st, end - st);
+                    name = SymbolTable.intern(expr, st, end - st);
                     //变量之前是有定义的(解析时定义),因此认为是重复定义,因此这里即直接引用
                     //并且是按照指定的顺序进行定义,因此这里需要在执行时也要进入到相应的变量下标中
                     if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
@@ -769,14 +778,14 @@ public class AbstractParser implements Parser, Serializable {
 
                   // -= 操作符
                   case '=':
-                    name = new String(expr, st, trimLeft(cursor) - st);
+                    name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
                     st = cursor += 2;
 
                     captureToEOS();
 
                     if (union) {
                       return lastNode = new DeepAssignmentNode(expr, st, cursor - st, fields,
-                          SUB, t, pCtx);
+                          SUB, symbol(tokenStart, tokenEnd), pCtx);
                     }
                     else if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
                       return lastNode = new IndexedOperativeAssign(expr, st, cursor - st,
@@ -823,14 +832,14 @@ public class AbstractParser implements Parser, Serializable {
               case '%':
                 char op = expr[cursor];
                 if (lookAhead() == '=') {
-                  name = new String(expr, st, trimLeft(cursor) - st);
+                  name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                   st = cursor += 2;
                   captureToEOS();
 
                   if (union) {
                     return lastNode = new DeepAssignmentNode(expr, st, cursor - st, fields,
-                        opLookup(op), t, pCtx);
+                        opLookup(op), symbol(tokenStart, tokenEnd), pCtx);
                   }
                   else if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
                     return lastNode = new IndexedOperativeAssign(expr, st, cursor - st,
@@ -846,14 +855,14 @@ public class AbstractParser implements Parser, Serializable {
               //处理 <<=
               case '<':
                 if ((lookAhead() == '<' && lookAhead(2) == '=')) {
-                  name = new String(expr, st, trimLeft(cursor) - st);
+                  name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                   st = cursor += 3;
                   captureToEOS();
 
                   if (union) {
                     return lastNode = new DeepAssignmentNode(expr, st, cursor - st, fields,
-                        BW_SHIFT_LEFT, t, pCtx);
+                        BW_SHIFT_LEFT, symbol(tokenStart, tokenEnd), pCtx);
                   }
                   else if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
                     return lastNode = new IndexedOperativeAssign(expr, st, cursor - st,
@@ -870,14 +879,14 @@ public class AbstractParser implements Parser, Serializable {
               case '>':
                 if (lookAhead() == '>') {
                   if (lookAhead(2) == '=') {
-                    name = new String(expr, st, trimLeft(cursor) - st);
+                    name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                     st = cursor += 3;
                     captureToEOS();
 
                     if (union) {
                       return lastNode = new DeepAssignmentNode(expr, st, cursor - st, fields,
-                          BW_SHIFT_RIGHT, t, pCtx);
+                          BW_SHIFT_RIGHT, symbol(tokenStart, tokenEnd), pCtx);
                     }
                     else if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
                       return lastNode = new IndexedOperativeAssign(expr, st, cursor - st,
@@ -889,14 +898,14 @@ public class AbstractParser implements Parser, Serializable {
                     }
                   }
                   else if ((lookAhead(2) == '>' && lookAhead(3) == '=')) {
-                    name = new String(expr, st, trimLeft(cursor) - st);
+                    name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                     st = cursor += 4;
                     captureToEOS();
 
                     if (union) {
                       return lastNode = new DeepAssignmentNode(expr, st, cursor - st, fields,
-                          BW_USHIFT_RIGHT, t, pCtx);
+                          BW_USHIFT_RIGHT, symbol(tokenStart, tokenEnd), pCtx);
                     }
                     else if (pCtx != null && (idx = pCtx.variableIndexOf(name)) != -1) {
                       return lastNode = new IndexedOperativeAssign(expr, st, cursor - st,
@@ -941,7 +950,7 @@ public class AbstractParser implements Parser, Serializable {
               //处理 正常的赋值操作 或者是 == 操作
               case '=':
                 if (lookAhead() == '+') {
-                  name = new String(expr, st, trimLeft(cursor) - st);
+                  name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                   st = cursor += 2;
 
@@ -962,7 +971,7 @@ public class AbstractParser implements Parser, Serializable {
                 }
                 else if (lookAhead() == '-') {
                   //这里把 =- 和 -=弄成一样的了,可以认为就是 -=
-                  name = new String(expr, st, trimLeft(cursor) - st);
+                  name = SymbolTable.intern(expr, st, trimLeft(cursor) - st);
 
                   st = cursor += 2;
 
@@ -996,7 +1005,7 @@ public class AbstractParser implements Parser, Serializable {
                     //这种情况就是属性赋值处理
                     return procTypedNode(false);
                   }
-                  else if (pCtx != null && ((idx = pCtx.variableIndexOf(t)) != -1
+                  else if (pCtx != null && ((idx = pCtx.variableIndexOf(symbol(tokenStart, tokenEnd))) != -1
                       && (pCtx.isIndexAllocation()))) {
                     captureToEOS();
 
@@ -1005,8 +1014,8 @@ public class AbstractParser implements Parser, Serializable {
                         ASTNode.ASSIGN, idx, pCtx);
 
                     if (idx == -1) {
-                      pCtx.addIndexedInput(t = ian.getVarName());
-                      ian.setRegister(pCtx.variableIndexOf(t));
+                      pCtx.addIndexedInput(ian.getVarName());
+                      ian.setRegister(pCtx.variableIndexOf(ian.getVarName()));
                     }
                     return lastNode = ian;
                   }
@@ -1081,7 +1090,7 @@ public class AbstractParser implements Parser, Serializable {
               captureToEOT();
 
               if (pCtx == null || (pCtx.getInterceptors() == null || !pCtx.getInterceptors().
-                  containsKey(name = new String(expr, st, cursor - st)))) {
+                  containsKey(name = SymbolTable.intern(expr, st, cursor - st)))) {
                 throw new CompileException("reference to undefined interceptor: "
                     + new String(expr, st, cursor - st), expr, st);
               }
@@ -1431,7 +1440,7 @@ public class AbstractParser implements Parser, Serializable {
 
                 st = cursor;
                 captureToEOT();
-                if ("new".equals(name = new String(expr, st, cursor - st))
+                if ("new".equals(name = SymbolTable.intern(expr, st, cursor - st))
                     || "isdef".equals(name)) {
                   //支持 ! new true 或者是 ! isdef x
                   captureToEOT();
@@ -1561,7 +1570,8 @@ public class AbstractParser implements Parser, Serializable {
    */
   private ASTNode createOperator(final char[] expr, final int start, final int end) {
     lastWasIdentifier = false;
-    return lastNode = new OperatorNode(OPERATORS.get(new String(expr, start, end - start)), expr, start, pCtx);
+    Object opCode = KeywordTable.lookup(OPERATORS, expr, start, end - start);
+    return lastNode = new OperatorNode(opCode == KeywordTable.NOT_FOUND ? null : (Integer) opCode, expr, start, pCtx);
   }
 
   /**
@@ -1584,6 +1594,11 @@ public class AbstractParser implements Parser, Serializable {
     return newA;
   }
 
+  /** 取得指定区间内标识符的共享字符串,用于确定作为属性或变量使用的标识符 */
+  private String symbol(final int start, final int end) {
+    return SymbolTable.intern(expr, start, end - start);
+  }
+
   /**
    * 根据当前区间范围创建节点信息,可以是属性节点或者是纯字符串常量节点
    * Generate a property token
@@ -1617,15 +1632,16 @@ public class AbstractParser implements Parser, Serializable {
         }
       }
 
-      if (LITERALS.containsKey(tmp = new String(expr, st, end - st))) {
+      Object keyword;
+      if ((keyword = KeywordTable.lookup(LITERALS, expr, st, end - st)) != KeywordTable.NOT_FOUND) {
         //常量节点
         lastWasIdentifier = true;
-        return lastNode = new LiteralNode(LITERALS.get(tmp), pCtx);
+        return lastNode = new LiteralNode(keyword, pCtx);
       }
-      else if (OPERATORS.containsKey(tmp)) {
+      else if ((keyword = KeywordTable.lookup(OPERATORS, expr, st, end - st)) != KeywordTable.NOT_FOUND) {
         //操作节点
         lastWasIdentifier = false;
-        return lastNode = new OperatorNode(OPERATORS.get(tmp), expr, st, pCtx);
+        return lastNode = new OperatorNode((Integer) keyword, expr, st, pCtx);
       }
       else if (lastWasIdentifier) {
         return procTypedNode(true);
@@ -2033,7 +2049,7 @@ public class AbstractParser implements Parser, Serializable {
       st = cursor;
       captureToNextTokenJunction();
 
-      if ("while".equals(name = new String(expr, st, cursor - st))) {
+      if ("while".equals(name = SymbolTable.intern(expr, st, cursor - st))) {
         skipWhitespace();
         startCond = cursor + 1;
         endCond = cursor = balancedCaptureWithLineAccounting(expr, cursor, end, '(', pCtx);//while条件
@@ -2437,6 +2453,9 @@ public class AbstractParser implements Parser, Serializable {
     if (expression != null && expression.length() != 0) {
       synchronized (EX_PRECACHE) {
         if ((this.expr = EX_PRECACHE.get(expression)) == null) {
+          if (InstrumentationFactory.isEnabled()) {
+            InstrumentationFactory.notifyCache(Instrumentation.CACHE_EXPRESSION_TEXT, false);
+          }
           end = length = (this.expr = expression.toCharArray()).length;
 
           // trim any whitespace.
@@ -2452,6 +2471,9 @@ public class AbstractParser implements Parser, Serializable {
           EX_PRECACHE.put(expression, e);
         }
         else {
+          if (InstrumentationFactory.isEnabled()) {
+            InstrumentationFactory.notifyCache(Instrumentation.CACHE_EXPRESSION_TEXT, true);
+          }
           end = length = this.expr.length;
         }
       }
@@ -2986,8 +3008,8 @@ public class AbstractParser implements Parser, Serializable {
 
         //正则处理
         case REGEX:
-          stk.push(java.util.regex.Pattern.compile(java.lang.String.valueOf(stk.pop()))
-              .matcher(java.lang.String.valueOf(stk.pop())).matches());
+          stk.push(PatternCache.matches(PatternCache.compile(java.lang.String.valueOf(stk.pop())),
+              java.lang.String.valueOf(stk.pop())));
           break;
 
         //instance of
@@ -3006,8 +3028,7 @@ public class AbstractParser implements Parser, Serializable {
           break;
 
         case SOUNDEX:
-          stk.push(soundex(java.lang.String.valueOf(stk.pop()))
-              .equals(soundex(java.lang.String.valueOf(stk.pop()))));
+          stk.push(soundsLike(java.lang.String.valueOf(stk.pop()), java.lang.String.valueOf(stk.pop())));
           break;
 
         case SIMILARITY:
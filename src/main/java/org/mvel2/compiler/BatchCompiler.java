@@ -0,0 +1,289 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.compiler;
+
+import org.mvel2.CompileException;
+import org.mvel2.ErrorDetail;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 批量编译器,用于在启动时并行地编译大量的表达式
+ * 由于ParserContext不能在多个线程之间共享,并且ParserConfiguration在编译过程中会被修改(如引入,失败引入的缓存),
+ * 因此编译前会先对配置进行一次快照,之后每一个编译任务均基于此快照复制出独立的配置和上下文
+ * 原有的配置在整个编译过程中不会被修改
+ */
+public class BatchCompiler {
+  private BatchCompiler() {
+  }
+
+  /** 使用与cpu个数相同的线程对所有的源进行编译 */
+  public static Report compileAll(Collection<Source> sources, ParserConfiguration conf) {
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      return compileAll(sources, conf, executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * 使用指定的执行器对所有的源进行编译,单个源的编译失败不会影响到其它源
+   *
+   * @param executor 执行编译任务的执行器,为null时在当前线程中依次编译
+   * @return 按输入顺序排列的编译结果
+   */
+  public static Report compileAll(Collection<Source> sources, ParserConfiguration conf, Executor executor) {
+    final ParserConfiguration snapshot = new ParserConfiguration(conf == null ? new ParserConfiguration() : conf);
+    final Result[] results = new Result[sources.size()];
+    final CountDownLatch latch = new CountDownLatch(results.length);
+
+    long start = System.nanoTime();
+    int i = 0;
+    for (final Source source : sources) {
+      final int idx = i++;
+      Runnable task = new Runnable() {
+        public void run() {
+          try {
+            results[idx] = compile(source, snapshot);
+          }
+          finally {
+            latch.countDown();
+          }
+        }
+      };
+
+      if (executor == null) {
+        task.run();
+      }
+      else {
+        try {
+          executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+          task.run();
+        }
+      }
+    }
+
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while waiting for compilation", e);
+    }
+
+    return new Report(Arrays.asList(results), System.nanoTime() - start);
+  }
+
+  /**
+   * 基于配置快照编译单个源,任何异常(包括StackOverflowError等Error)均记录为失败的结果,
+   * 以保证每个源都有相应的结果,而不会在报告中留下空的结果
+   */
+  private static Result compile(Source source, ParserConfiguration snapshot) {
+    long start = System.nanoTime();
+    String expression = null;
+    try {
+      ParserContext ctx = new ParserContext(new ParserConfiguration(snapshot));
+      ctx.setSourceFile(source.getName());
+
+      expression = source.getExpression();
+      Serializable compiled = MVEL.compileExpression(expression, ctx);
+      return new Result(source, compiled, ctx.getErrorList(), null, System.nanoTime() - start);
+    }
+    catch (CompileException e) {
+      List<ErrorDetail> errors = new ArrayList<ErrorDetail>(e.getErrors());
+      if (errors.isEmpty()) {
+        char[] expr = e.getExpr() == null ? toChars(expression) : e.getExpr();
+        errors.add(new ErrorDetail(expr, Math.max(0, Math.min(e.getCursor(), expr.length - 1)), true, e.getMessage()));
+      }
+      return new Result(source, null, errors, e, System.nanoTime() - start);
+    }
+    catch (Throwable e) {
+      return new Result(source, null,
+          Collections.singletonList(new ErrorDetail(toChars(expression), 0, true, String.valueOf(e))),
+          e, System.nanoTime() - start);
+    }
+  }
+
+  private static char[] toChars(String expression) {
+    return expression == null ? new char[0] : expression.toCharArray();
+  }
+
+  /** 一个需要被编译的源,由名称(通常为文件名)及表达式组成 */
+  public static class Source {
+    private final String name;
+    private final String expression;
+
+    public Source(String name, String expression) {
+      this.name = name;
+      this.expression = expression;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getExpression() {
+      return expression;
+    }
+  }
+
+  /** 单个源的编译结果 */
+  public static class Result {
+    private final Source source;
+    private final Serializable compiled;
+    private final List<ErrorDetail> errors;
+    private final Throwable exception;
+    private final long compileTime;
+
+    Result(Source source, Serializable compiled, List<ErrorDetail> errors, Throwable exception, long compileTime) {
+      this.source = source;
+      this.compiled = compiled;
+      this.errors = errors;
+      this.exception = exception;
+      this.compileTime = compileTime;
+    }
+
+    public Source getSource() {
+      return source;
+    }
+
+    /** 编译好的表达式,编译失败时为null */
+    public Serializable getCompiled() {
+      return compiled;
+    }
+
+    /** 编译过程中的所有错误(编译成功时也可能包含非严重的错误) */
+    public List<ErrorDetail> getErrors() {
+      return errors;
+    }
+
+    /** 编译失败时的异常,也可能是编译过程中出现的Error */
+    public Throwable getException() {
+      return exception;
+    }
+
+    public boolean isSuccess() {
+      return compiled != null;
+    }
+
+    /** 编译耗时,单位纳秒 */
+    public long getCompileTime() {
+      return compileTime;
+    }
+  }
+
+  /** 整个批量编译的汇总报告 */
+  public static class Report {
+    private final List<Result> results;
+    private final long totalTime;
+    private final long[] sortedTimes;
+
+    Report(List<Result> results, long totalTime) {
+      this.results = Collections.unmodifiableList(results);
+      this.totalTime = totalTime;
+      this.sortedTimes = new long[results.size()];
+      for (int i = 0; i < sortedTimes.length; i++) {
+        sortedTimes[i] = results.get(i).getCompileTime();
+      }
+      Arrays.sort(sortedTimes);
+    }
+
+    /** 按输入顺序排列的编译结果 */
+    public List<Result> getResults() {
+      return results;
+    }
+
+    /** 所有编译成功的表达式,以源名称为key */
+    public Map<String, Serializable> getCompiled() {
+      Map<String, Serializable> map = new LinkedHashMap<String, Serializable>();
+      for (Result r : results) {
+        if (r.isSuccess()) map.put(r.getSource().getName(), r.getCompiled());
+      }
+      return map;
+    }
+
+    /** 所有存在错误的源的错误信息,以源名称为key */
+    public Map<String, List<ErrorDetail>> getErrors() {
+      Map<String, List<ErrorDetail>> map = new LinkedHashMap<String, List<ErrorDetail>>();
+      for (Result r : results) {
+        if (!r.getErrors().isEmpty()) map.put(r.getSource().getName(), r.getErrors());
+      }
+      return map;
+    }
+
+    /** 编译失败的源个数 */
+    public int getFailureCount() {
+      int n = 0;
+      for (Result r : results) {
+        if (!r.isSuccess()) n++;
+      }
+      return n;
+    }
+
+    /** 整个批量编译的耗时(墙上时间),单位纳秒 */
+    public long getTotalTime() {
+      return totalTime;
+    }
+
+    /** 所有源的编译耗时之和,单位纳秒 */
+    public long getCumulativeTime() {
+      long sum = 0;
+      for (long t : sortedTimes) sum += t;
+      return sum;
+    }
+
+    /**
+     * 单个源编译耗时的百分位数(取最近的排名),单位纳秒
+     *
+     * @param percentile 0到100之间的百分位,如50,90,99
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("percentile: " + percentile);
+      if (sortedTimes.length == 0) return 0;
+      int rank = (int) Math.ceil(percentile / 100 * sortedTimes.length);
+      return sortedTimes[Math.max(0, rank - 1)];
+    }
+
+    public String toString() {
+      return "compiled " + (results.size() - getFailureCount()) + "/" + results.size()
+          + " sources in " + totalTime / 1000000 + "ms (p50=" + getPercentile(50) / 1000
+          + "us, p90=" + getPercentile(90) / 1000 + "us, p99=" + getPercentile(99) / 1000
+          + "us, max=" + getPercentile(100) / 1000 + "us)";
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.compiler;
+
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.CachingMapVariableResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mvel2.DataConversion.convert;
+
+/**
+ * 批量执行器,用于使用同一个编译表达式对大量的上下文对象依次求值(如离线数据回填)
+ * 与逐个调用MVEL.executeExpression相比,整个批次(并行时为每一个分片)仅创建一次变量工厂及其包装,
+ * 每次执行之间只重置终止标记,结果直接写入调用方提供的数组,对布尔及数值结果可使用基本类型数组以避免装箱后的再次保存
+ * <p>
+ * 所有上下文共享同一个变量Map,表达式中对变量的赋值与逐个执行时一样会写回此Map,
+ * 但写回发生在整个批次(或所有分片)执行完成之后,因此后面的执行也能看到前面执行所赋的值.
+ * 并行执行时各分片之间的赋值互不可见,此时表达式应当只读取变量
+ */
+public class BatchExecutor {
+  /** 并行执行时每个分片的最小上下文个数,过小的分片带来的调度开销会超过并行带来的收益 */
+  private static final int MIN_CHUNK_SIZE = 256;
+
+  private BatchExecutor() {
+  }
+
+  /**
+   * 对每一个上下文执行表达式,结果按下标写入results中
+   *
+   * @param compiled 编译好的表达式
+   * @param contexts 每次执行所使用的上下文对象
+   * @param vars     所有执行共享的变量,可以为null
+   * @param results  保存结果的数组,长度不能小于上下文个数
+   * @param executor 并行执行分片的执行器,为null时在当前线程中依次执行
+   */
+  public static void execute(Object compiled, List<?> contexts, Map vars, final Object[] results, Executor executor) {
+    checkCapacity(contexts, results.length);
+    execute((ExecutableStatement) compiled, contexts, vars, new Sink() {
+      public void put(int index, Object value) {
+        results[index] = value;
+      }
+    }, executor);
+  }
+
+  /** 执行结果为布尔值的表达式,结果为null时记为false */
+  public static void execute(Object compiled, List<?> contexts, Map vars, final boolean[] results, Executor executor) {
+    checkCapacity(contexts, results.length);
+    execute((ExecutableStatement) compiled, contexts, vars, new Sink() {
+      public void put(int index, Object value) {
+        results[index] = value instanceof Boolean ? (Boolean) value
+            : value != null && convert(value, Boolean.class);
+      }
+    }, executor);
+  }
+
+  /** 执行结果为整数的表达式,结果为null时记为0 */
+  public static void execute(Object compiled, List<?> contexts, Map vars, final int[] results, Executor executor) {
+    checkCapacity(contexts, results.length);
+    execute((ExecutableStatement) compiled, contexts, vars, new Sink() {
+      public void put(int index, Object value) {
+        results[index] = value instanceof Number ? ((Number) value).intValue()
+            : value == null ? 0 : convert(value, Integer.class);
+      }
+    }, executor);
+  }
+
+  /** 执行结果为长整数的表达式,结果为null时记为0 */
+  public static void execute(Object compiled, List<?> contexts, Map vars, final long[] results, Executor executor) {
+    checkCapacity(contexts, results.length);
+    execute((ExecutableStatement) compiled, contexts, vars, new Sink() {
+      public void put(int index, Object value) {
+        results[index] = value instanceof Number ? ((Number) value).longValue()
+            : value == null ? 0 : convert(value, Long.class);
+      }
+    }, executor);
+  }
+
+  /** 执行结果为浮点数的表达式,结果为null时记为NaN */
+  public static void execute(Object compiled, List<?> contexts, Map vars, final double[] results, Executor executor) {
+    checkCapacity(contexts, results.length);
+    execute((ExecutableStatement) compiled, contexts, vars, new Sink() {
+      public void put(int index, Object value) {
+        results[index] = value instanceof Number ? ((Number) value).doubleValue()
+            : value == null ? Double.NaN : convert(value, Double.class);
+      }
+    }, executor);
+  }
+
+  private static void checkCapacity(List<?> contexts, int length) {
+    if (length < contexts.size()) {
+      throw new IllegalArgumentException("result array too small: " + length + " < " + contexts.size());
+    }
+  }
+
+  private static void execute(final ExecutableStatement stmt, final List<?> contexts, Map vars, final Sink sink,
+                              Executor executor) {
+    final int size = contexts.size();
+    if (size == 0) return;
+
+    int chunks = executor == null ? 1 : Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_CHUNK_SIZE);
+    if (chunks <= 1) {
+      VariableResolverFactory factory = createFactory(vars);
+      try {
+        run(stmt, contexts, 0, size, factory, sink);
+      }
+      finally {
+        externalize(factory);
+      }
+      return;
+    }
+
+    final VariableResolverFactory[] factories = new VariableResolverFactory[chunks];
+    for (int i = 0; i < chunks; i++) {
+      factories[i] = createFactory(vars);
+    }
+
+    //首个上下文在当前线程中先执行,以便在分片并发执行之前完成访问器的优化
+    run(stmt, contexts, 0, 1, factories[0], sink);
+
+    final Throwable[] failures = new Throwable[chunks];
+    final CountDownLatch latch = new CountDownLatch(chunks);
+    int chunkSize = (size - 1 + chunks - 1) / chunks;
+    for (int i = 0; i < chunks; i++) {
+      final int idx = i;
+      final int from = 1 + i * chunkSize;
+      final int to = Math.min(size, from + chunkSize);
+      Runnable task = new Runnable() {
+        public void run() {
+          try {
+            BatchExecutor.run(stmt, contexts, from, to, factories[idx], sink);
+          }
+          catch (Throwable t) {
+            failures[idx] = t;
+          }
+          finally {
+            latch.countDown();
+          }
+        }
+      };
+
+      try {
+        executor.execute(task);
+      }
+      catch (RejectedExecutionException e) {
+        task.run();
+      }
+    }
+
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while waiting for batch execution", e);
+    }
+
+    for (VariableResolverFactory factory : factories) {
+      externalize(factory);
+    }
+
+    for (Throwable t : failures) {
+      if (t instanceof RuntimeException) throw (RuntimeException) t;
+      if (t instanceof Error) throw (Error) t;
+      if (t != null) throw new RuntimeException(t);
+    }
+  }
+
+  /** 在同一个变量工厂上依次执行[from, to)之间的上下文 */
+  private static void run(ExecutableStatement stmt, List<?> contexts, int from, int to,
+                          VariableResolverFactory factory, Sink sink) {
+    if (stmt instanceof CompiledExpression) {
+      CompiledExpression expr = (CompiledExpression) stmt;
+      VariableResolverFactory prepared = expr.prepareFactory(factory);
+      for (int i = from; i < to; i++) {
+        sink.put(i, expr.getPreparedValue(contexts.get(i), prepared));
+      }
+    }
+    else {
+      for (int i = from; i < to; i++) {
+        factory.setTiltFlag(false);
+        sink.put(i, stmt.getValue(contexts.get(i), factory));
+      }
+    }
+  }
+
+  private static VariableResolverFactory createFactory(Map vars) {
+    return vars != null ? new CachingMapVariableResolverFactory(vars)
+        : new MapVariableResolverFactory(new HashMap<String, Object>());
+  }
+
+  private static void externalize(VariableResolverFactory factory) {
+    if (factory instanceof CachingMapVariableResolverFactory) {
+      ((CachingMapVariableResolverFactory) factory).externalize();
+    }
+  }
+
+  /** 单次执行结果的写入目标 */
+  private interface Sink {
+    void put(int index, Object value);
+  }
+}
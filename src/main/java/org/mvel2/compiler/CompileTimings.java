@@ -0,0 +1,138 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.compiler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 编译阶段耗时统计,统计当前线程中在开启统计之后的所有编译(包括嵌套的子表达式编译)在各个阶段中的耗时
+ * 每个阶段的耗时均为独占时间,即嵌套编译所花费的时间会计入到嵌套编译自己的阶段中,不会被重复计算
+ * 使用方式:
+ * <pre>
+ *   CompileTimings timings = CompileTimings.start();
+ *   try {
+ *     MVEL.compileExpression(...);
+ *   }
+ *   finally {
+ *     CompileTimings.stop();
+ *   }
+ *   timings.getNanos(CompileTimings.TOKENIZE);
+ * </pre>
+ */
+public class CompileTimings {
+  /** 词法分析以及语法节点的创建 */
+  public static final int TOKENIZE = 0;
+  /** 编译主循环中的其它处理,如常量归约,运算符栈处理等 */
+  public static final int REDUCE = 1;
+  /** 节点验证 */
+  public static final int VERIFY = 2;
+  /** 最终的语法树优化及编译表达式的生成 */
+  public static final int FINALIZE = 3;
+
+  private static final String[] PHASES = {"tokenize", "reduce", "verify", "finalize"};
+
+  /** 当前开启了统计的线程数,为0时所有的统计调用可以直接跳过 */
+  private static final AtomicInteger active = new AtomicInteger();
+  private static final ThreadLocal<CompileTimings> current = new ThreadLocal<CompileTimings>();
+
+  private final long[] nanos = new long[PHASES.length];
+  private final int[] counts = new int[PHASES.length];
+
+  /** 阶段栈,用于计算独占时间 */
+  private int depth;
+  private int[] phaseStack = new int[16];
+  private long[] startStack = new long[16];
+  private long[] childStack = new long[16];
+
+  /** 在当前线程中开启编译耗时统计 */
+  public static CompileTimings start() {
+    CompileTimings timings = new CompileTimings();
+    if (current.get() == null) active.incrementAndGet();
+    current.set(timings);
+    return timings;
+  }
+
+  /** 关闭当前线程中的编译耗时统计,并返回统计结果 */
+  public static CompileTimings stop() {
+    CompileTimings timings = current.get();
+    if (timings != null) {
+      current.remove();
+      active.decrementAndGet();
+    }
+    return timings;
+  }
+
+  /** 返回当前线程中的统计对象,未开启时返回null */
+  public static CompileTimings current() {
+    return active.get() == 0 ? null : current.get();
+  }
+
+  /** 进入一个编译阶段 */
+  public void enter(int phase) {
+    if (depth == phaseStack.length) {
+      int[] p = new int[depth * 2];
+      long[] s = new long[depth * 2];
+      long[] c = new long[depth * 2];
+      System.arraycopy(phaseStack, 0, p, 0, depth);
+      System.arraycopy(startStack, 0, s, 0, depth);
+      System.arraycopy(childStack, 0, c, 0, depth);
+      phaseStack = p;
+      startStack = s;
+      childStack = c;
+    }
+    phaseStack[depth] = phase;
+    childStack[depth] = 0;
+    startStack[depth++] = System.nanoTime();
+  }
+
+  /** 退出当前的编译阶段 */
+  public void exit() {
+    int d = --depth;
+    long elapsed = System.nanoTime() - startStack[d];
+    nanos[phaseStack[d]] += elapsed - childStack[d];
+    counts[phaseStack[d]]++;
+    if (d > 0) childStack[d - 1] += elapsed;
+  }
+
+  /** 指定阶段的总耗时,单位纳秒 */
+  public long getNanos(int phase) {
+    return nanos[phase];
+  }
+
+  /** 指定阶段被执行的次数 */
+  public int getCount(int phase) {
+    return counts[phase];
+  }
+
+  /** 所有阶段的总耗时,单位纳秒 */
+  public long getTotalNanos() {
+    long sum = 0;
+    for (long n : nanos) sum += n;
+    return sum;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < PHASES.length; i++) {
+      if (i != 0) sb.append(", ");
+      sb.append(PHASES[i]).append('=').append(nanos[i] / 1000).append("us");
+    }
+    return sb.toString();
+  }
+}
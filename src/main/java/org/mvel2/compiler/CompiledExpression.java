@@ -20,15 +20,25 @@ package org.mvel2.compiler;
 
 import org.mvel2.ParserConfiguration;
 import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.LineLabel;
 import org.mvel2.ast.TypeCast;
+import org.mvel2.debug.LineLabelRegistry;
+import org.mvel2.debug.Profiler;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.ClassImportResolverFactory;
+import org.mvel2.integration.impl.ImportTable;
+import org.mvel2.integration.impl.ResolverFactoryPool;
 import org.mvel2.integration.impl.StackResetResolverFactory;
 import org.mvel2.optimizers.AccessorOptimizer;
 import org.mvel2.optimizers.OptimizerFactory;
 import org.mvel2.util.ASTLinkedList;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.mvel2.MVELRuntime.execute;
 import static org.mvel2.optimizers.OptimizerFactory.setThreadAccessorOptimizer;
@@ -52,6 +62,11 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
   private boolean optimized = false;
   /** 表示相应的解析上下文中是否存在外部导入的注入信息,在使用时根据此标记以创建不同的变量工厂，以支持相应的import或者是类引用处理 */
   private boolean importInjectionRequired = false;
+  /**
+   * 引入信息的共享快照,在首次执行时由解析配置创建,之后每次执行的引入工厂均直接引用此快照
+   * 因此首次执行之后再向解析配置添加的引入对此表达式不可见,引入名也不能被赋值,见{@link ImportTable}
+   */
+  private transient volatile ImportTable importTable;
   /** 当前表达式是否仅是常量 */
   private boolean literalOnly;
 
@@ -64,6 +79,15 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
   /** 相应的解析配置信息 */
   private ParserConfiguration parserConfiguration;
 
+  /** 挂载在此表达式上的执行分析器,仅在分析时使用,不参与序列化 */
+  private transient Profiler profiler;
+
+  /**
+   * 编译时生成的调试行标记,在构建时即从执行链中摘除,因此带调试信息编译的表达式在没有断点时与普通表达式的执行链完全一致
+   * 只有在注册了相应行的断点或者处于单步调试时,才由{@link LineLabelRegistry}将相应的标记重新接入执行链
+   */
+  private LineLabel[] lineLabels;
+
   public CompiledExpression(ASTLinkedList astMap, String sourceName, Class egressType, ParserConfiguration parserConfiguration, boolean literalOnly) {
     this.firstNode = astMap.firstNode();
     this.sourceName = sourceName;
@@ -71,6 +95,73 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
     this.literalOnly = literalOnly;
     this.parserConfiguration = parserConfiguration;
     this.importInjectionRequired = parserConfiguration.getImports() != null && !parserConfiguration.getImports().isEmpty();
+    detachLineLabels();
+  }
+
+  /** 将调试行标记从执行链中摘除,并登记到断点注册表中,由注册表根据当前的断点情况决定是否重新接入 */
+  private void detachLineLabels() {
+    List<LineLabel> labels = null;
+    ASTNode prev = null;
+    for (ASTNode tk = firstNode; tk != null; tk = tk.nextASTNode) {
+      if (tk instanceof LineLabel) {
+        if (labels == null) labels = new ArrayList<LineLabel>();
+        ((LineLabel) tk).setPrevious(prev);
+        labels.add((LineLabel) tk);
+      }
+      else {
+        prev = tk;
+      }
+    }
+
+    if (labels == null) return;
+
+    lineLabels = labels.toArray(new LineLabel[labels.size()]);
+    for (LineLabel label : lineLabels) {
+      label.setAttached(true);
+      setLineLabelAttached(label, false);
+    }
+    LineLabelRegistry.register(this);
+  }
+
+  /** 获取此表达式中的调试行标记,没有时返回null */
+  public LineLabel[] getLineLabels() {
+    return lineLabels;
+  }
+
+  /**
+   * 将调试行标记接入或者摘除执行链,标记之后的节点始终保持不变,因此并发执行的线程看到的总是一条完整的执行链
+   * 此方法应仅由{@link LineLabelRegistry}在持有其锁的情况下调用
+   */
+  public void setLineLabelAttached(LineLabel label, boolean attached) {
+    if (label.isAttached() == attached) return;
+
+    ASTNode next = attached ? label : label.nextASTNode;
+    if (label.getPrevious() == null) firstNode = next;
+    else label.getPrevious().nextASTNode = next;
+    label.setAttached(attached);
+  }
+
+  /** 获取包括未接入执行链的调试行标记在内的完整节点序列,用于反编译等调试展示 */
+  public List<ASTNode> getNodesWithLineLabels() {
+    List<ASTNode> nodes = new ArrayList<ASTNode>();
+    for (ASTNode tk = firstNode; tk != null; tk = tk.nextASTNode) {
+      if (lineLabels != null && !(tk instanceof LineLabel)) {
+        for (LineLabel label : lineLabels) {
+          if (!label.isAttached() && label.nextASTNode == tk) nodes.add(label);
+        }
+      }
+      nodes.add(tk);
+    }
+    return nodes;
+  }
+
+  /** 反序列化之后重新登记调试行标记,以使之与当前虚拟机中的断点保持一致 */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (lineLabels != null) {
+      for (LineLabel label : lineLabels) setLineLabelAttached(label, false);
+      LineLabelRegistry.register(this);
+    }
   }
 
   /** 获取相应的第一个节点 */
@@ -78,9 +169,9 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
     return firstNode;
   }
 
-  /** 解析此表达式是否仅有单个节点 */
+  /** 解析此表达式是否仅有单个节点,带有调试行标记的表达式不视为单节点,以保证不会被优化为绕过调试的访问器 */
   public boolean isSingleNode() {
-    return firstNode != null && firstNode.nextASTNode == null;
+    return firstNode != null && firstNode.nextASTNode == null && lineLabels == null;
   }
 
   public Class getKnownEgressType() {
@@ -140,8 +231,93 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
 
   /** 调用计算程序最终计算出相应的值 */
   public Object getDirectValue(Object staticContext, VariableResolverFactory factory) {
-    return execute(false, this, staticContext,
-        importInjectionRequired ? new ClassImportResolverFactory(parserConfiguration, factory, true) : new StackResetResolverFactory(factory));
+    //开启了工厂复用时,栈重置工厂从线程池中借用,执行完毕之后归还
+    ResolverFactoryPool pool;
+    if ((pool = ResolverFactoryPool.current()) == null) {
+      return executeTimed(staticContext, wrapFactory(factory));
+    }
+
+    if (importInjectionRequired) {
+      ClassImportResolverFactory wrapped = pool.acquireClassImport(getImportTable(), factory);
+      try {
+        return executeTimed(staticContext, wrapped);
+      }
+      finally {
+        pool.release(wrapped);
+      }
+    }
+
+    StackResetResolverFactory wrapped = pool.acquireStackReset(factory);
+    try {
+      return executeTimed(staticContext, wrapped);
+    }
+    finally {
+      pool.release(wrapped);
+    }
+  }
+
+  /**
+   * 为批量执行包装一次变量工厂,之后对同一批次中的每一次执行均通过{@link #getPreparedValue}复用此工厂,
+   * 省去每次执行时对外部工厂的重新包装(栈重置工厂或者引入工厂)
+   */
+  public VariableResolverFactory prepareFactory(VariableResolverFactory factory) {
+    return wrapFactory(factory);
+  }
+
+  /** 使用{@link #prepareFactory}包装好的工厂执行一次,执行前先清除上一次执行(如return)留下的终止标记 */
+  public Object getPreparedValue(Object staticContext, VariableResolverFactory prepared) {
+    if (prepared instanceof StackResetResolverFactory) {
+      StackResetResolverFactory stackReset = (StackResetResolverFactory) prepared;
+      stackReset.reset(stackReset.getDelegate());
+    }
+    else {
+      prepared.setTiltFlag(false);
+    }
+
+    if (!optimized) {
+      setupOptimizers();
+      try {
+        return executeTimed(staticContext, prepared);
+      }
+      finally {
+        OptimizerFactory.clearThreadAccessorOptimizer();
+      }
+    }
+    return executeTimed(staticContext, prepared);
+  }
+
+  private Object executeTimed(Object staticContext, VariableResolverFactory factory) {
+    if (!InstrumentationFactory.isEnabled()) {
+      return execute(false, this, staticContext, factory);
+    }
+
+    //开启了指标收集,记录每次执行的耗时
+    long begin = System.nanoTime();
+    try {
+      return execute(false, this, staticContext, factory);
+    }
+    finally {
+      InstrumentationFactory.notifyEvaluated(sourceName, System.nanoTime() - begin);
+    }
+  }
+
+  /** 为本次执行包装外部传入的变量工厂,有引入时需要支持类引用的处理 */
+  private VariableResolverFactory wrapFactory(VariableResolverFactory factory) {
+    return importInjectionRequired ? new ClassImportResolverFactory(getImportTable(), factory) : new StackResetResolverFactory(factory);
+  }
+
+  /**
+   * 获取引入信息的共享快照,并发首次执行时可能各自创建,但内容相同,因此不需要加锁
+   * 快照在首次执行时而不是编译时创建,以保持编译之后、首次执行之前添加引入的既有用法可用
+   * 规则集直接执行规则的根节点时同样使用此快照包装变量工厂
+   */
+  ImportTable getImportTable() {
+    ImportTable table = importTable;
+    if (table == null) {
+      importTable = table = parserConfiguration == null
+          ? ImportTable.of(null, false) : parserConfiguration.getImportTable(false);
+    }
+    return table;
   }
 
   private void setupOptimizers() {
@@ -157,6 +333,15 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
     return accessorOptimizer;
   }
 
+  public Profiler getProfiler() {
+    return profiler;
+  }
+
+  /** 挂载执行分析器,为null时表示取消分析 */
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
   public String getSourceName() {
     return sourceName;
   }
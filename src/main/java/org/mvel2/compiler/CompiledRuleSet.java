@@ -0,0 +1,394 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.compiler;
+
+import org.mvel2.ParserContext;
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.AdaptivePredicate;
+import org.mvel2.ast.BinaryOperation;
+import org.mvel2.ast.BooleanNode;
+import org.mvel2.ast.LiteralNode;
+import org.mvel2.ast.Negation;
+import org.mvel2.ast.SharedNode;
+import org.mvel2.ast.Sign;
+import org.mvel2.ast.Substatement;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.CachingMapVariableResolverFactory;
+import org.mvel2.integration.impl.ClassImportResolverFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mvel2.util.CompilerTools.isSideEffectFree;
+
+/**
+ * 规则集,即针对同一个上下文执行的一组表达式(如大量的规则条件)
+ * 编译时找出在多个表达式中重复出现的无副作用子表达式(属性路径,纯方法调用,比较及条件组合),
+ * 将其替换为共享的{@link SharedNode},从而使所有表达式构成一个有向无环图:
+ * 在一次执行中每个不同的子表达式最多只计算一次,类似于Rete网络中的alpha节点
+ * <p>
+ * 判定为有副作用的表达式(如包含赋值)不参与共享,按照原样执行.所有的表达式共享同一个变量工厂,
+ * 与{@link org.mvel2.MVEL#executeExpression(Iterable, Object, Map)}一致.
+ * 有副作用的规则执行之后,之前记录的共享结果全部作废,其后的规则会重新计算,以看到其写入的值
+ * <p>
+ * 编译之后的规则集可以在多个线程中同时执行,共享结果按线程分别保存
+ */
+public class CompiledRuleSet implements Serializable {
+  /** 当前线程正在执行的规则集的共享结果 */
+  private static final ThreadLocal<Memo> ACTIVE = new ThreadLocal<Memo>();
+
+  /** 规则名,按添加顺序 */
+  private final String[] names;
+  /** 每个规则的执行入口,单节点的规则为其根节点,否则为编译表达式 */
+  private final Object[] rules;
+  /** 共享子表达式的个数 */
+  private int sharedCount;
+  /** 共享子表达式的描述,按槽位排列 */
+  private final List<String> sharedKeys = new ArrayList<String>();
+  /** 参与共享的规则个数 */
+  private int sharingRules;
+  /**
+   * 需要引入支持的单节点规则所属的编译表达式,为null表示不需要.单节点规则绕过了编译表达式的执行入口,
+   * 因此执行时使用其引入快照包装变量工厂,所有规则使用同一个解析上下文,引入信息相同
+   */
+  private CompiledExpression importSource;
+
+  /** 每个线程缓存的共享结果存储 */
+  private transient ThreadLocal<Memo> memos;
+
+  private CompiledRuleSet(int size) {
+    this.names = new String[size];
+    this.rules = new Object[size];
+  }
+
+  /**
+   * 编译一组规则
+   *
+   * @param rules 规则名与表达式,按迭代顺序执行
+   * @param ctx   编译使用的解析上下文,所有规则使用同一个上下文编译,为null时使用默认上下文
+   */
+  public static CompiledRuleSet compile(Map<String, String> rules, ParserContext ctx) {
+    if (ctx == null) ctx = new ParserContext();
+    CompiledRuleSet set = new CompiledRuleSet(rules.size());
+
+    CompiledExpression[] compiled = new CompiledExpression[rules.size()];
+    int i = 0;
+    for (Map.Entry<String, String> entry : rules.entrySet()) {
+      set.names[i] = entry.getKey();
+      compiled[i++] = new ExpressionCompiler(entry.getValue(), ctx).compile();
+    }
+
+    //第一遍:为无副作用的规则中的每个可共享节点计算标识,并统计出现次数
+    Map<ASTNode, String> keys = new IdentityHashMap<ASTNode, String>();
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    boolean[] pure = new boolean[compiled.length];
+    for (i = 0; i < compiled.length; i++) {
+      if (!(pure[i] = isPure(compiled[i], ctx))) continue;
+      collectKeys(compiled[i].getFirstNode(), keys, counts);
+    }
+
+    //按照共享之后的结构统计实际的使用次数:重复出现的节点只在第一次出现时展开其子节点,
+    //之后的出现整体被替换,其中的子节点不再计入
+    Map<String, Integer> uses = new HashMap<String, Integer>();
+    Set<String> seen = new HashSet<String>();
+    for (i = 0; i < compiled.length; i++) {
+      if (pure[i]) countUses(compiled[i].getFirstNode(), keys, counts, uses, seen);
+    }
+
+    //第二遍:将使用多次的子表达式替换为共享节点
+    Map<String, SharedNode> shared = new HashMap<String, SharedNode>();
+    for (i = 0; i < compiled.length; i++) {
+      if (pure[i]) {
+        set.sharingRules++;
+        if (compiled[i].isImportInjectionRequired()) set.importSource = compiled[i];
+        set.rules[i] = set.share(compiled[i].getFirstNode(), keys, uses, shared, ctx);
+      }
+      else {
+        set.rules[i] = compiled[i];
+      }
+    }
+    return set;
+  }
+
+  /** 表达式是否可以参与共享,即由单个无副作用的节点构成(多条语句的表达式中总是包含语句结束节点) */
+  private static boolean isPure(CompiledExpression compiled, ParserContext ctx) {
+    ASTNode first = compiled.getFirstNode();
+    return first != null && first.nextASTNode == null && isSideEffectFree(first, ctx.getPureMethods());
+  }
+
+  /** 计算节点及其子节点的标识并计数,返回节点的标识,不能共享的节点返回null */
+  private static String collectKeys(ASTNode node, Map<ASTNode, String> keys, Map<String, Integer> counts) {
+    String key;
+    if (node instanceof LiteralNode) {
+      Object v = node.getLiteralValue();
+      return v == null ? "null" : v.getClass().getName() + ":" + v;
+    }
+    else if (node instanceof BinaryOperation || node instanceof BooleanNode && !(node instanceof AdaptivePredicate)) {
+      BooleanNode b = (BooleanNode) node;
+      String left = collectKeys(b.getLeft(), keys, counts);
+      String right = collectKeys(b.getRight(), keys, counts);
+      if (left == null || right == null) return null;
+
+      String op = node instanceof BinaryOperation ? String.valueOf(((BinaryOperation) node).getOperation())
+          : node.getClass().getSimpleName();
+      key = "(" + left + " " + op + " " + right + ")";
+    }
+    else if (node.getClass() == ASTNode.class || node instanceof Substatement || node instanceof Negation || node instanceof Sign) {
+      if (node.getExpr() == null) return null;
+      key = node.getClass().getSimpleName() + ":" + normalize(node.getExpr(), node.getStart(), node.getOffset());
+    }
+    else {
+      return null;
+    }
+
+    keys.put(node, key);
+    Integer c = counts.get(key);
+    counts.put(key, c == null ? 1 : c + 1);
+    return key;
+  }
+
+  private static void countUses(ASTNode node, Map<ASTNode, String> keys, Map<String, Integer> counts,
+                                Map<String, Integer> uses, Set<String> seen) {
+    String key = keys.get(node);
+    if (key != null) {
+      Integer c = uses.get(key);
+      uses.put(key, c == null ? 1 : c + 1);
+      if (counts.get(key) > 1 && !seen.add(key)) return;
+    }
+    if (node instanceof BooleanNode && !(node instanceof AdaptivePredicate)) {
+      BooleanNode b = (BooleanNode) node;
+      if (b.getLeft() != null) countUses(b.getLeft(), keys, counts, uses, seen);
+      if (b.getRight() != null) countUses(b.getRight(), keys, counts, uses, seen);
+    }
+  }
+
+  /** 去掉字符串常量之外的空白,以使书写格式不同的相同表达式具有相同的标识 */
+  private static String normalize(char[] expr, int start, int offset) {
+    StringBuilder sb = new StringBuilder(offset);
+    char quote = 0;
+    for (int i = start; i < start + offset; i++) {
+      char c = expr[i];
+      if (quote != 0) {
+        sb.append(c);
+        if (c == '\\' && i + 1 < start + offset) sb.append(expr[++i]);
+        else if (c == quote) quote = 0;
+      }
+      else if (c == '\'' || c == '"') {
+        sb.append(quote = c);
+      }
+      else if (!Character.isWhitespace(c)) {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /** 对节点进行共享替换,先替换子节点,节点本身使用多次时替换为共享节点 */
+  private ASTNode share(ASTNode node, Map<ASTNode, String> keys, Map<String, Integer> uses,
+                        Map<String, SharedNode> shared, ParserContext ctx) {
+    String key = keys.get(node);
+    Integer used = key == null ? null : uses.get(key);
+    if (used == null || used < 2) {
+      if (node instanceof BooleanNode && !(node instanceof AdaptivePredicate)) {
+        shareChildren((BooleanNode) node, keys, uses, shared, ctx);
+      }
+      return node;
+    }
+
+    SharedNode s = shared.get(key);
+    if (s == null) {
+      if (node instanceof BooleanNode) shareChildren((BooleanNode) node, keys, uses, shared, ctx);
+      shared.put(key, s = new SharedNode(this, sharedCount++, node, ctx));
+      sharedKeys.add(node.toString());
+    }
+    return s;
+  }
+
+  private void shareChildren(BooleanNode node, Map<ASTNode, String> keys, Map<String, Integer> uses,
+                             Map<String, SharedNode> shared, ParserContext ctx) {
+    if (node.getLeft() != null) node.setLeft(share(node.getLeft(), keys, uses, shared, ctx));
+    if (node.getRight() != null) node.setRight(share(node.getRight(), keys, uses, shared, ctx));
+  }
+
+  /**
+   * 共享节点的计算入口:在当前规则集的执行过程中,已计算过的返回之前的结果,否则计算并记录
+   * 不在当前规则集的执行过程中时(如单独执行了包含共享节点的表达式)直接计算
+   */
+  public Object shared(int slot, ASTNode node, Object ctx, Object thisValue, VariableResolverFactory factory) {
+    Memo m = ACTIVE.get();
+    if (m == null || m.owner != this) return node.getReducedValueAccelerated(ctx, thisValue, factory);
+
+    if (m.stamps[slot] == m.generation) return m.values[slot];
+
+    Object v = node.getReducedValueAccelerated(ctx, thisValue, factory);
+    m.values[slot] = v;
+    m.stamps[slot] = m.generation;
+    m.computed++;
+    return v;
+  }
+
+  /** 使用map作为变量执行所有规则,返回按规则顺序排列的结果 */
+  public Object[] execute(Object ctx, Map vars) {
+    CachingMapVariableResolverFactory factory = new CachingMapVariableResolverFactory(vars);
+    try {
+      return execute(ctx, factory);
+    }
+    finally {
+      factory.externalize();
+    }
+  }
+
+  /** 使用指定的上下文及变量工厂执行所有规则,返回按规则顺序排列的结果 */
+  public Object[] execute(Object ctx, VariableResolverFactory factory) {
+    Object[] results = new Object[rules.length];
+    VariableResolverFactory nodeFactory = importSource == null
+        ? factory : new ClassImportResolverFactory(importSource.getImportTable(), factory);
+    Memo prev = ACTIVE.get();
+    Memo m = acquire();
+    ACTIVE.set(m);
+    try {
+      for (int i = 0; i < rules.length; i++) {
+        Object r = rules[i];
+        if (r instanceof ASTNode) {
+          results[i] = ((ASTNode) r).getReducedValueAccelerated(ctx, ctx, nodeFactory);
+        }
+        else {
+          results[i] = ((CompiledExpression) r).getValue(ctx, factory);
+          //有副作用的规则可能修改了共享子表达式读取的变量
+          m.invalidate();
+        }
+      }
+      return results;
+    }
+    finally {
+      m.release();
+      ACTIVE.set(prev);
+    }
+  }
+
+  /** 执行所有规则,返回结果为true的规则名 */
+  public List<String> matching(Object ctx, Map vars) {
+    Object[] results = execute(ctx, vars);
+    List<String> matched = new ArrayList<String>();
+    for (int i = 0; i < results.length; i++) {
+      if (Boolean.TRUE.equals(results[i])) matched.add(names[i]);
+    }
+    return matched;
+  }
+
+  /** 执行所有规则,返回规则名到结果的映射 */
+  public Map<String, Object> executeAll(Object ctx, Map vars) {
+    Object[] results = execute(ctx, vars);
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    for (int i = 0; i < results.length; i++) {
+      map.put(names[i], results[i]);
+    }
+    return map;
+  }
+
+  /** 获取当前线程的共享结果存储,重入(在规则执行过程中再次执行同一规则集)时使用新的存储 */
+  private Memo acquire() {
+    if (memos == null) {
+      synchronized (this) {
+        if (memos == null) memos = new ThreadLocal<Memo>();
+      }
+    }
+
+    Memo m = memos.get();
+    if (m == null) memos.set(m = new Memo(this, sharedCount));
+    else if (m.busy) m = new Memo(this, sharedCount);
+    m.begin();
+    return m;
+  }
+
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  /** 共享子表达式的个数 */
+  public int getSharedCount() {
+    return sharedCount;
+  }
+
+  /** 共享子表达式的描述,按槽位排列 */
+  public List<String> getSharedExpressions() {
+    return Collections.unmodifiableList(sharedKeys);
+  }
+
+  /** 参与共享的规则个数,有副作用的规则不参与共享 */
+  public int getSharingRuleCount() {
+    return sharingRules;
+  }
+
+  /** 当前线程最近一次执行中实际计算的共享子表达式个数 */
+  public int getLastComputedCount() {
+    Memo m = memos == null ? null : memos.get();
+    return m == null ? 0 : m.computed;
+  }
+
+  /**
+   * 一次执行中的共享结果,通过执行代数区分不同的执行及同一执行中被有副作用的规则隔开的各段,
+   * 因此开始新的执行或作废已有结果时不需要清除所有的结果.
+   * 结果对象在下一次执行覆盖之前仍被引用
+   */
+  private static class Memo {
+    private final CompiledRuleSet owner;
+    private final Object[] values;
+    private final int[] stamps;
+    private int generation;
+    private int computed;
+    private boolean busy;
+
+    private Memo(CompiledRuleSet owner, int size) {
+      this.owner = owner;
+      this.values = new Object[size];
+      this.stamps = new int[size];
+    }
+
+    private void begin() {
+      invalidate();
+      computed = 0;
+      busy = true;
+    }
+
+    /** 作废已记录的所有结果 */
+    private void invalidate() {
+      if (++generation == 0) {
+        Arrays.fill(stamps, 0);
+        generation = 1;
+      }
+    }
+
+    private void release() {
+      busy = false;
+    }
+  }
+}
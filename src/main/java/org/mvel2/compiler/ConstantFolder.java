@@ -0,0 +1,207 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.compiler;
+
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.util.MethodStub;
+import org.mvel2.util.StaticFieldStub;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mvel2.DataConversion.canConvert;
+import static org.mvel2.DataConversion.convert;
+import static org.mvel2.util.ParseTools.balancedCapture;
+import static org.mvel2.util.ParseTools.boxPrimitive;
+import static org.mvel2.util.ParseTools.getBestCandidate;
+import static org.mvel2.util.ParseTools.parseParameterList;
+import static org.mvel2.util.ParseTools.subCompileExpression;
+
+/**
+ * 编译期常量折叠,对形如Math.max(10, 20),引入的静态方法twice(4)这类参数均为常量的纯静态方法调用,
+ * 以及Integer.MAX_VALUE这类static final字段的读取在编译期直接求值,由编译器替换为常量节点
+ * 纯方法由{@link ParserConfiguration#isPureMethod}决定,求值失败(如抛出异常)时不进行折叠,保持运行期的行为
+ */
+public class ConstantFolder {
+  /** 表示不能折叠 */
+  public static final Object NOT_CONSTANT = new Object();
+
+  private ConstantFolder() {
+  }
+
+  /** 尝试对expr[start, start + offset)所表示的属性节点进行折叠,不能折叠时返回{@link #NOT_CONSTANT} */
+  public static Object fold(ParserContext pCtx, char[] expr, int start, int offset) {
+    String text = new String(expr, start, offset).trim();
+    int paren = text.indexOf('(');
+
+    try {
+      if (paren == -1) return foldField(pCtx, text);
+
+      char[] chars = text.toCharArray();
+      if (paren == 0 || balancedCapture(chars, paren, '(') != chars.length - 1) return NOT_CONSTANT;
+      return foldCall(pCtx, text.substring(0, paren).trim(), chars, paren + 1, chars.length - paren - 2);
+    }
+    catch (RuntimeException e) {
+      return NOT_CONSTANT;
+    }
+  }
+
+  /** 静态常量字段的读取,如Integer.MAX_VALUE或者引入的静态常量 */
+  private static Object foldField(ParserContext pCtx, String name) throws RuntimeException {
+    if (!isQualifiedName(name) || isVariable(pCtx, name)) return NOT_CONSTANT;
+
+    int dot = name.lastIndexOf('.');
+    if (dot == -1) {
+      Object stub = pCtx.hasImport(name) ? pCtx.getStaticOrClassImport(name) : null;
+      if (stub instanceof StaticFieldStub && isConstant(((StaticFieldStub) stub).getField())) {
+        return nonNull(((StaticFieldStub) stub).call(null, null, null, null));
+      }
+      return NOT_CONSTANT;
+    }
+
+    Class cls = resolveClass(pCtx, name.substring(0, dot));
+    if (cls == null) return NOT_CONSTANT;
+
+    Field field;
+    try {
+      field = cls.getField(name.substring(dot + 1));
+    }
+    catch (NoSuchFieldException e) {
+      return NOT_CONSTANT;
+    }
+
+    if (!isConstant(field)) return NOT_CONSTANT;
+    try {
+      return nonNull(field.get(null));
+    }
+    catch (IllegalAccessException e) {
+      return NOT_CONSTANT;
+    }
+  }
+
+  /** 纯静态方法的调用,所有参数都必须能够折叠为常量 */
+  private static Object foldCall(ParserContext pCtx, String name, char[] chars, int argStart, int argLength) {
+    if (!isQualifiedName(name) || isVariable(pCtx, name)) return NOT_CONSTANT;
+
+    Class cls;
+    String methodName;
+    int dot = name.lastIndexOf('.');
+    if (dot == -1) {
+      Object stub = pCtx.hasImport(name) ? pCtx.getStaticOrClassImport(name) : null;
+      if (!(stub instanceof MethodStub)) return NOT_CONSTANT;
+      cls = ((MethodStub) stub).getClassReference();
+      methodName = ((MethodStub) stub).getMethodName();
+    }
+    else {
+      if ((cls = resolveClass(pCtx, name.substring(0, dot))) == null) return NOT_CONSTANT;
+      methodName = name.substring(dot + 1);
+    }
+
+    //参数使用不带变量信息的独立上下文编译,只有编译结果为常量的参数才能参与折叠,同时也避免向当前上下文中登记输入
+    List<Object> args = new ArrayList<Object>();
+    if (argLength > 0 && new String(chars, argStart, argLength).trim().length() != 0) {
+      ParserContext argCtx = new ParserContext(pCtx.getParserConfiguration());
+      for (char[] arg : parseParameterList(chars, argStart, argLength)) {
+        Object stmt = subCompileExpression(arg, argCtx);
+        if (!(stmt instanceof ExecutableLiteral)) return NOT_CONSTANT;
+        args.add(((ExecutableLiteral) stmt).getLiteral());
+      }
+    }
+
+    List<Method> candidates = new ArrayList<Method>();
+    for (Method m : cls.getMethods()) {
+      if (m.getName().equals(methodName) && Modifier.isStatic(m.getModifiers()) && !m.isVarArgs()
+          && m.getParameterTypes().length == args.size()) {
+        candidates.add(m);
+      }
+    }
+
+    Object[] values = args.toArray();
+    Method method = getBestCandidate(values, methodName, cls, candidates.toArray(new Method[candidates.size()]), false);
+    if (method == null || !pCtx.getParserConfiguration().isPureMethod(method)) return NOT_CONSTANT;
+
+    Class[] parmTypes = method.getParameterTypes();
+    for (int i = 0; i < values.length; i++) {
+      Class<?> type = boxPrimitive(parmTypes[i]);
+      if (values[i] == null) {
+        if (parmTypes[i].isPrimitive()) return NOT_CONSTANT;
+      }
+      else if (!type.isInstance(values[i])) {
+        if (!canConvert(type, values[i].getClass())) return NOT_CONSTANT;
+        values[i] = convert(values[i], type);
+      }
+    }
+
+    try {
+      return nonNull(method.invoke(null, values));
+    }
+    catch (Exception e) {
+      return NOT_CONSTANT;
+    }
+  }
+
+  private static boolean isConstant(Field field) {
+    int mod = field.getModifiers();
+    return Modifier.isStatic(mod) && Modifier.isFinal(mod) && Modifier.isPublic(mod)
+        && Modifier.isPublic(field.getDeclaringClass().getModifiers());
+  }
+
+  /** 限定名的第一段为变量时,其含义由运行期决定 */
+  private static boolean isVariable(ParserContext pCtx, String name) {
+    int dot = name.indexOf('.');
+    return pCtx.hasVarOrInput(dot == -1 ? name : name.substring(0, dot));
+  }
+
+  private static Class resolveClass(ParserContext pCtx, String name) {
+    if (pCtx.hasImport(name)) return pCtx.getImport(name);
+    try {
+      return Class.forName(name, false, pCtx.getParserConfiguration().getClassLoader());
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  /** null结果不进行折叠,以保留原节点的类型信息 */
+  private static Object nonNull(Object value) {
+    return value == null ? NOT_CONSTANT : value;
+  }
+
+  private static boolean isQualifiedName(String name) {
+    if (name.length() == 0) return false;
+    boolean segmentStart = true;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.') {
+        if (segmentStart) return false;
+        segmentStart = true;
+      }
+      else if (segmentStart ? !Character.isJavaIdentifierStart(c) : !Character.isJavaIdentifierPart(c)) {
+        return false;
+      }
+      else {
+        segmentStart = false;
+      }
+    }
+    return !segmentStart;
+  }
+}
@@ -20,6 +20,7 @@ package org.mvel2.compiler;
 
 import org.mvel2.ast.ASTNode;
 import org.mvel2.ast.TypeCast;
+import org.mvel2.debug.Profiler;
 import org.mvel2.integration.VariableResolverFactory;
 
 /**
@@ -45,11 +46,17 @@ public class ExecutableAccessor implements ExecutableStatement {
   }
 
   public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
-    return node.getReducedValueAccelerated(ctx, elCtx, variableFactory);
+    //语句块中的单节点语句不经过运行时主循环,因此在这里单独接入外层表达式的分析器
+    //从未使用过分析器时只有一次普通的静态字段读取
+    if (!Profiler.isEnabled()) return node.getReducedValueAccelerated(ctx, elCtx, variableFactory);
+
+    Profiler profiler = Profiler.current();
+    return profiler == null ? node.getReducedValueAccelerated(ctx, elCtx, variableFactory)
+        : profiler.profile(node, ctx, elCtx, variableFactory);
   }
 
   public Object getValue(Object staticContext, VariableResolverFactory factory) {
-    return node.getReducedValueAccelerated(staticContext, staticContext, factory);
+    return getValue(staticContext, staticContext, factory);
   }
 
   public void setKnownIngressType(Class type) {
@@ -20,6 +20,9 @@ package org.mvel2.compiler;
 
 import org.mvel2.*;
 import org.mvel2.ast.*;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
+import org.mvel2.optimizers.impl.refl.TypedAccessorBuilder;
 import org.mvel2.util.*;
 
 import java.util.Iterator;
@@ -53,9 +56,14 @@ public class ExpressionCompiler extends AbstractParser {
 
   /** 主要的编译操作，返回编译表达式 */
   public CompiledExpression compile() {
+    long begin = InstrumentationFactory.isEnabled() ? System.nanoTime() : 0;
     try {
       this.debugSymbols = pCtx.isDebugSymbols();
-      return _compile();
+      CompiledExpression compiled = _compile();
+      if (begin != 0 && !verifyOnly) {
+        InstrumentationFactory.notifyCompiled(pCtx.getSourceFile(), System.nanoTime() - begin);
+      }
+      return compiled;
     }
     finally {
       //如果有严重的编译错误，报相应的异常
@@ -112,6 +120,9 @@ public class ExpressionCompiler extends AbstractParser {
 
     boolean firstLA;
 
+    CompileTimings timings = CompileTimings.current();
+    if (timings != null) timings.enter(CompileTimings.REDUCE);
+
     try {
       if (verifying) {
         pCtx.initializeTables();
@@ -120,7 +131,7 @@ public class ExpressionCompiler extends AbstractParser {
       //首先表示当前为编译阶段，以便各个阶段进行信息编译，即状态值调整
       fields |= COMPILE_IMMEDIATE;
 
-      while ((tk = nextToken()) != null) {
+      while ((tk = nextCompileToken(timings)) != null) {
         /**
          * 调试节点？继续处理,同时加入到处理链中
          * If this is a debug symbol, just add it and continue.
@@ -142,6 +153,9 @@ public class ExpressionCompiler extends AbstractParser {
           Map<String, Class> rtc = pCtx.getReturnTypeCache();
           CompiledExpression compiled = cec.get(key);
           Class rt = rtc.get(key);
+          if (InstrumentationFactory.isEnabled()) {
+            InstrumentationFactory.notifyCache(Instrumentation.CACHE_SUBSTATEMENT, compiled != null);
+          }
           //子程序单独进行编译,以保证相应的程序都已经成功的进行了解析
           //但实际上没有什么特别的用处,因此subStatement的执行不是通过accessor来保证的,而是由statement处理
           if (compiled == null) {
@@ -301,6 +315,13 @@ public class ExpressionCompiler extends AbstractParser {
 
       astBuild.finish();
 
+      //作用域分析:记录语句块中可能在执行时创建变量的节点.声明节点可能在前瞻时才被读取,因此在节点链构建完成之后统一记录
+      if (pCtx != null && pCtx.isScopeAnalysis()) {
+        for (ASTNode n = astBuild.firstNode(); n != null; n = n.nextASTNode) {
+          recordDeclaration(pCtx, n);
+        }
+      }
+
       //这里表示已经验证完毕了，因此将相应的变量信息去除
       if (verifying && !verifyOnly) {
         pCtx.processTables();
@@ -312,7 +333,13 @@ public class ExpressionCompiler extends AbstractParser {
 
       //如果并不仅仅是验证,还需要进一步优化，因此进行相应的优化操作
       if (!verifyOnly) {
-        return new CompiledExpression(finalizePayload(astBuild, secondPassOptimization, pCtx), pCtx.getSourceFile(), returnType, pCtx.getParserConfiguration(), literalOnly == 1);
+        if (timings != null) timings.enter(CompileTimings.FINALIZE);
+        try {
+          return new CompiledExpression(finalizePayload(astBuild, secondPassOptimization, pCtx), pCtx.getSourceFile(), returnType, pCtx.getParserConfiguration(), literalOnly == 1);
+        }
+        finally {
+          if (timings != null) timings.exit();
+        }
       }
       //仅验证，因此这里分析出相应的返回类型，直接返回null
       else {
@@ -336,6 +363,57 @@ public class ExpressionCompiler extends AbstractParser {
         throw new CompileException(e.getMessage(), expr, st, e);
       }
     }
+    finally {
+      if (timings != null) timings.exit();
+    }
+  }
+
+  /**
+   * 记录可能在执行时于当前作用域中创建变量的节点:对变量的赋值及声明,函数定义,引入以及原型定义等
+   * 属性赋值(a.b = c)不会创建变量,因此不记录.方法参数等延迟到执行时才编译的部分中如果可能包含赋值,
+   * 则记为名称未知的声明,以保证语句块仍然拥有自己的作用域
+   */
+  private static void recordDeclaration(ParserContext pCtx, ASTNode tk) {
+    if (tk instanceof Assignment) {
+      if (!(tk instanceof DeepAssignmentNode)) pCtx.declareLocal(((Assignment) tk).getAssignmentVar());
+    }
+    else if (tk instanceof Function) {
+      pCtx.declareLocal(tk.getName());
+    }
+    else if (tk instanceof ImportNode || tk instanceof StaticImportNode || tk instanceof Proto || tk instanceof Stacklang) {
+      pCtx.declareLocal(null);
+    }
+    else if (!(tk instanceof BlockNode) && tk.getExpr() != null && containsAssignment(tk.getExpr(), tk.getStart(), tk.getOffset())) {
+      pCtx.declareLocal(null);
+    }
+  }
+
+  /** 指定区间中是否可能存在赋值操作,即存在不属于==,!=,<=,>=的单个=号 */
+  private static boolean containsAssignment(char[] expr, int start, int offset) {
+    int end = Math.min(start + offset, expr.length);
+    for (int i = Math.max(start, 0); i < end; i++) {
+      if (expr[i] != '=') continue;
+      if (i + 1 < end && expr[i + 1] == '=') {
+        i++;
+        continue;
+      }
+      if (i > start && (expr[i - 1] == '!' || expr[i - 1] == '<' || expr[i - 1] == '>')) continue;
+      return true;
+    }
+    return false;
+  }
+
+  /** 获取下一个节点,开启了编译耗时统计时,计入词法分析阶段 */
+  private ASTNode nextCompileToken(CompileTimings timings) {
+    if (timings == null) return nextToken();
+
+    timings.enter(CompileTimings.TOKENIZE);
+    try {
+      return nextToken();
+    }
+    finally {
+      timings.exit();
+    }
   }
 
   /** 获取当前栈中的值，如果有取反，则进行取反 */
@@ -391,6 +469,19 @@ public class ExpressionCompiler extends AbstractParser {
 
   /** 验证节点并设置相应的信息，同时返回该节点 */
   protected ASTNode verify(ParserContext pCtx, ASTNode tk) {
+    CompileTimings timings = CompileTimings.current();
+    if (timings == null) return verifyNode(pCtx, tk);
+
+    timings.enter(CompileTimings.VERIFY);
+    try {
+      return verifyNode(pCtx, tk);
+    }
+    finally {
+      timings.exit();
+    }
+  }
+
+  private ASTNode verifyNode(ParserContext pCtx, ASTNode tk) {
     if (tk.isOperator() && (tk.getOperator().equals(Operator.AND) || tk.getOperator().equals(Operator.OR))) {
       secondPassOptimization = true;
     }
@@ -435,11 +526,23 @@ public class ExpressionCompiler extends AbstractParser {
           if (propVerifier.isClassLiteral()) {
             return new LiteralNode(returnType, pCtx);
           }
+          //开启了常量折叠时,常量参数的纯静态方法调用以及静态常量字段的读取直接在编译期求值
+          if (pCtx.getParserConfiguration().isConstantFolding() && tk.getClass() == ASTNode.class) {
+            Object folded = ConstantFolder.fold(pCtx, expr, tk.getStart(), tk.getOffset());
+            if (folded != ConstantFolder.NOT_CONSTANT) return new LiteralNode(folded, pCtx);
+          }
           //如果分析出当前节点是输入属性，则将相应的属性加入到解析上下文中
           if (propVerifier.isInput()) {
             pCtx.addInput(tk.getAbsoluteName(), propVerifier.isDeepProperty() ? Object.class : returnType);
           }
 
+          //开启了提前优化时,对于能够根据声明类型确定的属性链,直接在编译期构建访问器
+          if (pCtx.isEagerOptimization() && pCtx.isStrongTyping() && tk.getClass() == ASTNode.class
+              && !propVerifier.isMethodCall() && !tk.isFQCN()) {
+            Accessor accessor = TypedAccessorBuilder.build(pCtx, expr, tk.getStart(), tk.getOffset());
+            if (accessor != null) tk.setAccessor(accessor);
+          }
+
           //分析结果不是方法调用，即表示不能分析出此结果，因此直接报错
           if (!propVerifier.isMethodCall() && !returnType.isEnum() && !pCtx.isOptimizerNotified() &&
                   pCtx.isStrongTyping() && !pCtx.isVariableVisible(tk.getAbsoluteName()) && !tk.isFQCN()) {
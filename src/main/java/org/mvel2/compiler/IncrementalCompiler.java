@@ -0,0 +1,256 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.compiler;
+
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.ast.Function;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mvel2.ast.ASTNode.COMPILE_IMMEDIATE;
+
+/**
+ * 增量编译器,用于同一个脚本(如一个较大的函数库文件)被反复修改并重新编译的场景
+ * 每一个顶层函数会根据其源码以及其编译时所能看到的上下文(已声明的变量,入参,函数签名及类型设置)计算出指纹,
+ * 函数体中引用到的其它函数的指纹也会计入其中,因此被调用函数修改之后,所有直接或间接调用它的函数都会被重新编译,
+ * 重新编译时,指纹未发生变化的函数会直接复用上一次编译出的函数代码块,包括其中已经优化过的访问器,仅修改过的部分会被重新编译
+ * 脚本完全未修改时,直接返回上一次的编译结果
+ * <p>
+ * 复用的函数代码块仍然引用旧的源码,因此其中的报错位置是相对于旧源码的
+ * 编译器使用固定的解析配置,配置修改之后需要调用{@link #reset()}
+ */
+public class IncrementalCompiler {
+  private final ParserConfiguration conf;
+
+  /** 上一次编译时的所有顶层函数,以指纹为key */
+  private Map<String, Entry> functions = new HashMap<String, Entry>();
+  /** 当前正在进行的编译中产生的顶层函数 */
+  private Map<String, Entry> current;
+  /** 当前编译中已声明的函数的指纹摘要,用于计算调用了这些函数的其它函数的指纹 */
+  private Map<Function, String> digests;
+
+  private String lastScript;
+  private Serializable lastCompiled;
+
+  private int reusedCount;
+  private int compiledCount;
+
+  public IncrementalCompiler() {
+    this(new ParserConfiguration());
+  }
+
+  public IncrementalCompiler(ParserConfiguration conf) {
+    this.conf = conf;
+  }
+
+  /** 编译脚本,未修改的顶层函数会复用上一次的编译结果 */
+  public synchronized Serializable compile(String script) {
+    return compile(script, new ParserContext(conf));
+  }
+
+  /**
+   * 使用指定的解析上下文编译脚本,上下文的解析配置应与当前编译器的配置一致
+   * 编译失败时,之前的编译结果会被保留,以便于下一次编译时复用
+   */
+  public synchronized Serializable compile(String script, ParserContext ctx) {
+    if (script.equals(lastScript)) {
+      reusedCount = functions.size();
+      compiledCount = 0;
+      return lastCompiled;
+    }
+
+    reusedCount = 0;
+    compiledCount = 0;
+    current = new HashMap<String, Entry>();
+    digests = new IdentityHashMap<Function, String>();
+    ctx.setIncrementalCompiler(this);
+    try {
+      Serializable compiled = MVEL.compileExpression(script, ctx);
+
+      functions = current;
+      lastScript = script;
+      lastCompiled = compiled;
+      return compiled;
+    }
+    finally {
+      current = null;
+      digests = null;
+      ctx.setIncrementalCompiler(null);
+    }
+  }
+
+  /**
+   * 由函数解析器调用,返回一个复用了之前编译结果的函数节点,或者重新编译出一个新的函数节点
+   * 参数与{@link Function}的构建函数相同
+   */
+  public Function function(String name, char[] expr, int start, int offset, int blockStart, int blockOffset,
+                           int fields, ParserContext pCtx) {
+    String key = fingerprint(name, expr, start, offset, blockStart, blockOffset, fields, pCtx, digests);
+
+    Entry entry = current == null ? null : current.get(key);
+    if (entry == null) entry = functions.get(key);
+
+    if (entry != null) {
+      //复用已编译的代码块,并重放函数编译时对上下文造成的影响
+      Function function = new Function(entry.function, pCtx);
+      pCtx.declareFunction(function);
+      for (Map.Entry<String, Class> e : entry.variables.entrySet()) {
+        pCtx.addVariable(e.getKey(), e.getValue());
+      }
+      for (Map.Entry<String, Class> e : entry.inputs.entrySet()) {
+        pCtx.addInput(e.getKey(), e.getValue());
+      }
+      entry = new Entry(function, entry.variables, entry.inputs);
+      reusedCount++;
+    }
+    else {
+      Set<String> variablesBefore = keys(pCtx.getVariables());
+      Set<String> inputsBefore = keys(pCtx.getInputs());
+
+      Function function = new Function(name, expr, start, offset, blockStart, blockOffset, fields, pCtx);
+      entry = new Entry(function, added(pCtx.getVariables(), variablesBefore), added(pCtx.getInputs(), inputsBefore));
+      compiledCount++;
+    }
+
+    if (current != null) current.put(key, entry);
+    if (digests != null) digests.put(entry.function, digest(key));
+    return entry.function;
+  }
+
+  /**
+   * 计算函数的指纹,包括函数源码以及在编译时可能影响到函数编译结果的上下文信息
+   * 函数体中引用到的已声明函数,其指纹摘要也会计入,因为编译出的调用会直接持有被调用函数的实例
+   */
+  private static String fingerprint(String name, char[] expr, int start, int offset, int blockStart, int blockOffset,
+                                    int fields, ParserContext pCtx, Map<Function, String> digests) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(name).append('(').append(expr, start, offset).append(')')
+        .append((fields & COMPILE_IMMEDIATE) != 0).append('{').append(expr, blockStart, blockOffset).append('}');
+
+    sb.append(pCtx.isStrongTyping()).append(pCtx.isStrictTypeEnforcement());
+    appendTypes(sb.append("\nvars:"), pCtx.getVariables());
+    appendTypes(sb.append("\ninputs:"), pCtx.getInputs());
+
+    sb.append("\nfunctions:");
+    for (Object o : pCtx.getFunctions().values()) {
+      Function f = (Function) o;
+      sb.append(f.getName()).append('/').append(f.getParameterCount()).append(':')
+          .append(f.getEgressType() == null ? null : f.getEgressType().getName());
+      if (digests != null && digests.containsKey(f) && references(expr, blockStart, blockOffset, f.getName())) {
+        sb.append('#').append(digests.get(f));
+      }
+      sb.append(',');
+    }
+    return sb.toString();
+  }
+
+  /** 函数体中是否以完整标识符的形式出现了指定的名称,宁可多判也不能漏判 */
+  private static boolean references(char[] expr, int blockStart, int blockOffset, String name) {
+    int blockEnd = blockStart + blockOffset;
+    int len = name.length();
+    for (int i = blockStart; i + len <= blockEnd; i++) {
+      if (i > blockStart && Character.isJavaIdentifierPart(expr[i - 1])) continue;
+      if (i + len < blockEnd && Character.isJavaIdentifierPart(expr[i + len])) continue;
+
+      int j = 0;
+      while (j < len && expr[i + j] == name.charAt(j)) j++;
+      if (j == len) return true;
+    }
+    return false;
+  }
+
+  private static String digest(String key) {
+    try {
+      byte[] bytes = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      return key;
+    }
+    catch (UnsupportedEncodingException e) {
+      return key;
+    }
+  }
+
+  private static void appendTypes(StringBuilder sb, Map<String, Class> types) {
+    if (types == null) return;
+    for (Map.Entry<String, Class> e : types.entrySet()) {
+      sb.append(e.getKey()).append(':').append(e.getValue() == null ? null : e.getValue().getName()).append(',');
+    }
+  }
+
+  private static Set<String> keys(Map<String, Class> map) {
+    return map == null ? new HashSet<String>() : new HashSet<String>(map.keySet());
+  }
+
+  private static Map<String, Class> added(Map<String, Class> map, Set<String> before) {
+    Map<String, Class> added = new LinkedHashMap<String, Class>();
+    if (map != null) {
+      for (Map.Entry<String, Class> e : map.entrySet()) {
+        if (!before.contains(e.getKey())) added.put(e.getKey(), e.getValue());
+      }
+    }
+    return added;
+  }
+
+  /** 上一次编译中复用的函数个数 */
+  public int getReusedCount() {
+    return reusedCount;
+  }
+
+  /** 上一次编译中重新编译的函数个数 */
+  public int getCompiledCount() {
+    return compiledCount;
+  }
+
+  /** 清除所有已缓存的编译结果 */
+  public synchronized void reset() {
+    functions = new HashMap<String, Entry>();
+    lastScript = null;
+    lastCompiled = null;
+  }
+
+  /** 一个已编译的函数,以及其编译时新声明到上下文中的变量和入参 */
+  private static class Entry {
+    private final Function function;
+    private final Map<String, Class> variables;
+    private final Map<String, Class> inputs;
+
+    private Entry(Function function, Map<String, Class> variables, Map<String, Class> inputs) {
+      this.function = function;
+      this.variables = variables;
+      this.inputs = inputs;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import org.mvel2.util.ASTLinkedList;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import static org.mvel2.Operator.ADD;
@@ -67,7 +68,7 @@ public class DebugTools {
   }
 
   private static String decompile(CompiledExpression cExp, boolean nest, DecompileContext context) {
-    ASTIterator iter = new ASTLinkedList(cExp.getFirstNode());
+    Iterator<ASTNode> iter = cExp.getNodesWithLineLabels().iterator();
     ASTNode tk;
 
     StringBuffer sbuf = new StringBuffer();
@@ -76,10 +77,10 @@ public class DebugTools {
       sbuf.append("Expression Decompile\n-------------\n");
     }
 
-    while (iter.hasMoreNodes()) {
+    while (iter.hasNext()) {
       sbuf.append("(").append(context.node++).append(") ");
 
-      if ((tk = iter.nextNode()) instanceof NestedStatement
+      if ((tk = iter.next()) instanceof NestedStatement
           && ((NestedStatement) tk).getNestedStatement() instanceof CompiledExpression) {
         //noinspection StringConcatenationInsideStringBufferAppend
         sbuf.append("NEST [" + tk.getClass().getSimpleName() + "]: { " + tk.getName() + " }\n");
@@ -45,7 +45,13 @@ public class DebuggerContext {
   }
 
   public void setBreakpoints(Map<String, Set<Integer>> breakpoints) {
+    clearAllBreakpoints();
     this.breakpoints = breakpoints;
+    for (Map.Entry<String, Set<Integer>> entry : breakpoints.entrySet()) {
+      for (Integer line : entry.getValue()) {
+        LineLabelRegistry.breakpointAdded(entry.getKey(), line);
+      }
+    }
   }
 
   public Debugger getDebugger() {
@@ -61,8 +67,14 @@ public class DebuggerContext {
     return debuggerState;
   }
 
+  /** 设置调试状态,进入或者退出单步状态时通知注册表接入或者摘除调试行标记 */
   public void setDebuggerState(int debuggerState) {
+    boolean wasStepping = this.debuggerState == Debugger.STEP;
     this.debuggerState = debuggerState;
+    if (wasStepping != (debuggerState == Debugger.STEP)) {
+      if (wasStepping) LineLabelRegistry.steppingStopped();
+      else LineLabelRegistry.steppingStarted();
+    }
   }
 
   // utility methods
@@ -70,17 +82,22 @@ public class DebuggerContext {
   /** 对指定的源文件的某一行进行注册,以表示在该行进行调试 */
   public void registerBreakpoint(String sourceFile, int lineNumber) {
     if (!breakpoints.containsKey(sourceFile)) breakpoints.put(sourceFile, new HashSet<Integer>());
-    breakpoints.get(sourceFile).add(lineNumber);
+    if (breakpoints.get(sourceFile).add(lineNumber)) LineLabelRegistry.breakpointAdded(sourceFile, lineNumber);
   }
 
   /** 移除指定源文件的某一行的调试点,即移除调试断点 */
   public void removeBreakpoint(String sourceFile, int lineNumber) {
     if (!breakpoints.containsKey(sourceFile)) return;
-    breakpoints.get(sourceFile).remove(lineNumber);
+    if (breakpoints.get(sourceFile).remove(lineNumber)) LineLabelRegistry.breakpointRemoved(sourceFile, lineNumber);
   }
 
   /** 清除所有的调试断点 */
   public void clearAllBreakpoints() {
+    for (Map.Entry<String, Set<Integer>> entry : breakpoints.entrySet()) {
+      for (Integer line : entry.getValue()) {
+        LineLabelRegistry.breakpointRemoved(entry.getKey(), line);
+      }
+    }
     breakpoints.clear();
   }
 
@@ -110,7 +127,8 @@ public class DebuggerContext {
   public int checkBreak(LineLabel label, VariableResolverFactory factory, CompiledExpression expression) {
     if (debuggerState == Debugger.STEP || hasBreakpoint(label)) {
       if (debugger == null) throw new RuntimeException("no debugger registered to handle breakpoint");
-      return debuggerState = debugger.onBreak(new Frame(label, factory));
+      setDebuggerState(debugger.onBreak(new Frame(label, factory)));
+      return debuggerState;
 
     }
     return 0;
@@ -0,0 +1,171 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.debug;
+
+import org.mvel2.ast.LineLabel;
+import org.mvel2.compiler.CompiledExpression;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * 调试行标记的注册表,负责根据当前的断点情况将调试行标记接入或者摘除执行链
+ * <p>
+ * 带调试信息编译的表达式在构建时即将所有的调试行标记从执行链中摘除,并登记到此注册表中(弱引用,不影响表达式的回收).
+ * 当某一行注册了断点时,仅将相应行的标记接入执行链;当有线程进入单步调试时,则接入所有的标记,直到不再有线程处于单步状态.
+ * 因此没有断点时,带调试信息的表达式在执行时不会再遍历调试节点,也不会再逐行检查线程的调试上下文
+ * <p>
+ * 断点本身仍然注册在各个线程的{@link DebuggerContext}中,这里仅按源文件及行号对所有线程的断点进行计数,
+ * 接入执行链的标记在执行时仍会检查当前线程是否确实需要在此中断
+ */
+public class LineLabelRegistry {
+  private static final Object lock = new Object();
+
+  /** 按源文件分类的带调试信息的表达式 */
+  private static final Map<String, List<WeakReference<CompiledExpression>>> expressions
+      = new HashMap<String, List<WeakReference<CompiledExpression>>>();
+
+  /** 按源文件及行号记录的断点计数(所有线程) */
+  private static final Map<String, Map<Integer, Integer>> breakpoints = new HashMap<String, Map<Integer, Integer>>();
+
+  /** 当前处于单步调试状态的调试上下文数 */
+  private static int stepping;
+
+  /** 登记带调试信息的表达式,并按照当前的断点情况接入相应的标记 */
+  public static void register(CompiledExpression expression) {
+    LineLabel[] labels = expression.getLineLabels();
+    if (labels == null) return;
+
+    synchronized (lock) {
+      Set<String> sources = new HashSet<String>();
+      for (LineLabel label : labels) {
+        sources.add(label.getSourceFile());
+        expression.setLineLabelAttached(label, isActive(label));
+      }
+
+      for (String source : sources) {
+        List<WeakReference<CompiledExpression>> list = expressions.get(source);
+        if (list == null) expressions.put(source, list = new ArrayList<WeakReference<CompiledExpression>>());
+        else if ((list.size() & (list.size() - 1)) == 0) prune(list);
+        list.add(new WeakReference<CompiledExpression>(expression));
+      }
+    }
+  }
+
+  /** 注册了一个断点 */
+  public static void breakpointAdded(String source, int line) {
+    synchronized (lock) {
+      Map<Integer, Integer> lines = breakpoints.get(source);
+      if (lines == null) breakpoints.put(source, lines = new HashMap<Integer, Integer>());
+
+      Integer count = lines.get(line);
+      lines.put(line, count == null ? 1 : count + 1);
+      if (count == null) patch(source, line);
+    }
+  }
+
+  /** 移除了一个断点 */
+  public static void breakpointRemoved(String source, int line) {
+    synchronized (lock) {
+      Map<Integer, Integer> lines = breakpoints.get(source);
+      Integer count = lines == null ? null : lines.get(line);
+      if (count == null) return;
+
+      if (count > 1) {
+        lines.put(line, count - 1);
+      }
+      else {
+        lines.remove(line);
+        if (lines.isEmpty()) breakpoints.remove(source);
+        patch(source, line);
+      }
+    }
+  }
+
+  /** 某个调试上下文进入了单步调试状态,此时接入所有的标记 */
+  public static void steppingStarted() {
+    synchronized (lock) {
+      if (stepping++ == 0) patchAll();
+    }
+  }
+
+  /** 某个调试上下文退出了单步调试状态 */
+  public static void steppingStopped() {
+    synchronized (lock) {
+      if (stepping > 0 && --stepping == 0) patchAll();
+    }
+  }
+
+  /** 清除所有的断点计数及单步状态,并将所有的标记摘除 */
+  public static void reset() {
+    synchronized (lock) {
+      breakpoints.clear();
+      stepping = 0;
+      patchAll();
+    }
+  }
+
+  /** 指定的标记当前是否应当接入执行链 */
+  private static boolean isActive(LineLabel label) {
+    if (stepping != 0) return true;
+    Map<Integer, Integer> lines = breakpoints.get(label.getSourceFile());
+    return lines != null && lines.containsKey(label.getLineNumber());
+  }
+
+  /** 重新计算指定源文件中指定行的标记 */
+  private static void patch(String source, int line) {
+    List<WeakReference<CompiledExpression>> list = expressions.get(source);
+    if (list == null) return;
+
+    for (Iterator<WeakReference<CompiledExpression>> iter = list.iterator(); iter.hasNext(); ) {
+      CompiledExpression expression = iter.next().get();
+      if (expression == null) {
+        iter.remove();
+        continue;
+      }
+      for (LineLabel label : expression.getLineLabels()) {
+        if (label.getLineNumber() == line && source.equals(label.getSourceFile())) {
+          expression.setLineLabelAttached(label, isActive(label));
+        }
+      }
+    }
+  }
+
+  /** 重新计算所有的标记 */
+  private static void patchAll() {
+    for (List<WeakReference<CompiledExpression>> list : expressions.values()) {
+      for (Iterator<WeakReference<CompiledExpression>> iter = list.iterator(); iter.hasNext(); ) {
+        CompiledExpression expression = iter.next().get();
+        if (expression == null) {
+          iter.remove();
+          continue;
+        }
+        for (LineLabel label : expression.getLineLabels()) {
+          expression.setLineLabelAttached(label, isActive(label));
+        }
+      }
+    }
+  }
+
+  private static void prune(List<WeakReference<CompiledExpression>> list) {
+    for (Iterator<WeakReference<CompiledExpression>> iter = list.iterator(); iter.hasNext(); ) {
+      if (iter.next().get() == null) iter.remove();
+    }
+  }
+}
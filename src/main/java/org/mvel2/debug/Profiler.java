@@ -0,0 +1,315 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.debug;
+
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.BooleanNode;
+import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.util.LineMapper;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编译表达式的节点级执行分析器,用于记录每个节点的调用次数以及执行耗时,并按耗时输出热点报告
+ * 分析器挂载在根编译表达式上,执行期间通过线程变量传递给内部嵌套的语句块(如if,for,函数体等),
+ * 因此一次挂载即可覆盖整个脚本.从未执行过任何分析器时,运行期仅有一次普通静态字段判断
+ * <p>
+ * 使用方式:
+ * <pre><code>
+ * Profiler profiler = Profiler.attach(MVEL.compileExpression(script, ctx));
+ * ... 执行若干次 ...
+ * profiler.dump(System.out, 20);
+ * </code></pre>
+ */
+public class Profiler {
+  /** 当前正在执行中的分析器数量,为0时嵌套表达式不再查找线程变量 */
+  private static final AtomicInteger active = new AtomicInteger();
+  /** 当前线程正在使用的分析器 */
+  private static final ThreadLocal<Profiler> current = new ThreadLocal<Profiler>();
+  /**
+   * 是否曾经有分析器执行过,一旦设置即不再清除.此标记有意不声明为volatile,以使未使用分析器时的判断没有内存屏障:
+   * 分析器总是由执行线程自身通过{@link #enter()}开启,因此该线程随后的判断一定能看到此标记
+   */
+  private static boolean enabled;
+
+  /** 相应的源名称,用于报告输出 */
+  private final String sourceName;
+  /** 采样间隔,0表示只计数不计时,1表示每次都计时,n表示每个节点每n次调用计时一次 */
+  private final int sampleInterval;
+
+  /** 每个节点的统计信息,节点未重写equals和hashCode,因此按照引用进行区分 */
+  private final ConcurrentMap<ASTNode, NodeStats> stats = new ConcurrentHashMap<ASTNode, NodeStats>();
+
+  /** 每个线程当前节点的子节点累计耗时,用于计算节点的自身耗时 */
+  private final ThreadLocal<long[]> childNanos = new ThreadLocal<long[]>() {
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  public Profiler(String sourceName, int sampleInterval) {
+    if (sampleInterval < 0) throw new IllegalArgumentException("sample interval must be >= 0: " + sampleInterval);
+    this.sourceName = sourceName;
+    this.sampleInterval = sampleInterval;
+  }
+
+  /** 对指定的编译表达式挂载一个全量计时的分析器 */
+  public static Profiler attach(Serializable compiled) {
+    return attach(compiled, 1);
+  }
+
+  /**
+   * 对指定的编译表达式挂载分析器
+   * 单节点的表达式在编译时会被直接优化为访问器,因此需要在编译时关闭二次优化(ParserContext.setAllowBootstrapBypass(false))
+   */
+  public static Profiler attach(Serializable compiled, int sampleInterval) {
+    if (!(compiled instanceof CompiledExpression)) {
+      throw new IllegalArgumentException("cannot profile " + (compiled == null ? null : compiled.getClass().getName())
+          + ": not a CompiledExpression (compile with allowBootstrapBypass disabled)");
+    }
+    CompiledExpression ce = (CompiledExpression) compiled;
+    Profiler profiler = new Profiler(ce.getSourceName(), sampleInterval);
+    ce.setProfiler(profiler);
+    return profiler;
+  }
+
+  /** 从编译表达式中移除分析器 */
+  public static void detach(Serializable compiled) {
+    if (compiled instanceof CompiledExpression) {
+      ((CompiledExpression) compiled).setProfiler(null);
+    }
+  }
+
+  /** 是否曾经有分析器执行过,为false时{@link #current()}一定返回null,可用于在热点路径上跳过分析器的查找 */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** 获取当前线程正在使用的分析器,在没有任何分析器执行时直接返回null */
+  public static Profiler current() {
+    return !enabled || active.get() == 0 ? null : current.get();
+  }
+
+  /** 将当前分析器设置为线程的当前分析器,返回之前的分析器以便之后恢复 */
+  public Profiler enter() {
+    enabled = true;
+    Profiler outer = current.get();
+    current.set(this);
+    active.incrementAndGet();
+    return outer;
+  }
+
+  /** 恢复之前的分析器 */
+  public void exit(Profiler outer) {
+    active.decrementAndGet();
+    if (outer == null) current.remove();
+    else current.set(outer);
+  }
+
+  /** 执行指定节点,并记录相应的调用次数和耗时 */
+  public Object profile(ASTNode node, Object ctx, Object thisValue, VariableResolverFactory factory) {
+    NodeStats s = stats.get(node);
+    if (s == null) {
+      NodeStats n = stats.putIfAbsent(node, s = new NodeStats(node));
+      if (n != null) s = n;
+    }
+
+    long count = s.invocations.incrementAndGet();
+    if (sampleInterval == 0 || count % sampleInterval != 0) {
+      return node.getReducedValueAccelerated(ctx, thisValue, factory);
+    }
+
+    long[] child = childNanos.get();
+    long outerChild = child[0];
+    child[0] = 0;
+    long begin = System.nanoTime();
+    try {
+      return node.getReducedValueAccelerated(ctx, thisValue, factory);
+    }
+    finally {
+      long elapsed = System.nanoTime() - begin;
+      s.record(elapsed, elapsed - child[0]);
+      child[0] = outerChild + elapsed;
+    }
+  }
+
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  public int getSampleInterval() {
+    return sampleInterval;
+  }
+
+  /** 清除所有统计信息 */
+  public void reset() {
+    stats.clear();
+  }
+
+  /** 获取按自身耗时(计数模式下按调用次数)降序排列的热点列表 */
+  public List<HotSpot> getHotSpots() {
+    Map<char[], LineMapper.LineLookup> lookups = new IdentityHashMap<char[], LineMapper.LineLookup>();
+    List<HotSpot> hotSpots = new ArrayList<HotSpot>(stats.size());
+    for (NodeStats s : stats.values()) {
+      hotSpots.add(new HotSpot(s, lineOf(s.node, lookups)));
+    }
+
+    Collections.sort(hotSpots, new Comparator<HotSpot>() {
+      public int compare(HotSpot a, HotSpot b) {
+        long x = sampleInterval == 0 ? a.invocations : a.selfNanos;
+        long y = sampleInterval == 0 ? b.invocations : b.selfNanos;
+        return x < y ? 1 : x == y ? 0 : -1;
+      }
+    });
+    return hotSpots;
+  }
+
+  /** 生成一个前limit个热点的文本报告 */
+  public String report(int limit) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("profile of ").append(sourceName == null ? "<unnamed>" : sourceName)
+        .append(sampleInterval > 1 ? " (sampled 1/" + sampleInterval + ")" : "").append('\n');
+    sb.append(String.format("%6s %12s %14s %14s  %s%n", "line", "calls", "total(us)", "self(us)", "node"));
+
+    int i = 0;
+    for (HotSpot h : getHotSpots()) {
+      if (i++ == limit) break;
+      sb.append(String.format("%6s %12d %14d %14d  %s%n", h.line == -1 ? "?" : String.valueOf(h.line),
+          h.invocations, h.totalNanos / 1000, h.selfNanos / 1000, h.description));
+    }
+    return sb.toString();
+  }
+
+  /** 将报告输出到指定流中 */
+  public void dump(PrintStream out, int limit) {
+    out.print(report(limit));
+  }
+
+  /** 计算节点在源码中的行号,二元操作节点本身没有源码信息,取其最左侧的操作数 */
+  private static int lineOf(ASTNode node, Map<char[], LineMapper.LineLookup> lookups) {
+    while (node.getExpr() == null && node instanceof BooleanNode && ((BooleanNode) node).getLeft() != null) {
+      node = ((BooleanNode) node).getLeft();
+    }
+    char[] expr = node.getExpr();
+    if (expr == null) return -1;
+
+    LineMapper.LineLookup lookup = lookups.get(expr);
+    if (lookup == null) {
+      lookups.put(expr, lookup = new LineMapper(expr).map());
+    }
+    return lookup.getLineFromCursor(node.getStart());
+  }
+
+  /** 单个节点的统计数据 */
+  private static class NodeStats {
+    private final ASTNode node;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong selfNanos = new AtomicLong();
+
+    private NodeStats(ASTNode node) {
+      this.node = node;
+    }
+
+    private void record(long total, long self) {
+      sampled.incrementAndGet();
+      totalNanos.addAndGet(total);
+      selfNanos.addAndGet(self);
+    }
+  }
+
+  /** 报告中的一条热点记录,采样模式下的耗时为按调用次数推算的估计值 */
+  public static class HotSpot {
+    private final ASTNode node;
+    private final int line;
+    private final long invocations;
+    private final long totalNanos;
+    private final long selfNanos;
+    private final String description;
+
+    private HotSpot(NodeStats s, int line) {
+      this.node = s.node;
+      this.line = line;
+      this.invocations = s.invocations.get();
+
+      long sampled = s.sampled.get();
+      this.totalNanos = sampled == 0 ? 0 : s.totalNanos.get() * invocations / sampled;
+      this.selfNanos = sampled == 0 ? 0 : s.selfNanos.get() * invocations / sampled;
+
+      String d = describe(node).replace('\n', ' ').replace('\r', ' ').trim();
+      this.description = d.length() > 60 ? d.substring(0, 57) + "..." : d;
+    }
+
+    /** 节点的描述,二元操作等合成节点没有源码片段,使用其类型名和操作数来描述 */
+    private static String describe(ASTNode node) {
+      if (node.getExpr() != null) return node.toString();
+      if (node.isLiteral()) return String.valueOf(node.getLiteralValue());
+      if (node instanceof BooleanNode) {
+        BooleanNode b = (BooleanNode) node;
+        return node.getClass().getSimpleName() + "(" + (b.getLeft() == null ? "?" : describe(b.getLeft())) + ", "
+            + (b.getRight() == null ? "?" : describe(b.getRight())) + ")";
+      }
+      return node.getClass().getSimpleName();
+    }
+
+    public ASTNode getNode() {
+      return node;
+    }
+
+    /** 节点在源码中的行号,不能确定时为-1 */
+    public int getLine() {
+      return line;
+    }
+
+    public long getInvocations() {
+      return invocations;
+    }
+
+    /** 包含子节点在内的总耗时(纳秒) */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /** 去除已被单独统计的子节点之后的自身耗时(纳秒) */
+    public long getSelfNanos() {
+      return selfNanos;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public String toString() {
+      return "line " + line + ": " + description + " [calls=" + invocations + ", self=" + selfNanos + "ns]";
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration;
+
+/**
+ * 运行指标收集接口(SPI),用于将编译和执行期间的内部事件暴露给外部的监控系统(如JMX或者是指标库)
+ * 默认情况下没有注册任何实现,此时各个埋点仅进行一次静态字段判断,不会产生额外开销
+ * 实现通过 {@link InstrumentationFactory#setInstrumentation(Instrumentation)} 进行注册,实现类必须是线程安全的
+ */
+public interface Instrumentation {
+  /** 反射优化器层级 */
+  public static final String TIER_REFLECTIVE = "reflective";
+  /** asm字节码优化器层级 */
+  public static final String TIER_ASM = "ASM";
+
+  /** 反优化原因:优化访问器执行时类型不匹配(ClassCastException) */
+  public static final String DEOPT_CLASS_CAST = "classCast";
+  /** 反优化原因:动态访问器数量超过上限,最早的访问器被还原 */
+  public static final String DEOPT_TENURE_EVICTED = "tenureEvicted";
+  /** 反优化原因:动态优化器的类加载器过载,所有访问器被还原 */
+  public static final String DEOPT_CLASSLOADER_RECYCLED = "classLoaderRecycled";
+  /** 反优化原因:尝试升级为asm访问器失败,继续使用反射访问器 */
+  public static final String DEOPT_OPTIMIZATION_FAILED = "optimizationFailed";
+
+  /** 属性读取成员缓存 */
+  public static final String CACHE_READ_PROPERTY = "readProperty";
+  /** 属性写入成员缓存 */
+  public static final String CACHE_WRITE_PROPERTY = "writeProperty";
+  /** 方法解析缓存 */
+  public static final String CACHE_METHOD = "method";
+  /** 编译期子语句缓存 */
+  public static final String CACHE_SUBSTATEMENT = "substatement";
+  /** 表达式字符串预处理缓存 */
+  public static final String CACHE_EXPRESSION_TEXT = "expressionText";
+
+  /**
+   * 一个表达式编译完成
+   *
+   * @param sourceName 表达式的源名称,可能为null
+   * @param nanos      编译耗时(纳秒)
+   */
+  public void expressionCompiled(String sourceName, long nanos);
+
+  /**
+   * 指定层级的优化器开始对一个访问器进行优化(每次优化请求计数一次)
+   *
+   * @param tier 优化层级,参见 TIER_* 常量
+   */
+  public void accessorOptimized(String tier);
+
+  /**
+   * 一个访问器被反优化
+   *
+   * @param cause 反优化原因,参见 DEOPT_* 常量
+   */
+  public void accessorDeoptimized(String cause);
+
+  /** 优化器生成并定义了一个新类 */
+  public void classDefined(String className);
+
+  /** 指定缓存命中 */
+  public void cacheHit(String cache);
+
+  /** 指定缓存未命中 */
+  public void cacheMiss(String cache);
+
+  /**
+   * 一个编译表达式执行完成
+   *
+   * @param sourceName 表达式的源名称,可能为null
+   * @param nanos      执行耗时(纳秒)
+   */
+  public void expressionEvaluated(String sourceName, long nanos);
+}
@@ -0,0 +1,85 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration;
+
+/**
+ * 全局的指标收集器工厂,用于维护当前注册的 {@link Instrumentation} 实现
+ * 各埋点在调用前均先通过 {@link #isEnabled()} 进行判断,未注册时即为空操作
+ */
+public class InstrumentationFactory {
+  /** 当前注册的指标收集器,为null表示未开启.可能在运行期间由其它线程注册或关闭,因此需要保证可见性 */
+  private static volatile Instrumentation instrumentation;
+
+  /** 当前是否开启了指标收集 */
+  public static boolean isEnabled() {
+    return instrumentation != null;
+  }
+
+  public static Instrumentation getInstrumentation() {
+    return instrumentation;
+  }
+
+  /** 注册相应的指标收集器,传入null即关闭收集 */
+  public static void setInstrumentation(Instrumentation instrumentation) {
+    InstrumentationFactory.instrumentation = instrumentation;
+  }
+
+  /** 通知表达式编译完成 */
+  public static void notifyCompiled(String sourceName, long nanos) {
+    Instrumentation i = instrumentation;
+    if (i != null) i.expressionCompiled(sourceName, nanos);
+  }
+
+  /** 通知访问器优化完成 */
+  public static void notifyOptimized(String tier) {
+    Instrumentation i = instrumentation;
+    if (i != null) i.accessorOptimized(tier);
+  }
+
+  /** 通知访问器被反优化 */
+  public static void notifyDeoptimized(String cause) {
+    Instrumentation i = instrumentation;
+    if (i != null) i.accessorDeoptimized(cause);
+  }
+
+  /** 通知定义了新类 */
+  public static void notifyClassDefined(String className) {
+    Instrumentation i = instrumentation;
+    if (i != null) i.classDefined(className);
+  }
+
+  /** 通知缓存访问结果 */
+  public static void notifyCache(String cache, boolean hit) {
+    Instrumentation i = instrumentation;
+    if (i != null) {
+      if (hit) i.cacheHit(cache);
+      else i.cacheMiss(cache);
+    }
+  }
+
+  /** 通知表达式执行完成 */
+  public static void notifyEvaluated(String sourceName, long nanos) {
+    Instrumentation i = instrumentation;
+    if (i != null) i.expressionEvaluated(sourceName, nanos);
+  }
+
+  public static void dispose() {
+    instrumentation = null;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration;
+
+import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 投影(fold)表达式的执行设置,即(expr in collection if cond)这种语法的执行方式,
+ * 通过{@link org.mvel2.ParserConfiguration#setProjectionSettings(ProjectionSettings)}设置,
+ * 对使用此配置编译的表达式生效
+ * 默认情况下投影会顺序执行并立即生成完整的结果列表,可通过此类开启以下两种执行方式:
+ * <ul>
+ * <li>延迟执行:投影结果为一个按需计算的列表视图,isEmpty,contains以及迭代可以在找到结果后提前结束,
+ * 没有过滤条件时size及isEmpty直接由数据源的大小得出,元素只在被访问时才计算.
+ * 视图在访问时才使用表达式的作用域进行计算,因此看到的是访问时外部变量的值</li>
+ * <li>并行执行:元素数量达到阈值时,将数据拆分为多个连续的分段提交到指定的线程池中执行,结果保持原有顺序.
+ * 并行执行时投影表达式只应读取外部作用域中的变量,而不应对其进行修改</li>
+ * </ul>
+ * 延迟执行优先于并行执行.线程池不参与序列化
+ */
+public class ProjectionSettings implements Serializable {
+  /** 默认的并行阈值 */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+  private volatile boolean lazy;
+  private transient volatile ExecutorService executor;
+  private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+  private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+
+  public ProjectionSettings() {
+  }
+
+  /** 复制已有的设置 */
+  public ProjectionSettings(ProjectionSettings settings) {
+    this.lazy = settings.lazy;
+    this.executor = settings.executor;
+    this.parallelThreshold = settings.parallelThreshold;
+    this.parallelism = settings.parallelism;
+  }
+
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  /** 设置投影是否延迟执行 */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * 设置并行执行所使用的线程池,为null时表示关闭并行执行
+   * 调用线程会等待所有分段执行完毕,因此不要使用投影表达式自身可能在其中执行的有界线程池
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public int getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /** 设置开启并行执行的最小元素数量 */
+  public void setParallelThreshold(int parallelThreshold) {
+    if (parallelThreshold < 2) throw new IllegalArgumentException("parallel threshold must be >= 2: " + parallelThreshold);
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /** 设置并行执行的期望并行度,用于决定拆分的分段数 */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1: " + parallelism);
+    this.parallelism = parallelism;
+  }
+
+  /** 判断指定数量的元素是否应当并行执行 */
+  public boolean isParallel(int size) {
+    return executor != null && size >= parallelThreshold;
+  }
+}
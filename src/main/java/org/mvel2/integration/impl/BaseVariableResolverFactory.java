@@ -196,4 +196,9 @@ public abstract class BaseVariableResolverFactory implements VariableResolverFac
     //级联处理
     if (nextFactory != null) nextFactory.setTiltFlag(tiltFlag);
   }
+
+  /** 仅清除当前工厂的终止标记,不级联到委托工厂,用于工厂被重置复用时 */
+  protected void resetTiltFlag() {
+    this.tiltFlag = false;
+  }
 }
@@ -0,0 +1,191 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.VariableResolverFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mvel2.DataConversion.canConvert;
+import static org.mvel2.DataConversion.convert;
+
+/**
+ * 语句块(if,while,for等)的执行作用域,块内声明的变量在编译期即已确定,因此变量值直接存放在定长的数组中,
+ * 不再为每次执行创建HashMap.语义与{@link MapVariableResolverFactory}一致:
+ * 对变量赋值时如果外部作用域中已存在此变量则修改外部的变量,否则在当前块中创建
+ * <p>
+ * 编译期无法确定名称的声明(如import)存放在按需创建的Map中
+ */
+public class BlockVariableResolverFactory extends BaseVariableResolverFactory {
+  /** 编译期确定的块内变量名 */
+  private final String[] names;
+  /** 块内变量的值 */
+  private final Object[] values;
+  /** 块内已创建的变量的解析器,未创建时为null */
+  private final SlotResolver[] resolvers;
+  /** 名称未预先确定的变量 */
+  private Map<String, Object> overflow;
+
+  public BlockVariableResolverFactory(String[] names, VariableResolverFactory nextFactory) {
+    this.names = names;
+    this.values = new Object[names.length];
+    this.resolvers = new SlotResolver[names.length];
+    this.nextFactory = nextFactory;
+  }
+
+  /**
+   * 根据编译期作用域分析的结果为语句块创建执行作用域:块内没有声明变量时直接使用外部作用域,
+   * 未经分析(locals为null)时使用与之前相同的Map作用域
+   */
+  public static VariableResolverFactory scopeOf(String[] locals, VariableResolverFactory factory) {
+    if (locals == null) return new MapVariableResolverFactory(new HashMap<String, Object>(0), factory);
+    return locals.length == 0 ? factory : new BlockVariableResolverFactory(locals, factory);
+  }
+
+  /** 变量在块内的槽位,名称未知的声明(null)不占用槽位 */
+  private int slotOf(String name) {
+    if (name == null) return -1;
+    for (int i = 0; i < names.length; i++) {
+      if (name.equals(names[i])) return i;
+    }
+    return -1;
+  }
+
+  public VariableResolver createVariable(String name, Object value) {
+    VariableResolver vr;
+    try {
+      (vr = getVariableResolver(name)).setValue(value);
+      return vr;
+    }
+    catch (UnresolveablePropertyException e) {
+      (vr = addLocal(name, null)).setValue(value);
+      return vr;
+    }
+  }
+
+  public VariableResolver createVariable(String name, Object value, Class<?> type) {
+    VariableResolver vr;
+    try {
+      vr = getVariableResolver(name);
+    }
+    catch (UnresolveablePropertyException e) {
+      vr = null;
+    }
+
+    if (vr != null && vr.getType() != null) {
+      throw new RuntimeException("variable already defined within scope: " + vr.getType() + " " + name);
+    }
+
+    (vr = addLocal(name, type)).setValue(value);
+    return vr;
+  }
+
+  /** 在当前块中创建变量 */
+  private VariableResolver addLocal(String name, Class<?> type) {
+    int slot = slotOf(name);
+    if (slot != -1) return resolvers[slot] = new SlotResolver(slot, type);
+
+    if (overflow == null) overflow = new HashMap<String, Object>();
+    VariableResolver vr = new MapVariableResolver(overflow, name, type);
+    variableResolvers.put(name, vr);
+    return vr;
+  }
+
+  public VariableResolver getVariableResolver(String name) {
+    int slot = slotOf(name);
+    if (slot != -1 && resolvers[slot] != null) return resolvers[slot];
+
+    VariableResolver vr = overflow == null ? null : variableResolvers.get(name);
+    if (vr != null) return vr;
+
+    if (nextFactory != null) return nextFactory.getVariableResolver(name);
+    throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+  }
+
+  public boolean isTarget(String name) {
+    int slot = slotOf(name);
+    return (slot != -1 && resolvers[slot] != null) || (overflow != null && variableResolvers.containsKey(name));
+  }
+
+  public boolean isResolveable(String name) {
+    return isTarget(name) || (nextFactory != null && nextFactory.isResolveable(name));
+  }
+
+  public Set<String> getKnownVariables() {
+    Set<String> known = nextFactory == null ? new HashSet<String>() : new HashSet<String>(nextFactory.getKnownVariables());
+    for (int i = 0; i < names.length; i++) {
+      if (resolvers[i] != null) known.add(names[i]);
+    }
+    known.addAll(variableResolvers.keySet());
+    return known;
+  }
+
+  /** 块内变量的解析器,与{@link MapVariableResolver}一样在声明了类型时对赋值进行转换 */
+  private class SlotResolver implements VariableResolver {
+    private final int slot;
+    private Class<?> knownType;
+
+    private SlotResolver(int slot, Class<?> knownType) {
+      this.slot = slot;
+      this.knownType = knownType;
+    }
+
+    public String getName() {
+      return names[slot];
+    }
+
+    public Class getType() {
+      return knownType;
+    }
+
+    public void setStaticType(Class type) {
+      this.knownType = type;
+    }
+
+    public int getFlags() {
+      return 0;
+    }
+
+    public Object getValue() {
+      return values[slot];
+    }
+
+    public void setValue(Object value) {
+      if (knownType != null && value != null && value.getClass() != knownType) {
+        if (!canConvert(knownType, value.getClass())) {
+          throw new RuntimeException("cannot assign " + value.getClass().getName() + " to type: "
+              + knownType.getName());
+        }
+        try {
+          value = convert(value, knownType);
+        }
+        catch (Exception e) {
+          throw new RuntimeException("cannot convert value of " + value.getClass().getName()
+              + " to: " + knownType.getName());
+        }
+      }
+      values[slot] = value;
+    }
+  }
+}
@@ -31,32 +31,40 @@ import java.util.*;
  * 一个用于在执行期处理变量的解析，另一个用于在整个编译期的处理
  */
 public class ClassImportResolverFactory extends BaseVariableResolverFactory {
-  /** 引用的包名(不一定全是包，也可能是类名,以用于引用类中的字段,枚举等) */
+  /** 解析配置中引入信息的共享快照 */
+  private ImportTable importTable;
+  /** 执行期通过import语句添加的包引用(不一定全是包，也可能是类名,以用于引用类中的字段,枚举等) */
   private Set<String> packageImports;
-  /** 用于加载类的类加载器，直接使用于parseConfig */
-  private ClassLoader classLoader;
-  /** 各种引用数据，类名，方法名，枚举等 */
-  private Map<String, Object> imports;
+  /** 执行期包引用中已确认找不到的类名,避免重复通过类加载异常进行探测 */
+  private Set<String> missingClasses;
   /** 专门用于类名的引用 */
   private Map<String, Object> dynImports;
 
-  /** 使用相应的解析配置信息和委托工厂进行相应的构建 */
+  /**
+   * 使用相应的解析配置信息和委托工厂进行相应的构建,非编译模式下同时支持通过配置中的包引入查找类
+   * 引入快照由解析配置缓存,因此每次构建时不会重新复制引入信息
+   */
   public ClassImportResolverFactory(ParserConfiguration pCfg, VariableResolverFactory nextFactory, boolean compiled) {
-    if (pCfg != null) {
-      //仅在非编译期才将相应的引用拉过来,因为其数据还可能在变
-      if (!compiled) {
-        packageImports = pCfg.getPackageImports();
-      }
-      classLoader = pCfg.getClassLoader();
-      imports = Collections.unmodifiableMap(pCfg.getImports());
-    }
-    else {
-      classLoader = Thread.currentThread().getContextClassLoader();
-    }
+    this(pCfg == null ? ImportTable.of(null, false) : pCfg.getImportTable(!compiled), nextFactory);
+  }
 
+  /** 使用已创建的引入快照和委托工厂进行构建,快照在多次执行之间共享 */
+  public ClassImportResolverFactory(ImportTable importTable, VariableResolverFactory nextFactory) {
+    this.importTable = importTable;
     this.nextFactory = nextFactory;
   }
 
+  /** 重新设置引入快照以及委托工厂,并清除执行期添加的引用,以便在同一线程中复用当前对象 */
+  public ClassImportResolverFactory reset(ImportTable importTable, VariableResolverFactory nextFactory) {
+    this.importTable = importTable;
+    this.nextFactory = nextFactory;
+    packageImports = null;
+    missingClasses = null;
+    dynImports = null;
+    setTiltFlag(false);
+    return this;
+  }
+
   /**
    * 创建变量，因为当前工厂并不处理普通的变量，因此交由next来处理
    * 如果委托不存在，则尝试创建,使用map变量工厂来处理
@@ -87,47 +95,53 @@ public class ClassImportResolverFactory extends BaseVariableResolverFactory {
   public boolean isTarget(String name) {
     if (name == null) return false;
     //当前引用由静态编译期引用和动态引用来进行支持
-    return (imports != null && imports.containsKey(name)) || (dynImports != null && dynImports.containsKey(name));
+    return importTable.isImported(name) || (dynImports != null && dynImports.containsKey(name));
   }
 
   /** 通过import,类名引用，以及包引用来判定指定的变量名是否能被成功解析 */
   public boolean isResolveable(String name) {
     if (name == null) return false;
-    if ((imports != null && imports.containsKey(name)) || (dynImports != null && dynImports.containsKey(name))
-        || isNextResolveable(name)) {
+    if (importTable.isImported(name) || (dynImports != null && dynImports.containsKey(name))
+        || isNextResolveable(name) || importTable.isResolveable(name)) {
       return true;
     }
-    //尝试从相应的包引用中找到相应的类,如果找到成功,则加入动态引用当中
-    else if (packageImports != null) {
+    //尝试从执行期添加的包引用中找到相应的类,如果找到成功,则加入动态引用当中
+    else if (packageImports != null && (missingClasses == null || !missingClasses.contains(name))) {
       for (String s : packageImports) {
-        try {
-          addClass(classLoader.loadClass(s + "." + name));
+        Class cls = ImportTable.loadClass(importTable.getClassLoader(), s + "." + name);
+        if (cls != null) {
+          addClass(cls);
           return true;
         }
-        catch (ClassNotFoundException e) {
-          // do nothing;
-        }
-        catch (NoClassDefFoundError e) {
-          // do nothing;
-        }
       }
+      if (missingClasses == null) missingClasses = new HashSet<String>();
+      missingClasses.add(name);
     }
     return false;
   }
 
   @Override
   public VariableResolver getVariableResolver(String name) {
-    //由3部分构建,静态引用,动态引用,以及委托工厂
-    if (isResolveable(name)) {
-      if (imports != null && imports.containsKey(name)) {
-        return new SimpleValueResolver(imports.get(name));
+    //由3部分构建,静态引用(使用快照中共享的解析器),动态引用,以及委托工厂,最后才是包引用
+    if (name != null) {
+      if (importTable.isImported(name)) {
+        return importTable.getResolver(name);
       }
       else if (dynImports != null && dynImports.containsKey(name)) {
         return new SimpleValueResolver(dynImports.get(name));
       }
-      else if (nextFactory != null) {
+      else if (isNextResolveable(name)) {
         return nextFactory.getVariableResolver(name);
       }
+
+      VariableResolver resolver = importTable.getResolver(name);
+      if (resolver != null) {
+        return resolver;
+      }
+      //执行期的包引用找到时会加入到动态引用中
+      else if (isResolveable(name) && dynImports != null && dynImports.containsKey(name)) {
+        return new SimpleValueResolver(dynImports.get(name));
+      }
     }
 
     throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
@@ -142,13 +156,14 @@ public class ClassImportResolverFactory extends BaseVariableResolverFactory {
    * 可以理解为相应的方法定义存在问题
    */
   public Map<String, Object> getImportedClasses() {
-    return imports;
+    return importTable.getImports();
   }
 
   /** 添加包引用 */
   public void addPackageImport(String packageName) {
     if (packageImports == null) packageImports = new HashSet<String>();
     packageImports.add(packageName);
+    missingClasses = null;
   }
 
   @Override
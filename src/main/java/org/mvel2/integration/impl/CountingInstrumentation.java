@@ -0,0 +1,196 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+import org.mvel2.integration.Instrumentation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 默认的计数型指标收集器,采用原子计数器记录各类事件,并按照源名称记录执行耗时
+ * 可以直接作为MBean注册,或者是定时读取其中的值转发给外部的指标库
+ */
+public class CountingInstrumentation implements Instrumentation, CountingInstrumentationMBean {
+  /** 没有源名称的表达式统一记录在此名称下 */
+  public static final String UNNAMED_SOURCE = "<unnamed>";
+
+  private final AtomicLong expressionsCompiled = new AtomicLong();
+  private final AtomicLong compileNanos = new AtomicLong();
+  private final AtomicLong reflectiveOptimizations = new AtomicLong();
+  private final AtomicLong asmOptimizations = new AtomicLong();
+  private final AtomicLong classesDefined = new AtomicLong();
+  private final AtomicLong evaluations = new AtomicLong();
+
+  /** 按原因分类的反优化计数 */
+  private final ConcurrentMap<String, AtomicLong> deoptimizations = new ConcurrentHashMap<String, AtomicLong>();
+  /** 按缓存名分类的命中计数 */
+  private final ConcurrentMap<String, AtomicLong> cacheHits = new ConcurrentHashMap<String, AtomicLong>();
+  /** 按缓存名分类的未命中计数 */
+  private final ConcurrentMap<String, AtomicLong> cacheMisses = new ConcurrentHashMap<String, AtomicLong>();
+  /** 按源名称分类的执行耗时 */
+  private final ConcurrentMap<String, Timer> evaluationTimers = new ConcurrentHashMap<String, Timer>();
+
+  public void expressionCompiled(String sourceName, long nanos) {
+    expressionsCompiled.incrementAndGet();
+    compileNanos.addAndGet(nanos);
+  }
+
+  public void accessorOptimized(String tier) {
+    if (TIER_ASM.equals(tier)) asmOptimizations.incrementAndGet();
+    else reflectiveOptimizations.incrementAndGet();
+  }
+
+  public void accessorDeoptimized(String cause) {
+    counter(deoptimizations, cause).incrementAndGet();
+  }
+
+  public void classDefined(String className) {
+    classesDefined.incrementAndGet();
+  }
+
+  public void cacheHit(String cache) {
+    counter(cacheHits, cache).incrementAndGet();
+  }
+
+  public void cacheMiss(String cache) {
+    counter(cacheMisses, cache).incrementAndGet();
+  }
+
+  public void expressionEvaluated(String sourceName, long nanos) {
+    evaluations.incrementAndGet();
+    String key = sourceName == null ? UNNAMED_SOURCE : sourceName;
+    Timer timer = evaluationTimers.get(key);
+    if (timer == null) {
+      Timer t = evaluationTimers.putIfAbsent(key, timer = new Timer());
+      if (t != null) timer = t;
+    }
+    timer.record(nanos);
+  }
+
+  /** 获取或创建指定名称的计数器 */
+  private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String name) {
+    AtomicLong c = counters.get(name);
+    if (c == null) {
+      AtomicLong n = counters.putIfAbsent(name, c = new AtomicLong());
+      if (n != null) c = n;
+    }
+    return c;
+  }
+
+  private static long valueOf(ConcurrentMap<String, AtomicLong> counters, String name) {
+    AtomicLong c = counters.get(name);
+    return c == null ? 0 : c.get();
+  }
+
+  public long getExpressionsCompiled() {
+    return expressionsCompiled.get();
+  }
+
+  public long getCompileNanos() {
+    return compileNanos.get();
+  }
+
+  public long getReflectiveOptimizations() {
+    return reflectiveOptimizations.get();
+  }
+
+  public long getAsmOptimizations() {
+    return asmOptimizations.get();
+  }
+
+  /** 所有原因的反优化总数 */
+  public long getDeoptimizations() {
+    long total = 0;
+    for (AtomicLong c : deoptimizations.values()) {
+      total += c.get();
+    }
+    return total;
+  }
+
+  public long getDeoptimizations(String cause) {
+    return valueOf(deoptimizations, cause);
+  }
+
+  public long getClassesDefined() {
+    return classesDefined.get();
+  }
+
+  public long getCacheHits(String cache) {
+    return valueOf(cacheHits, cache);
+  }
+
+  public long getCacheMisses(String cache) {
+    return valueOf(cacheMisses, cache);
+  }
+
+  public long getEvaluations() {
+    return evaluations.get();
+  }
+
+  public String[] getSourceNames() {
+    return evaluationTimers.keySet().toArray(new String[evaluationTimers.size()]);
+  }
+
+  public long getEvaluationCount(String sourceName) {
+    Timer t = evaluationTimers.get(sourceName == null ? UNNAMED_SOURCE : sourceName);
+    return t == null ? 0 : t.count.get();
+  }
+
+  public long getEvaluationNanos(String sourceName) {
+    Timer t = evaluationTimers.get(sourceName == null ? UNNAMED_SOURCE : sourceName);
+    return t == null ? 0 : t.totalNanos.get();
+  }
+
+  public long getMaxEvaluationNanos(String sourceName) {
+    Timer t = evaluationTimers.get(sourceName == null ? UNNAMED_SOURCE : sourceName);
+    return t == null ? 0 : t.maxNanos.get();
+  }
+
+  /** 清空所有计数 */
+  public void reset() {
+    expressionsCompiled.set(0);
+    compileNanos.set(0);
+    reflectiveOptimizations.set(0);
+    asmOptimizations.set(0);
+    classesDefined.set(0);
+    evaluations.set(0);
+    deoptimizations.clear();
+    cacheHits.clear();
+    cacheMisses.clear();
+    evaluationTimers.clear();
+  }
+
+  /** 单个源的执行计时器,记录次数,总耗时以及最大耗时 */
+  private static class Timer {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private void record(long nanos) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      long max;
+      while (nanos > (max = maxNanos.get())) {
+        if (maxNanos.compareAndSet(max, nanos)) break;
+      }
+    }
+  }
+}
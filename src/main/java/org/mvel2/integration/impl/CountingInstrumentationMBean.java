@@ -0,0 +1,55 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+/**
+ * 计数型指标收集器的JMX管理接口,可以直接通过 MBeanServer 进行注册
+ * 如: ManagementFactory.getPlatformMBeanServer().registerMBean(instrumentation, new ObjectName("org.mvel2:type=Instrumentation"))
+ */
+public interface CountingInstrumentationMBean {
+  public long getExpressionsCompiled();
+
+  public long getCompileNanos();
+
+  public long getReflectiveOptimizations();
+
+  public long getAsmOptimizations();
+
+  public long getDeoptimizations();
+
+  public long getDeoptimizations(String cause);
+
+  public long getClassesDefined();
+
+  public long getCacheHits(String cache);
+
+  public long getCacheMisses(String cache);
+
+  public long getEvaluations();
+
+  public String[] getSourceNames();
+
+  public long getEvaluationCount(String sourceName);
+
+  public long getEvaluationNanos(String sourceName);
+
+  public long getMaxEvaluationNanos(String sourceName);
+
+  public void reset();
+}
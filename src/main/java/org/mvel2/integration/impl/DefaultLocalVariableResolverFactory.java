@@ -22,6 +22,7 @@ import org.mvel2.UnresolveablePropertyException;
 import org.mvel2.integration.VariableResolver;
 import org.mvel2.integration.VariableResolverFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -130,6 +131,29 @@ public class DefaultLocalVariableResolverFactory extends MapVariableResolverFact
     }
   }
 
+  /**
+   * 清除当前作用域中的所有变量,并重新设置委托工厂及下标变量,以便在同一线程中复用当前对象
+   * 仅适用于使用内部map创建的工厂,否则会清除外部传入的map
+   */
+  public DefaultLocalVariableResolverFactory reset(VariableResolverFactory nextFactory, String[] indexedVariables) {
+    variables.clear();
+    variableResolvers.clear();
+    this.nextFactory = nextFactory;
+    this.indexedVariableNames = indexedVariables;
+    if (indexedVariables == null) {
+      this.indexedVariableResolvers = null;
+    }
+    else if (indexedVariableResolvers != null && indexedVariableResolvers.length == indexedVariables.length) {
+      Arrays.fill(indexedVariableResolvers, null);
+    }
+    else {
+      this.indexedVariableResolvers = new VariableResolver[indexedVariables.length];
+    }
+    this.noTilt = false;
+    resetTiltFlag();
+    return this;
+  }
+
   /** 不要终止委托类标记,即当前内部的提前返回,并不需要外层同样进行处理 */
   private boolean noTilt = false;
 
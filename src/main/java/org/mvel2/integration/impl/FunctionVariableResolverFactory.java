@@ -186,6 +186,37 @@ public class FunctionVariableResolverFactory extends BaseVariableResolverFactory
     this.indexedVariableResolvers = vr;
   }
 
+  /**
+   * 使用新的函数调用参数重新初始化当前工厂,以便在同一线程中复用当前对象
+   * 参数值解析器在可能的情况下直接复用,不再重新创建
+   */
+  public FunctionVariableResolverFactory reset(Function function, VariableResolverFactory nextFactory, String[] indexedVariables, Object[] parameters) {
+    this.function = function;
+    this.nextFactory = nextFactory;
+    this.indexOffset = 0;
+    this.variableResolvers.clear();
+    resetTiltFlag();
+
+    VariableResolver[] old = indexedVariableNames != null && indexedVariableNames.length == indexedVariables.length ? indexedVariableResolvers : null;
+    this.indexedVariableNames = indexedVariables;
+    if (old == null) indexedVariableResolvers = new VariableResolver[indexedVariables.length];
+
+    for (int i = 0; i < indexedVariableResolvers.length; i++) {
+      if (i >= parameters.length) {
+        indexedVariableResolvers[i] = null;
+        continue;
+      }
+      variableResolvers.put(indexedVariableNames[i], null);
+      if (old != null && old[i] != null && old[i].getClass() == SimpleValueResolver.class) {
+        old[i].setValue(parameters[i]);
+      }
+      else {
+        indexedVariableResolvers[i] = new SimpleValueResolver(parameters[i]);
+      }
+    }
+    return this;
+  }
+
   /** 返回相应的函数 */
   public Function getFunction() {
     return function;
@@ -0,0 +1,160 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+import org.mvel2.ParserConfiguration;
+import org.mvel2.integration.VariableResolver;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 解析配置中引入信息的不可变快照,由编译表达式在首次执行时创建一次,之后所有执行中的引入工厂均直接引用此表
+ * 每个引入名对应的解析器预先创建并共享,通过包引入查找类的结果(包括找不到的结果)同样会被缓存,
+ * 以避免每次执行时重新包装引入映射,每次查找时新建解析器以及每次未命中时通过类加载异常进行探测
+ * <p>
+ * 注意以下两点与直接引用解析配置时的行为不同:
+ * 1. 快照创建之后(即表达式首次执行之后)再向解析配置中添加的引入不会被已编译的表达式看到,需要重新编译
+ * 2. 引入名的解析器在所有执行之间共享,对其调用setValue会抛出UnsupportedOperationException,
+ * 而不是像之前那样修改一个每次新建且随即被丢弃的解析器(该修改对之后的读取本来就不可见)
+ */
+public final class ImportTable {
+  /** 包引入查找结果的缓存上限,超过之后的结果不再缓存 */
+  private static final int MAX_LOOKUP_CACHE_SIZE = 1000;
+
+  /** 包引入中找不到指定类时缓存的标记值 */
+  private static final Object NOT_FOUND = new Object();
+
+  /** 没有解析配置时使用的空表,不包含任何引入,因此可以在所有执行之间共享 */
+  private static final ImportTable EMPTY = new ImportTable(new HashMap<String, Object>(), null, null);
+
+  /** 引入名与引入值(类,方法句柄,静态字段等)的不可修改映射 */
+  private final Map<String, Object> imports;
+  /** 各引入名预先创建的解析器 */
+  private final Map<String, VariableResolver> resolvers;
+  /** 包引入,为null表示不通过包引入查找 */
+  private final String[] packageImports;
+  /** 类加载器,为null时使用当前线程的上下文类加载器 */
+  private final ClassLoader classLoader;
+  /** 通过包引入查找的结果,值为解析器或者未找到标记 */
+  private final Map<String, Object> packageLookups;
+
+  private ImportTable(Map<String, Object> imports, String[] packageImports, ClassLoader classLoader) {
+    Map<String, VariableResolver> resolvers = new HashMap<String, VariableResolver>(imports.size() * 2);
+    for (Map.Entry<String, Object> entry : imports.entrySet()) {
+      resolvers.put(entry.getKey(), new ImportResolver(entry.getValue()));
+    }
+    this.imports = Collections.unmodifiableMap(imports);
+    this.resolvers = resolvers;
+    this.packageImports = packageImports;
+    this.classLoader = classLoader;
+    this.packageLookups = packageImports == null ? null : new ConcurrentHashMap<String, Object>();
+  }
+
+  /**
+   * 根据解析配置创建引入快照,配置为null时返回共享的空表
+   * 需要在多次执行之间共享快照时应使用{@link ParserConfiguration#getImportTable(boolean)}
+   *
+   * @param includePackageImports 是否在执行期通过配置中的包引入查找未直接引入的类名
+   */
+  public static ImportTable of(ParserConfiguration pCfg, boolean includePackageImports) {
+    if (pCfg == null) return EMPTY;
+
+    Map<String, Object> imports = pCfg.getImports() == null
+        ? new HashMap<String, Object>() : new HashMap<String, Object>(pCfg.getImports());
+    String[] packages = null;
+    if (includePackageImports && pCfg.getPackageImports() != null && !pCfg.getPackageImports().isEmpty()) {
+      packages = pCfg.getPackageImports().toArray(new String[pCfg.getPackageImports().size()]);
+    }
+    return new ImportTable(imports, packages, pCfg.getClassLoader());
+  }
+
+  /** 指定名字是否为直接引入的名字 */
+  public boolean isImported(String name) {
+    return resolvers.containsKey(name);
+  }
+
+  /** 指定名字是否能通过直接引入或者包引入解析 */
+  public boolean isResolveable(String name) {
+    return resolvers.containsKey(name) || lookupPackage(name) != null;
+  }
+
+  /** 获取指定名字的解析器,不能解析时返回null */
+  public VariableResolver getResolver(String name) {
+    VariableResolver resolver = resolvers.get(name);
+    return resolver != null ? resolver : lookupPackage(name);
+  }
+
+  /** 所有直接引入的信息(不可修改) */
+  public Map<String, Object> getImports() {
+    return imports;
+  }
+
+  public ClassLoader getClassLoader() {
+    return classLoader != null ? classLoader : Thread.currentThread().getContextClassLoader();
+  }
+
+  /** 通过包引入查找类,查找结果(包括未找到)按名字缓存 */
+  private VariableResolver lookupPackage(String name) {
+    if (packageImports == null || name == null) return null;
+
+    Object found = packageLookups.get(name);
+    if (found == null) {
+      found = NOT_FOUND;
+      for (String pkg : packageImports) {
+        Class cls = loadClass(classLoader, pkg + "." + name);
+        if (cls != null) {
+          found = new ImportResolver(cls);
+          break;
+        }
+      }
+      if (packageLookups.size() < MAX_LOOKUP_CACHE_SIZE) packageLookups.put(name, found);
+    }
+    return found == NOT_FOUND ? null : (VariableResolver) found;
+  }
+
+  /** 使用指定的类加载器加载类,加载不到时返回null */
+  static Class loadClass(ClassLoader classLoader, String className) {
+    try {
+      return classLoader.loadClass(className);
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    catch (NoClassDefFoundError e) {
+      return null;
+    }
+  }
+
+  /**
+   * 引入值的解析器,在所有执行之间共享,因此不允许修改
+   * 如果支持按执行写时复制,则每次执行都需要为引入名创建新的解析器,这正是此快照要避免的开销
+   */
+  private static final class ImportResolver extends SimpleValueResolver {
+    private ImportResolver(Object value) {
+      super(value);
+    }
+
+    public void setValue(Object value) {
+      throw new UnsupportedOperationException("cannot assign to imported name: imports are shared by all executions of a compiled expression");
+    }
+  }
+}
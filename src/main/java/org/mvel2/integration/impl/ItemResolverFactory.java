@@ -58,6 +58,21 @@ public class ItemResolverFactory extends BaseVariableResolverFactory {
     return isTarget(name) ? resolver : nextFactory.getVariableResolver(name);
   }
 
+  /** 获取当前的单值解析器 */
+  public ItemResolver getItemResolver() {
+    return resolver;
+  }
+
+  /** 重新设置单值变量名及委托工厂,以便在同一线程中复用当前对象 */
+  public ItemResolverFactory reset(String name, VariableResolverFactory nextFactory) {
+    resolver.name = name;
+    resolver.type = Object.class;
+    resolver.value = null;
+    this.nextFactory = nextFactory;
+    resetTiltFlag();
+    return this;
+  }
+
   /** 当前是否能解析,即当前单值所存储的变量名是否与参数名相同 */
   public boolean isTarget(String name) {
     return resolver.getName().equals(name);
@@ -71,7 +86,7 @@ public class ItemResolverFactory extends BaseVariableResolverFactory {
   /** 通过变量名+值+类型来进行变量解析的解析器 */
   public static class ItemResolver implements VariableResolver {
     /** 相应的变量名 */
-    private final String name;
+    private String name;
     /** 变量的类型 */
     private Class type = Object.class;
     /** 相应的值 */
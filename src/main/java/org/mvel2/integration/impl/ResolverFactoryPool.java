@@ -0,0 +1,233 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+import org.mvel2.ast.Function;
+import org.mvel2.integration.VariableResolverFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static java.lang.Boolean.getBoolean;
+
+/**
+ * 线程内复用的作用域变量工厂池,用于高频执行场景下避免每次执行,每次循环以及每次函数调用时重新创建变量工厂
+ * 池是线程封闭的,每种工厂按照栈的方式进行借用和归还(acquire与release必须严格成对,并按后进先出的顺序调用),
+ * 因此嵌套的语句块以及递归调用会在不同的深度上拿到不同的实例,互不干扰.归还时会清除工厂中对外部数据的引用
+ * <p>
+ * 在执行结束之后仍会被使用的作用域(如延迟投影视图所引用的作用域)需要通过{@link #capture(VariableResolverFactory)}标记,
+ * 被标记的工厂在归还时既不清除也不再复用,而是直接从池中移除
+ * <p>
+ * 默认不开启,可通过系统属性mvel2.pool_resolver_factories或者{@link #setEnabled(boolean)}开启
+ */
+public class ResolverFactoryPool {
+  /** 每种工厂最多保留的实例数(即嵌套深度),超过此深度的借用直接新建,归还后丢弃 */
+  private static final int MAX_RETAINED = 32;
+
+  private static final String[] EMPTY_NAMES = new String[0];
+  private static final Object[] EMPTY_VALUES = new Object[0];
+
+  private static volatile boolean enabled = getBoolean("mvel2.pool_resolver_factories");
+
+  private static final ThreadLocal<ResolverFactoryPool> pools = new ThreadLocal<ResolverFactoryPool>() {
+    protected ResolverFactoryPool initialValue() {
+      return new ResolverFactoryPool();
+    }
+  };
+
+  private final Stack<StackResetResolverFactory> stackResets = new Stack<StackResetResolverFactory>() {
+    protected StackResetResolverFactory create() {
+      return new StackResetResolverFactory(new MapVariableResolverFactory());
+    }
+  };
+
+  private final Stack<ClassImportResolverFactory> classImports = new Stack<ClassImportResolverFactory>() {
+    protected ClassImportResolverFactory create() {
+      return new ClassImportResolverFactory((ImportTable) null, null);
+    }
+  };
+
+  private final Stack<StackDemarcResolverFactory> stackDemarcs = new Stack<StackDemarcResolverFactory>() {
+    protected StackDemarcResolverFactory create() {
+      return new StackDemarcResolverFactory(null);
+    }
+  };
+
+  private final Stack<ItemResolverFactory> itemFactories = new Stack<ItemResolverFactory>() {
+    protected ItemResolverFactory create() {
+      return new ItemResolverFactory(new ItemResolverFactory.ItemResolver("$"), null);
+    }
+  };
+
+  private final Stack<DefaultLocalVariableResolverFactory> localFactories = new Stack<DefaultLocalVariableResolverFactory>() {
+    protected DefaultLocalVariableResolverFactory create() {
+      return new DefaultLocalVariableResolverFactory();
+    }
+  };
+
+  private final Stack<FunctionVariableResolverFactory> functionFactories = new Stack<FunctionVariableResolverFactory>() {
+    protected FunctionVariableResolverFactory create() {
+      return new FunctionVariableResolverFactory(null, null, EMPTY_NAMES, EMPTY_VALUES);
+    }
+  };
+
+  /** 已被标记为在执行结束之后仍被引用的工厂 */
+  private Map<Object, Boolean> captured;
+
+  private ResolverFactoryPool() {
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ResolverFactoryPool.enabled = enabled;
+  }
+
+  /** 获取当前线程的工厂池,未开启时返回null,调用方此时应直接创建工厂 */
+  public static ResolverFactoryPool current() {
+    return enabled ? pools.get() : null;
+  }
+
+  /**
+   * 标记指定工厂及其所有外层工厂将在执行结束之后继续被引用,其中由当前线程的池借出的工厂在归还时不再复用
+   * 未开启时不做任何处理
+   */
+  public static void capture(VariableResolverFactory factory) {
+    if (enabled && factory != null) pools.get().markCaptured(factory);
+  }
+
+  private void markCaptured(VariableResolverFactory factory) {
+    while (factory != null) {
+      if (stackResets.holds(factory) || classImports.holds(factory) || stackDemarcs.holds(factory)
+          || itemFactories.holds(factory) || localFactories.holds(factory) || functionFactories.holds(factory)) {
+        if (captured == null) captured = new IdentityHashMap<Object, Boolean>();
+        captured.put(factory, Boolean.TRUE);
+      }
+
+      //包装工厂的下一级为其委托的下一级,因此需要先进入委托
+      if (factory instanceof StackResetResolverFactory) {
+        factory = ((StackResetResolverFactory) factory).getDelegate();
+      }
+      else if (factory instanceof StackDemarcResolverFactory) {
+        factory = ((StackDemarcResolverFactory) factory).getDelegate();
+      }
+      else {
+        factory = factory.getNextFactory();
+      }
+    }
+  }
+
+  /** 借用一个包装指定工厂的栈重置工厂(用于编译表达式的每次执行) */
+  public StackResetResolverFactory acquireStackReset(VariableResolverFactory delegate) {
+    return stackResets.acquire().reset(delegate);
+  }
+
+  public void release(StackResetResolverFactory factory) {
+    if (stackResets.release(factory)) factory.reset(null);
+  }
+
+  /** 借用一个使用指定引入快照的引入工厂(用于有引入信息的编译表达式的每次执行) */
+  public ClassImportResolverFactory acquireClassImport(ImportTable importTable, VariableResolverFactory nextFactory) {
+    return classImports.acquire().reset(importTable, nextFactory);
+  }
+
+  public void release(ClassImportResolverFactory factory) {
+    if (classImports.release(factory)) factory.reset(null, null);
+  }
+
+  /** 借用一个单值变量工厂,其委托为一个新的局部作用域工厂(用于foreach以及fold中的循环变量) */
+  public ItemResolverFactory acquireItemFactory(String name, VariableResolverFactory nextFactory) {
+    return itemFactories.acquire().reset(name, localFactories.acquire().reset(nextFactory, null));
+  }
+
+  public void release(ItemResolverFactory factory) {
+    DefaultLocalVariableResolverFactory local = (DefaultLocalVariableResolverFactory) factory.getNextFactory();
+    if (localFactories.release(local)) local.reset(null, null);
+    if (itemFactories.release(factory)) factory.reset("$", null);
+  }
+
+  /** 借用一个函数调用时使用的作用域工厂,无参数时使用局部作用域工厂 */
+  public StackDemarcResolverFactory acquireFunctionScope(Function function, VariableResolverFactory nextFactory,
+                                                        String[] parameters, Object[] parms) {
+    VariableResolverFactory scope = parms != null && parms.length != 0
+        ? functionFactories.acquire().reset(function, nextFactory, parameters, parms)
+        : localFactories.acquire().reset(nextFactory, parameters);
+    return stackDemarcs.acquire().reset(scope);
+  }
+
+  public void release(StackDemarcResolverFactory factory) {
+    VariableResolverFactory scope = factory.getDelegate();
+    if (scope instanceof FunctionVariableResolverFactory) {
+      FunctionVariableResolverFactory f = (FunctionVariableResolverFactory) scope;
+      if (functionFactories.release(f)) f.reset(null, null, EMPTY_NAMES, EMPTY_VALUES);
+    }
+    else {
+      DefaultLocalVariableResolverFactory local = (DefaultLocalVariableResolverFactory) scope;
+      if (localFactories.release(local)) local.reset(null, null);
+    }
+    if (stackDemarcs.release(factory)) factory.reset(null);
+  }
+
+  /** 单种工厂的借用栈 */
+  private abstract class Stack<T> {
+    private final Object[] items = new Object[MAX_RETAINED];
+    private int depth;
+
+    protected abstract T create();
+
+    @SuppressWarnings("unchecked")
+    T acquire() {
+      if (depth >= MAX_RETAINED) {
+        depth++;
+        return create();
+      }
+      Object t = items[depth];
+      if (t == null) items[depth] = t = create();
+      depth++;
+      return (T) t;
+    }
+
+    /**
+     * 归还工厂,返回工厂是否会被复用(调用方此时需要对其进行清除)
+     * 超出保留深度的工厂以及被标记为仍被引用的工厂不再复用,后者直接从池中移除
+     */
+    boolean release(T t) {
+      if (depth == 0) throw new IllegalStateException("unbalanced release of pooled resolver factory");
+      if (--depth >= MAX_RETAINED) return false;
+      if (items[depth] != t) {
+        throw new IllegalStateException("pooled resolver factories must be released in reverse order of acquisition");
+      }
+      if (captured != null && captured.remove(t) != null) {
+        items[depth] = null;
+        return false;
+      }
+      return true;
+    }
+
+    /** 指定的对象是否为当前借出的工厂 */
+    boolean holds(Object o) {
+      for (int i = Math.min(depth, MAX_RETAINED) - 1; i >= 0; i--) {
+        if (items[i] == o) return true;
+      }
+      return false;
+    }
+  }
+}
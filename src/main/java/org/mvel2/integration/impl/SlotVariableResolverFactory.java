@@ -0,0 +1,236 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.integration.impl;
+
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.util.InputLayout;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于{@link InputLayout}槽位工作的变量工厂,外部变量在每次执行前通过bind一次性绑定到槽位上
+ * 由于工厂声明为基于下标工作,优化器生成的访问器会直接通过getIndexedVariableResolver访问相应的槽位,
+ * 而每个槽位的解析器在工厂创建时即已固定,因此重新绑定时不会再创建任何解析器
+ * <p>
+ * 不在布局中的变量(如脚本中新定义的变量)交由内部的Map工厂处理:绑定Map时即为该Map本身,
+ * 与直接使用{@link MapVariableResolverFactory}的效果一致;绑定数组时则使用一个每次绑定时清空的临时Map
+ * <p>
+ * 此工厂持有执行状态,不是线程安全的,应在每个线程中分别创建.同一个编译表达式应当始终使用同一布局的工厂执行,
+ * 因为优化之后的访问器中已经固定了槽位下标
+ */
+public class SlotVariableResolverFactory extends BaseVariableResolverFactory {
+  /** 相应的布局 */
+  private final InputLayout layout;
+  /** 当前绑定的变量值 */
+  private Object[] values;
+  /** 每个槽位在当前绑定中是否有值(与Map中不存在此变量进行区分) */
+  private final boolean[] bound;
+  /** 当前绑定的Map,绑定数组时为null */
+  private Map<String, Object> boundMap;
+  /** 处理布局之外变量的工厂 */
+  private final LocalMapFactory locals = new LocalMapFactory();
+
+  public SlotVariableResolverFactory(InputLayout layout) {
+    this.layout = layout;
+    this.values = new Object[layout.size()];
+    this.bound = new boolean[layout.size()];
+    this.indexedVariableNames = layout.getNames();
+    this.indexedVariableResolvers = new VariableResolver[layout.size()];
+    for (int i = 0; i < indexedVariableResolvers.length; i++) {
+      indexedVariableResolvers[i] = new SlotResolver(i);
+    }
+    this.nextFactory = locals;
+  }
+
+  /** 绑定Map中的变量,对布局中变量的修改以及新增的变量均会同步写回此Map */
+  public SlotVariableResolverFactory bind(Map<String, Object> vars) {
+    if (values.length != layout.size()) values = new Object[layout.size()];
+    for (int i = 0; i < values.length; i++) {
+      Object v = vars.get(layout.getName(i));
+      values[i] = v;
+      bound[i] = v != null || vars.containsKey(layout.getName(i));
+    }
+    boundMap = vars;
+    locals.reset(vars);
+    setTiltFlag(false);
+    return this;
+  }
+
+  /** 按照布局的槽位顺序绑定数组,数组本身即作为存储使用,修改会直接反映到此数组中 */
+  public SlotVariableResolverFactory bind(Object[] vars) {
+    int length = vars.length;
+    if (length < layout.size()) {
+      //数组长度不足时,复制一份以保证下标访问安全,缺失的槽位视为未定义
+      Object[] copy = new Object[layout.size()];
+      System.arraycopy(vars, 0, copy, 0, length);
+      vars = copy;
+    }
+    values = vars;
+    for (int i = 0; i < bound.length; i++) {
+      bound[i] = i < length;
+    }
+    boundMap = null;
+    locals.reset(null);
+    setTiltFlag(false);
+    return this;
+  }
+
+  /** 在绑定的外部工厂之后追加委托工厂,用于访问布局以及局部变量之外的全局变量 */
+  public void setParentFactory(VariableResolverFactory parent) {
+    locals.setNextFactory(parent);
+  }
+
+  public InputLayout getLayout() {
+    return layout;
+  }
+
+  public VariableResolver createVariable(String name, Object value) {
+    int slot = layout.slotOf(name);
+    if (slot == -1) return locals.createVariable(name, value);
+
+    VariableResolver vr = indexedVariableResolvers[slot];
+    vr.setValue(value);
+    return vr;
+  }
+
+  public VariableResolver createVariable(String name, Object value, Class<?> type) {
+    int slot = layout.slotOf(name);
+    if (slot == -1) return locals.createVariable(name, value, type);
+
+    VariableResolver vr = indexedVariableResolvers[slot];
+    vr.setValue(value);
+    return vr;
+  }
+
+  public VariableResolver createIndexedVariable(int index, String name, Object value) {
+    VariableResolver vr = indexedVariableResolvers[index];
+    vr.setValue(value);
+    return vr;
+  }
+
+  public VariableResolver createIndexedVariable(int index, String name, Object value, Class<?> type) {
+    return createIndexedVariable(index, name, value);
+  }
+
+  public VariableResolver getIndexedVariableResolver(int index) {
+    return indexedVariableResolvers[index];
+  }
+
+  public VariableResolver getVariableResolver(String name) {
+    int slot = layout.slotOf(name);
+    if (slot != -1 && bound[slot]) {
+      return indexedVariableResolvers[slot];
+    }
+    if (nextFactory != null) {
+      return nextFactory.getVariableResolver(name);
+    }
+    throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+  }
+
+  public boolean isTarget(String name) {
+    int slot = layout.slotOf(name);
+    return slot != -1 && bound[slot];
+  }
+
+  public boolean isResolveable(String name) {
+    return isTarget(name) || (nextFactory != null && nextFactory.isResolveable(name));
+  }
+
+  public int variableIndexOf(String name) {
+    return layout.slotOf(name);
+  }
+
+  public Set<String> getKnownVariables() {
+    Set<String> known = new HashSet<String>();
+    if (nextFactory != null) known.addAll(nextFactory.getKnownVariables());
+    for (int i = 0; i < bound.length; i++) {
+      if (bound[i]) known.add(layout.getName(i));
+    }
+    return known;
+  }
+
+  /** 清除当前绑定,释放对外部数据的引用 */
+  public void clear() {
+    values = new Object[layout.size()];
+    for (int i = 0; i < bound.length; i++) bound[i] = false;
+    boundMap = null;
+    locals.reset(null);
+  }
+
+  public boolean isIndexedFactory() {
+    return true;
+  }
+
+  /** 槽位解析器,始终读写工厂当前绑定的数据,因此可以跨绑定复用 */
+  private class SlotResolver implements VariableResolver {
+    private final int slot;
+
+    private SlotResolver(int slot) {
+      this.slot = slot;
+    }
+
+    public String getName() {
+      return layout.getName(slot);
+    }
+
+    public Class getType() {
+      return layout.getType(slot);
+    }
+
+    public void setStaticType(Class type) {
+    }
+
+    public int getFlags() {
+      return 0;
+    }
+
+    /** 当前绑定中没有此变量时,与按名称查找时一样报告变量无法解析,而不是返回null */
+    public Object getValue() {
+      if (!bound[slot]) {
+        throw new UnresolveablePropertyException("unable to resolve variable '" + layout.getName(slot) + "'");
+      }
+      return values[slot];
+    }
+
+    public void setValue(Object value) {
+      values[slot] = value;
+      bound[slot] = true;
+      if (boundMap != null) boundMap.put(layout.getName(slot), value);
+    }
+  }
+
+  /** 可重新绑定存储Map的局部变量工厂 */
+  private static class LocalMapFactory extends MapVariableResolverFactory {
+    private final Map<String, Object> scratch = new HashMap<String, Object>();
+
+    private void reset(Map<String, Object> vars) {
+      if (vars == null) {
+        scratch.clear();
+        vars = scratch;
+      }
+      variables = vars;
+      variableResolvers.clear();
+    }
+  }
+}
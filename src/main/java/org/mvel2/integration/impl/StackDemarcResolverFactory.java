@@ -85,6 +85,13 @@ public class StackDemarcResolverFactory implements VariableResolverFactory {
     this.tilt = tilt;
   }
 
+  /** 重新设置委托工厂并清除终止标记,以便在同一线程中复用当前对象 */
+  public StackDemarcResolverFactory reset(VariableResolverFactory delegate) {
+    this.delegate = delegate;
+    this.tilt = false;
+    return this;
+  }
+
   public VariableResolverFactory getDelegate() {
     return delegate;
   }
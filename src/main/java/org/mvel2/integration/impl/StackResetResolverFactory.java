@@ -88,6 +88,13 @@ public class StackResetResolverFactory implements VariableResolverFactory {
     }
   }
 
+  /** 重新设置委托工厂,以便在同一线程中复用当前对象 */
+  public StackResetResolverFactory reset(VariableResolverFactory delegate) {
+    if (delegate != null) delegate.setTiltFlag(false);
+    this.delegate = delegate;
+    return this;
+  }
+
   public VariableResolverFactory getDelegate() {
     return delegate;
   }
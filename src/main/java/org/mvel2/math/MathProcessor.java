@@ -36,7 +36,7 @@ import static org.mvel2.DataTypes.BIG_DECIMAL;
 import static org.mvel2.DataTypes.EMPTY;
 import static org.mvel2.Operator.*;
 import static org.mvel2.util.ParseTools.*;
-import static org.mvel2.util.Soundex.soundex;
+import static org.mvel2.util.Soundex.soundsLike;
 
 /**
  * 数学处理，进行各项数学运算
@@ -392,7 +392,7 @@ public strictfp class MathProcessor {
 
 
       case SOUNDEX:
-        return soundex(String.valueOf(val1)).equals(soundex(String.valueOf(val2)));
+        return soundsLike(String.valueOf(val1), String.valueOf(val2));
 
       // #操作,直接字符串拼接
       case STR_APPEND:
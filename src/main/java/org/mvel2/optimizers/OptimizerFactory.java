@@ -135,6 +135,11 @@ public class OptimizerFactory {
     }
   }
 
+  /** 当前默认优化器的名称 */
+  public static String getDefaultOptimizer() {
+    return defaultOptimizer;
+  }
+
   /** 清除相应的优化器(已使用完毕) */
   public static void clearThreadAccessorOptimizer() {
     threadOptimizer.set(null);
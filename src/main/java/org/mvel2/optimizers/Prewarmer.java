@@ -0,0 +1,257 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.optimizers;
+
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.Union;
+import org.mvel2.compiler.Accessor;
+import org.mvel2.compiler.ExecutableStatement;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.mvel2.optimizers.dynamic.DynamicAccessor;
+import org.mvel2.templates.CompiledTemplate;
+import org.mvel2.templates.TemplateRuntime;
+import org.mvel2.templates.res.Node;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预热工具,用于在对外提供服务之前,使用有代表性的样例输入驱动编译表达式或模板完成访问器的优化,
+ * 以避免首批请求在请求线程上承担优化(以及动态优化器切换到ASM)的开销
+ * <p>
+ * 预热时先使用样例输入执行一次,以生成各节点(包括嵌套语句块,函数,方法参数以及模板节点中的表达式)的访问器.
+ * 要求达到{@link Tier#JIT}时,再将所有尚未切换的动态访问器标记为立即优化并再执行一次,
+ * 从而不必等待在时间区间内达到运行次数的阈值.最后遍历整个节点树,报告未能达到要求层级的节点以及原因.
+ * 样例输入没有覆盖到的分支(以及其中的函数调用)不会被优化
+ * <p>
+ * 样例变量会被复制一份再使用,表达式中的赋值不会影响到调用方的Map,但对上下文对象本身的修改无法避免
+ */
+public class Prewarmer {
+  /** 预热要求达到的优化层级 */
+  public enum Tier {
+    /** 所有执行到的节点均已生成访问器(反射或者默认优化器生成的访问器) */
+    REFLECTIVE,
+    /** 在REFLECTIVE的基础上,动态优化器生成的访问器均已切换为ASM生成的访问器 */
+    JIT
+  }
+
+  private Prewarmer() {
+  }
+
+  /** 使用样例输入预热编译表达式 */
+  public static Report prewarm(Serializable compiled, Object sampleContext, Map sampleVars, Tier tier) {
+    return prewarm((Object) compiled, sampleContext, sampleVars, tier);
+  }
+
+  /** 使用样例输入预热编译好的模板 */
+  public static Report prewarm(CompiledTemplate template, Object sampleContext, Map sampleVars, Tier tier) {
+    return prewarm((Object) template, sampleContext, sampleVars, tier);
+  }
+
+  private static Report prewarm(Object target, Object sampleContext, Map sampleVars, Tier tier) {
+    List<Issue> issues = new ArrayList<Issue>();
+    run(target, sampleContext, sampleVars, issues);
+
+    Walker walker = new Walker();
+    walker.walk(target);
+
+    if (tier == Tier.JIT) {
+      String optimizer = OptimizerFactory.getDefaultOptimizer();
+      if (!OptimizerFactory.DYNAMIC.equals(optimizer) && !"ASM".equals(optimizer)) {
+        issues.add(new Issue(null, "JIT unavailable: default optimizer is '" + optimizer + "'"));
+      }
+      else if (!walker.pendingDynamic().isEmpty()) {
+        for (DynamicAccessor accessor : walker.pendingDynamic()) {
+          accessor.tenure();
+        }
+        run(target, sampleContext, sampleVars, issues);
+
+        walker = new Walker();
+        walker.walk(target);
+      }
+    }
+
+    for (ASTNode node : walker.nodes) {
+      Accessor accessor = node.getAccessor();
+      if (accessor == null) {
+        if (requiresAccessor(node)) {
+          issues.add(new Issue(node, (node.getFields() & ASTNode.DEOP) != 0
+              ? "deoptimized after a type mismatch" : "not evaluated by the sample input"));
+        }
+      }
+      else if (tier == Tier.JIT && accessor instanceof DynamicAccessor && !((DynamicAccessor) accessor).isOptimized()) {
+        issues.add(new Issue(node, "JIT optimization not supported, reflective accessor retained"));
+      }
+    }
+
+    return new Report(walker.nodes.size(), issues);
+  }
+
+  /** 普通的属性访问节点才依赖访问器执行,其它节点(如运算,语句块)自身即实现了执行逻辑 */
+  private static boolean requiresAccessor(ASTNode node) {
+    return (node.getClass() == ASTNode.class || node instanceof Union) && node.isIdentifier() && !node.isLiteral();
+  }
+
+  /**
+   * 使用样例输入执行一次,执行异常作为问题记录下来,而不向外抛出
+   * 样例变量与MVEL其它执行入口一样以原始Map传入,这里仅按Map<String, Object>复制一份,不会向其写入
+   */
+  @SuppressWarnings("unchecked")
+  private static void run(Object target, Object ctx, Map vars, List<Issue> issues) {
+    Map<String, Object> copy = vars == null ? new HashMap<String, Object>() : new HashMap<String, Object>(vars);
+    try {
+      if (target instanceof CompiledTemplate) {
+        TemplateRuntime.execute((CompiledTemplate) target, ctx, copy);
+      }
+      else {
+        VariableResolverFactory factory = new MapVariableResolverFactory(copy);
+        ((ExecutableStatement) target).getValue(ctx, factory);
+      }
+    }
+    catch (RuntimeException e) {
+      issues.add(new Issue(null, "sample evaluation failed: " + e));
+    }
+  }
+
+  /**
+   * 节点树的遍历器,由于各种节点持有嵌套语句的方式各不相同(语句块,条件,函数体,方法参数,模板节点等),
+   * 这里统一通过字段反射的方式找到其中所有的节点及访问器
+   */
+  private static class Walker {
+    private final Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+    private final List<ASTNode> nodes = new ArrayList<ASTNode>();
+    private final List<DynamicAccessor> dynamicAccessors = new ArrayList<DynamicAccessor>();
+
+    void walk(Object o) {
+      if (o == null || visited.put(o, Boolean.TRUE) != null) return;
+
+      if (o instanceof ASTNode) nodes.add((ASTNode) o);
+      if (o instanceof DynamicAccessor) dynamicAccessors.add((DynamicAccessor) o);
+
+      for (Class c = o.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+          Object value;
+          try {
+            field.setAccessible(true);
+            value = field.get(o);
+          }
+          catch (Exception e) {
+            continue;
+          }
+          visit(value);
+        }
+      }
+    }
+
+    private void visit(Object value) {
+      if (isWalkable(value)) {
+        walk(value);
+      }
+      else if (value instanceof Object[]) {
+        for (Object element : (Object[]) value) {
+          if (isWalkable(element)) walk(element);
+        }
+      }
+      else if (value instanceof Collection) {
+        for (Object element : (Collection) value) {
+          if (isWalkable(element)) walk(element);
+        }
+      }
+    }
+
+    private static boolean isWalkable(Object o) {
+      return o instanceof ASTNode || o instanceof Accessor || o instanceof Node || o instanceof CompiledTemplate;
+    }
+
+    List<DynamicAccessor> pendingDynamic() {
+      List<DynamicAccessor> pending = new ArrayList<DynamicAccessor>();
+      for (DynamicAccessor accessor : dynamicAccessors) {
+        if (!accessor.isOptimized()) pending.add(accessor);
+      }
+      return pending;
+    }
+  }
+
+  /** 一个未能达到要求层级的节点,node为null时表示整体性的问题(如样例执行失败) */
+  public static class Issue {
+    private final ASTNode node;
+    private final String reason;
+
+    Issue(ASTNode node, String reason) {
+      this.node = node;
+      this.reason = reason;
+    }
+
+    public ASTNode getNode() {
+      return node;
+    }
+
+    public String getReason() {
+      return reason;
+    }
+
+    public String toString() {
+      return node == null ? reason : "'" + node.getName() + "' [" + node.getClass().getSimpleName() + "]: " + reason;
+    }
+  }
+
+  /** 预热结果 */
+  public static class Report {
+    private final int nodeCount;
+    private final List<Issue> issues;
+
+    Report(int nodeCount, List<Issue> issues) {
+      this.nodeCount = nodeCount;
+      this.issues = Collections.unmodifiableList(issues);
+    }
+
+    /** 遍历到的节点个数 */
+    public int getNodeCount() {
+      return nodeCount;
+    }
+
+    /** 未能达到要求层级的节点以及原因 */
+    public List<Issue> getIssues() {
+      return issues;
+    }
+
+    /** 是否所有节点均达到了要求的层级 */
+    public boolean isComplete() {
+      return issues.isEmpty();
+    }
+
+    public String toString() {
+      StringBuilder sb = new StringBuilder("prewarmed ").append(nodeCount).append(" nodes, ")
+          .append(issues.size()).append(" issue(s)");
+      for (Issue issue : issues) {
+        sb.append("\n  ").append(issue);
+      }
+      return sb.toString();
+    }
+  }
+}
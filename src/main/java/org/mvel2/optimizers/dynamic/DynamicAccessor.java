@@ -27,4 +27,10 @@ import org.mvel2.compiler.Accessor;
 public interface DynamicAccessor extends Accessor {
   /** 反优化，表示在后面的处理中将不再使用原来的优化器.同时可以解释相应的优化类资源 */
   public void deoptimize();
+
+  /** 当前是否已经切换为优化后的访问器 */
+  public boolean isOptimized();
+
+  /** 使下一次访问即进行优化,而不必等待在时间区间内达到运行次数的阈值,用于执行前的预热 */
+  public void tenure();
 }
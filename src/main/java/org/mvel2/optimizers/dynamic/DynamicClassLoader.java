@@ -18,6 +18,8 @@
 
 package org.mvel2.optimizers.dynamic;
 
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.util.MVELClassLoader;
 
 import java.util.LinkedList;
@@ -57,6 +59,9 @@ public class DynamicClassLoader extends ClassLoader implements MVELClassLoader {
         DynamicAccessor da = allAccessors.removeFirst();
         if (da != null) {
           da.deoptimize();
+          if (InstrumentationFactory.isEnabled()) {
+            InstrumentationFactory.notifyDeoptimized(Instrumentation.DEOPT_TENURE_EVICTED);
+          }
         }
       }
       assert accessor != null;
@@ -67,8 +72,12 @@ public class DynamicClassLoader extends ClassLoader implements MVELClassLoader {
   /** 反优化所有动态访问器 */
   public void deoptimizeAll() {
     synchronized (allAccessors) {
+      boolean instrumented = InstrumentationFactory.isEnabled();
       for (DynamicAccessor a : allAccessors) {
-        if (a != null) a.deoptimize();
+        if (a != null) {
+          a.deoptimize();
+          if (instrumented) InstrumentationFactory.notifyDeoptimized(Instrumentation.DEOPT_CLASSLOADER_RECYCLED);
+        }
       }
       allAccessors.clear();
     }
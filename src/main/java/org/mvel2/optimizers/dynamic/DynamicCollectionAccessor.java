@@ -107,6 +107,17 @@ public class DynamicCollectionAccessor implements DynamicAccessor {
     stamp = currentTimeMillis();
   }
 
+  public boolean isOptimized() {
+    return _accessor != _safeAccessor;
+  }
+
+  public void tenure() {
+    if (!opt) {
+      runcount = DynamicOptimizer.tenuringThreshold;
+      stamp = currentTimeMillis();
+    }
+  }
+
   public long getStamp() {
     return stamp;
   }
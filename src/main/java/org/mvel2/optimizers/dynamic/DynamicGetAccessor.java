@@ -20,6 +20,8 @@ package org.mvel2.optimizers.dynamic;
 
 import org.mvel2.ParserContext;
 import org.mvel2.compiler.Accessor;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.optimizers.AccessorOptimizer;
 import org.mvel2.optimizers.OptimizationNotSupported;
@@ -79,6 +81,9 @@ public class DynamicGetAccessor implements DynamicAccessor {
           }
           catch(OptimizationNotSupported ex){
         	  // If optimization fails then, rather than fail evaluation, fallback to use safe reflective accessor
+            if (InstrumentationFactory.isEnabled()) {
+              InstrumentationFactory.notifyDeoptimized(Instrumentation.DEOPT_OPTIMIZATION_FAILED);
+            }
           }
         }
         else {
@@ -132,6 +137,17 @@ public class DynamicGetAccessor implements DynamicAccessor {
     stamp = currentTimeMillis();
   }
 
+  public boolean isOptimized() {
+    return _accessor != _safeAccessor;
+  }
+
+  public void tenure() {
+    if (!opt) {
+      runcount = DynamicOptimizer.tenuringThreshold;
+      stamp = currentTimeMillis();
+    }
+  }
+
   /** 上次统计时间 */
   public long getStamp() {
     return stamp;
@@ -87,7 +87,7 @@ public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptim
     try {
       if (classLoader.isOverloaded()) {
         classLoader.deoptimizeAll();
-        totalRecycled = +classLoader.getTotalClasses();
+        totalRecycled += classLoader.getTotalClasses();
         _init();
       }
     } finally {
@@ -111,6 +111,20 @@ public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptim
     }
   }
 
+  /**
+   * 将已经构建好的(如编译期根据类型构建的)反射访问器包装为动态访问器,
+   * 使其与首次执行时优化出的访问器一样,在执行次数足够多时升级为asm访问器
+   */
+  public Accessor wrapAccessor(ParserContext pCtx, char[] property, int start, int offset, Accessor accessor) {
+    readLock.lock();
+    try {
+      return classLoader.registerDynamicAccessor(new DynamicGetAccessor(pCtx, property, start, offset, 0, accessor));
+    }
+    finally {
+      readLock.unlock();
+    }
+  }
+
   public static final int SET_ACCESSOR = 1;
 
   /** 进行动态的set方法调用 */
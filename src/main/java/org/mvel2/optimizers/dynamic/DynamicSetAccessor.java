@@ -109,6 +109,17 @@ public class DynamicSetAccessor implements DynamicAccessor {
     stamp = currentTimeMillis();
   }
 
+  public boolean isOptimized() {
+    return _accessor != _safeAccessor;
+  }
+
+  public void tenure() {
+    if (!opt) {
+      runcount = DynamicOptimizer.tenuringThreshold;
+      stamp = currentTimeMillis();
+    }
+  }
+
   public String getDescription() {
     return description;
   }
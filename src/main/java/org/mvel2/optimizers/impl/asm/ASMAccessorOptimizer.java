@@ -37,6 +37,8 @@ import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.compiler.ExecutableStatement;
 import org.mvel2.compiler.PropertyVerifier;
 import org.mvel2.integration.GlobalListenerFactory;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.PropertyHandler;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.optimizers.AbstractOptimizer;
@@ -764,6 +766,8 @@ public class ASMAccessorOptimizer extends AbstractOptimizer implements AccessorO
       throw e;
     }
 
+    //只有在访问器类成功加载并实例化之后才计入优化次数
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyOptimized(Instrumentation.TIER_ASM);
     return (Accessor) o;
   }
 
@@ -2239,9 +2243,11 @@ private Object optimizeFieldMethodProperty(Object ctx, String property, Class<?>
      * This must be synchronized.  Two classes cannot be simultaneously deployed in the JVM.
      */
     ContextClassLoader contextClassLoader = getContextClassLoader();
-    return contextClassLoader == null ?
+    java.lang.Class cls = contextClassLoader == null ?
             classLoader.defineClassX(className, b, 0, b.length) :
             contextClassLoader.defineClass(className, b);
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyClassDefined(className);
+    return cls;
   }
 
   private boolean debug(String instruction) {
@@ -22,6 +22,8 @@ import org.mvel2.ast.FunctionInstance;
 import org.mvel2.ast.TypeDescriptor;
 import org.mvel2.compiler.*;
 import org.mvel2.integration.GlobalListenerFactory;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.PropertyHandler;
 import org.mvel2.integration.VariableResolver;
 import org.mvel2.integration.VariableResolverFactory;
@@ -108,6 +110,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
   /** 进行相应的get式访问优化 */
   public Accessor optimizeAccessor(ParserContext pCtx, char[] property, int start, int offset, Object ctx, Object thisRef,
                                    VariableResolverFactory factory, boolean root, Class ingressType) {
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyOptimized(Instrumentation.TIER_REFLECTIVE);
     this.rootNode = this.currNode = null;
     this.expr = property;
     this.start = start;
@@ -130,6 +133,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
   public Accessor optimizeSetAccessor(ParserContext pCtx, char[] property, int start, int offset, Object ctx,
                                       Object thisRef, VariableResolverFactory factory, boolean rootThisRef,
                                       Object value, Class ingressType) {
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyOptimized(Instrumentation.TIER_REFLECTIVE);
     this.rootNode = this.currNode = null;
     this.expr = property;
     this.start = start;
@@ -1296,6 +1300,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
   /** 优化直接集合变量的访问 */
   public Accessor optimizeCollection(ParserContext pCtx, Object o, Class type, char[] property, int start, int offset,
                                      Object ctx, Object thisRef, VariableResolverFactory factory) {
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyOptimized(Instrumentation.TIER_REFLECTIVE);
     this.start = this.cursor = start;
     this.length = start + offset;
     this.returnType = type;
@@ -1318,6 +1323,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
   /** 优化对象的创建过程，提供对象创建访问器 */
   public Accessor optimizeObjectCreation(ParserContext pCtx, char[] property, int start, int offset,
                                          Object ctx, Object thisRef, VariableResolverFactory factory) {
+    if (InstrumentationFactory.isEnabled()) InstrumentationFactory.notifyOptimized(Instrumentation.TIER_REFLECTIVE);
     this.length = start + offset;
     this.cursor = this.start = start;
     this.pCtx = pCtx;
@@ -0,0 +1,111 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.optimizers.impl.refl;
+
+import org.mvel2.ParserContext;
+import org.mvel2.compiler.Accessor;
+import org.mvel2.compiler.AccessorNode;
+import org.mvel2.integration.GlobalListenerFactory;
+import org.mvel2.optimizers.AccessorOptimizer;
+import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.optimizers.dynamic.DynamicOptimizer;
+import org.mvel2.optimizers.impl.refl.nodes.FieldAccessor;
+import org.mvel2.optimizers.impl.refl.nodes.GetterAccessor;
+import org.mvel2.optimizers.impl.refl.nodes.NullCheck;
+import org.mvel2.optimizers.impl.refl.nodes.VariableOrContextAccessor;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+
+import static org.mvel2.integration.PropertyHandlerFactory.hasPropertyHandler;
+import static org.mvel2.util.PropertyTools.getFieldOrAccessor;
+
+/**
+ * 在编译期根据声明的类型直接构建属性访问器,用于强类型编译下的提前优化
+ * 仅处理形如a.b.c的简单属性链,其中a为已声明类型的变量或输入,之后的每一级均为公共类的公共字段或getter.
+ * 输入也可以由上下文对象的属性提供,变量工厂中不存在时根节点按上下文属性访问,见{@link VariableOrContextAccessor}.
+ * 构建出的访问器与反射优化器在首次执行时生成的访问器相同,因此首次执行时不再需要经过优化过程.
+ * 默认优化器为动态优化器时,访问器同样被包装为动态访问器,执行次数足够多时升级为asm访问器;
+ * 默认优化器为其它需要运行期值的优化器(如asm)时不进行构建.
+ * 每一级均使用{@link NullCheck}包装,中间值为null时与首次执行时一样报出 null pointer 的属性访问异常.
+ * 若运行时的实际类型与声明不一致,访问器自身(如{@link GetterAccessor})或者节点的反优化过程会处理,
+ * 不能根据类型确定的属性链(集合,Map,方法调用,属性处理器等)返回null,仍然在首次执行时进行优化
+ */
+public class TypedAccessorBuilder {
+  private TypedAccessorBuilder() {
+  }
+
+  /** 根据解析上下文中声明的类型构建expr[start, start + offset)所表示的属性链的访问器,不能构建时返回null */
+  public static Accessor build(ParserContext pCtx, char[] expr, int start, int offset) {
+    if (pCtx.isIndexAllocation() || GlobalListenerFactory.hasGetListeners()) return null;
+
+    AccessorOptimizer optimizer = OptimizerFactory.getDefaultAccessorCompiler();
+    if (!(optimizer instanceof DynamicOptimizer || optimizer instanceof ReflectiveAccessorOptimizer)) return null;
+
+    String[] segments = new String(expr, start, offset).trim().split("\\.", -1);
+    for (String segment : segments) {
+      if (!isIdentifier(segment)) return null;
+    }
+
+    if ("this".equals(segments[0])) return null;
+    Class type = pCtx.getVarOrInputTypeOrNull(segments[0]);
+    if (type == null) return null;
+
+    AccessorNode root = new VariableOrContextAccessor(segments[0], pCtx);
+    AccessorNode tail = root;
+    for (int i = 1; i < segments.length; i++) {
+      if (!isBeanType(type)) return null;
+
+      Member member = getFieldOrAccessor(type, segments[i]);
+      if (member == null || !Modifier.isPublic(member.getDeclaringClass().getModifiers())) return null;
+
+      AccessorNode node;
+      if (member instanceof Field) {
+        node = new FieldAccessor((Field) member);
+        type = ((Field) member).getType();
+      }
+      else {
+        node = new GetterAccessor((Method) member);
+        type = ((Method) member).getReturnType();
+      }
+      tail = tail.setNextNode(new NullCheck(node, expr, start, offset, pCtx));
+    }
+
+    return optimizer instanceof DynamicOptimizer
+        ? ((DynamicOptimizer) optimizer).wrapAccessor(pCtx, expr, start, offset, root) : root;
+  }
+
+  /** 在编译期可以确定其属性访问方式的类型,Object以及集合,数组等交由运行期处理 */
+  private static boolean isBeanType(Class type) {
+    return type != Object.class && type != Class.class && !type.isPrimitive() && !type.isArray()
+        && !Map.class.isAssignableFrom(type) && !Collection.class.isAssignableFrom(type)
+        && !hasPropertyHandler(type);
+  }
+
+  private static boolean isIdentifier(String s) {
+    if (s.length() == 0 || !Character.isJavaIdentifierStart(s.charAt(0))) return false;
+    for (int i = 1; i < s.length(); i++) {
+      if (!Character.isJavaIdentifierPart(s.charAt(i))) return false;
+    }
+    return true;
+  }
+}
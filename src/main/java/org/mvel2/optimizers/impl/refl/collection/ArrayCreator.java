@@ -19,6 +19,7 @@ package org.mvel2.optimizers.impl.refl.collection;
 
 import org.mvel2.compiler.Accessor;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ImmutableDefaultFactory;
 
 import java.lang.reflect.Array;
 
@@ -34,12 +35,24 @@ public class ArrayCreator implements Accessor {
   public Accessor[] template;
   /** 构建出来的数组类型 */
   private Class arrayType;
+  /** 预先按数组类型构建好的常量值数组,非常量的位置为默认值.为null表示无法预先构建 */
+  private Object literals;
+  /** 非常量值所在的下标,仅这些位置需要在运行期进行计算 */
+  private int[] dynamic;
 
   public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
     //根据所定义的数组类型进行不同的处理,使用object或者是使用array.newInstance来处理
     if (Object.class.equals(arrayType)) {
       Object[] newArray = new Object[template.length];
 
+      if (literals != null) {
+        System.arraycopy(literals, 0, newArray, 0, newArray.length);
+        for (int i : dynamic) {
+          newArray[i] = template[i].getValue(ctx, elCtx, variableFactory);
+        }
+        return newArray;
+      }
+
       for (int i = 0; i < newArray.length; i++) {
         newArray[i] = template[i].getValue(ctx, elCtx, variableFactory);
       }
@@ -48,6 +61,15 @@ public class ArrayCreator implements Accessor {
     }
     else {
       Object newArray = newInstance(arrayType, template.length);
+
+      if (literals != null) {
+        System.arraycopy(literals, 0, newArray, 0, template.length);
+        for (int i : dynamic) {
+          Array.set(newArray, i, template[i].getValue(ctx, elCtx, variableFactory));
+        }
+        return newArray;
+      }
+
       for (int i = 0; i < template.length; i++) {
         Array.set(newArray, i, template[i].getValue(ctx, elCtx, variableFactory));
       }
@@ -65,6 +87,28 @@ public class ArrayCreator implements Accessor {
   public ArrayCreator(Accessor[] template, Class arrayType) {
     this.template = template;
     this.arrayType = arrayType;
+
+    //预先将常量项写入到模板数组中,运行时仅复制模板并计算非常量项
+    //如果常量与数组类型不匹配,则不使用模板,以保证运行时的报错行为不变
+    try {
+      Object lit = newInstance(arrayType, template.length);
+      int[] idx = new int[template.length];
+      int n = 0;
+      for (int i = 0; i < template.length; i++) {
+        if (template[i] instanceof ExprValueAccessor && ((ExprValueAccessor) template[i]).isLiteral()) {
+          Array.set(lit, i, template[i].getValue(null, null, new ImmutableDefaultFactory()));
+        }
+        else {
+          idx[n++] = i;
+        }
+      }
+      this.dynamic = new int[n];
+      System.arraycopy(idx, 0, dynamic, 0, n);
+      this.literals = lit;
+    }
+    catch (IllegalArgumentException e) {
+      this.literals = null;
+    }
   }
 
   /** 因为是创建对象,因此不能设置值信息 */
@@ -0,0 +1,255 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.optimizers.impl.refl.collection;
+
+import org.mvel2.compiler.Accessor;
+import org.mvel2.integration.VariableResolverFactory;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * 常量内联集合访问器,用于在编译期已经计算出值的内联集合,如 [1,2,3] 或 ['a':1]
+ * 默认每次执行时从预先计算好的模板中深度复制出新的可修改实例(ArrayList,HashMap及数组),与逐项创建的结果一致,
+ * 但不再需要逐项计算元素.
+ * 开启共享时,集合和map会被转换为(深度)不可修改的实例并在每次执行时共享返回,修改时抛出UnsupportedOperationException,
+ * 数组因无法设置为只读,仍然每次深度复制
+ */
+public class ConstantCollectionAccessor implements Accessor {
+  /** 预先计算好的常量值,共享时为不可修改的实例 */
+  private final Object value;
+  /** 是否直接返回共享的实例 */
+  private final boolean shared;
+  /** 声明的类型 */
+  private final Class egressType;
+
+  /**
+   * 使用编译期计算好的集合值进行构建
+   *
+   * @param value  集合值
+   * @param shared 是否共享返回不可修改的实例,为true时值必须满足{@link #isShareable(Object)}
+   * @param source 集合的源码,用于修改共享实例时的报错信息
+   */
+  public ConstantCollectionAccessor(Object value, boolean shared, String source) {
+    this.shared = shared && !value.getClass().isArray();
+    this.value = this.shared ? immutable(value, source) : value;
+    this.egressType = value instanceof List ? List.class : value instanceof Map ? Map.class : value.getClass();
+  }
+
+  public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
+    return shared ? value : copy(value);
+  }
+
+  /** 常量集合不能设置值 */
+  public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
+    return null;
+  }
+
+  public Class getKnownEgressType() {
+    return egressType;
+  }
+
+  /** 判断一个常量值是否可以使用此访问器,即集合,map或数组 */
+  public static boolean isFoldable(Object o) {
+    return o != null && (o.getClass().isArray() || o instanceof List || o instanceof Map);
+  }
+
+  /**
+   * 判断一个常量值是否可以作为不可修改的实例进行共享
+   * 空集合通常被用作累加的初始值,因此不进行共享;集合内部包含数组时,数组无法只读,也不进行共享
+   */
+  public static boolean isShareable(Object o) {
+    if (o instanceof List) return !((List) o).isEmpty() && !containsArray(o);
+    if (o instanceof Map) return !((Map) o).isEmpty() && !containsArray(o);
+    return false;
+  }
+
+  private static boolean containsArray(Object o) {
+    if (o == null) return false;
+    if (o.getClass().isArray()) return true;
+    if (o instanceof List) {
+      for (Object item : (List<?>) o) {
+        if (containsArray(item)) return true;
+      }
+    }
+    else if (o instanceof Map) {
+      for (Object item : ((Map<?, ?>) o).values()) {
+        if (containsArray(item)) return true;
+      }
+    }
+    return false;
+  }
+
+  /** 将集合及其内部的子集合均转换为不可修改的实例 */
+  private static Object immutable(Object o, String source) {
+    if (o instanceof List) {
+      List<?> list = (List<?>) o;
+      Object[] items = new Object[list.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = immutable(list.get(i), source);
+      }
+      return new ConstantList(items, source);
+    }
+    else if (o instanceof Map) {
+      Map<Object, Object> map = new HashMap<Object, Object>(((Map<?, ?>) o).size() * 2);
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+        map.put(entry.getKey(), immutable(entry.getValue(), source));
+      }
+      return new ConstantMap(map, source);
+    }
+    return o;
+  }
+
+  /** 深度复制集合,map及数组,每一层均重新创建,其它的常量值直接使用 */
+  private static Object copy(Object o) {
+    if (o instanceof List) {
+      List<?> list = (List<?>) o;
+      List<Object> newList = new ArrayList<Object>(list.size());
+      for (Object item : list) {
+        newList.add(copy(item));
+      }
+      return newList;
+    }
+    else if (o instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) o;
+      Map<Object, Object> newMap = new HashMap<Object, Object>(map.size() * 2);
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        newMap.put(entry.getKey(), copy(entry.getValue()));
+      }
+      return newMap;
+    }
+    else if (o != null && o.getClass().isArray()) {
+      return copyArray(o);
+    }
+    return o;
+  }
+
+  /** 深度复制数组,多维数组的每一层均重新创建 */
+  private static Object copyArray(Object array) {
+    int length = Array.getLength(array);
+    Object newArray = Array.newInstance(array.getClass().getComponentType(), length);
+    System.arraycopy(array, 0, newArray, 0, length);
+
+    if (!array.getClass().getComponentType().isPrimitive()) {
+      Object[] items = (Object[]) newArray;
+      for (int i = 0; i < length; i++) {
+        items[i] = copy(items[i]);
+      }
+    }
+    return newArray;
+  }
+
+  private static UnsupportedOperationException readOnly(String source) {
+    return new UnsupportedOperationException("cannot modify shared constant inline collection: " + source);
+  }
+
+  /**
+   * 不可修改的常量列表,所有的修改操作均会抛出UnsupportedOperationException
+   * 使用公开类而不是Collections.unmodifiableList,以便于asm优化器生成的访问代码可以直接访问
+   */
+  public static class ConstantList extends AbstractList<Object> implements RandomAccess, Serializable {
+    private final Object[] items;
+    private final String source;
+
+    public ConstantList(Object[] items, String source) {
+      this.items = items;
+      this.source = source;
+    }
+
+    public Object get(int index) {
+      return items[index];
+    }
+
+    public int size() {
+      return items.length;
+    }
+
+    public Object set(int index, Object element) {
+      throw readOnly(source);
+    }
+
+    public void add(int index, Object element) {
+      throw readOnly(source);
+    }
+
+    public Object remove(int index) {
+      throw readOnly(source);
+    }
+  }
+
+  /** 不可修改的常量map,所有的修改操作均会抛出UnsupportedOperationException */
+  public static class ConstantMap extends AbstractMap<Object, Object> implements Serializable {
+    private final Map<Object, Object> map;
+    private final String source;
+
+    public ConstantMap(Map<Object, Object> map, String source) {
+      this.map = map;
+      this.source = source;
+    }
+
+    public Object get(Object key) {
+      return map.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+      return map.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+      return map.containsValue(value);
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    public Object put(Object key, Object value) {
+      throw readOnly(source);
+    }
+
+    public Object remove(Object key) {
+      throw readOnly(source);
+    }
+
+    public void clear() {
+      throw readOnly(source);
+    }
+
+    public Set<Entry<Object, Object>> entrySet() {
+      return Collections.unmodifiableMap(map).entrySet();
+    }
+
+    public Set<Object> keySet() {
+      return Collections.unmodifiableSet(map.keySet());
+    }
+
+    public Collection<Object> values() {
+      return Collections.unmodifiableCollection(map.values());
+    }
+  }
+}
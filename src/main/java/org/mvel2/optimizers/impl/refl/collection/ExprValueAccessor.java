@@ -23,6 +23,7 @@ import org.mvel2.compiler.Accessor;
 import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.compiler.ExecutableStatement;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ImmutableDefaultFactory;
 import org.mvel2.util.ParseTools;
 
 import static org.mvel2.DataConversion.canConvert;
@@ -77,6 +78,22 @@ public class ExprValueAccessor implements Accessor {
     return null;
   }
 
+  /**
+   * 当前访问器是否为不可变的常量,即其值与上下文无关并且可以在多次执行之间共享,可以在编译期预先计算
+   * 值为集合等可修改对象,或者计算时出错的,仍然在每次执行时重新计算
+   */
+  public boolean isLiteral() {
+    if (!(stmt instanceof ExecutableLiteral || stmt.isLiteralOnly())) return false;
+    try {
+      Object v = stmt.getValue(null, new ImmutableDefaultFactory());
+      return v == null || v instanceof String || v instanceof Number || v instanceof Boolean
+          || v instanceof Character || v instanceof Class || v instanceof Enum;
+    }
+    catch (RuntimeException e) {
+      return false;
+    }
+  }
+
   /** 返回编译好的相应的表达式 */
   public ExecutableStatement getStmt() {
     return stmt;
@@ -20,6 +20,7 @@ package org.mvel2.optimizers.impl.refl.collection;
 
 import org.mvel2.compiler.Accessor;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ImmutableDefaultFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,13 +34,18 @@ import java.util.List;
 public class ListCreator implements Accessor {
   /** 预先处理的值访问器信息 */
   private Accessor[] values;
+  /** 预先计算好的常量值模板,非常量的位置为null */
+  private Object[] literals;
+  /** 非常量值所在的下标,仅这些位置需要在运行期进行计算 */
+  private int[] dynamic;
 
   public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
-    //实现时,即依次访问相应的值访问器,构建出数组,然后转换为list,即可
+    //实现时,先复制常量模板,再依次访问非常量的值访问器,构建出数组,然后转换为list,即可
     //这里采用ArrayList来声明具体的实现类型
-    Object[] template = new Object[getValues().length];
-    for (int i = 0; i < getValues().length; i++) {
-      template[i] = getValues()[i].getValue(ctx, elCtx, variableFactory);
+    Object[] template = new Object[literals.length];
+    System.arraycopy(literals, 0, template, 0, template.length);
+    for (int i : dynamic) {
+      template[i] = values[i].getValue(ctx, elCtx, variableFactory);
     }
     return new ArrayList<Object>(Arrays.asList(template));
   }
@@ -47,6 +53,20 @@ public class ListCreator implements Accessor {
   /** 通过已知的值访问器来创建出相应的访问器 */
   public ListCreator(Accessor[] values) {
     this.values = values;
+    this.literals = new Object[values.length];
+
+    int[] idx = new int[values.length];
+    int n = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] instanceof ExprValueAccessor && ((ExprValueAccessor) values[i]).isLiteral()) {
+        literals[i] = values[i].getValue(null, null, new ImmutableDefaultFactory());
+      }
+      else {
+        idx[n++] = i;
+      }
+    }
+    this.dynamic = new int[n];
+    System.arraycopy(idx, 0, dynamic, 0, n);
   }
 
   public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
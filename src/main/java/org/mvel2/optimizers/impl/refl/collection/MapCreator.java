@@ -19,9 +19,12 @@ package org.mvel2.optimizers.impl.refl.collection;
 
 import org.mvel2.compiler.Accessor;
 import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.ImmutableDefaultFactory;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * map对象创建器,用于内联的直接map创建,如下的表达式即会采用mapCreator来进行处理
@@ -35,10 +38,24 @@ public class MapCreator implements Accessor {
   private Accessor[] vals;
   /** 相应map的长度信息 */
   private int size;
+  /** 预先计算好的常量项(key和value均为常量),为null表示不能使用模板 */
+  private Map literals;
+  /** 非常量项所在的下标,倒序存放 */
+  private int[] dynamic;
 
   public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
     //直接依次调用相应的访问器,使用hashMap来进行构建
     Map map = new HashMap(size * 2);
+    if (literals != null) {
+      //noinspection unchecked
+      map.putAll(literals);
+      for (int i : dynamic) {
+        //noinspection unchecked
+        map.put(keys[i].getValue(ctx, elCtx, variableFactory), vals[i].getValue(ctx, elCtx, variableFactory));
+      }
+      return map;
+    }
+
     for (int i = size - 1; i != -1; i--) {
       //noinspection unchecked
       map.put(keys[i].getValue(ctx, elCtx, variableFactory), vals[i].getValue(ctx, elCtx, variableFactory));
@@ -50,6 +67,31 @@ public class MapCreator implements Accessor {
   public MapCreator(Accessor[] keys, Accessor[] vals) {
     this.size = (this.keys = keys).length;
     this.vals = vals;
+
+    //仅当所有的key均为常量并且没有重复时才使用常量模板,以保证与逐项put时相同的覆盖顺序
+    Map lit = new HashMap(size * 2);
+    Set seen = new HashSet(size * 2);
+    int[] idx = new int[size];
+    int n = 0;
+    for (int i = size - 1; i != -1; i--) {
+      if (!isLiteral(keys[i])) return;
+      Object key = keys[i].getValue(null, null, new ImmutableDefaultFactory());
+      if (!seen.add(key)) return;
+      if (isLiteral(vals[i])) {
+        //noinspection unchecked
+        lit.put(key, vals[i].getValue(null, null, new ImmutableDefaultFactory()));
+      }
+      else {
+        idx[n++] = i;
+      }
+    }
+    this.dynamic = new int[n];
+    System.arraycopy(idx, 0, dynamic, 0, n);
+    this.literals = lit;
+  }
+
+  private static boolean isLiteral(Accessor accessor) {
+    return accessor instanceof ExprValueAccessor && ((ExprValueAccessor) accessor).isLiteral();
   }
 
   public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
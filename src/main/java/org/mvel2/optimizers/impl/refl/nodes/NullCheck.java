@@ -0,0 +1,84 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.optimizers.impl.refl.nodes;
+
+import org.mvel2.ParserContext;
+import org.mvel2.PropertyAccessException;
+import org.mvel2.compiler.AccessorNode;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * 空值检查节点,用于编译期构建的属性链,包装属性链中的一级(不带下级节点的字段或getter访问器),
+ * 当前对象为null时按照与首次执行时的反射优化相同的方式报出空指针的属性访问异常,而不是由访问器报出调用失败.
+ * 下一级由当前节点直接调用,因此其报出的异常不会被被包装的访问器再次包装
+ * <p/>
+ * 如a.b.c,如果a.b为null,则报出 null pointer: a.b.c
+ */
+public class NullCheck implements AccessorNode {
+  /** 被包装的当前级访问器 */
+  private final AccessorNode step;
+  /** 下一级节点 */
+  private AccessorNode nextNode;
+  /** 整个属性链的表达式 */
+  private char[] expr;
+  private int start;
+  private int offset;
+  /** 解析上下文 */
+  private ParserContext pCtx;
+
+  public NullCheck(AccessorNode step, char[] expr, int start, int offset, ParserContext pCtx) {
+    this.step = step;
+    this.expr = expr;
+    this.start = start;
+    this.offset = offset;
+    this.pCtx = pCtx;
+  }
+
+  public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
+    if (ctx == null) throw nullPointer();
+    Object value = step.getValue(ctx, elCtx, variableFactory);
+    return nextNode == null ? value : nextNode.getValue(value, elCtx, variableFactory);
+  }
+
+  public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
+    if (ctx == null) throw nullPointer();
+    if (nextNode == null) return step.setValue(ctx, elCtx, variableFactory, value);
+    return nextNode.setValue(step.getValue(ctx, elCtx, variableFactory), elCtx, variableFactory, value);
+  }
+
+  private PropertyAccessException nullPointer() {
+    return new PropertyAccessException("null pointer: " + new String(expr, start, offset), expr, start, pCtx);
+  }
+
+  /** 被包装的当前级访问器 */
+  public AccessorNode getStep() {
+    return step;
+  }
+
+  public AccessorNode getNextNode() {
+    return nextNode;
+  }
+
+  public AccessorNode setNextNode(AccessorNode accessorNode) {
+    return this.nextNode = accessorNode;
+  }
+
+  public Class getKnownEgressType() {
+    return nextNode == null ? step.getKnownEgressType() : nextNode.getKnownEgressType();
+  }
+}
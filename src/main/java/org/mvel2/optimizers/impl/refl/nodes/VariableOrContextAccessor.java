@@ -0,0 +1,69 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mvel2.optimizers.impl.refl.nodes;
+
+import org.mvel2.ParserContext;
+import org.mvel2.compiler.Accessor;
+import org.mvel2.compiler.AccessorNode;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.optimizers.impl.refl.ReflectiveAccessorOptimizer;
+
+/**
+ * 编译期构建的属性链的根节点,声明的输入优先从变量工厂中获取,
+ * 变量工厂不能解析时与首次执行时的反射优化一样作为上下文对象的属性访问.
+ * 上下文属性的访问器在第一次需要时由反射优化器创建并缓存,并发创建时结果相同,因此不需要加锁
+ */
+public class VariableOrContextAccessor extends VariableAccessor {
+  /** 解析上下文,用于创建上下文属性的访问器 */
+  private final ParserContext pCtx;
+  /** 上下文属性的访问器 */
+  private volatile Accessor contextAccessor;
+
+  public VariableOrContextAccessor(String property, ParserContext pCtx) {
+    super(property);
+    this.pCtx = pCtx;
+  }
+
+  public Object getValue(Object ctx, Object elCtx, VariableResolverFactory vrf) {
+    String name = (String) getProperty();
+    Object value = vrf != null && vrf.isResolveable(name)
+        ? vrf.getVariableResolver(name).getValue() : contextAccessor(ctx, elCtx, vrf).getValue(ctx, elCtx, vrf);
+    AccessorNode next = getNextNode();
+    return next == null ? value : next.getValue(value, elCtx, vrf);
+  }
+
+  public Object setValue(Object ctx, Object elCtx, VariableResolverFactory vrf, Object value) {
+    String name = (String) getProperty();
+    if (vrf != null && vrf.isResolveable(name)) return super.setValue(ctx, elCtx, vrf, value);
+
+    AccessorNode next = getNextNode();
+    Accessor accessor = contextAccessor(ctx, elCtx, vrf);
+    if (next == null) return accessor.setValue(ctx, elCtx, vrf, value);
+    return next.setValue(accessor.getValue(ctx, elCtx, vrf), elCtx, vrf, value);
+  }
+
+  private Accessor contextAccessor(Object ctx, Object elCtx, VariableResolverFactory vrf) {
+    Accessor accessor = contextAccessor;
+    if (accessor == null) {
+      char[] property = ((String) getProperty()).toCharArray();
+      contextAccessor = accessor = new ReflectiveAccessorOptimizer()
+          .optimizeAccessor(pCtx, property, 0, property.length, ctx, elCtx, vrf, false, null);
+    }
+    return accessor;
+  }
+}
@@ -0,0 +1,432 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.sh;
+
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.integration.impl.SlotVariableResolverFactory;
+import org.mvel2.sh.text.CsvCodec;
+import org.mvel2.sh.text.JsonCodec;
+import org.mvel2.util.InputLayout;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.mvel2.util.ParseTools.loadFromFile;
+
+/**
+ * 批量记录处理:表达式只编译一次,然后以流的方式逐行读取json lines或csv格式的记录,
+ * 将每条记录的字段作为变量执行表达式,并将结果按json lines格式输出
+ * <p>
+ * 记录按批次提交给工作线程执行,每个工作线程持有自己的{@link SlotVariableResolverFactory},
+ * 每条记录只需重新绑定即可,不再为每条记录创建变量工厂及变量解析器.
+ * 默认输出顺序与批次完成的顺序一致,设置ordered时则保持与输入相同的顺序
+ * <p>
+ * 命令行用法:
+ * <pre>
+ * mvelsh batch (-e expression | -f script) [-i input] [-o output] [--format json|csv]
+ *              [-t threads] [--ordered] [--batch size] [--record]
+ * </pre>
+ * 未指定输入及输出时分别使用标准输入及标准输出,处理统计信息(记录数,错误数,耗时以及吞吐量)输出到标准错误
+ */
+public class BatchRunner {
+  /** 记录格式 */
+  public enum Format {
+    JSON, CSV
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Serializable compiled;
+  private final InputLayout layout;
+
+  private Format format = Format.JSON;
+  private int threads = 1;
+  private int batchSize = 256;
+  private boolean ordered;
+  private boolean emitRecord;
+
+  /** 每个工作线程的变量工厂 */
+  private final ThreadLocal<SlotVariableResolverFactory> factories = new ThreadLocal<SlotVariableResolverFactory>() {
+    protected SlotVariableResolverFactory initialValue() {
+      return layout.newFactory();
+    }
+  };
+
+  public BatchRunner(String expression) {
+    ParserContext ctx = new ParserContext();
+    this.compiled = MVEL.compileExpression(expression, ctx);
+    this.layout = InputLayout.of(ctx);
+  }
+
+  public BatchRunner setFormat(Format format) {
+    this.format = format;
+    return this;
+  }
+
+  /** 设置工作线程数,为1时在调用线程中直接执行 */
+  public BatchRunner setThreads(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+    this.threads = threads;
+    return this;
+  }
+
+  /** 设置每个批次的记录数 */
+  public BatchRunner setBatchSize(int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /** 设置是否保持输出顺序与输入顺序一致 */
+  public BatchRunner setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /** 设置是否输出执行之后的记录本身(而不是表达式的结果),可用于对记录进行转换 */
+  public BatchRunner setEmitRecord(boolean emitRecord) {
+    this.emitRecord = emitRecord;
+    return this;
+  }
+
+  public Stats run(InputStream in, OutputStream out, PrintStream err) throws IOException {
+    return run(Channels.newChannel(in), out, err);
+  }
+
+  /**
+   * 处理输入中的所有记录,结果逐行写入out,每条出错的记录在err中输出一行错误信息(包含行号)
+   * 输入通道在处理完成之后不会被关闭
+   */
+  public Stats run(ReadableByteChannel in, OutputStream out, PrintStream err) throws IOException {
+    BufferedReader reader = new BufferedReader(Channels.newReader(in, "UTF-8"), BUFFER_SIZE);
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), BUFFER_SIZE);
+
+    long start = System.nanoTime();
+    Stats stats = new Stats();
+
+    String[] header = null;
+    long lineNumber = 0;
+    if (format == Format.CSV) {
+      String line = reader.readLine();
+      if (line == null) {
+        stats.elapsed = System.nanoTime() - start;
+        return stats;
+      }
+      lineNumber++;
+      header = new CsvCodec().parseLine(line);
+    }
+
+    ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+    try {
+      int maxInFlight = threads * 2;
+      LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+      CompletionService<Chunk> completion = executor == null || ordered ? null : new ExecutorCompletionService<Chunk>(executor);
+      int inFlight = 0;
+
+      Chunk chunk = new Chunk(header, batchSize);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().length() == 0) continue;
+        chunk.add(line, lineNumber);
+
+        if (chunk.size() == batchSize) {
+          if (executor == null) {
+            write(chunk.call(), writer, err, stats);
+          }
+          else if (completion != null) {
+            completion.submit(chunk);
+            if (++inFlight >= maxInFlight) {
+              write(take(completion), writer, err, stats);
+              inFlight--;
+            }
+          }
+          else {
+            pending.add(executor.submit(chunk));
+            if (pending.size() >= maxInFlight) write(get(pending.removeFirst()), writer, err, stats);
+          }
+          chunk = new Chunk(header, batchSize);
+        }
+      }
+
+      if (chunk.size() != 0) {
+        if (executor == null) {
+          write(chunk.call(), writer, err, stats);
+        }
+        else if (completion != null) {
+          completion.submit(chunk);
+          inFlight++;
+        }
+        else {
+          pending.add(executor.submit(chunk));
+        }
+      }
+
+      while (inFlight-- > 0) write(take(completion), writer, err, stats);
+      while (!pending.isEmpty()) write(get(pending.removeFirst()), writer, err, stats);
+    }
+    finally {
+      if (executor != null) executor.shutdownNow();
+    }
+
+    writer.flush();
+    stats.elapsed = System.nanoTime() - start;
+    return stats;
+  }
+
+  private static Chunk take(CompletionService<Chunk> completion) throws IOException {
+    try {
+      return completion.take().get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("batch failed", e.getCause());
+    }
+  }
+
+  private static Chunk get(Future<Chunk> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("batch failed", e.getCause());
+    }
+  }
+
+  /** 在调用线程中输出一个批次的结果,保证输出不会交错 */
+  private static void write(Chunk chunk, Writer writer, PrintStream err, Stats stats) throws IOException {
+    for (int i = 0; i < chunk.size(); i++) {
+      if (chunk.errors[i] != null) {
+        stats.errors++;
+        if (err != null) err.println("line " + chunk.lineNumbers[i] + ": " + chunk.errors[i]);
+      }
+      else {
+        writer.write(chunk.outputs[i]);
+        writer.write('\n');
+      }
+      stats.records++;
+    }
+  }
+
+  /** 转换一行输入为记录 */
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> parse(String line, String[] header, CsvCodec csv) {
+    if (header == null) {
+      Object value = JsonCodec.parse(line);
+      if (!(value instanceof Map)) throw new IllegalArgumentException("record is not a json object");
+      return (Map<String, Object>) value;
+    }
+
+    String[] fields = csv.parseLine(line);
+    Map<String, Object> record = new LinkedHashMap<String, Object>(header.length * 2);
+    for (int i = 0; i < header.length; i++) {
+      record.put(header[i], i < fields.length ? CsvCodec.convert(fields[i]) : null);
+    }
+    return record;
+  }
+
+  /** 一个批次的记录,由工作线程执行,执行结果保存在批次中 */
+  private class Chunk implements Callable<Chunk> {
+    private final String[] header;
+    private final String[] lines;
+    private final long[] lineNumbers;
+    private final String[] outputs;
+    private final String[] errors;
+    private int size;
+
+    private Chunk(String[] header, int capacity) {
+      this.header = header;
+      this.lines = new String[capacity];
+      this.lineNumbers = new long[capacity];
+      this.outputs = new String[capacity];
+      this.errors = new String[capacity];
+    }
+
+    private void add(String line, long lineNumber) {
+      lines[size] = line;
+      lineNumbers[size++] = lineNumber;
+    }
+
+    private int size() {
+      return size;
+    }
+
+    public Chunk call() {
+      SlotVariableResolverFactory factory = factories.get();
+      CsvCodec csv = header == null ? null : new CsvCodec();
+      StringBuilder sb = new StringBuilder();
+
+      try {
+        for (int i = 0; i < size; i++) {
+          try {
+            Map<String, Object> record = parse(lines[i], header, csv);
+            Object result = MVEL.executeExpression(compiled, factory.bind(record));
+            sb.setLength(0);
+            JsonCodec.write(emitRecord ? record : result, sb);
+            outputs[i] = sb.toString();
+          }
+          catch (Exception e) {
+            errors[i] = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+          }
+          lines[i] = null;
+        }
+      }
+      finally {
+        factory.clear();
+      }
+      return this;
+    }
+  }
+
+  /** 处理统计 */
+  public static class Stats {
+    private long records;
+    private long errors;
+    private long elapsed;
+
+    public long getRecords() {
+      return records;
+    }
+
+    public long getErrors() {
+      return errors;
+    }
+
+    /** 总耗时(纳秒) */
+    public long getElapsedNanos() {
+      return elapsed;
+    }
+
+    /** 每秒处理的记录数 */
+    public double getRecordsPerSecond() {
+      return elapsed == 0 ? 0 : records * 1e9 / elapsed;
+    }
+
+    public String toString() {
+      return records + " records, " + errors + " errors in " + (elapsed / 1000000) + "ms ("
+          + (long) getRecordsPerSecond() + " records/sec)";
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Options options;
+    try {
+      options = Options.parse(args);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: batch (-e expression | -f script) [-i input] [-o output] [--format json|csv]");
+      System.err.println("             [-t threads] [--ordered] [--batch size] [--record]");
+      System.exit(1);
+      return;
+    }
+
+    BatchRunner runner = new BatchRunner(options.expression)
+        .setFormat(options.format)
+        .setThreads(options.threads)
+        .setBatchSize(options.batchSize)
+        .setOrdered(options.ordered)
+        .setEmitRecord(options.emitRecord);
+
+    String input = options.input;
+    String output = options.output;
+    ReadableByteChannel in = input == null ? Channels.newChannel(System.in) : new FileInputStream(input).getChannel();
+    OutputStream out = output == null ? System.out : new FileOutputStream(output);
+    try {
+      Stats stats = runner.run(in, out, System.err);
+      System.err.println(stats);
+    }
+    finally {
+      if (input != null) in.close();
+      if (output != null) out.close();
+      else out.flush();
+    }
+  }
+
+  /** 命令行参数,参数错误时抛出IllegalArgumentException,由main决定如何退出 */
+  private static class Options {
+    private String expression;
+    private String input;
+    private String output;
+    private Format format;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 256;
+    private boolean ordered;
+    private boolean emitRecord;
+
+    private static Options parse(String[] args) throws IOException {
+      Options options = new Options();
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if ("-e".equals(arg)) {
+          options.expression = value(args, ++i, arg);
+        }
+        else if ("-f".equals(arg)) {
+          options.expression = new String(loadFromFile(new File(value(args, ++i, arg))));
+        }
+        else if ("-i".equals(arg)) {
+          options.input = value(args, ++i, arg);
+        }
+        else if ("-o".equals(arg)) {
+          options.output = value(args, ++i, arg);
+        }
+        else if ("--format".equals(arg)) {
+          options.format = Format.valueOf(value(args, ++i, arg).toUpperCase());
+        }
+        else if ("-t".equals(arg)) {
+          options.threads = Integer.parseInt(value(args, ++i, arg));
+        }
+        else if ("--batch".equals(arg)) {
+          options.batchSize = Integer.parseInt(value(args, ++i, arg));
+        }
+        else if ("--ordered".equals(arg)) {
+          options.ordered = true;
+        }
+        else if ("--record".equals(arg)) {
+          options.emitRecord = true;
+        }
+        else {
+          throw new IllegalArgumentException("unknown option: " + arg);
+        }
+      }
+
+      if (options.expression == null) throw new IllegalArgumentException("no expression specified");
+      if (options.format == null) {
+        options.format = options.input != null && options.input.toLowerCase().endsWith(".csv") ? Format.CSV : Format.JSON;
+      }
+      return options;
+    }
+
+    private static String value(String[] args, int i, String option) {
+      if (i >= args.length) throw new IllegalArgumentException("missing value for " + option);
+      return args[i];
+    }
+  }
+}
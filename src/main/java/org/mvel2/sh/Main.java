@@ -25,7 +25,12 @@ import java.io.IOException;
 
 public class Main {
   public static void main(String[] args) throws IOException {
-    if (args.length != 0) {
+    if (args.length != 0 && "batch".equals(args[0])) {
+      String[] batchArgs = new String[args.length - 1];
+      System.arraycopy(args, 1, batchArgs, 0, batchArgs.length);
+      BatchRunner.main(batchArgs);
+    }
+    else if (args.length != 0) {
       MVEL.evalFile(new File(args[0]));
     }
     else {
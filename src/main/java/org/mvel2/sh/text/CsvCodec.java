@@ -0,0 +1,125 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.sh.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 简单的csv行解析,支持双引号包围的字段以及字段内使用两个双引号表示一个双引号
+ * 按行进行处理,因此不支持字段内包含换行的情况
+ */
+public class CsvCodec {
+  private final char separator;
+
+  public CsvCodec() {
+    this(',');
+  }
+
+  public CsvCodec(char separator) {
+    this.separator = separator;
+  }
+
+  /** 将一行解析为字段数组 */
+  public String[] parseLine(String line) {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder sb = new StringBuilder();
+    boolean quoted = false;
+
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+            sb.append('"');
+            i++;
+          }
+          else {
+            quoted = false;
+          }
+        }
+        else {
+          sb.append(c);
+        }
+      }
+      else if (c == '"') {
+        quoted = true;
+      }
+      else if (c == separator) {
+        fields.add(sb.toString());
+        sb.setLength(0);
+      }
+      else {
+        sb.append(c);
+      }
+    }
+    fields.add(sb.toString());
+
+    return fields.toArray(new String[fields.size()]);
+  }
+
+  /**
+   * 将字段值转换为合适的类型:整数转换为Integer或Long,小数转换为Double,true/false转换为Boolean,空字段转换为null
+   * 其它的保持为字符串
+   */
+  public static Object convert(String field) {
+    int len = field.length();
+    if (len == 0) return null;
+    if ("true".equals(field)) return Boolean.TRUE;
+    if ("false".equals(field)) return Boolean.FALSE;
+
+    int i = field.charAt(0) == '-' ? 1 : 0;
+    if (i == len) return field;
+
+    boolean decimal = false;
+    for (; i < len; i++) {
+      char c = field.charAt(i);
+      if (c == '.' && !decimal) {
+        decimal = true;
+      }
+      else if (c < '0' || c > '9') {
+        return field;
+      }
+    }
+
+    try {
+      if (decimal) return Double.valueOf(field);
+      long l = Long.parseLong(field);
+      return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? (Object) (int) l : (Object) l;
+    }
+    catch (NumberFormatException e) {
+      return field;
+    }
+  }
+
+  /** 将值编码为csv字段,必要时使用双引号包围 */
+  public String write(Object value) {
+    if (value == null) return "";
+    String s = String.valueOf(value);
+    if (s.indexOf(separator) == -1 && s.indexOf('"') == -1 && s.indexOf('\n') == -1) return s;
+
+    StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"') sb.append('"');
+      sb.append(c);
+    }
+    return sb.append('"').toString();
+  }
+}
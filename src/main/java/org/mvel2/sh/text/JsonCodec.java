@@ -0,0 +1,322 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.sh.text;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 简单的json编解码,用于批量处理中的json lines格式的记录读取以及结果输出
+ * 对象解析为LinkedHashMap,数组解析为ArrayList,整数优先解析为Integer,超出范围时为Long,带小数或指数的为Double
+ */
+public class JsonCodec {
+  private final String json;
+  private int pos;
+
+  private JsonCodec(String json) {
+    this.json = json;
+  }
+
+  /** 解析一个完整的json值 */
+  public static Object parse(String json) {
+    JsonCodec codec = new JsonCodec(json);
+    Object value = codec.value();
+    codec.skipWhitespace();
+    if (codec.pos != json.length()) throw codec.error("unexpected trailing characters");
+    return value;
+  }
+
+  /**
+   * 将对象编码为json,Map编码为对象,集合及数组编码为数组,数字及布尔值直接输出,其它对象按字符串输出
+   * json中没有NaN以及无穷大的表示,这些值编码为null
+   */
+  public static String write(Object value) {
+    StringBuilder sb = new StringBuilder();
+    write(value, sb);
+    return sb.toString();
+  }
+
+  public static void write(Object value, StringBuilder sb) {
+    if (value == null || isNonFinite(value)) {
+      sb.append("null");
+    }
+    else if (value instanceof Number || value instanceof Boolean) {
+      sb.append(value);
+    }
+    else if (value instanceof Map) {
+      sb.append('{');
+      boolean first = true;
+      for (Object o : ((Map) value).entrySet()) {
+        Map.Entry e = (Map.Entry) o;
+        if (!first) sb.append(',');
+        first = false;
+        writeString(String.valueOf(e.getKey()), sb);
+        sb.append(':');
+        write(e.getValue(), sb);
+      }
+      sb.append('}');
+    }
+    else if (value instanceof Collection) {
+      sb.append('[');
+      boolean first = true;
+      for (Object o : (Collection) value) {
+        if (!first) sb.append(',');
+        first = false;
+        write(o, sb);
+      }
+      sb.append(']');
+    }
+    else if (value.getClass().isArray()) {
+      sb.append('[');
+      for (int i = 0, len = Array.getLength(value); i < len; i++) {
+        if (i != 0) sb.append(',');
+        write(Array.get(value, i), sb);
+      }
+      sb.append(']');
+    }
+    else {
+      writeString(String.valueOf(value), sb);
+    }
+  }
+
+  /** 是否为NaN或者无穷大的浮点数 */
+  private static boolean isNonFinite(Object value) {
+    if (value instanceof Double) {
+      Double d = (Double) value;
+      return d.isNaN() || d.isInfinite();
+    }
+    if (value instanceof Float) {
+      Float f = (Float) value;
+      return f.isNaN() || f.isInfinite();
+    }
+    return false;
+  }
+
+  private static void writeString(String s, StringBuilder sb) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append("\\u");
+            String hex = Integer.toHexString(c);
+            for (int j = hex.length(); j < 4; j++) sb.append('0');
+            sb.append(hex);
+          }
+          else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  private Object value() {
+    skipWhitespace();
+    if (pos >= json.length()) throw error("unexpected end of input");
+
+    char c = json.charAt(pos);
+    switch (c) {
+      case '{':
+        return object();
+      case '[':
+        return array();
+      case '"':
+        return string();
+      case 't':
+        return literal("true", Boolean.TRUE);
+      case 'f':
+        return literal("false", Boolean.FALSE);
+      case 'n':
+        return literal("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) return number();
+        throw error("unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> object() {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    pos++;
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+      return map;
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') throw error("expected string key");
+      String key = string();
+      skipWhitespace();
+      expect(':');
+      map.put(key, value());
+      skipWhitespace();
+      if (peek() == ',') {
+        pos++;
+      }
+      else {
+        expect('}');
+        return map;
+      }
+    }
+  }
+
+  private List<Object> array() {
+    List<Object> list = new ArrayList<Object>();
+    pos++;
+    skipWhitespace();
+    if (peek() == ']') {
+      pos++;
+      return list;
+    }
+    while (true) {
+      list.add(value());
+      skipWhitespace();
+      if (peek() == ',') {
+        pos++;
+      }
+      else {
+        expect(']');
+        return list;
+      }
+    }
+  }
+
+  private String string() {
+    pos++;
+    StringBuilder sb = null;
+    int start = pos;
+    while (pos < json.length()) {
+      char c = json.charAt(pos);
+      if (c == '"') {
+        String s = sb == null ? json.substring(start, pos) : sb.append(json, start, pos).toString();
+        pos++;
+        return s;
+      }
+      else if (c == '\\') {
+        if (sb == null) sb = new StringBuilder();
+        sb.append(json, start, pos);
+        if (++pos >= json.length()) break;
+        char e = json.charAt(pos++);
+        switch (e) {
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > json.length()) throw error("bad unicode escape");
+            sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+            pos += 4;
+            break;
+          default:
+            sb.append(e);
+        }
+        start = pos;
+      }
+      else {
+        pos++;
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  private Object number() {
+    int start = pos;
+    boolean decimal = false;
+    if (peek() == '-') pos++;
+    while (pos < json.length()) {
+      char c = json.charAt(pos);
+      if (c >= '0' && c <= '9') {
+        pos++;
+      }
+      else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        decimal = true;
+        pos++;
+      }
+      else {
+        break;
+      }
+    }
+
+    String s = json.substring(start, pos);
+    try {
+      if (decimal) return Double.valueOf(s);
+      long l = Long.parseLong(s);
+      return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? (Object) (int) l : (Object) l;
+    }
+    catch (NumberFormatException e) {
+      if (!decimal) return Double.valueOf(s);
+      throw error("bad number: " + s);
+    }
+  }
+
+  private Object literal(String text, Object value) {
+    if (!json.startsWith(text, pos)) throw error("unexpected token");
+    pos += text.length();
+    return value;
+  }
+
+  private void expect(char c) {
+    if (peek() != c) throw error("expected '" + c + "'");
+    pos++;
+  }
+
+  private char peek() {
+    return pos < json.length() ? json.charAt(pos) : '\0';
+  }
+
+  private void skipWhitespace() {
+    while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + pos);
+  }
+}
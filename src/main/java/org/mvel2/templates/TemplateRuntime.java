@@ -21,6 +21,7 @@ package org.mvel2.templates;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.ImmutableDefaultFactory;
 import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.mvel2.optimizers.Prewarmer;
 import org.mvel2.templates.res.Node;
 import org.mvel2.templates.util.TemplateOutputStream;
 import org.mvel2.templates.util.TemplateTools;
@@ -179,6 +180,11 @@ public class TemplateRuntime {
     return execute(compiled.getRoot(), compiled.getTemplate(), new StringBuilder(), context, new MapVariableResolverFactory(vars), null);
   }
 
+  /** 使用样例输入预热模板中所有表达式的访问器,参见{@link Prewarmer} */
+  public static Prewarmer.Report prewarm(CompiledTemplate compiled, Object sampleContext, Map sampleVars, Prewarmer.Tier tier) {
+    return Prewarmer.prewarm(compiled, sampleContext, sampleVars, tier);
+  }
+
   public static void execute(CompiledTemplate compiled, Object context, Map vars, OutputStream stream) {
     execute(compiled.getRoot(), compiled.getTemplate(), new StandardOutputStream(stream), context, new MapVariableResolverFactory(vars), null);
   }
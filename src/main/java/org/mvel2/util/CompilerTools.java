@@ -22,6 +22,7 @@ import org.mvel2.CompileException;
 import org.mvel2.Operator;
 import org.mvel2.ParserContext;
 import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.AdaptivePredicate;
 import org.mvel2.ast.And;
 import org.mvel2.ast.BinaryOperation;
 import org.mvel2.ast.BooleanNode;
@@ -36,10 +37,13 @@ import org.mvel2.ast.IntMult;
 import org.mvel2.ast.IntOptimized;
 import org.mvel2.ast.IntSub;
 import org.mvel2.ast.LiteralNode;
+import org.mvel2.ast.Negation;
 import org.mvel2.ast.Or;
 import org.mvel2.ast.RegExMatchNode;
+import org.mvel2.ast.Sign;
 import org.mvel2.ast.Soundslike;
 import org.mvel2.ast.Strsim;
+import org.mvel2.ast.Substatement;
 import org.mvel2.compiler.Accessor;
 import org.mvel2.compiler.BlankLiteral;
 import org.mvel2.compiler.CompiledExpression;
@@ -48,8 +52,13 @@ import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.ClassImportResolverFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.mvel2.Operator.PTABLE;
 import static org.mvel2.util.ASTBinaryTree.buildTree;
@@ -228,7 +237,8 @@ public class CompilerTools {
             optimizeOperator(tkOp2.getOperator(), bo, tkOp2, astLinkedList, optimizedAst, pCtx);
           }
           else {
-            optimizedAst.addTokenNode(bo);
+            //开启了常量折叠时,操作数均已折叠为常量的运算直接计算出结果
+            optimizedAst.addTokenNode(pCtx.getParserConfiguration().isConstantFolding() ? foldConstantOperation(bo, pCtx) : bo);
           }
         }
         else if (tkOp.isOperator()) {
@@ -308,7 +318,8 @@ public class CompilerTools {
 
             }
 
-            optimizedAst.addTokenNode(bool);
+            //开启了自适应排序时,将无副作用的条件链转换为自适应条件链
+            optimizedAst.addTokenNode(pCtx.isAdaptivePredicates() ? adaptPredicates(bool, pCtx) : bool);
 
             if (tkOp2 != null && tkOp2 != tkOp) {
               optimizedAst.addTokenNode(tkOp2);
@@ -328,6 +339,29 @@ public class CompilerTools {
     return optimizedAst;
   }
 
+  /**
+   * 对操作数均为常量的二元运算在编译期求值,用于常量折叠之后(如Math.max(10, 20) * 2)的进一步化简,
+   * 无法求值时(如运算会抛出异常)保留原运算,由运行期处理
+   */
+  private static ASTNode foldConstantOperation(ASTNode node, ParserContext pCtx) {
+    if (!(node instanceof BinaryOperation)) return node;
+
+    BinaryOperation bo = (BinaryOperation) node;
+    ASTNode left = foldConstantOperation(bo.getLeft(), pCtx);
+    ASTNode right = foldConstantOperation(bo.getRight(), pCtx);
+    if (left != bo.getLeft()) bo.setLeft(left);
+    if (right != bo.getRight()) bo.setRight(right);
+
+    if (!(left instanceof LiteralNode) || !(right instanceof LiteralNode)) return bo;
+    try {
+      Object value = bo.getReducedValueAccelerated(null, null, null);
+      return value == null ? bo : new LiteralNode(value, pCtx);
+    }
+    catch (RuntimeException e) {
+      return bo;
+    }
+  }
+
   /** 整数计算优化 */
   private static BinaryOperation boOptimize(int op, ASTNode tk, ASTNode tk2, ParserContext pCtx) {
     if (tk.getEgressType() == Integer.class && tk2.getEgressType() == Integer.class) {
@@ -413,6 +447,137 @@ public class CompilerTools {
     }
   }
 
+  /** 默认认为无副作用的方法,即常用的比较,字符串及集合查询方法 */
+  private static final Set<String> PURE_METHODS = new HashSet<String>(Arrays.asList(
+      "equals", "equalsIgnoreCase", "hashCode", "toString", "compareTo", "compareToIgnoreCase", "getClass",
+      "length", "charAt", "isEmpty", "contains", "startsWith", "endsWith", "indexOf", "lastIndexOf", "matches",
+      "substring", "trim", "toLowerCase", "toUpperCase", "size", "get", "containsKey", "containsValue",
+      "intValue", "longValue", "doubleValue", "floatValue", "booleanValue", "abs", "min", "max"));
+
+  /**
+   * 将由 && 或 || 组成的条件链转换为自适应条件链.同一类型的相邻节点被展开为一组条件,
+   * 条件本身为另一类型的条件链时递归进行转换.只有所有条件均无副作用时才进行转换,否则保持原有的执行顺序
+   */
+  private static ASTNode adaptPredicates(ASTNode node, ParserContext pCtx) {
+    if (!(node instanceof And || node instanceof Or)) return node;
+
+    boolean conjunction = node instanceof And;
+    List<ASTNode> terms = new ArrayList<ASTNode>();
+    flattenChain(node, conjunction, terms);
+
+    boolean pure = true;
+    for (int i = 0; i < terms.size(); i++) {
+      ASTNode term = adaptPredicates(terms.get(i), pCtx);
+      terms.set(i, term);
+      pure &= isSideEffectFree(term, pCtx.getPureMethods());
+    }
+
+    if (pure) {
+      AdaptivePredicate predicate = new AdaptivePredicate(terms.toArray(new ASTNode[terms.size()]), conjunction, pCtx);
+      pCtx.addAdaptivePredicate(predicate);
+      return predicate;
+    }
+
+    //存在有副作用的条件,按照原有顺序重新组合(内部的条件链可能已被转换)
+    BooleanNode chain = conjunction ? new And(terms.get(0), terms.get(1), false, pCtx) : new Or(terms.get(0), terms.get(1), false, pCtx);
+    for (int i = 2; i < terms.size(); i++) {
+      chain = conjunction ? new And(chain, terms.get(i), false, pCtx) : new Or(chain, terms.get(i), false, pCtx);
+    }
+    return chain;
+  }
+
+  /** 按照从左到右的顺序展开同一类型的条件链 */
+  private static void flattenChain(ASTNode node, boolean conjunction, List<ASTNode> terms) {
+    if (conjunction ? node instanceof And : node instanceof Or) {
+      flattenChain(((BooleanNode) node).getLeft(), conjunction, terms);
+      flattenChain(((BooleanNode) node).getRight(), conjunction, terms);
+    }
+    else {
+      terms.add(node);
+    }
+  }
+
+  /**
+   * 判断节点在执行时是否没有副作用,即可以重复执行或者调整执行顺序.
+   * 常量,二元运算以及条件链根据其操作数判断;属性读取,括号子语句,取反及正负号根据源码判断:
+   * 不能包含赋值,自增自减,对象创建以及白名单(默认白名单,pureMethods以及无参数的getXxx/isXxx形式的读取方法)之外的方法调用
+   * 其它节点(如赋值,函数定义,代码块)均认为有副作用
+   */
+  public static boolean isSideEffectFree(ASTNode node, Set<String> pureMethods) {
+    if (node == null) return false;
+    if (node instanceof AdaptivePredicate || node instanceof LiteralNode) return true;
+    if (node instanceof BooleanNode) {
+      BooleanNode b = (BooleanNode) node;
+      return isSideEffectFree(b.getLeft(), pureMethods) && isSideEffectFree(b.getRight(), pureMethods);
+    }
+    if (node.getClass() == ASTNode.class || node instanceof Substatement || node instanceof Negation || node instanceof Sign) {
+      return node.getExpr() != null && isSideEffectFree(node.getExpr(), node.getStart(), node.getOffset(), pureMethods);
+    }
+    return false;
+  }
+
+  /** 根据源码判断指定区间的表达式是否没有副作用 */
+  private static boolean isSideEffectFree(char[] expr, int start, int offset, Set<String> pureMethods) {
+    int end = Math.min(start + offset, expr.length);
+    for (int i = Math.max(start, 0); i < end; i++) {
+      char c = expr[i];
+      switch (c) {
+        case '\'':
+        case '"':
+          //跳过字符串常量,区间内的字符串不完整时无法判断
+          try {
+            i = ParseTools.captureStringLiteral(c, expr, i, end);
+          }
+          catch (CompileException e) {
+            return false;
+          }
+          continue;
+        case '=':
+          if (i + 1 < end && expr[i + 1] == '=') {
+            i++;
+            continue;
+          }
+          if (i > start && "!<>~".indexOf(expr[i - 1]) != -1) continue;
+          return false;
+        case '+':
+        case '-':
+          if (i + 1 < end && expr[i + 1] == c) return false;
+          continue;
+      }
+
+      if (Character.isJavaIdentifierStart(c) && (i == start || !Character.isJavaIdentifierPart(expr[i - 1]))) {
+        int s = i;
+        while (i + 1 < end && Character.isJavaIdentifierPart(expr[i + 1])) i++;
+        String name = new String(expr, s, i + 1 - s);
+        if ("new".equals(name) || "def".equals(name) || "function".equals(name)) return false;
+
+        int next = i + 1;
+        while (next < end && Character.isWhitespace(expr[next])) next++;
+        if (next < end && expr[next] == '(') {
+          int close = next + 1;
+          while (close < end && Character.isWhitespace(expr[close])) close++;
+          if (!isPureMethod(name, close < end && expr[close] == ')', pureMethods)) return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 方法是否为纯方法:白名单中的方法,或者无参数的getXxx/isXxx形式的读取方法
+   * getAndXxx形式的方法(如AtomicInteger.getAndIncrement)为修改操作,不视为读取方法
+   */
+  private static boolean isPureMethod(String name, boolean noArgs, Set<String> pureMethods) {
+    if (PURE_METHODS.contains(name) || pureMethods.contains(name)) return true;
+    if (!noArgs || isAccessorName(name, "getAnd")) return false;
+    return isAccessorName(name, "get") || isAccessorName(name, "is");
+  }
+
+  /** 是否是形如getXxx的读取方法名 */
+  private static boolean isAccessorName(String name, String prefix) {
+    return name.length() > prefix.length() && name.startsWith(prefix) && Character.isUpperCase(name.charAt(prefix.length()));
+  }
+
   /** 两个节点之间是否不支持进一步优化级联，即左侧一个优化 的 a + b ? c这种操作，这里的?优先级更高， 因此需要把a 和b拆开，形成 a + (b ? c)的这种形式 */
   private static boolean isIntOptimizationviolation(BooleanNode bn, ASTNode bn2) {
     return (bn instanceof IntOptimized && bn2.getEgressType() != Integer.class);
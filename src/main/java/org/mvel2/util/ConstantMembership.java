@@ -0,0 +1,133 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.util;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mvel2.util.ParseTools.containsCheck;
+
+/**
+ * 对编译期即可确定的常量集合预先建立的成员判定结构,用于contains操作中左侧为常量集合的情况
+ * 判定结果与{@link ParseTools#containsCheck(Object, Object)}保持一致:
+ * <ul>
+ * <li>集合使用equals语义,直接使用哈希集合进行判定</li>
+ * <li>map判定是否包含相应的key</li>
+ * <li>数组使用数学运算中的相等语义(会进行类型转换),因此仅对全部为字符串或全部为整数的数组建立索引,
+ * 并且仅在被判定值为相同类别的类型时使用索引,其它情况仍然逐个比较</li>
+ * </ul>
+ * 实例在创建后不可变,可以在多个线程之间共享
+ */
+public abstract class ConstantMembership implements Serializable {
+
+  /** 判定指定值是否在常量集合中 */
+  public abstract boolean contains(Object test);
+
+  /** 为常量值创建相应的判定结构,不能建立索引时返回null */
+  public static ConstantMembership of(Object constant) {
+    if (constant instanceof Collection) {
+      return new SetMembership(new HashSet<Object>((Collection<?>) constant));
+    }
+    else if (constant instanceof Map) {
+      return new SetMembership(new HashSet<Object>(((Map<?, ?>) constant).keySet()));
+    }
+    else if (constant instanceof Object[]) {
+      return ArrayMembership.of((Object[]) constant);
+    }
+    return null;
+  }
+
+  /** 基于equals语义的判定 */
+  private static class SetMembership extends ConstantMembership {
+    private final Set<Object> values;
+
+    private SetMembership(Set<Object> values) {
+      this.values = values;
+    }
+
+    public boolean contains(Object test) {
+      return values.contains(test);
+    }
+  }
+
+  /** 基于数组相等语义的判定,只对同类别的值使用索引 */
+  private static class ArrayMembership extends ConstantMembership {
+    /** 原始数组,在不能使用索引时逐个比较 */
+    private final Object[] array;
+    /** 全部为字符串时的索引 */
+    private final Set<String> strings;
+    /** 全部为整数时的索引 */
+    private final Set<Long> integrals;
+
+    private ArrayMembership(Object[] array, Set<String> strings, Set<Long> integrals) {
+      this.array = array;
+      this.strings = strings;
+      this.integrals = integrals;
+    }
+
+    private static ConstantMembership of(Object[] array) {
+      boolean allStrings = true;
+      boolean allIntegrals = true;
+      for (Object o : array) {
+        allStrings &= o instanceof String;
+        allIntegrals &= integralKey(o) != null;
+      }
+
+      if (array.length == 0 || !(allStrings || allIntegrals)) return null;
+
+      Set<String> strings = null;
+      Set<Long> integrals = null;
+      if (allStrings) {
+        strings = new HashSet<String>(array.length * 2);
+        for (Object o : array) strings.add((String) o);
+      }
+      else {
+        integrals = new HashSet<Long>(array.length * 2);
+        for (Object o : array) integrals.add(integralKey(o));
+      }
+      return new ArrayMembership(array.clone(), strings, integrals);
+    }
+
+    /** 获取整数值的统一表示,不是整数或超出long范围时返回null */
+    private static Long integralKey(Object o) {
+      if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+        return ((Number) o).longValue();
+      }
+      else if (o instanceof BigInteger && ((BigInteger) o).bitLength() < 64) {
+        return ((BigInteger) o).longValue();
+      }
+      return null;
+    }
+
+    public boolean contains(Object test) {
+      if (strings != null && test instanceof String) {
+        return strings.contains(test);
+      }
+      else if (integrals != null) {
+        Long key = integralKey(test);
+        if (key != null) return integrals.contains(key);
+      }
+      return containsCheck(array, test);
+    }
+  }
+}
@@ -135,6 +135,11 @@ public class FunctionParser {
      * 根据最终解析到的各种数据构建出相应的函数对象
      * Produce the funciton node.
      */
+    //增量编译时,顶层函数优先复用之前的编译结果
+    if (pCtx.getIncrementalCompiler() != null && !pCtx.isFunctionContext()) {
+      return pCtx.getIncrementalCompiler().function(name, expr, startCond, endCond - startCond, blockStart, blockEnd - blockStart, fields, pCtx);
+    }
+
     return new Function(name, expr, startCond, endCond - startCond, blockStart, blockEnd - blockStart, fields, pCtx);
   }
 
@@ -0,0 +1,131 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.util;
+
+import org.mvel2.ParserContext;
+import org.mvel2.integration.impl.SlotVariableResolverFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译期确定的外部变量布局,为每一个外部输入变量分配一个固定的槽位下标
+ * 布局通常在编译完成之后由解析上下文中的输入变量(包括非强类型模式下自动登记的变量)生成,
+ * 执行时通过{@link SlotVariableResolverFactory}将Map或数组一次性绑定到槽位上,
+ * 之后的变量访问均通过下标直接完成,不再逐次通过变量名查找Map以及创建变量解析器
+ * <p>
+ * 布局本身是不可变的,可以在多个线程之间共享
+ */
+public class InputLayout implements Serializable {
+  /** 按槽位排列的变量名 */
+  private final String[] names;
+  /** 按槽位排列的变量类型 */
+  private final Class[] types;
+  /** 变量名到槽位的映射 */
+  private final Map<String, Integer> slots;
+
+  /** 使用指定的变量名构建布局,槽位即为变量名的顺序,类型均为Object */
+  public InputLayout(String... names) {
+    this(names, null);
+  }
+
+  /** 使用指定的变量名及类型构建布局 */
+  public InputLayout(String[] names, Class[] types) {
+    this.names = names.clone();
+    this.types = new Class[names.length];
+    this.slots = new HashMap<String, Integer>(names.length * 2);
+
+    for (int i = 0; i < names.length; i++) {
+      if (slots.put(names[i], i) != null) {
+        throw new IllegalArgumentException("duplicate input variable: " + names[i]);
+      }
+      this.types[i] = types == null || types[i] == null ? Object.class : types[i];
+    }
+  }
+
+  /**
+   * 根据解析上下文生成布局,顺序入参(withIndexedVars)排在最前面并保持其顺序,
+   * 其余的输入变量按照声明(登记)的顺序依次排列
+   */
+  public static InputLayout of(ParserContext pCtx) {
+    List<String> names = new ArrayList<String>();
+    List<Class> types = new ArrayList<Class>();
+
+    Map<String, Class> inputs = pCtx.getInputs();
+    if (pCtx.hasIndexedInputs()) {
+      for (String name : pCtx.getIndexedVarNames()) {
+        names.add(name);
+        types.add(inputs == null ? null : inputs.get(name));
+      }
+    }
+
+    if (inputs != null) {
+      for (Map.Entry<String, Class> entry : inputs.entrySet()) {
+        if (!names.contains(entry.getKey())) {
+          names.add(entry.getKey());
+          types.add(entry.getValue());
+        }
+      }
+    }
+
+    return new InputLayout(names.toArray(new String[names.size()]), types.toArray(new Class[types.size()]));
+  }
+
+  /** 获取变量所在的槽位,不在布局中时返回-1 */
+  public int slotOf(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  /** 获取指定槽位的变量名 */
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  /** 获取按槽位排列的变量名,可用于组装以数组方式传入的变量值 */
+  public String[] getNames() {
+    return names.clone();
+  }
+
+  /** 获取指定槽位的变量类型 */
+  public Class getType(int slot) {
+    return types[slot];
+  }
+
+  /** 创建一个基于此布局的变量工厂,工厂可在同一线程中通过重新绑定反复使用 */
+  public SlotVariableResolverFactory newFactory() {
+    return new SlotVariableResolverFactory(this);
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < names.length; i++) {
+      if (i != 0) sb.append(", ");
+      sb.append(i).append(':').append(names[i]);
+    }
+    return sb.append(']').toString();
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 关键字表,用于存储操作符及常量等关键字,在HashMap的基础上提供了直接基于字符数组区间的查找
+ * 查找通过一个在第一次使用时构建的字典树完成,不需要为每一个待查找的标识符创建字符串,表被修改后字典树会自动重建
+ */
+public class KeywordTable<V> extends HashMap<String, V> {
+  /** 查找不到时的返回值,因为表中的值可能为null */
+  public static final Object NOT_FOUND = new Object();
+
+  private transient volatile Node trie;
+
+  public KeywordTable() {
+  }
+
+  public KeywordTable(Map<String, V> m) {
+    super(m);
+  }
+
+  /**
+   * 在表中查找指定字符数组区间所表示的关键字
+   *
+   * @return 关键字对应的值,不存在时返回{@link #NOT_FOUND}
+   */
+  public Object lookup(char[] expr, int start, int length) {
+    Node n = trie;
+    if (n == null) trie = n = build();
+
+    int end = start + length;
+    for (int i = start; i < end && n != null; i++) {
+      n = n.child(expr[i]);
+    }
+    return n != null && n.terminal ? n.value : NOT_FOUND;
+  }
+
+  /**
+   * 在任意的map中查找关键字,如果map为关键字表则不创建字符串
+   *
+   * @return 关键字对应的值,不存在时返回{@link #NOT_FOUND}
+   */
+  public static Object lookup(Map<String, ?> map, char[] expr, int start, int length) {
+    if (map instanceof KeywordTable) {
+      return ((KeywordTable) map).lookup(expr, start, length);
+    }
+    String key = new String(expr, start, length);
+    return map.containsKey(key) ? map.get(key) : NOT_FOUND;
+  }
+
+  private Node build() {
+    Node root = new Node();
+    for (Map.Entry<String, V> e : entrySet()) {
+      Node n = root;
+      String key = e.getKey();
+      for (int i = 0; i < key.length(); i++) {
+        n = n.add(key.charAt(i));
+      }
+      n.terminal = true;
+      n.value = e.getValue();
+    }
+    return root;
+  }
+
+  public V put(String key, V value) {
+    trie = null;
+    return super.put(key, value);
+  }
+
+  public void putAll(Map<? extends String, ? extends V> m) {
+    trie = null;
+    super.putAll(m);
+  }
+
+  public V remove(Object key) {
+    trie = null;
+    return super.remove(key);
+  }
+
+  public void clear() {
+    trie = null;
+    super.clear();
+  }
+
+  /** 字典树节点,子节点按字符有序存放 */
+  private static class Node {
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    private boolean terminal;
+    private Object value;
+
+    private Node child(char c) {
+      char[] k = keys;
+      int lo = 0;
+      int hi = k.length - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (k[mid] < c) lo = mid + 1;
+        else if (k[mid] > c) hi = mid - 1;
+        else return children[mid];
+      }
+      return null;
+    }
+
+    private Node add(char c) {
+      Node n = child(c);
+      if (n != null) return n;
+
+      int pos = 0;
+      while (pos < keys.length && keys[pos] < c) pos++;
+
+      char[] k = new char[keys.length + 1];
+      Node[] ch = new Node[children.length + 1];
+      System.arraycopy(keys, 0, k, 0, pos);
+      System.arraycopy(children, 0, ch, 0, pos);
+      k[pos] = c;
+      ch[pos] = n = new Node();
+      System.arraycopy(keys, pos, k, pos + 1, keys.length - pos);
+      System.arraycopy(children, pos, ch, pos + 1, children.length - pos);
+      keys = k;
+      children = ch;
+      return n;
+    }
+  }
+}
@@ -32,6 +32,7 @@ import org.mvel2.compiler.ExecutableAccessor;
 import org.mvel2.compiler.ExecutableAccessorSafe;
 import org.mvel2.compiler.ExecutableLiteral;
 import org.mvel2.compiler.ExpressionCompiler;
+import org.mvel2.integration.InstrumentationFactory;
 import org.mvel2.integration.VariableResolverFactory;
 import org.mvel2.integration.impl.ClassImportResolverFactory;
 import org.mvel2.math.MathProcessor;
@@ -2047,6 +2048,37 @@ public class ParseTools {
     return same / baselength;
   }
 
+  /**
+   * 使用预先准备好的字符数组与字符串计算相似度,结果与{@link #similarity(String, String)}一致
+   * 用于其中一方为常量的场景,计算过程中不再复制字符串
+   */
+  public static float similarity(char[] c1, String s2) {
+    if (c1 == null || s2 == null)
+      return c1 == null && s2 == null ? 1f : 0f;
+
+    int len = Math.min(c1.length, s2.length());
+    float same = 0;
+    for (int i = 0; i < len; i++) {
+      if (c1[i] == s2.charAt(i)) same++;
+    }
+
+    return same / Math.max(c1.length, s2.length());
+  }
+
+  /**
+   * 批量计算相似度,使用一个字符串与多个候选字符串进行比较,探测字符串的字符数据仅准备一次
+   *
+   * @return 与候选字符串一一对应的相似度
+   */
+  public static float[] similarity(String probe, String[] candidates) {
+    char[] c = probe == null ? null : probe.toCharArray();
+    float[] res = new float[candidates.length];
+    for (int i = 0; i < candidates.length; i++) {
+      res[i] = similarity(c, candidates[i]);
+    }
+    return res;
+  }
+
   /** 查找到字符串数组针对于set时，其正确的结尾属性,如 a.b,其结尾为a,并且相应的位置为 a.的位置，b则为要处理的属性 */
   public static int findAbsoluteLast(char[] array) {
     int depth = 0;
@@ -2207,9 +2239,10 @@ public class ParseTools {
 
   public static Serializable optimizeTree(final CompiledExpression compiled) {
     /**
+     * 开启指标收集时保留编译表达式本身,以保证执行耗时能够按照源名称进行统计
      * If there is only one token, and it's an identifier, we can optimize this as an accessor expression.
      */
-    if (!compiled.isImportInjectionRequired() &&
+    if (!compiled.isImportInjectionRequired() && !InstrumentationFactory.isEnabled() &&
         compiled.getParserConfiguration().isAllowBootstrapBypass() && compiled.isSingleNode()) {
 
       return _optimizeTree(compiled);
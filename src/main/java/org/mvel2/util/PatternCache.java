@@ -0,0 +1,182 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 正则表达式缓存,在所有表达式之间共享,用于正则式来自于变量等非常量的场景(如 name ~= rule.pattern)
+ * 缓存按正则字符串+标记进行存储,超过上限时会随机淘汰已有的项,上限可以通过系统属性 mvel2.regex.cache_size 进行配置
+ * 同时对每个线程复用最近一次使用的Matcher对象,以避免每次匹配时均创建新的Matcher
+ */
+public class PatternCache {
+  /** 默认的缓存上限 */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private static final ConcurrentMap<Object, Pattern> cache = new ConcurrentHashMap<Object, Pattern>();
+  private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong evictions = new AtomicLong();
+
+  /** 每个线程最近一次使用的matcher */
+  private static final ThreadLocal<Matcher> matcher = new ThreadLocal<Matcher>();
+
+  static {
+    String size = System.getProperty("mvel2.regex.cache_size");
+    if (size != null) {
+      try {
+        maxSize = Integer.parseInt(size);
+      }
+      catch (NumberFormatException e) {
+        // use the default
+      }
+    }
+  }
+
+  /** 获取(或编译并缓存)指定的正则式 */
+  public static Pattern compile(String regex) {
+    return compile(regex, 0);
+  }
+
+  /**
+   * 获取(或编译并缓存)指定的正则式
+   *
+   * @param flags 编译标记,与{@link Pattern#compile(String, int)}相同
+   * @throws java.util.regex.PatternSyntaxException 正则式不合法时抛出,不合法的正则式不会被缓存
+   */
+  public static Pattern compile(String regex, int flags) {
+    Object key = flags == 0 ? regex : new Key(regex, flags);
+    Pattern p = cache.get(key);
+    if (p != null) {
+      hits.incrementAndGet();
+      return p;
+    }
+
+    misses.incrementAndGet();
+    p = Pattern.compile(regex, flags);
+    if (maxSize <= 0) return p;
+
+    while (cache.size() >= maxSize) {
+      Iterator<Object> iter = cache.keySet().iterator();
+      if (!iter.hasNext()) break;
+      iter.next();
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+
+    Pattern existing = cache.putIfAbsent(key, p);
+    return existing == null ? p : existing;
+  }
+
+  /** 使用正则式对输入进行完全匹配,复用当前线程的matcher */
+  public static boolean matches(Pattern pattern, CharSequence input) {
+    Matcher m = matcher.get();
+    if (m == null || m.pattern() != pattern) {
+      matcher.set(m = pattern.matcher(input));
+    }
+    else {
+      m.reset(input);
+    }
+
+    try {
+      return m.matches();
+    }
+    finally {
+      //不持有输入的引用
+      m.reset("");
+    }
+  }
+
+  /** 使用正则字符串对输入进行完全匹配,正则式从缓存中获取 */
+  public static boolean matches(String regex, CharSequence input) {
+    return matches(compile(regex), input);
+  }
+
+  /** 缓存命中次数 */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /** 缓存未命中(即需要编译)的次数 */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  /** 因超过上限而被淘汰的次数 */
+  public static long getEvictions() {
+    return evictions.get();
+  }
+
+  /** 当前缓存的正则式个数 */
+  public static int size() {
+    return cache.size();
+  }
+
+  public static int getMaxSize() {
+    return maxSize;
+  }
+
+  /** 设置缓存上限,小于等于0时表示不进行缓存 */
+  public static void setMaxSize(int size) {
+    maxSize = size;
+    while (cache.size() > Math.max(size, 0)) {
+      Iterator<Object> iter = cache.keySet().iterator();
+      if (!iter.hasNext()) break;
+      iter.next();
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** 清除缓存及统计信息 */
+  public static void clear() {
+    cache.clear();
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+  }
+
+  /** 带有编译标记的缓存key */
+  private static final class Key {
+    private final String regex;
+    private final int flags;
+
+    private Key(String regex, int flags) {
+      this.regex = regex;
+      this.flags = flags;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return flags == k.flags && regex.equals(k.regex);
+    }
+
+    public int hashCode() {
+      return 31 * regex.hashCode() + flags;
+    }
+  }
+}
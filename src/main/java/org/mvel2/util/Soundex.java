@@ -71,4 +71,79 @@ public class Soundex {
 
     return res.toString();
   }
+
+  /** 表示无法映射为soundex编码的编码值 */
+  public static final int NO_CODE = 0;
+
+  /**
+   * 计算字符串的soundex编码,与{@link #soundex(String)}的结果一一对应,但以int的方式返回,计算过程中不分配对象
+   * 编码的每一位数字各占4个bit,不足4位时补0,因此两个字符串读音相似当且仅当其编码相等
+   *
+   * @return 无法映射时返回 {@link #NO_CODE}
+   */
+  public static int soundexCode(String s) {
+    int code = 0;
+    int len = 0;
+    char prev = '?';
+
+    for (int i = 0; i < s.length() && len < 4; i++) {
+      char c = s.charAt(i);
+      if (c == ',') break;
+
+      if (c >= 'a' && c <= 'z') {
+        c -= 'a' - 'A';
+      }
+      else if (c > 127) {
+        //非ascii字符的大写转换可能会改变长度(如ß),交由原有实现进行处理
+        return pack(soundex(s));
+      }
+
+      if (c >= 'A' && c <= 'Z' && c != prev) {
+        prev = c;
+
+        char m = MAP[c - 'A'];
+        if (m != '0') {
+          code = (code << 4) | (m - '0');
+          len++;
+        }
+      }
+    }
+
+    if (len == 0) return NO_CODE;
+
+    return code << ((4 - len) << 2);
+  }
+
+  /** 将字符串格式的soundex编码转换为int格式 */
+  private static int pack(String soundex) {
+    if (soundex == null) return NO_CODE;
+
+    int code = 0;
+    for (int i = 0; i < 4; i++) {
+      code = (code << 4) | (soundex.charAt(i) - '0');
+    }
+    return code;
+  }
+
+  /** 判断两个字符串的soundex编码是否相同,任意一方无法映射为soundex编码时均不匹配 */
+  public static boolean soundsLike(String s1, String s2) {
+    int code = soundexCode(s1);
+    return code != NO_CODE && code == soundexCode(s2);
+  }
+
+  /**
+   * 批量匹配,使用一个字符串与多个候选字符串进行soundex匹配,探测字符串的编码仅计算一次
+   *
+   * @return 与候选字符串一一对应的匹配结果,候选字符串为null或者任意一方无法映射为soundex编码时结果为false
+   */
+  public static boolean[] soundsLike(String probe, String[] candidates) {
+    int code = soundexCode(probe);
+    boolean[] res = new boolean[candidates.length];
+    if (code == NO_CODE) return res;
+
+    for (int i = 0; i < candidates.length; i++) {
+      res[i] = candidates[i] != null && soundexCode(candidates[i]) == code;
+    }
+    return res;
+  }
 }
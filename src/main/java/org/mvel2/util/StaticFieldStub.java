@@ -28,6 +28,10 @@ public class StaticFieldStub implements StaticStub {
     }
   }
 
+  public Field getField() {
+    return field;
+  }
+
   public Object call(Object ctx, Object thisCtx, VariableResolverFactory factory, Object[] parameters) {
     return cachedValue;
   }
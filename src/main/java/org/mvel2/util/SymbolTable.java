@@ -0,0 +1,95 @@
+/**
+ * MVEL 2.0
+ * Copyright (C) 2007 The Codehaus
+ * Mike Brock, Dhanji Prasanna, John Graham, Mark Proctor
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mvel2.util;
+
+/**
+ * 编译期使用的标识符符号表,直接根据字符数组区间获取规范化的字符串,相同的标识符只会创建一次字符串对象
+ * 符号表按线程存放,不需要同步;超过容量上限时会被清空,以限制内存占用
+ */
+public class SymbolTable {
+  private static final int MAX_SIZE = 4096;
+
+  private static final ThreadLocal<SymbolTable> tables = new ThreadLocal<SymbolTable>() {
+    protected SymbolTable initialValue() {
+      return new SymbolTable();
+    }
+  };
+
+  /** 开放寻址的散列表,容量为2的幂 */
+  private String[] symbols = new String[256];
+  private int size;
+
+  /** 获取字符数组区间对应的规范化字符串 */
+  public static String intern(char[] expr, int start, int length) {
+    return tables.get().get(expr, start, length);
+  }
+
+  private String get(char[] expr, int start, int length) {
+    int h = 0;
+    for (int i = start, end = start + length; i < end; i++) {
+      h = 31 * h + expr[i];
+    }
+
+    int mask = symbols.length - 1;
+    int idx = (h ^ (h >>> 16)) & mask;
+    String s;
+    while ((s = symbols[idx]) != null) {
+      if (s.hashCode() == h && matches(s, expr, start, length)) return s;
+      idx = (idx + 1) & mask;
+    }
+
+    s = new String(expr, start, length);
+    if (size >= MAX_SIZE) {
+      symbols = new String[256];
+      size = 0;
+      idx = (h ^ (h >>> 16)) & (symbols.length - 1);
+    }
+    else if ((size + 1) * 2 > symbols.length) {
+      rehash();
+      mask = symbols.length - 1;
+      idx = (h ^ (h >>> 16)) & mask;
+      while (symbols[idx] != null) idx = (idx + 1) & mask;
+    }
+
+    symbols[idx] = s;
+    size++;
+    return s;
+  }
+
+  private static boolean matches(String s, char[] expr, int start, int length) {
+    if (s.length() != length) return false;
+    for (int i = 0; i < length; i++) {
+      if (s.charAt(i) != expr[start + i]) return false;
+    }
+    return true;
+  }
+
+  private void rehash() {
+    String[] old = symbols;
+    symbols = new String[old.length * 2];
+    int mask = symbols.length - 1;
+    for (String s : old) {
+      if (s == null) continue;
+      int h = s.hashCode();
+      int idx = (h ^ (h >>> 16)) & mask;
+      while (symbols[idx] != null) idx = (idx + 1) & mask;
+      symbols[idx] = s;
+    }
+  }
+}
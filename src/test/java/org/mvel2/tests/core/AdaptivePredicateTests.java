@@ -0,0 +1,177 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.ast.AdaptivePredicate;
+import org.mvel2.optimizers.OptimizerFactory;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AdaptivePredicateTests extends TestCase {
+
+  public static class Checks {
+    public int calls;
+
+    public boolean slowCheck(int v) {
+      calls++;
+      long acc = 0;
+      for (int i = 0; i < 20000; i++) acc += i ^ v;
+      return acc != 0;
+    }
+
+    public boolean record(int v) {
+      calls++;
+      return true;
+    }
+
+    public boolean third(int v) {
+      calls++;
+      return v % 3 == 0;
+    }
+
+    public int slowLength(String s) {
+      long acc = 0;
+      for (int i = 0; i < 200000; i++) acc += i ^ s.length();
+      return acc == 0 ? 0 : s.length();
+    }
+  }
+
+  public void testDisabledByDefault() {
+    ParserContext ctx = new ParserContext();
+    MVEL.compileExpression("a > 1 && b > 2", ctx);
+    assertTrue(ctx.getAdaptivePredicates().isEmpty());
+  }
+
+  public void testCheapSelectiveTermMovesFirst() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true).addPureMethods("slowCheck");
+    Serializable s = MVEL.compileExpression("checks.slowCheck(x) && x > 990", ctx);
+
+    assertEquals(1, ctx.getAdaptivePredicates().size());
+    AdaptivePredicate p = ctx.getAdaptivePredicates().get(0);
+    p.setReorderInterval(64);
+    assertEquals(0, p.getOrder()[0]);
+
+    Checks checks = new Checks();
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("checks", checks);
+    for (int i = 0; i < 1000; i++) {
+      vars.put("x", i);
+      assertEquals(i > 990, MVEL.executeExpression(s, vars));
+    }
+
+    assertEquals(1, p.getOrder()[0]);
+    assertTrue(checks.calls < 500);
+    assertTrue(p.getPassRate(1) < 0.1);
+
+    p.reset();
+    assertEquals(0, p.getOrder()[0]);
+    assertEquals(0, p.getExecutions());
+  }
+
+  public void testOrChainReordered() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true);
+    Serializable s = MVEL.compileExpression("name.startsWith('zz') || x < 1000", ctx);
+    AdaptivePredicate p = ctx.getAdaptivePredicates().get(0);
+    assertFalse(p.isConjunction());
+    p.setReorderInterval(32);
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("name", "abc");
+    for (int i = 0; i < 200; i++) {
+      vars.put("x", i);
+      assertEquals(Boolean.TRUE, MVEL.executeExpression(s, vars));
+    }
+    assertEquals(1, p.getOrder()[0]);
+  }
+
+  public void testSideEffectsPreventReordering() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true);
+    MVEL.compileExpression("checks.record(x) && x > 5", ctx);
+    MVEL.compileExpression("(y = x) > 1 && x > 5", ctx);
+    MVEL.compileExpression("x++ > 1 || x > 5", ctx);
+    assertTrue(ctx.getAdaptivePredicates().isEmpty());
+  }
+
+  public void testNestedPureChainAdaptedInsideImpureChain() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true);
+    Serializable s = MVEL.compileExpression("checks.record(x) || (x > 5 && x < 10)", ctx);
+    assertFalse(ctx.getAdaptivePredicates().isEmpty());
+    for (AdaptivePredicate p : ctx.getAdaptivePredicates()) {
+      assertTrue(p.isConjunction());
+    }
+
+    Checks checks = new Checks();
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("checks", checks);
+    vars.put("x", 1);
+    assertEquals(Boolean.TRUE, MVEL.executeExpression(s, vars));
+    assertEquals(1, checks.calls);
+  }
+
+  public void testGuardDependencyFallsBackToSourceOrder() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true);
+    Serializable s = MVEL.compileExpression("name != null && name.length() > 2", ctx);
+    AdaptivePredicate p = ctx.getAdaptivePredicates().get(0);
+    p.setReorderInterval(16);
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    for (int i = 0; i < 400; i++) {
+      vars.put("name", i % 50 == 0 ? null : (i % 2 == 0 ? "a" : "abcd"));
+      assertEquals(vars.get("name") != null && ((String) vars.get("name")).length() > 2,
+          MVEL.executeExpression(s, vars));
+    }
+
+    if (p.getOrder()[0] != 0) fail("guard must run first once pinned or never reordered");
+  }
+
+  public void testOnlyZeroArgAccessorsArePure() {
+    ParserContext ctx = new ParserContext().setAdaptivePredicates(true);
+    MVEL.compileExpression("counter.getAndIncrement() > 5 && x > 1", ctx);
+    MVEL.compileExpression("list.getItem(x) != null && x > 1", ctx);
+    MVEL.compileExpression("set.hasNext() && x > 1", ctx);
+    assertTrue(ctx.getAdaptivePredicates().isEmpty());
+
+    MVEL.compileExpression("person.getName() == 'bob' && person.isActive( )", ctx);
+    assertEquals(1, ctx.getAdaptivePredicates().size());
+  }
+
+  public void testFallbackDoesNotRerunEvaluatedTerms() {
+    // the generated ASM accessors do not survive a null argument here, keep to reflective calls
+    String defaultOptimizer = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer(OptimizerFactory.SAFE_REFLECTIVE);
+    try {
+      ParserContext ctx = new ParserContext().setAdaptivePredicates(true).addPureMethods("third", "slowLength");
+      Serializable s = MVEL.compileExpression("checks.third(x) && name != null && checks.slowLength(name) > 2", ctx);
+      AdaptivePredicate p = ctx.getAdaptivePredicates().get(0);
+      p.setReorderInterval(64);
+
+      Checks checks = new Checks();
+      Map<String, Object> vars = new HashMap<String, Object>();
+      vars.put("checks", checks);
+      // third(x) is cheap and fails most often, the length check is slow and seldom fails,
+      // and the null guard never fails: the expected order is third(x), length check, guard
+      for (int i = 0; i < 640; i++) {
+        vars.put("x", i);
+        vars.put("name", i % 20 == 0 ? "a" : "abcd");
+        MVEL.executeExpression(s, vars);
+      }
+      int[] order = p.getOrder();
+      assertEquals(0, order[0]);
+      assertEquals(2, order[1]);
+
+      // the reordered chain fails on the length check; third(x) already ran and must not run again
+      checks.calls = 0;
+      vars.put("x", 0);
+      vars.put("name", null);
+      assertEquals(Boolean.FALSE, MVEL.executeExpression(s, vars));
+      assertEquals(1, checks.calls);
+      assertTrue(p.isPinned());
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(defaultOptimizer);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.compiler.BatchCompiler;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchCompilerTests extends TestCase {
+
+  public void testCompileAllInParallel() {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.addImport("Lists", java.util.Arrays.class);
+
+    List<BatchCompiler.Source> sources = new ArrayList<BatchCompiler.Source>();
+    for (int i = 0; i < 200; i++) {
+      sources.add(new BatchCompiler.Source("rule" + i, "import java.util.HashMap; x * " + i + " + Lists.asList(1, 2).size()"));
+    }
+    sources.add(new BatchCompiler.Source("broken", "x * * ("));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    BatchCompiler.Report report;
+    try {
+      report = MVEL.compileAll(sources, conf, executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    assertEquals(201, report.getResults().size());
+    assertEquals(1, report.getFailureCount());
+    assertEquals(200, report.getCompiled().size());
+    assertTrue(report.getErrors().containsKey("broken"));
+    assertFalse(report.getErrors().get("broken").isEmpty());
+    assertEquals("broken", report.getResults().get(200).getSource().getName());
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", 2);
+    Serializable s = report.getCompiled().get("rule7");
+    assertEquals(16, MVEL.executeExpression(s, vars));
+
+    // imports performed by the sources must not leak into the shared configuration
+    assertFalse(conf.hasImport("HashMap"));
+
+    assertTrue(report.getPercentile(50) <= report.getPercentile(90));
+    assertTrue(report.getPercentile(90) <= report.getPercentile(100));
+    assertTrue(report.getCumulativeTime() >= report.getPercentile(100));
+  }
+
+  public void testCompileAllInCallerThread() {
+    List<BatchCompiler.Source> sources = new ArrayList<BatchCompiler.Source>();
+    sources.add(new BatchCompiler.Source("a", "1 + 1"));
+    sources.add(new BatchCompiler.Source("b", "'foo'.length()"));
+
+    BatchCompiler.Report report = BatchCompiler.compileAll(sources, null, null);
+    assertEquals(0, report.getFailureCount());
+    assertEquals(2, MVEL.executeExpression(report.getCompiled().get("a")));
+    assertEquals(3, MVEL.executeExpression(report.getCompiled().get("b")));
+  }
+
+  public void testErrorIsRecordedAsFailure() {
+    List<BatchCompiler.Source> sources = new ArrayList<BatchCompiler.Source>();
+    sources.add(new BatchCompiler.Source("a", "1 + 1"));
+    sources.add(new BatchCompiler.Source("b", "2") {
+      public String getExpression() {
+        throw new AssertionError("source unavailable");
+      }
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    BatchCompiler.Report report;
+    try {
+      report = BatchCompiler.compileAll(sources, null, executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, report.getFailureCount());
+    BatchCompiler.Result failed = report.getResults().get(1);
+    assertTrue(failed.getException() instanceof AssertionError);
+    assertFalse(report.getErrors().get("b").isEmpty());
+    assertNotNull(report.toString());
+  }
+}
@@ -0,0 +1,152 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchExecutionTests extends TestCase {
+
+  public static class Row {
+    private final int qty;
+    private final double price;
+
+    public Row(int qty, double price) {
+      this.qty = qty;
+      this.price = price;
+    }
+
+    public int getQty() {
+      return qty;
+    }
+
+    public double getPrice() {
+      return price;
+    }
+  }
+
+  private static Row[] rows(int n) {
+    Row[] rows = new Row[n];
+    for (int i = 0; i < n; i++) rows[i] = new Row(i, i * 0.5);
+    return rows;
+  }
+
+  public void testObjectResults() {
+    Serializable s = MVEL.compileExpression("qty * factor");
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("factor", 3);
+
+    Row[] rows = rows(10);
+    Object[] results = new Object[rows.length];
+    MVEL.executeBatch(s, rows, vars, results);
+    for (int i = 0; i < rows.length; i++) {
+      assertEquals(MVEL.executeExpression(s, rows[i], vars), results[i]);
+    }
+  }
+
+  public void testPrimitiveResults() {
+    Row[] rows = rows(20);
+
+    boolean[] flags = new boolean[rows.length];
+    MVEL.executeBatch(MVEL.compileExpression("qty > 10"), rows, null, flags);
+
+    int[] ints = new int[rows.length];
+    MVEL.executeBatch(MVEL.compileExpression("qty + 1"), rows, null, ints);
+
+    long[] longs = new long[rows.length];
+    MVEL.executeBatch(MVEL.compileExpression("qty * 1000000000L"), rows, null, longs);
+
+    double[] doubles = new double[rows.length];
+    MVEL.executeBatch(MVEL.compileExpression("qty * price"), rows, null, doubles);
+
+    for (int i = 0; i < rows.length; i++) {
+      assertEquals(i > 10, flags[i]);
+      assertEquals(i + 1, ints[i]);
+      assertEquals(i * 1000000000L, longs[i]);
+      assertEquals(i * i * 0.5, doubles[i], 0.0000001);
+    }
+  }
+
+  public void testNullPrimitiveResult() {
+    double[] doubles = new double[2];
+    MVEL.executeBatch(MVEL.compileExpression("null"), rows(2), null, doubles);
+    assertTrue(Double.isNaN(doubles[0]));
+  }
+
+  public void testReturnDoesNotLeakIntoNextExecution() {
+    Serializable s = MVEL.compileExpression("if (qty % 2 == 0) { return 'even'; } 'odd'");
+    Object[] results = new Object[6];
+    MVEL.executeBatch(s, rows(6), new HashMap(), results);
+    for (int i = 0; i < results.length; i++) {
+      assertEquals(i % 2 == 0 ? "even" : "odd", results[i]);
+    }
+  }
+
+  public void testImportsAndAssignments() {
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("Math", Math.class);
+    Serializable s = MVEL.compileExpression("last = Math.max(qty, 3); last", ctx);
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    Object[] results = new Object[5];
+    MVEL.executeBatch(s, rows(5), vars, results);
+    assertEquals(3, results[0]);
+    assertEquals(4, results[4]);
+    assertEquals(4, vars.get("last"));
+  }
+
+  public void testResultArrayTooSmall() {
+    try {
+      MVEL.executeBatch(MVEL.compileExpression("qty"), rows(3), null, new int[2]);
+      fail("expected an exception");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testParallel() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Row> rows = new ArrayList<Row>();
+      for (int i = 0; i < 5000; i++) rows.add(new Row(i, 1));
+
+      Map<String, Object> vars = new HashMap<String, Object>();
+      vars.put("offset", 7L);
+
+      long[] results = new long[rows.size()];
+      MVEL.executeBatch(MVEL.compileExpression("qty + offset"), rows, vars, results, executor);
+      for (int i = 0; i < results.length; i++) {
+        assertEquals(i + 7L, results[i]);
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testParallelFailurePropagates() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Object> rows = new ArrayList<Object>();
+      for (int i = 0; i < 2000; i++) rows.add(new Row(i, 1));
+      rows.set(1500, null);
+
+      MVEL.executeBatch(MVEL.compileExpression("qty"), rows, null, new Object[rows.size()], executor);
+      fail("expected an exception");
+    }
+    catch (RuntimeException e) {
+      // expected
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+}
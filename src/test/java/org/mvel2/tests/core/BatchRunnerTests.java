@@ -0,0 +1,112 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.sh.BatchRunner;
+import org.mvel2.sh.text.CsvCodec;
+import org.mvel2.sh.text.JsonCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class BatchRunnerTests extends TestCase {
+
+  private static String run(BatchRunner runner, String input, ByteArrayOutputStream err, BatchRunner.Stats[] stats) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BatchRunner.Stats s = runner.run(new ByteArrayInputStream(input.getBytes("UTF-8")), out, new PrintStream(err, true));
+    if (stats != null) stats[0] = s;
+    return out.toString("UTF-8");
+  }
+
+  public void testJsonLines() throws Exception {
+    BatchRunner runner = new BatchRunner("price * qty");
+    String out = run(runner, "{\"price\": 2, \"qty\": 3}\n\n{\"price\": 1.5, \"qty\": 2}\n", new ByteArrayOutputStream(), null);
+    assertEquals("6\n3.0\n", out);
+  }
+
+  public void testCsvWithRecordOutput() throws Exception {
+    BatchRunner runner = new BatchRunner("total = price * qty; name = name.toUpperCase()")
+        .setFormat(BatchRunner.Format.CSV)
+        .setEmitRecord(true);
+    String out = run(runner, "name,price,qty\nfoo,2,3\n\"b,ar\",4,\"5\"\n", new ByteArrayOutputStream(), null);
+    assertEquals("{\"name\":\"FOO\",\"price\":2,\"qty\":3,\"total\":6}\n"
+        + "{\"name\":\"B,AR\",\"price\":4,\"qty\":5,\"total\":20}\n", out);
+  }
+
+  public void testErrorsAreReportedWithLineNumbers() throws Exception {
+    BatchRunner runner = new BatchRunner("a / b");
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    BatchRunner.Stats[] stats = new BatchRunner.Stats[1];
+    String out = run(runner, "{\"a\": 4, \"b\": 2}\nnot json\n{\"a\": 9, \"b\": 3}\n", err, stats);
+
+    assertEquals("2.0\n3.0\n", out);
+    assertEquals(3, stats[0].getRecords());
+    assertEquals(1, stats[0].getErrors());
+    assertTrue(err.toString().startsWith("line 2: "));
+  }
+
+  public void testOrderedParallel() throws Exception {
+    StringBuilder in = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      in.append("{\"x\": ").append(i).append("}\n");
+      expected.append(i * 2 + 1).append('\n');
+    }
+
+    BatchRunner runner = new BatchRunner("x * 2 + 1").setThreads(4).setBatchSize(37).setOrdered(true);
+    BatchRunner.Stats[] stats = new BatchRunner.Stats[1];
+    assertEquals(expected.toString(), run(runner, in.toString(), new ByteArrayOutputStream(), stats));
+    assertEquals(5000, stats[0].getRecords());
+    assertTrue(stats[0].getRecordsPerSecond() > 0);
+  }
+
+  public void testUnorderedParallel() throws Exception {
+    StringBuilder in = new StringBuilder();
+    long expected = 0;
+    for (int i = 0; i < 5000; i++) {
+      in.append("{\"x\": ").append(i).append("}\n");
+      expected += i * 3;
+    }
+
+    BatchRunner runner = new BatchRunner("x * 3").setThreads(4).setBatchSize(50);
+    String[] lines = run(runner, in.toString(), new ByteArrayOutputStream(), null).split("\n");
+    assertEquals(5000, lines.length);
+
+    long sum = 0;
+    for (String line : lines) sum += Long.parseLong(line);
+    assertEquals(expected, sum);
+  }
+
+  public void testJsonCodec() {
+    Map map = (Map) JsonCodec.parse("{\"a\": [1, 2.5, true, null], \"b\": \"x\\\"y\\u0041\", \"c\": {}, \"d\": 12345678901}");
+    assertEquals(Arrays.asList(1, 2.5, true, null), map.get("a"));
+    assertEquals("x\"yA", map.get("b"));
+    assertEquals(12345678901L, map.get("d"));
+    assertEquals("{\"a\":[1,2.5,true,null],\"b\":\"x\\\"yA\",\"c\":{},\"d\":12345678901}", JsonCodec.write(map));
+    assertEquals("[null,null,null,1.5]",
+        JsonCodec.write(Arrays.asList(Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 1.5)));
+
+    try {
+      JsonCodec.parse("{\"a\": 1");
+      fail("should have failed");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testCsvCodec() {
+    CsvCodec csv = new CsvCodec();
+    List<String> fields = Arrays.asList(csv.parseLine("a,\"b \"\"q\"\", c\",,-3.5"));
+    assertEquals(Arrays.asList("a", "b \"q\", c", "", "-3.5"), fields);
+    assertEquals(-3.5, CsvCodec.convert("-3.5"));
+    assertEquals(42, CsvCodec.convert("42"));
+    assertEquals(Boolean.TRUE, CsvCodec.convert("true"));
+    assertEquals("1.2.3", CsvCodec.convert("1.2.3"));
+    assertNull(CsvCodec.convert(""));
+    assertEquals("\"a,\"\"b\"\"\"", csv.write("a,\"b\""));
+  }
+}
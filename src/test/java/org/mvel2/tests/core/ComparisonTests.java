@@ -3,9 +3,12 @@ package org.mvel2.tests.core;
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
 import org.mvel2.tests.core.res.Foo;
+import org.mvel2.util.ParseTools;
+import org.mvel2.util.Soundex;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -215,6 +218,44 @@ public class ComparisonTests extends AbstractTest {
     assertEquals(true, test("_type = 'fubar';_type soundslike \"foobar\""));
   }
 
+  public void testSoundex6() {
+    assertEquals(true, test("'kat' soundslike c"));
+    assertEquals(false, test("'dog' soundslike c"));
+    assertEquals(0.6666667f, test("'kat' strsim c"));
+  }
+
+  public void testSoundexWithoutCode() {
+    assertEquals(false, test("'' soundslike '!'"));
+    assertEquals(false, test("_xx1 = ''; _xx2 = '123'; (_xx1 soundslike _xx2)"));
+    assertEquals(false, test("'' soundslike c"));
+    assertFalse(Soundex.soundsLike("", "!"));
+    assertTrue(Arrays.equals(new boolean[]{false, false}, Soundex.soundsLike("!", new String[]{"", "cat"})));
+  }
+
+  public void testSoundexCode() {
+    String[] words = {"cat", "Katt", "Robert", "Rupert", "Tymczak", "Pfister", "a,b", "123", "", "Straße", "aaBBcc"};
+    for (String w : words) {
+      String code = Soundex.soundex(w);
+      int packed = Soundex.soundexCode(w);
+      if (code == null) {
+        assertEquals(w, Soundex.NO_CODE, packed);
+      }
+      else {
+        assertEquals(w, Integer.parseInt(code, 16), packed);
+      }
+    }
+  }
+
+  public void testSoundsLikeBatch() {
+    assertTrue(Arrays.equals(new boolean[]{true, false, true, false},
+        Soundex.soundsLike("cat", new String[]{"katt", "dog", "Kat", null})));
+    float[] sim = ParseTools.similarity("cat", new String[]{"cat", "kat", "c", null});
+    assertEquals(1f, sim[0]);
+    assertEquals(0.6666667f, sim[1]);
+    assertEquals(0.33333334f, sim[2]);
+    assertEquals(0f, sim[3]);
+  }
+
   public void testThisReference3() {
     assertEquals(true, test("this is org.mvel2.tests.core.res.Base"));
   }
@@ -0,0 +1,60 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.compiler.CompileTimings;
+import org.mvel2.util.KeywordTable;
+import org.mvel2.util.SymbolTable;
+
+public class CompileTimingsTests extends TestCase {
+
+  public void testCompileTimings() {
+    CompileTimings timings = CompileTimings.start();
+    try {
+      MVEL.compileExpression("x = 10; if (x > 5) { y = x * 2; } else { y = 0; } y + 1");
+    }
+    finally {
+      assertSame(timings, CompileTimings.stop());
+    }
+
+    assertTrue(timings.getCount(CompileTimings.TOKENIZE) > 0);
+    assertTrue(timings.getCount(CompileTimings.VERIFY) > 0);
+    assertTrue(timings.getCount(CompileTimings.FINALIZE) > 0);
+    assertTrue(timings.getTotalNanos() > 0);
+    assertNull(CompileTimings.current());
+  }
+
+  public void testKeywordTableLookup() {
+    KeywordTable<Integer> table = new KeywordTable<Integer>();
+    table.put("if", 1);
+    table.put("instanceof", 2);
+    table.put("in", null);
+
+    char[] expr = "x instanceof in if ifx".toCharArray();
+    assertEquals(2, table.lookup(expr, 2, 10));
+    assertNull(table.lookup(expr, 13, 2));
+    assertEquals(1, table.lookup(expr, 16, 2));
+    assertSame(KeywordTable.NOT_FOUND, table.lookup(expr, 19, 3));
+    assertSame(KeywordTable.NOT_FOUND, table.lookup(expr, 0, 1));
+
+    // the lookup structure follows modifications of the table
+    table.put("ifx", 3);
+    assertEquals(3, table.lookup(expr, 19, 3));
+    table.remove("if");
+    assertSame(KeywordTable.NOT_FOUND, table.lookup(expr, 16, 2));
+  }
+
+  public void testSymbolTableInterns() {
+    char[] expr = "foo + foo + bar".toCharArray();
+    String a = SymbolTable.intern(expr, 0, 3);
+    String b = SymbolTable.intern(expr, 6, 3);
+    assertEquals("foo", a);
+    assertSame(a, b);
+    assertEquals("bar", SymbolTable.intern(expr, 12, 3));
+
+    for (int i = 0; i < 10000; i++) {
+      char[] c = ("v" + i).toCharArray();
+      assertEquals("v" + i, SymbolTable.intern(c, 0, c.length));
+    }
+  }
+}
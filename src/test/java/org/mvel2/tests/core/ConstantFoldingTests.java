@@ -0,0 +1,107 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.compiler.ExecutableLiteral;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConstantFoldingTests extends TestCase {
+  public static final double RATE = 0.5;
+  public static double mutableRate = 0.5;
+  public static int calls;
+
+  public static int twice(int x) {
+    calls++;
+    return x * 2;
+  }
+
+  public static int fail(int x) {
+    throw new IllegalStateException("fail");
+  }
+
+  private static ParserContext folding() throws Exception {
+    ParserContext ctx = new ParserContext();
+    ctx.getParserConfiguration().setConstantFolding(true);
+    ctx.addImport("C", ConstantFoldingTests.class);
+    ctx.addImport("twice", ConstantFoldingTests.class.getMethod("twice", int.class));
+    ctx.addImport("fail", ConstantFoldingTests.class.getMethod("fail", int.class));
+    return ctx;
+  }
+
+  private static boolean isConstant(Serializable s) {
+    return s instanceof ExecutableLiteral
+        || (s instanceof CompiledExpression && ((CompiledExpression) s).isLiteralOnly());
+  }
+
+  private static Object literal(Serializable s) {
+    return s instanceof ExecutableLiteral ? ((ExecutableLiteral) s).getLiteral()
+        : ((CompiledExpression) s).getFirstNode().getLiteralValue();
+  }
+
+  public void testMathAndStaticFinalFields() throws Exception {
+    Serializable s = MVEL.compileExpression("Math.max(10, 20) * C.RATE", folding());
+    assertEquals(10.0, literal(s));
+
+    s = MVEL.compileExpression("java.lang.Math.abs(-3) + Integer.MAX_VALUE - Math.min(Math.abs(-7), 9)", folding());
+    assertEquals(3 + Integer.MAX_VALUE - 7, literal(s));
+  }
+
+  public void testRegisteredPureMethod() throws Exception {
+    ParserContext ctx = folding();
+    Serializable s = MVEL.compileExpression("twice(4) + 1", ctx);
+    assertFalse(isConstant(s));
+
+    ctx = folding();
+    ctx.getParserConfiguration().addPureMethod(ConstantFoldingTests.class.getMethod("twice", int.class));
+    calls = 0;
+    s = MVEL.compileExpression("twice(4) + 1", ctx);
+    assertEquals(9, literal(s));
+    assertEquals(1, calls);
+
+    MVEL.executeExpression(s, new HashMap());
+    MVEL.executeExpression(s, new HashMap());
+    assertEquals(1, calls);
+  }
+
+  public void testNotFolded() throws Exception {
+    ParserContext ctx = folding();
+    ctx.getParserConfiguration().addPureMethod(ConstantFoldingTests.class.getMethod("fail", int.class));
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("y", 30);
+
+    assertFalse(isConstant(MVEL.compileExpression("Math.random() < 2", ctx)));
+    assertFalse(isConstant(MVEL.compileExpression("C.mutableRate * 2", ctx)));
+
+    Serializable s = MVEL.compileExpression("Math.max(10, y)", ctx);
+    assertEquals(30, MVEL.executeExpression(s, vars));
+
+    s = MVEL.compileExpression("fail(1)", ctx);
+    try {
+      MVEL.executeExpression(s, vars);
+      fail("expected the call to be left for runtime");
+    }
+    catch (RuntimeException e) {
+      // expected
+    }
+  }
+
+  public void testDisabledByDefault() {
+    ParserContext ctx = new ParserContext();
+    assertFalse(isConstant(MVEL.compileExpression("Math.max(10, 20)", ctx)));
+    assertEquals(20, MVEL.executeExpression(MVEL.compileExpression("Math.max(10, 20)", ctx)));
+  }
+
+  public void testFoldedValueMatchesRuntime() throws Exception {
+    String[] exprs = {"Math.max(1, 2.5)", "Math.pow(2, 10) + 1", "Math.round(2.5) * Long.MAX_VALUE", "Math.abs(-2) + ' items'"};
+    for (String expr : exprs) {
+      assertEquals(expr, MVEL.executeExpression(MVEL.compileExpression(expr)),
+          MVEL.executeExpression(MVEL.compileExpression(expr, folding())));
+    }
+  }
+}
@@ -421,6 +421,74 @@ public class DebuggerTests extends AbstractTest {
 
   }
 
+  private static int countLineLabels(CompiledExpression compiled) {
+    int labels = 0;
+    for (ASTNode tk = compiled.getFirstNode(); tk != null; tk = tk.nextASTNode) {
+      if (tk.isDebuggingSymbol()) labels++;
+    }
+    return labels;
+  }
+
+  public void testLineLabelsPatchedOnDemand() {
+    MVELRuntime.resetDebugger();
+
+    ParserContext ctx = new ParserContext();
+    ctx.setSourceFile("patch.mv");
+    ctx.setDebugSymbols(true);
+    CompiledExpression compiled = new ExpressionCompiler("a = 1;\nb = a + 1;\nif (b > 1) {\n  b = b * 2;\n}\nb", ctx).compile();
+
+    assertEquals(0, countLineLabels(compiled));
+    assertTrue(decompile(compiled).contains("DEBUG_SYMBOL"));
+    assertEquals(4, MVEL.executeExpression(compiled, new HashMap()));
+
+    final Set<Integer> breaked = new HashSet<Integer>();
+    MVELRuntime.setThreadDebugger(new Debugger() {
+      public int onBreak(Frame frame) {
+        breaked.add(frame.getLineNumber());
+        return 0;
+      }
+    });
+
+    MVELRuntime.registerBreakpoint("patch.mv", 2);
+    assertEquals(1, countLineLabels(compiled));
+    assertEquals(4, MVEL.executeDebugger(compiled, null, new MapVariableResolverFactory(new HashMap())));
+    assertEquals(1, breaked.size());
+    assertTrue(breaked.contains(2));
+
+    MVELRuntime.removeBreakpoint("patch.mv", 2);
+    assertEquals(0, countLineLabels(compiled));
+    breaked.clear();
+    assertEquals(4, MVEL.executeDebugger(compiled, null, new MapVariableResolverFactory(new HashMap())));
+    assertTrue(breaked.isEmpty());
+
+    MVELRuntime.resetDebugger();
+  }
+
+  public void testStepAttachesAllLineLabels() {
+    MVELRuntime.resetDebugger();
+
+    ParserContext ctx = new ParserContext();
+    ctx.setSourceFile("step.mv");
+    ctx.setDebugSymbols(true);
+    CompiledExpression compiled = new ExpressionCompiler("a = 1;\nb = 2;\nc = 3;\na + b + c", ctx).compile();
+
+    final Set<Integer> breaked = new HashSet<Integer>();
+    MVELRuntime.setThreadDebugger(new Debugger() {
+      public int onBreak(Frame frame) {
+        breaked.add(frame.getLineNumber());
+        return frame.getLineNumber() < 3 ? Debugger.STEP : 0;
+      }
+    });
+    MVELRuntime.registerBreakpoint("step.mv", 1);
+
+    assertEquals(6, MVEL.executeDebugger(compiled, null, new MapVariableResolverFactory(new HashMap())));
+    assertEquals(3, breaked.size());
+    assertEquals(1, countLineLabels(compiled));
+
+    MVELRuntime.resetDebugger();
+    assertEquals(0, countLineLabels(compiled));
+  }
+
   public void testDebugSymbolsWithWindowsLinedEndings() throws Exception {
     String expr = "   System.out.println( \"a1\" );\r\n" +
             "   System.out.println( \"a2\" );\r\n" +
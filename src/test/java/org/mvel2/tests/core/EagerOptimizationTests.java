@@ -0,0 +1,185 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.PropertyAccessException;
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.BinaryOperation;
+import org.mvel2.compiler.ExecutableAccessor;
+import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.optimizers.dynamic.DynamicGetAccessor;
+import org.mvel2.optimizers.dynamic.DynamicOptimizer;
+import org.mvel2.optimizers.impl.refl.nodes.VariableAccessor;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EagerOptimizationTests extends TestCase {
+
+  public static class Address {
+    public String city;
+
+    public Address(String city) {
+      this.city = city;
+    }
+  }
+
+  public static class Customer {
+    private final String name;
+    private final Address address;
+
+    public Customer(String name, Address address) {
+      this.name = name;
+      this.address = address;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Address getAddress() {
+      return address;
+    }
+  }
+
+  public static class VipCustomer extends Customer {
+    public VipCustomer(String name, Address address) {
+      super(name, address);
+    }
+
+    public String getName() {
+      return "VIP " + super.getName();
+    }
+  }
+
+  public static class Holder {
+    private final Customer customer;
+
+    public Holder(Customer customer) {
+      this.customer = customer;
+    }
+
+    public Customer getCustomer() {
+      return customer;
+    }
+  }
+
+  private static ParserContext typedContext(boolean eager) {
+    ParserContext ctx = new ParserContext();
+    ctx.setStrongTyping(true);
+    ctx.setEagerOptimization(eager);
+    ctx.addInput("customer", Customer.class);
+    ctx.addInput("tags", Map.class);
+    return ctx;
+  }
+
+  private static Map<String, Object> vars(Customer customer) {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("customer", customer);
+    vars.put("tags", new HashMap());
+    return vars;
+  }
+
+  public void testAccessorBuiltAtCompileTime() {
+    String defaultOptimizer = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer(OptimizerFactory.SAFE_REFLECTIVE);
+    Serializable s;
+    try {
+      s = MVEL.compileExpression("customer.address.city", typedContext(true));
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(defaultOptimizer);
+    }
+    ASTNode node = ((ExecutableAccessor) s).getNode();
+    assertTrue(node.getAccessor() instanceof VariableAccessor);
+
+    assertEquals("Paris", MVEL.executeExpression(s, vars(new Customer("a", new Address("Paris")))));
+  }
+
+  public void testNotBuiltWithoutEagerMode() {
+    Serializable s = MVEL.compileExpression("customer.address.city", typedContext(false));
+    assertNull(((ExecutableAccessor) s).getNode().getAccessor());
+  }
+
+  public void testOperandsOfBinaryOperation() {
+    Serializable s = MVEL.compileExpression("customer.name == 'bob'", typedContext(true));
+    BinaryOperation op = (BinaryOperation) ((ExecutableAccessor) s).getNode();
+    assertNotNull(op.getLeft().getAccessor());
+
+    assertEquals(Boolean.TRUE, MVEL.executeExpression(s, vars(new Customer("bob", null))));
+    assertEquals(Boolean.FALSE, MVEL.executeExpression(s, vars(new Customer("alice", null))));
+  }
+
+  public void testSubclassAtRuntime() {
+    Serializable s = MVEL.compileExpression("customer.name", typedContext(true));
+    assertEquals("VIP bob", MVEL.executeExpression(s, vars(new VipCustomer("bob", null))));
+  }
+
+  public void testUntypedChainsLeftLazy() {
+    Serializable s = MVEL.compileExpression("tags.size()", typedContext(true));
+    assertNull(((ExecutableAccessor) s).getNode().getAccessor());
+    assertEquals(0, MVEL.executeExpression(s, vars(new Customer("a", null))));
+  }
+
+  public void testTiersUpToAsm() {
+    String defaultOptimizer = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer(OptimizerFactory.DYNAMIC);
+    try {
+      Serializable s = MVEL.compileExpression("customer.address.city", typedContext(true));
+      ASTNode node = ((ExecutableAccessor) s).getNode();
+      assertTrue(node.getAccessor() instanceof DynamicGetAccessor);
+
+      DynamicGetAccessor accessor = (DynamicGetAccessor) node.getAccessor();
+      Map<String, Object> vars = vars(new Customer("a", new Address("Paris")));
+      for (int i = 0; i <= DynamicOptimizer.tenuringThreshold + 1; i++) {
+        assertEquals("Paris", MVEL.executeExpression(s, vars));
+      }
+      assertTrue(accessor.isOptimized());
+      assertEquals("Paris", MVEL.executeExpression(s, vars));
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(defaultOptimizer);
+    }
+  }
+
+  public void testNullIntermediateReportsProperty() {
+    Serializable eager = MVEL.compileExpression("customer.address.city", typedContext(true));
+    Serializable lazy = MVEL.compileExpression("customer.address.city", typedContext(false));
+    Map<String, Object> vars = vars(new Customer("a", null));
+
+    String expected = null;
+    try {
+      MVEL.executeExpression(lazy, vars);
+      fail("should fail");
+    }
+    catch (PropertyAccessException e) {
+      expected = e.getMessage();
+    }
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        MVEL.executeExpression(eager, vars);
+        fail("should fail");
+      }
+      catch (PropertyAccessException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("null pointer: customer.address.city"));
+        assertEquals(expected, e.getMessage());
+      }
+    }
+  }
+
+  public void testInputSuppliedByContextObject() {
+    Serializable s = MVEL.compileExpression("customer.address.city", typedContext(true));
+    assertNotNull(((ExecutableAccessor) s).getNode().getAccessor());
+
+    Holder holder = new Holder(new Customer("a", new Address("X")));
+    for (int i = 0; i < 2; i++) {
+      assertEquals("X", MVEL.executeExpression(s, holder));
+      assertEquals("X", MVEL.executeExpression(s, holder, new HashMap<String, Object>()));
+    }
+    // the variable still takes precedence once it is supplied
+    assertEquals("Paris", MVEL.executeExpression(s, holder, vars(new Customer("b", new Address("Paris")))));
+  }
+}
@@ -0,0 +1,157 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.impl.ClassImportResolverFactory;
+import org.mvel2.integration.impl.ImportTable;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+import org.mvel2.integration.impl.ResolverFactoryPool;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class ImportTableTests extends TestCase {
+  private static class CountingClassLoader extends ClassLoader {
+    private int loads;
+
+    private CountingClassLoader() {
+      super(ImportTableTests.class.getClassLoader());
+    }
+
+    public Class<?> loadClass(String name) throws ClassNotFoundException {
+      loads++;
+      return super.loadClass(name);
+    }
+  }
+
+  public void testResolversAreSharedAcrossLookups() {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.addImport("Map", HashMap.class);
+    ImportTable table = ImportTable.of(conf, false);
+
+    VariableResolver resolver = table.getResolver("Map");
+    assertSame(HashMap.class, resolver.getValue());
+    assertSame(resolver, table.getResolver("Map"));
+    assertSame(resolver, new ClassImportResolverFactory(table, null).getVariableResolver("Map"));
+    assertNull(table.getResolver("List"));
+
+    try {
+      resolver.setValue(String.class);
+      fail("imported names must not be assignable");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testTableIsSnapshotOfConfiguration() {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.addImport("Map", HashMap.class);
+    ImportTable table = ImportTable.of(conf, false);
+    conf.addImport("Str", String.class);
+
+    assertTrue(table.isImported("Map"));
+    assertFalse(table.isImported("Str"));
+    try {
+      table.getImports().put("Str", String.class);
+      fail("import table must be immutable");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testPackageLookupsAreCached() {
+    CountingClassLoader loader = new CountingClassLoader();
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.setClassLoader(loader);
+    conf.addPackageImport("java.util");
+    ImportTable table = ImportTable.of(conf, true);
+
+    for (int i = 0; i < 5; i++) {
+      assertFalse(table.isResolveable("NoSuchClass"));
+      assertSame(java.util.ArrayList.class, table.getResolver("ArrayList").getValue());
+    }
+    assertEquals(2, loader.loads);
+
+    assertFalse(ImportTable.of(conf, false).isResolveable("ArrayList"));
+  }
+
+  public void testConfigurationCachesTableUntilImportsChange() {
+    CountingClassLoader loader = new CountingClassLoader();
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.setClassLoader(loader);
+    conf.addImport("Map", HashMap.class);
+    conf.addPackageImport("java.util");
+
+    ImportTable table = conf.getImportTable(true);
+    for (int i = 0; i < 5; i++) {
+      ClassImportResolverFactory factory = new ClassImportResolverFactory(conf, null, false);
+      assertSame(table.getResolver("Map"), factory.getVariableResolver("Map"));
+      assertSame(java.util.ArrayList.class, factory.getVariableResolver("ArrayList").getValue());
+    }
+    assertEquals(1, loader.loads);
+    assertNotSame(table, conf.getImportTable(false));
+
+    conf.addImport("Str", String.class);
+    assertNotSame(table, conf.getImportTable(true));
+    assertTrue(new ClassImportResolverFactory(conf, null, false).isResolveable("Str"));
+
+    assertSame(ImportTable.of(null, false), ImportTable.of(null, true));
+  }
+
+  public void testFactoryDelegatesVariablesPastImports() {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.addImport("Map", HashMap.class);
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", 10);
+    ClassImportResolverFactory factory =
+        new ClassImportResolverFactory(ImportTable.of(conf, false), new MapVariableResolverFactory(vars));
+
+    assertTrue(factory.isResolveable("Map"));
+    assertTrue(factory.isResolveable("x"));
+    assertFalse(factory.isResolveable("y"));
+    assertEquals(10, factory.getVariableResolver("x").getValue());
+  }
+
+  public void testCompiledExpressionWithImportsAndPooledFactories() {
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("Map", HashMap.class);
+    Serializable s = MVEL.compileExpression("m = new Map(); m.put('a', x); import java.util.ArrayList; "
+        + "l = new ArrayList(); l.add(m.a); l[0] + 1", ctx);
+
+    boolean enabled = ResolverFactoryPool.isEnabled();
+    try {
+      for (boolean pooled : new boolean[]{false, true}) {
+        ResolverFactoryPool.setEnabled(pooled);
+        for (int i = 0; i < 3; i++) {
+          Map<String, Object> vars = new HashMap<String, Object>();
+          vars.put("x", i);
+          assertEquals(i + 1, ((Number) MVEL.executeExpression(s, vars)).intValue());
+        }
+      }
+    }
+    finally {
+      ResolverFactoryPool.setEnabled(enabled);
+    }
+  }
+
+  public void testImportsAddedAfterFirstExecutionAreNotSeen() {
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("Map", HashMap.class);
+    Serializable s = MVEL.compileExpression("new Map().size() + Set", ctx);
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("Set", "x");
+    assertEquals("0x", MVEL.executeExpression(s, vars));
+
+    // the snapshot was taken on the first execution, the import added now does not shadow the variable
+    ctx.getParserConfiguration().addImport("Set", HashSet.class);
+    assertEquals("0x", MVEL.executeExpression(s, vars));
+  }
+}
@@ -0,0 +1,96 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ast.Function;
+import org.mvel2.compiler.CompiledExpression;
+import org.mvel2.compiler.IncrementalCompiler;
+import org.mvel2.util.CompilerTools;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class IncrementalCompilerTests extends TestCase {
+  private static final String LIB = "def square(x) { x * x }\n" +
+      "def twice(x) { x * 2 }\n" +
+      "def sum(a, b) { a + b }\n";
+
+  public void testReuseUnchangedFunctions() {
+    IncrementalCompiler compiler = new IncrementalCompiler();
+
+    Serializable first = compiler.compile(LIB + "sum(square(3), twice(y))");
+    assertEquals(3, compiler.getCompiledCount());
+    assertEquals(0, compiler.getReusedCount());
+    assertEquals(19, MVEL.executeExpression(first, vars()));
+
+    Serializable second = compiler.compile(LIB.replace("x * 2", "x * 3") + "sum(square(3), twice(y))");
+    assertEquals(1, compiler.getCompiledCount());
+    assertEquals(2, compiler.getReusedCount());
+    assertEquals(24, MVEL.executeExpression(second, vars()));
+
+    Map<String, Function> before = CompilerTools.extractAllDeclaredFunctions((CompiledExpression) first);
+    Map<String, Function> after = CompilerTools.extractAllDeclaredFunctions((CompiledExpression) second);
+    assertSame(before.get("square").getCompiledBlock(), after.get("square").getCompiledBlock());
+    assertSame(before.get("sum").getCompiledBlock(), after.get("sum").getCompiledBlock());
+    assertNotSame(before.get("twice").getCompiledBlock(), after.get("twice").getCompiledBlock());
+
+    // the old expression is unaffected by the recompilation
+    assertEquals(19, MVEL.executeExpression(first, vars()));
+  }
+
+  public void testUnchangedScriptReturnsPreviousResult() {
+    IncrementalCompiler compiler = new IncrementalCompiler();
+    Serializable first = compiler.compile(LIB + "square(y)");
+    assertSame(first, compiler.compile(LIB + "square(y)"));
+    assertEquals(0, compiler.getCompiledCount());
+  }
+
+  public void testContextChangeInvalidatesFunction() {
+    IncrementalCompiler compiler = new IncrementalCompiler();
+    compiler.compile("def addBase(x) { x + 1 }\naddBase(y)");
+
+    // a global declared before the function becomes one of its inputs, so it must be recompiled
+    Serializable s = compiler.compile("base = 10;\ndef addBase(x) { x + base }\naddBase(y)");
+    assertEquals(1, compiler.getCompiledCount());
+    assertEquals(15, MVEL.executeExpression(s, vars()));
+  }
+
+  public void testFailedCompileKeepsPreviousFunctions() {
+    IncrementalCompiler compiler = new IncrementalCompiler();
+    compiler.compile(LIB + "square(y)");
+    try {
+      compiler.compile(LIB + "square(y) * * (");
+      fail("should fail");
+    }
+    catch (RuntimeException e) {
+      // expected
+    }
+
+    compiler.compile(LIB + "twice(y)");
+    assertEquals(0, compiler.getCompiledCount());
+    assertEquals(3, compiler.getReusedCount());
+  }
+
+  public void testEditedCalleeInvalidatesCallers() {
+    IncrementalCompiler compiler = new IncrementalCompiler();
+    String script = "def twice(x) { x * 2 }\n" +
+        "def inner(x) { twice(x) + 1 }\n" +
+        "def outer(x) { inner(x) }\n" +
+        "def unrelated(x) { x - 1 }\n" +
+        "outer(y) + unrelated(y)";
+    assertEquals(15, MVEL.executeExpression(compiler.compile(script), vars()));
+
+    // twice is edited: inner calls it directly and outer transitively, both must be recompiled
+    Serializable s = compiler.compile(script.replace("x * 2", "x * 100"));
+    assertEquals(3, compiler.getCompiledCount());
+    assertEquals(1, compiler.getReusedCount());
+    assertEquals(505, MVEL.executeExpression(s, vars()));
+  }
+
+  private static Map<String, Object> vars() {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("y", 5);
+    return vars;
+  }
+}
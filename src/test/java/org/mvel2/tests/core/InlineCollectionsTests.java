@@ -1,12 +1,15 @@
 package org.mvel2.tests.core;
 
 import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
 import org.mvel2.ParserContext;
 import org.mvel2.compiler.ExpressionCompiler;
 import org.mvel2.tests.core.res.Foo;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -359,5 +362,93 @@ public class InlineCollectionsTests extends AbstractTest {
     assertEquals(4, l.size());
   }
 
+  public void testContainsOnConstantCollections() {
+    Map vars = new HashMap();
+    vars.put("state", "CA");
+    vars.put("code", 3L);
+    vars.put("text", "2");
+    vars.put("nothing", null);
+
+    assertEquals(true, executeExpression(compileExpression("['NY', 'CA', 'TX'] contains state"), vars));
+    assertEquals(false, executeExpression(compileExpression("['NY', 'TX'] contains state"), vars));
+    assertEquals(false, executeExpression(compileExpression("[1, 2, 3] contains code"), vars));
+    assertEquals(true, executeExpression(compileExpression("{1, 2, 3} contains code"), vars));
+    assertEquals(true, executeExpression(compileExpression("{1, 2, 3} contains text"), vars));
+    assertEquals(true, executeExpression(compileExpression("{1, 2, 3} contains 2.0"), vars));
+    assertEquals(false, executeExpression(compileExpression("{1, 2, 3} contains nothing"), vars));
+    assertEquals(true, executeExpression(compileExpression("{'1', '2'} contains 1"), vars));
+    assertEquals(true, executeExpression(compileExpression("['CA' : 1, 'NY' : 2] contains state"), vars));
+    assertEquals(true, executeExpression(compileExpression("['NY', state] contains 'CA'"), vars));
+  }
+
+  public void testConstantInlineCollectionsMutableByDefault() {
+    Serializable s = compileExpression("x = [1, 2, 3]; x.add(4); x");
+    assertEquals(Arrays.asList(1, 2, 3, 4), executeExpression(s, new HashMap()));
+    assertEquals(Arrays.asList(1, 2, 3, 4), executeExpression(s, new HashMap()));
+
+    Serializable m = compileExpression("m = ['a' : 1]; m.put('b', 2); m");
+    assertEquals(2, ((Map) executeExpression(m, new HashMap())).size());
+    assertEquals(2, ((Map) executeExpression(m, new HashMap())).size());
+
+    // nested collections are copied as well
+    Serializable nested = compileExpression("['a', ['c' : 1]]");
+    List first = (List) executeExpression(nested);
+    ((Map) first.get(1)).put("d", 2);
+    List second = (List) executeExpression(nested);
+    assertNotSame(first, second);
+    assertEquals(Arrays.asList("a", Collections.singletonMap("c", 1)), second);
+
+    Serializable empty = compileExpression("list = []; list.add('value'); list");
+    assertEquals(Collections.singletonList("value"), executeExpression(empty, new HashMap()));
+    assertEquals(Collections.singletonList("value"), executeExpression(empty, new HashMap()));
+  }
+
+  public void testSharedConstantInlineCollections() {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.setShareConstantInlineCollections(true);
+    Serializable s = compileExpression("['a', 'b', ['c' : 1]]", new ParserContext(conf));
+    List first = (List) executeExpression(s);
+    assertEquals(Arrays.asList("a", "b", Collections.singletonMap("c", 1)), first);
+    assertSame(first, executeExpression(s));
+
+    try {
+      first.add("d");
+      fail("constant list should be immutable");
+    }
+    catch (UnsupportedOperationException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("['a', 'b', ['c' : 1]]"));
+    }
+    try {
+      ((Map) first.get(2)).put("d", 2);
+      fail("nested constant map should be immutable");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
 
+    // empty literals are commonly used as accumulators and are never shared
+    Serializable empty = compileExpression("list = []; list.add('value'); list", new ParserContext(conf));
+    assertEquals(Collections.singletonList("value"), executeExpression(empty, new HashMap()));
+    assertEquals(Collections.singletonList("value"), executeExpression(empty, new HashMap()));
+  }
+
+  public void testConstantInlineArraysCopied() {
+    Serializable s = compileExpression("{{1, 2}, {3}}");
+    Object[] first = (Object[]) executeExpression(s);
+    ((Object[]) first[0])[0] = 10;
+    Object[] second = (Object[]) executeExpression(s);
+    assertNotSame(first, second);
+    assertEquals(1, ((Object[]) second[0])[0]);
+    assertEquals(3, ((Object[]) second[1])[0]);
+  }
+
+  public void testPartiallyConstantInlineCollections() {
+    Map vars = new HashMap();
+    vars.put("x", 5);
+    assertEquals(Arrays.asList(1, 5, 3), executeExpression(compileExpression("[1, x, 3]"), vars));
+    assertEquals(5, ((Map) executeExpression(compileExpression("['a' : 1, 'b' : x]"), vars)).get("b"));
+    assertEquals(2, ((Map) executeExpression(compileExpression("['a' : 1, 'a' : 2, 'b' : x]"), vars)).size());
+    assertTrue(Arrays.equals(new int[]{1, 5, 3}, (int[]) executeExpression(compileExpression("new int[]{1, x, 3}"), vars)));
+    assertTrue(Arrays.equals(new Object[]{"a", 5}, (Object[]) executeExpression(compileExpression("{'a', x}"), vars)));
+  }
 }
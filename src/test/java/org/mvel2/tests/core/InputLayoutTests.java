@@ -0,0 +1,128 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.impl.SlotVariableResolverFactory;
+import org.mvel2.tests.core.res.Foo;
+import org.mvel2.util.InputLayout;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class InputLayoutTests extends TestCase {
+
+  public void testLayoutFromParserContext() {
+    ParserContext ctx = ParserContext.create().withIndexedVars(new String[]{"z"})
+        .withInput("a", Integer.class).withInput("b", Integer.class);
+    MVEL.compileExpression("a + b + c + z", ctx);
+
+    InputLayout layout = InputLayout.of(ctx);
+    assertEquals(0, layout.slotOf("z"));
+    assertEquals(1, layout.slotOf("a"));
+    assertEquals(2, layout.slotOf("b"));
+    assertEquals(3, layout.slotOf("c"));
+    assertEquals(-1, layout.slotOf("d"));
+    assertEquals(Integer.class, layout.getType(1));
+  }
+
+  public void testBindMapRepeatedly() {
+    ParserContext ctx = new ParserContext();
+    Serializable s = MVEL.compileExpression("x * y + foo.countTest", ctx);
+    SlotVariableResolverFactory factory = InputLayout.of(ctx).newFactory();
+
+    Foo foo = new Foo();
+    for (int i = 0; i < 100; i++) {
+      Map<String, Object> vars = new HashMap<String, Object>();
+      vars.put("x", i);
+      vars.put("y", 2);
+      vars.put("foo", foo);
+      assertEquals(i * 2 + foo.getCountTest(), MVEL.executeExpression(s, factory.bind(vars)));
+    }
+  }
+
+  public void testBindArray() {
+    ParserContext ctx = new ParserContext();
+    Serializable s = MVEL.compileExpression("x + y", ctx);
+    InputLayout layout = InputLayout.of(ctx);
+    SlotVariableResolverFactory factory = layout.newFactory();
+
+    Object[] vals = new Object[layout.size()];
+    vals[layout.slotOf("x")] = 10;
+    vals[layout.slotOf("y")] = 5;
+    assertEquals(15, MVEL.executeExpression(s, factory.bind(vals)));
+
+    vals[layout.slotOf("y")] = 7;
+    assertEquals(17, MVEL.executeExpression(s, factory.bind(vals)));
+  }
+
+  public void testWritesAndLocalsGoToMap() {
+    ParserContext ctx = new ParserContext();
+    Serializable s = MVEL.compileExpression("x = x + 1; tmp = x * 2; if (x > 2) { return tmp; } x", ctx);
+    InputLayout layout = InputLayout.of(ctx);
+    SlotVariableResolverFactory factory = layout.newFactory();
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", 1);
+    assertEquals(2, MVEL.executeExpression(s, factory.bind(vars)));
+    assertEquals(2, vars.get("x"));
+    assertEquals(4, vars.get("tmp"));
+
+    vars = new HashMap<String, Object>();
+    vars.put("x", 5);
+    assertEquals(12, MVEL.executeExpression(s, factory.bind(vars)));
+    assertEquals(6, vars.get("x"));
+
+    vars = new HashMap<String, Object>();
+    vars.put("x", 0);
+    assertEquals(1, MVEL.executeExpression(s, factory.bind(vars)));
+    assertEquals(1, vars.get("x"));
+
+    // the input gets a slot and is written through it, the script's own local stays in the map
+    assertEquals(0, layout.slotOf("x"));
+    assertEquals(-1, layout.slotOf("tmp"));
+    assertEquals(1, factory.getIndexedVariableResolver(layout.slotOf("x")).getValue());
+    assertEquals(2, factory.getVariableResolver("tmp").getValue());
+  }
+
+  public void testUnboundSlotIsUnresolvable() {
+    ParserContext ctx = new ParserContext();
+    Serializable s = MVEL.compileExpression("x + y", ctx);
+    SlotVariableResolverFactory factory = InputLayout.of(ctx).newFactory();
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", 1);
+    vars.put("y", 2);
+    assertEquals(3, MVEL.executeExpression(s, factory.bind(vars)));
+
+    vars.remove("y");
+    try {
+      MVEL.executeExpression(s, factory.bind(vars));
+      fail("expected unresolvable variable");
+    }
+    catch (UnresolveablePropertyException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("'y'"));
+    }
+
+    try {
+      MVEL.executeExpression(s, factory.bind(new Object[]{1}));
+      fail("expected unresolvable variable");
+    }
+    catch (UnresolveablePropertyException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("'y'"));
+    }
+  }
+
+  public void testUnboundInputIsUndefined() {
+    ParserContext ctx = new ParserContext();
+    Serializable s = MVEL.compileExpression("isdef y ? y : 'none'", ctx);
+    SlotVariableResolverFactory factory = InputLayout.of(ctx).newFactory();
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    assertEquals("none", MVEL.executeExpression(s, factory.bind(vars)));
+    vars.put("y", "set");
+    assertEquals("set", MVEL.executeExpression(s, factory.bind(vars)));
+  }
+}
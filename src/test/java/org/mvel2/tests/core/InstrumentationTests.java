@@ -0,0 +1,104 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.integration.Instrumentation;
+import org.mvel2.integration.InstrumentationFactory;
+import org.mvel2.integration.impl.CountingInstrumentation;
+import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.tests.core.res.Base;
+import org.mvel2.tests.core.res.Foo;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class InstrumentationTests extends TestCase {
+  private CountingInstrumentation instrumentation;
+
+  protected void setUp() throws Exception {
+    InstrumentationFactory.setInstrumentation(instrumentation = new CountingInstrumentation());
+  }
+
+  protected void tearDown() throws Exception {
+    InstrumentationFactory.dispose();
+  }
+
+  public void testCompileAndEvaluationCounters() {
+    ParserContext ctx = new ParserContext();
+    ctx.setSourceFile("rule1.mvel");
+
+    Serializable s = MVEL.compileExpression("foo.bar.name == 'dog'", ctx);
+    assertEquals(1, instrumentation.getExpressionsCompiled());
+    assertTrue(instrumentation.getCompileNanos() > 0);
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("foo", new Foo());
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(Boolean.TRUE, MVEL.executeExpression(s, vars));
+    }
+
+    assertEquals(5, instrumentation.getEvaluationCount("rule1.mvel"));
+    assertTrue(instrumentation.getEvaluationNanos("rule1.mvel") >= instrumentation.getMaxEvaluationNanos("rule1.mvel"));
+    assertTrue(instrumentation.getReflectiveOptimizations() + instrumentation.getAsmOptimizations() > 0);
+    assertEquals("rule1.mvel", instrumentation.getSourceNames()[0]);
+  }
+
+  public void testAsmTierCountedOnceInstalled() {
+    String defaultOptimizer = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer("ASM");
+    try {
+      Map<String, Object> vars = new HashMap<String, Object>();
+      try {
+        MVEL.executeExpression(MVEL.compileExpression("foo.name"), vars);
+        fail("expected unresolvable property");
+      }
+      catch (RuntimeException e) {
+        // expected
+      }
+      assertEquals(0, instrumentation.getAsmOptimizations());
+
+      vars.put("foo", new Foo());
+      assertEquals("dog", MVEL.executeExpression(MVEL.compileExpression("foo.bar.name"), vars));
+      assertEquals(1, instrumentation.getAsmOptimizations());
+      assertTrue(instrumentation.getClassesDefined() >= 1);
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(defaultOptimizer);
+    }
+  }
+
+  public void testUnnamedSources() {
+    MVEL.executeExpression(MVEL.compileExpression("1 + 1"));
+    assertEquals(1, instrumentation.getEvaluationCount(null));
+    assertEquals(1, instrumentation.getEvaluationCount(CountingInstrumentation.UNNAMED_SOURCE));
+  }
+
+  public void testCacheCounters() {
+    MVEL.compileExpression("(x + 2) + (x + 2)");
+    assertEquals(1, instrumentation.getCacheHits(Instrumentation.CACHE_SUBSTATEMENT));
+    assertEquals(1, instrumentation.getCacheMisses(Instrumentation.CACHE_SUBSTATEMENT));
+
+    MVEL.eval("foo.bar.name", new Base());
+    assertTrue(instrumentation.getCacheHits(Instrumentation.CACHE_READ_PROPERTY)
+        + instrumentation.getCacheMisses(Instrumentation.CACHE_READ_PROPERTY) > 0);
+  }
+
+  public void testDisabledByDefault() {
+    InstrumentationFactory.dispose();
+    assertFalse(InstrumentationFactory.isEnabled());
+
+    MVEL.executeExpression(MVEL.compileExpression("1 + 1"));
+    assertEquals(0, instrumentation.getExpressionsCompiled());
+    assertEquals(0, instrumentation.getEvaluations());
+  }
+
+  public void testReset() {
+    MVEL.executeExpression(MVEL.compileExpression("1 + 1"));
+    instrumentation.reset();
+    assertEquals(0, instrumentation.getExpressionsCompiled());
+    assertEquals(0, instrumentation.getSourceNames().length);
+  }
+}
@@ -0,0 +1,144 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.InterpretedTokenCache;
+import org.mvel2.MVEL;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class InterpretedTokenCacheTests extends TestCase {
+  private boolean enabled;
+
+  protected void setUp() throws Exception {
+    enabled = InterpretedTokenCache.isEnabled();
+    InterpretedTokenCache.setEnabled(true);
+    InterpretedTokenCache.clear();
+  }
+
+  protected void tearDown() throws Exception {
+    InterpretedTokenCache.setEnabled(enabled);
+    InterpretedTokenCache.clear();
+  }
+
+  private static Map<String, Object> vars(int x) {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", x);
+    return vars;
+  }
+
+  public void testReplayedExpressionMatchesFreshScan() {
+    String expr = "y = x * 2 + 1; z = y > 10 ? 'big' : 'small'; z + ':' + y";
+    for (int i = 0; i < 20; i++) {
+      InterpretedTokenCache.setEnabled(false);
+      Object expected = MVEL.eval(expr, vars(i));
+      InterpretedTokenCache.setEnabled(true);
+      assertEquals(expected, MVEL.eval(expr, vars(i)));
+    }
+    assertEquals(1, InterpretedTokenCache.getMisses());
+    assertEquals(19, InterpretedTokenCache.getHits());
+  }
+
+  public void testShortCircuitAndBlocks() {
+    String expr = "r = 0; if (x > 2 && x < 5) { r = 1 } else if (x == 0 || x == 7) { r = 2 } else { r = 3 }; r";
+    int[] expected = {2, 3, 3, 1, 1, 3, 3, 2};
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], ((Number) MVEL.eval(expr, vars(i))).intValue());
+      }
+    }
+    assertTrue(InterpretedTokenCache.getHits() > 0);
+  }
+
+  public void testTypedDeclarationsAreRescanned() {
+    String expr = "String s = 'v'; int n = x + 1; s + n";
+    for (int i = 0; i < 5; i++) {
+      assertEquals("v" + (i + 1), MVEL.eval(expr, vars(i)));
+    }
+  }
+
+  public void testFunctionsAndLoops() {
+    String expr = "def sq(a) { a * a }; t = 0; foreach (i : x) { t += sq(i) }; t";
+    InterpretedTokenCache.setEnabled(false);
+    Object expected = MVEL.eval(expr, vars(5));
+    InterpretedTokenCache.setEnabled(true);
+    for (int round = 0; round < 3; round++) {
+      assertEquals(expected, MVEL.eval(expr, vars(5)));
+    }
+  }
+
+  public void testModifiedCharArrayIsRescanned() {
+    char[] expr = "x + 1".toCharArray();
+    assertEquals(3, ((Number) MVEL.eval(expr, 0, expr.length, null, new MapVariableResolverFactory(vars(2)))).intValue());
+    assertEquals(3, ((Number) MVEL.eval(expr, 0, expr.length, null, new MapVariableResolverFactory(vars(2)))).intValue());
+    long misses = InterpretedTokenCache.getMisses();
+
+    expr[4] = '5';
+    assertEquals(7, ((Number) MVEL.eval(expr, 0, expr.length, null, new MapVariableResolverFactory(vars(2)))).intValue());
+    assertEquals(misses + 1, InterpretedTokenCache.getMisses());
+  }
+
+  public void testBoundedAndDisabled() {
+    int max = InterpretedTokenCache.getMaxSize();
+    try {
+      InterpretedTokenCache.setMaxSize(2);
+      MVEL.eval("x + 1", vars(1));
+      MVEL.eval("x + 2", vars(1));
+      MVEL.eval("x + 3", vars(1));
+      assertEquals(2, InterpretedTokenCache.size());
+      assertEquals(1, InterpretedTokenCache.getEvictions());
+
+      InterpretedTokenCache.setEnabled(false);
+      InterpretedTokenCache.clear();
+      assertEquals(5, ((Number) MVEL.eval("x + 4", vars(1))).intValue());
+      assertEquals(0, InterpretedTokenCache.size());
+      assertEquals(0, InterpretedTokenCache.getMisses());
+    }
+    finally {
+      InterpretedTokenCache.setMaxSize(max);
+    }
+  }
+
+  public void testConcurrentEvaluationOfBlocks() throws Exception {
+    final String expr = "s = 0; foreach (i : list) { if (i > 1) { s += i } }; "
+        + "m = new org.mvel2.tests.core.res.Foo(); with (m) { countTest = s }; m.countTest";
+    final List<Integer> list = Arrays.asList(1, 2, 3, 4);
+    final int runs = Boolean.getBoolean("mvel.tests.quick") ? 2000 : 20000;
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread() {
+        public void run() {
+          for (int i = 0; i < runs; i++) {
+            Map<String, Object> vars = new HashMap<String, Object>();
+            vars.put("list", list);
+            try {
+              if (((Number) MVEL.eval(expr, vars)).intValue() != 9) failures.incrementAndGet();
+            }
+            catch (Throwable e) {
+              failures.incrementAndGet();
+              error.compareAndSet(null, e);
+            }
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (error.get() != null) error.get().printStackTrace();
+    assertEquals(0, failures.get());
+    assertTrue(InterpretedTokenCache.getHits() > 0);
+  }
+}
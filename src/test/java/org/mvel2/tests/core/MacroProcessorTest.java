@@ -4,9 +4,11 @@ import junit.framework.Assert;
 import junit.framework.TestCase;
 import org.mvel2.MVEL;
 import org.mvel2.MVELRuntime;
+import org.mvel2.CompiledMacroProcessor;
 import org.mvel2.Macro;
 import org.mvel2.MacroProcessor;
 import org.mvel2.ParserContext;
+import org.mvel2.PreProcessor;
 import org.mvel2.ast.ASTNode;
 import org.mvel2.ast.WithNode;
 import org.mvel2.compiler.CompiledExpression;
@@ -268,4 +270,61 @@ public class MacroProcessorTest extends TestCase {
       fail("there shouldn't be any exception: " + ex.getMessage());
     }
   }
+  private static Macro macro(final String text) {
+    return new Macro() {
+      public String doMacro() {
+        return text;
+      }
+    };
+  }
+
+  private static final String[] MACRO_INPUTS = {
+      "insert(a); modify(b) { x = 1 }; foo.insert(c); // insert in comment\n",
+      "retract( \"insert\" + 'modify' ); /* insert */ insert(x.modify)",
+      "update (estimate); \\n insertLogical(x); insert",
+      "if (true) { insert(1); } else { modify(2); }"
+  };
+
+  public void testCompiledMacroProcessorMatchesMacroProcessor() {
+    Map<String, Macro> macros = new HashMap<String, Macro>();
+    macros.put("insert", macro("drools.insert"));
+    macros.put("modify", macro("drools.modify"));
+    macros.put("retract", macro("drools.retract"));
+
+    CompiledMacroProcessor compiled = new CompiledMacroProcessor(macros);
+    for (String input : MACRO_INPUTS) {
+      assertEquals(new MacroProcessor(macros).parse(input), compiled.parse(input));
+    }
+  }
+
+  public void testFusedPreprocessorsMatchChainedProcessing() {
+    Map<String, Macro> first = new HashMap<String, Macro>();
+    first.put("insert", macro("helper.insert(modify)"));
+    first.put("modify", macro("drools.modify"));
+
+    Map<String, Macro> second = new HashMap<String, Macro>();
+    second.put("helper", macro("drools"));
+    second.put("modify", macro("m2"));
+    second.put("retract", macro("drools.retract"));
+
+    PreProcessor upper = new PreProcessor() {
+      public char[] parse(char[] input) {
+        return new String(input).replace("drools", "DROOLS").toCharArray();
+      }
+
+      public String parse(String input) {
+        return new String(parse(input.toCharArray()));
+      }
+    };
+
+    PreProcessor[] chain = {new MacroProcessor(first), new MacroProcessor(second), upper, new MacroProcessor(second)};
+    PreProcessor[] fused = CompiledMacroProcessor.fuse(chain);
+    assertEquals(3, fused.length);
+    assertEquals(2, ((CompiledMacroProcessor) fused[0]).getStageCount());
+    assertSame(upper, fused[1]);
+
+    for (String input : MACRO_INPUTS) {
+      assertEquals(MVEL.preprocess(input, chain), MVEL.preprocess(input, fused));
+    }
+  }
 }
@@ -0,0 +1,118 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.ast.Function;
+import org.mvel2.ast.FunctionCache;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class MemoizedFunctionTests extends TestCase {
+  private static final String FIB = "def fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }; fib(x)";
+
+  public static int calls;
+
+  public static int count(int x) {
+    calls++;
+    return x;
+  }
+
+  private static Map<String, Object> vars(Object x) {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", x);
+    return vars;
+  }
+
+  public void testGlobalMemoizationOfRecursiveFunction() {
+    ParserContext ctx = new ParserContext();
+    ctx.getParserConfiguration().addMemoizedFunction("fib");
+    Serializable s = MVEL.compileExpression(FIB, ctx);
+
+    assertEquals(832040, ((Number) MVEL.executeExpression(s, vars(30))).intValue());
+
+    Function fib = ctx.getFunction("fib");
+    assertTrue(fib.isMemoized());
+    FunctionCache cache = fib.getMemoCache();
+    assertEquals(31, cache.size());
+    assertEquals(31, cache.getMisses());
+    assertEquals(28, cache.getHits());
+
+    assertEquals(55, ((Number) MVEL.executeExpression(s, vars(10))).intValue());
+    assertEquals(31, cache.getMisses());
+    assertEquals(29, cache.getHits());
+  }
+
+  public void testUnregisteredFunctionIsNotMemoized() {
+    ParserContext ctx = new ParserContext();
+    ctx.getParserConfiguration().addMemoizedFunction("other");
+    Serializable s = MVEL.compileExpression(FIB, ctx);
+    assertEquals(55, ((Number) MVEL.executeExpression(s, vars(10))).intValue());
+
+    Function fib = ctx.getFunction("fib");
+    assertFalse(fib.isMemoized());
+    assertNull(fib.getMemoCache());
+  }
+
+  public void testBoundedCacheEvictsLeastRecentlyUsed() throws Exception {
+    calls = 0;
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("count", MemoizedFunctionTests.class.getMethod("count", int.class));
+    ctx.getParserConfiguration().addMemoizedFunction("f", 2, FunctionCache.Scope.GLOBAL);
+    Serializable s = MVEL.compileExpression("def f(a) { count(a) }; f(1) + f(2) + f(1) + f(3) + f(2)", ctx);
+
+    assertEquals(9, ((Number) MVEL.executeExpression(s, new HashMap())).intValue());
+    assertEquals(4, calls);
+
+    FunctionCache cache = ctx.getFunction("f").getMemoCache();
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getHits());
+    assertEquals(4, cache.getMisses());
+    assertEquals(2, cache.getEvictions());
+  }
+
+  public void testNullResultIsCached() throws Exception {
+    calls = 0;
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("count", MemoizedFunctionTests.class.getMethod("count", int.class));
+    ctx.getParserConfiguration().addMemoizedFunction("f");
+    Serializable s = MVEL.compileExpression("def f(a) { count(a); null }; f(1); f(1); f(1)", ctx);
+
+    assertNull(MVEL.executeExpression(s, new HashMap()));
+    assertEquals(1, calls);
+  }
+
+  public void testEvaluationScopedCache() throws Exception {
+    calls = 0;
+    ParserContext ctx = new ParserContext();
+    ctx.addImport("count", MemoizedFunctionTests.class.getMethod("count", int.class));
+    ctx.getParserConfiguration().addMemoizedFunction("f", 16, FunctionCache.Scope.EVALUATION);
+    Serializable s = MVEL.compileExpression("def f(a) { count(a) }; f(x) + f(x)", ctx);
+
+    // 未划定执行范围时不进行缓存
+    assertEquals(4, ((Number) MVEL.executeExpression(s, vars(2))).intValue());
+    assertEquals(2, calls);
+    assertNull(ctx.getFunction("f").getMemoCache());
+
+    FunctionCache.Evaluation evaluation = FunctionCache.beginEvaluation();
+    try {
+      assertEquals(4, ((Number) MVEL.executeExpression(s, vars(2))).intValue());
+      assertEquals(6, ((Number) MVEL.executeExpression(s, vars(3))).intValue());
+      assertEquals(4, calls);
+
+      FunctionCache cache = evaluation.getCache("f");
+      assertEquals(2, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      assertEquals(0.5, cache.getHitRatio());
+    }
+    finally {
+      evaluation.end();
+    }
+
+    // 执行范围结束后缓存被丢弃
+    MVEL.executeExpression(s, vars(2));
+    assertEquals(6, calls);
+  }
+}
@@ -0,0 +1,115 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ast.ASTNode;
+import org.mvel2.compiler.ExecutableAccessor;
+import org.mvel2.optimizers.OptimizerFactory;
+import org.mvel2.optimizers.Prewarmer;
+import org.mvel2.optimizers.dynamic.DynamicAccessor;
+import org.mvel2.templates.CompiledTemplate;
+import org.mvel2.templates.TemplateCompiler;
+import org.mvel2.templates.TemplateRuntime;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PrewarmTests extends TestCase {
+
+  public static class Item {
+    public String getName() {
+      return "item";
+    }
+
+    public int getSize() {
+      return 3;
+    }
+  }
+
+  private static Map<String, Object> vars(int x) {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", x);
+    vars.put("item", new Item());
+    return vars;
+  }
+
+  private static boolean reported(Prewarmer.Report report, String name) {
+    for (Prewarmer.Issue issue : report.getIssues()) {
+      if (issue.getNode() != null && name.equals(issue.getNode().getName())) return true;
+    }
+    return false;
+  }
+
+  public void testNestedBlocksAndFunctions() {
+    Serializable s = MVEL.compileExpression("def describe(i) { i.name + ':' + i.size }; "
+        + "if (x > 0) { describe(item) } else { item.size }");
+
+    Prewarmer.Report report = MVEL.prewarm(s, null, vars(1), Prewarmer.Tier.REFLECTIVE);
+    assertTrue(report.getNodeCount() > 0);
+    assertTrue(report.toString(), reported(report, "item.size"));
+    assertFalse(report.toString(), reported(report, "i.name"));
+    assertFalse(report.toString(), reported(report, "i.size"));
+
+    assertTrue(MVEL.prewarm(s, null, vars(-1), Prewarmer.Tier.REFLECTIVE).isComplete());
+    assertEquals("item:3", MVEL.executeExpression(s, vars(1)));
+  }
+
+  public void testSampleVariablesAreCopied() {
+    Serializable s = MVEL.compileExpression("y = item.size; y");
+    Map<String, Object> vars = vars(0);
+    Prewarmer.Report report = MVEL.prewarm(s, null, vars, Prewarmer.Tier.REFLECTIVE);
+    assertTrue(report.toString(), report.isComplete());
+    assertFalse(vars.containsKey("y"));
+  }
+
+  public void testSampleFailureReported() {
+    Serializable s = MVEL.compileExpression("item.name.noSuchMethod()");
+    Prewarmer.Report report = MVEL.prewarm(s, null, vars(0), Prewarmer.Tier.REFLECTIVE);
+    assertFalse(report.isComplete());
+    assertNull(report.getIssues().get(0).getNode());
+    assertTrue(report.getIssues().get(0).getReason().startsWith("sample evaluation failed"));
+  }
+
+  public void testJitTier() {
+    String previous = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer(OptimizerFactory.DYNAMIC);
+    try {
+      Serializable s = MVEL.compileExpression("item.name");
+      Prewarmer.Report report = MVEL.prewarm(s, null, vars(0), Prewarmer.Tier.JIT);
+      assertTrue(report.toString(), report.isComplete());
+
+      ASTNode node = ((ExecutableAccessor) s).getNode();
+      assertTrue(node.getAccessor() instanceof DynamicAccessor);
+      assertTrue(((DynamicAccessor) node.getAccessor()).isOptimized());
+      assertEquals("item", MVEL.executeExpression(s, vars(0)));
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(previous);
+    }
+  }
+
+  public void testJitUnavailable() {
+    String previous = OptimizerFactory.getDefaultOptimizer();
+    OptimizerFactory.setDefaultOptimizer(OptimizerFactory.SAFE_REFLECTIVE);
+    try {
+      Prewarmer.Report report = MVEL.prewarm(MVEL.compileExpression("item.name"), null, vars(0), Prewarmer.Tier.JIT);
+      assertEquals(1, report.getIssues().size());
+      assertTrue(report.getIssues().get(0).getReason().startsWith("JIT unavailable"));
+    }
+    finally {
+      OptimizerFactory.setDefaultOptimizer(previous);
+    }
+  }
+
+  public void testTemplate() {
+    CompiledTemplate template = TemplateCompiler.compileTemplate("@{item.name} @if{x > 0}@{item.size}@end{}");
+
+    Prewarmer.Report report = TemplateRuntime.prewarm(template, null, vars(0), Prewarmer.Tier.REFLECTIVE);
+    assertTrue(report.toString(), reported(report, "item.size"));
+    assertFalse(report.toString(), reported(report, "item.name"));
+
+    assertTrue(TemplateRuntime.prewarm(template, null, vars(1), Prewarmer.Tier.REFLECTIVE).isComplete());
+    assertEquals("item 3", TemplateRuntime.execute(template, null, vars(1)));
+  }
+}
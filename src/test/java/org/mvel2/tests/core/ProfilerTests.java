@@ -0,0 +1,86 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.debug.Profiler;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProfilerTests extends TestCase {
+  private static final String SCRIPT = "total = 0;\n" +
+      "for (i = 0; i < 50; i++) {\n" +
+      "  total += i * 2;\n" +
+      "}\n" +
+      "total";
+
+  public void testHotSpotsCoverNestedBlocks() {
+    ParserContext ctx = new ParserContext();
+    ctx.setSourceFile("loop.mvel");
+    Serializable s = MVEL.compileExpression(SCRIPT, ctx);
+
+    Profiler profiler = Profiler.attach(s);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(2450, MVEL.executeExpression(s, new HashMap()));
+    }
+
+    List<Profiler.HotSpot> hotSpots = profiler.getHotSpots();
+    assertFalse(hotSpots.isEmpty());
+
+    boolean nested = false;
+    for (Profiler.HotSpot h : hotSpots) {
+      if (h.getInvocations() == 150 && h.getLine() == 3) nested = true;
+      assertTrue(h.getTotalNanos() >= h.getSelfNanos());
+    }
+    assertTrue("loop body should be profiled", nested);
+
+    String report = profiler.report(5);
+    assertTrue(report.startsWith("profile of loop.mvel"));
+
+    profiler.reset();
+    assertTrue(profiler.getHotSpots().isEmpty());
+  }
+
+  public void testCountOnlyAndDetach() {
+    Serializable s = MVEL.compileExpression("a = 1; b = a + 1; b");
+    Profiler profiler = Profiler.attach(s, 0);
+
+    Map vars = new HashMap();
+    MVEL.executeExpression(s, vars);
+    for (Profiler.HotSpot h : profiler.getHotSpots()) {
+      assertEquals(1, h.getInvocations());
+      assertEquals(0, h.getTotalNanos());
+    }
+
+    Profiler.detach(s);
+    profiler.reset();
+    MVEL.executeExpression(s, vars);
+    assertTrue(profiler.getHotSpots().isEmpty());
+    assertNull(Profiler.current());
+  }
+
+  public void testSampling() {
+    Serializable s = MVEL.compileExpression("x = 0; while (x < 100) { x = x + 1; } x");
+    Profiler profiler = Profiler.attach(s, 10);
+    assertEquals(100, MVEL.executeExpression(s, new HashMap()));
+
+    boolean found = false;
+    for (Profiler.HotSpot h : profiler.getHotSpots()) {
+      if (h.getInvocations() == 100) found = true;
+    }
+    assertTrue(found);
+  }
+
+  public void testRejectsBootstrappedAccessor() {
+    try {
+      Profiler.attach(MVEL.compileExpression("foo.bar"));
+      fail("should not attach to an accessor");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -1,15 +1,23 @@
 package org.mvel2.tests.core;
 
 import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.integration.ProjectionSettings;
+import org.mvel2.integration.impl.ResolverFactoryPool;
 import org.mvel2.tests.core.res.Base;
 import org.mvel2.util.Make;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ProjectionsTests extends AbstractTest {
   public void testProjectionSupport() {
@@ -55,6 +63,144 @@ public class ProjectionsTests extends AbstractTest {
   public void testProjectionSupport6() {
     assertEquals(true, test("( name in things ) contains 'Bob'"));
   }
+
+  public void testProjectionOverArray() {
+    Map vars = new HashMap();
+    vars.put("nums", new int[]{1, 2, 3, 4});
+    vars.put("strs", new String[]{"a", "b"});
+    assertEquals(Arrays.asList(6, 8), MVEL.eval("($ * 2 in nums if $ > 2)", vars));
+    assertEquals(Arrays.asList("A", "B"),
+        MVEL.executeExpression(MVEL.compileExpression("(toUpperCase() in strs)"), vars));
+  }
+
+  public void testProjectionOverIterable() {
+    final List<Integer> backing = Arrays.asList(1, 2, 3);
+    Map vars = new HashMap();
+    vars.put("it", new Iterable<Integer>() {
+      public Iterator<Integer> iterator() {
+        return backing.iterator();
+      }
+    });
+    assertEquals(Arrays.asList(10, 20, 30), MVEL.executeExpression(MVEL.compileExpression("($ * 10 in it)"), vars));
+  }
+
+  public void testParallelProjectionPreservesOrder() {
+    List<Integer> data = new ArrayList<Integer>();
+    for (int i = 0; i < 50000; i++) data.add(i);
+    Map vars = new HashMap();
+    vars.put("data", data);
+    vars.put("factor", 3);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    ProjectionSettings settings = new ProjectionSettings();
+    settings.setExecutor(executor);
+    settings.setParallelThreshold(1000);
+    try {
+      Serializable s = MVEL.compileExpression("($ * factor in data if $ % 2 == 0)", context(settings));
+      List result = (List) MVEL.executeExpression(s, vars);
+      assertEquals(25000, result.size());
+      for (int i = 0; i < result.size(); i++) {
+        assertEquals(i * 6, result.get(i));
+      }
+
+      // expressions compiled without the settings are not affected
+      assertEquals(25000, ((List) MVEL.executeExpression(MVEL.compileExpression("($ * factor in data if $ % 2 == 0)"), vars)).size());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  public static class Counter {
+    public int evaluated;
+    public int projected;
+
+    public boolean check(int i) {
+      evaluated++;
+      return i >= 5;
+    }
+
+    public int body(int i) {
+      projected++;
+      return i * 2;
+    }
+  }
+
+  private static ParserContext context(ProjectionSettings settings) {
+    ParserConfiguration conf = new ParserConfiguration();
+    conf.setProjectionSettings(settings);
+    return new ParserContext(conf);
+  }
+
+  private static ParserContext lazyContext() {
+    ProjectionSettings settings = new ProjectionSettings();
+    settings.setLazy(true);
+    return context(settings);
+  }
+
+  public void testLazyProjectionShortCircuits() {
+    Counter counter = new Counter();
+    List<Object> data = new ArrayList<Object>();
+    for (int i = 0; i < 1000; i++) data.add(i);
+    Map vars = new HashMap();
+    vars.put("data", data);
+    vars.put("counter", counter);
+
+    Serializable s = MVEL.compileExpression("!($ in data if counter.check($)).isEmpty()", lazyContext());
+    assertEquals(Boolean.TRUE, MVEL.executeExpression(s, vars));
+    assertEquals(6, counter.evaluated);
+
+    counter.evaluated = 0;
+    List lazy = (List) MVEL.executeExpression(MVEL.compileExpression("($ in data if counter.check($))", lazyContext()), vars);
+    assertEquals(0, counter.evaluated);
+    assertEquals(5, lazy.get(0));
+    assertEquals(995, lazy.size());
+    assertEquals(1000, counter.evaluated);
+  }
+
+  public void testLazyProjectionSizeDoesNotEvaluateBody() {
+    Counter counter = new Counter();
+    List<Object> data = new ArrayList<Object>();
+    for (int i = 0; i < 1000; i++) data.add(i);
+    Map vars = new HashMap();
+    vars.put("data", data);
+    vars.put("counter", counter);
+
+    List lazy = (List) MVEL.executeExpression(MVEL.compileExpression("(counter.body($) in data)", lazyContext()), vars);
+    assertEquals(1000, lazy.size());
+    assertFalse(lazy.isEmpty());
+    assertEquals(0, counter.projected);
+    assertEquals(20, lazy.get(10));
+    assertEquals(20, lazy.get(10));
+    assertEquals(1, counter.projected);
+
+    // with a filter, size() evaluates the condition of every element but never the body
+    lazy = (List) MVEL.executeExpression(MVEL.compileExpression("(counter.body($) in data if counter.check($))", lazyContext()), vars);
+    assertEquals(995, lazy.size());
+    assertEquals(1000, counter.evaluated);
+    assertEquals(1, counter.projected);
+  }
+
+  public void testLazyProjectionOutlivesPooledScope() {
+    List<Object> data = new ArrayList<Object>();
+    for (int i = 0; i < 10; i++) data.add(i);
+    Map vars = new HashMap();
+    vars.put("data", data);
+
+    boolean pooling = ResolverFactoryPool.isEnabled();
+    ResolverFactoryPool.setEnabled(true);
+    try {
+      Serializable s = MVEL.compileExpression("def view(k) { ($ * k in data) }; a = view(3); b = view(5); [a, b]", lazyContext());
+      for (int run = 0; run < 3; run++) {
+        List views = (List) MVEL.executeExpression(s, new HashMap(vars));
+        assertEquals(9, ((List) views.get(0)).get(3));
+        assertEquals(15, ((List) views.get(1)).get(3));
+      }
+    }
+    finally {
+      ResolverFactoryPool.setEnabled(pooling);
+    }
+  }
 //
 //  public void testNestedProjection() {
 //    Map vars = createTestVars();
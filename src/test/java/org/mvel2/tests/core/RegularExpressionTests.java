@@ -1,9 +1,13 @@
 package org.mvel2.tests.core;
 
 import org.mvel2.MVEL;
+import org.mvel2.util.PatternCache;
+
+import java.io.Serializable;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.mvel2.MVEL.compileExpression;
 import static org.mvel2.MVEL.eval;
@@ -90,4 +94,89 @@ public class RegularExpressionTests extends AbstractTest {
         MVEL.eval("$test = 'foo'; $ex = 'f.*'; $test ~= $ex",
             new HashMap()));
   }
+
+  public void testConstantPatternBypassesCache() {
+    PatternCache.clear();
+    Serializable plain = compileExpression("name ~= 'foo'");
+    Serializable regex = compileExpression("name ~= 'f.o'");
+    Map vars = new HashMap();
+    vars.put("name", "foo");
+    assertEquals(true, executeExpression(plain, vars));
+    assertEquals(true, executeExpression(regex, vars));
+
+    vars.put("name", "fooo");
+    assertEquals(false, executeExpression(plain, vars));
+    assertEquals(false, executeExpression(regex, vars));
+
+    vars.put("name", "f.o");
+    assertEquals(false, executeExpression(plain, vars));
+    assertEquals(true, executeExpression(regex, vars));
+    assertEquals(0, PatternCache.getHits() + PatternCache.getMisses());
+  }
+
+  public void testDynamicPatternCache() {
+    PatternCache.clear();
+    Serializable s = compileExpression("name ~= rule");
+    Map vars = new HashMap();
+    vars.put("name", "foo");
+    vars.put("rule", "f[a-z]+");
+
+    assertEquals(true, executeExpression(s, vars));
+    assertEquals(1, PatternCache.getMisses());
+    assertEquals(true, executeExpression(s, vars));
+    assertEquals(1, PatternCache.getMisses());
+    assertEquals(1, PatternCache.getHits());
+
+    vars.put("rule", "b.*");
+    assertEquals(false, executeExpression(s, vars));
+    assertEquals(2, PatternCache.getMisses());
+    assertEquals(2, PatternCache.size());
+  }
+
+  public void testOperatorFormUsesPatternCache() {
+    Map vars = new HashMap();
+    vars.put("name", "foo");
+    vars.put("rule", "f[a-z]+");
+
+    for (String expr : new String[]{"(name) ~= rule", "'foo' ~= rule"}) {
+      PatternCache.clear();
+      Serializable s = compileExpression(expr);
+      assertEquals(true, executeExpression(s, vars));
+      assertEquals(true, executeExpression(s, vars));
+      assertEquals(true, executeExpression(s, vars));
+      assertEquals(1, PatternCache.getMisses());
+      assertEquals(2, PatternCache.getHits());
+    }
+
+    PatternCache.clear();
+    Serializable plain = compileExpression("(name) ~= 'foo'");
+    Serializable regex = compileExpression("(name) ~= 'f.o'");
+    assertEquals(true, executeExpression(plain, vars));
+    assertEquals(true, executeExpression(regex, vars));
+    vars.put("name", "fxo");
+    assertEquals(false, executeExpression(plain, vars));
+    assertEquals(true, executeExpression(regex, vars));
+    assertEquals(0, PatternCache.getHits() + PatternCache.getMisses());
+  }
+
+  public void testPatternCacheBounded() {
+    int max = PatternCache.getMaxSize();
+    try {
+      PatternCache.clear();
+      PatternCache.setMaxSize(2);
+      PatternCache.compile("a");
+      PatternCache.compile("b");
+      PatternCache.compile("c");
+      assertEquals(2, PatternCache.size());
+      assertEquals(1, PatternCache.getEvictions());
+
+      assertNotSame(PatternCache.compile("x", 0), PatternCache.compile("x", Pattern.CASE_INSENSITIVE));
+      assertTrue(PatternCache.matches(PatternCache.compile("x", Pattern.CASE_INSENSITIVE), "X"));
+      assertFalse(PatternCache.matches("x", "X"));
+    }
+    finally {
+      PatternCache.setMaxSize(max);
+      PatternCache.clear();
+    }
+  }
 }
@@ -0,0 +1,93 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ast.PrototypalFunctionInstance;
+import org.mvel2.integration.impl.ResolverFactoryPool;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ResolverFactoryPoolTests extends TestCase {
+  private static final String[] SCRIPTS = {
+      "total = 0; foreach (x : list) { y = x * 2; total += y; } total",
+      "total = 0; foreach (x : list) { foreach (z : list) { total += x * z; } } total",
+      "($ * 10 in list if $ > 1)",
+      "def add(a, b) { c = a + b; c } r = 0; foreach (x : list) { r = add(r, x); } r",
+      "def fact(n) { if (n <= 1) { return 1; } n * fact(n - 1) } fact(6)",
+      "def zero() { 0 } zero() + zero()",
+      "foreach (x : list) { if (x == 2) { return x * 100; } } -1"
+  };
+
+  protected void tearDown() throws Exception {
+    ResolverFactoryPool.setEnabled(false);
+  }
+
+  public void testPooledResultsMatchUnpooled() {
+    for (String script : SCRIPTS) {
+      Serializable s = MVEL.compileExpression(script);
+
+      ResolverFactoryPool.setEnabled(false);
+      Object expected = MVEL.executeExpression(s, vars());
+
+      ResolverFactoryPool.setEnabled(true);
+      for (int i = 0; i < 5; i++) {
+        assertEquals(script, expected, MVEL.executeExpression(s, vars()));
+      }
+    }
+  }
+
+  public void testLocalsDoNotLeakBetweenEvaluations() {
+    ResolverFactoryPool.setEnabled(true);
+    Serializable s = MVEL.compileExpression("if (isdef tmp) { return 'leak'; } foreach (x : list) { tmp = x; } 'ok'");
+    assertEquals("ok", MVEL.executeExpression(s, vars()));
+    assertEquals("ok", MVEL.executeExpression(s, vars()));
+  }
+
+  public void testPoolRecoversAfterException() {
+    ResolverFactoryPool.setEnabled(true);
+    Serializable bad = MVEL.compileExpression("foreach (x : list) { x.noSuchMethod() } 1");
+    try {
+      MVEL.executeExpression(bad, vars());
+      fail("expected arithmetic failure");
+    }
+    catch (Exception e) {
+      // expected
+    }
+
+    Serializable s = MVEL.compileExpression(SCRIPTS[1]);
+    assertEquals(36, MVEL.executeExpression(s, vars()));
+  }
+
+  public void testNestedBeyondRetainedDepth() {
+    ResolverFactoryPool.setEnabled(true);
+    Serializable s = MVEL.compileExpression("def sum(n) { if (n == 0) { return 0; } n + sum(n - 1) } sum(100)");
+    assertEquals(5050, MVEL.executeExpression(s, new HashMap()));
+    assertEquals(5050, MVEL.executeExpression(s, new HashMap()));
+  }
+
+  public void testCapturedScopeOutlivesEvaluation() {
+    ResolverFactoryPool.setEnabled(true);
+    Serializable s = MVEL.compileExpression("def Box() { } boxes = []; foreach (x : list) { boxes.add(new Box()); } boxes");
+    List boxes = (List) MVEL.executeExpression(s, vars());
+
+    // the next evaluation must not reuse or clear the loop scope the boxes still read from
+    Map<String, Object> other = vars();
+    other.put("list", Arrays.asList(7, 8));
+    MVEL.executeExpression(s, other);
+
+    PrototypalFunctionInstance box = (PrototypalFunctionInstance) boxes.get(0);
+    assertEquals(3, box.getResolverFactory().getVariableResolver("x").getValue());
+  }
+
+  private static Map<String, Object> vars() {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    List<Integer> list = new ArrayList<Integer>(Arrays.asList(1, 2, 3));
+    vars.put("list", list);
+    return vars;
+  }
+}
@@ -0,0 +1,166 @@
+package org.mvel2.tests.core;
+
+import junit.framework.TestCase;
+import org.mvel2.MVEL;
+import org.mvel2.ParserContext;
+import org.mvel2.compiler.CompiledRuleSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RuleSetTests extends TestCase {
+
+  public static class Customer {
+    private final String tier;
+    public int tierReads;
+
+    public Customer(String tier) {
+      this.tier = tier;
+    }
+
+    public String getTier() {
+      tierReads++;
+      return tier;
+    }
+  }
+
+  public static class Order {
+    private final Customer customer;
+    private final int[] lines;
+    public int totalCalls;
+
+    public Order(Customer customer, int... lines) {
+      this.customer = customer;
+      this.lines = lines;
+    }
+
+    public Customer getCustomer() {
+      return customer;
+    }
+
+    public int total() {
+      totalCalls++;
+      int t = 0;
+      for (int l : lines) t += l;
+      return t;
+    }
+  }
+
+  private static Map<String, String> rules() {
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    rules.put("gold", "order.customer.tier == 'gold'");
+    rules.put("bigGold", "order.customer.tier == 'gold' && order.total() > 100");
+    rules.put("big", "order.total() > 100");
+    rules.put("huge", "order.total()  >  1000 || order.customer.tier == 'gold' && order.total() > 100");
+    rules.put("silver", "order.customer.tier == 'silver'");
+    return rules;
+  }
+
+  public void testSharedSubexpressionsComputedOncePerExecution() {
+    ParserContext ctx = new ParserContext().addPureMethods("total");
+    CompiledRuleSet set = MVEL.compileRuleSet(rules(), ctx);
+
+    assertEquals(5, set.size());
+    assertEquals(5, set.getSharingRuleCount());
+    assertTrue(set.getSharedCount() >= 3);
+
+    Customer customer = new Customer("gold");
+    Order order = new Order(customer, 60, 70);
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("order", order);
+
+    Object[] results = set.execute(null, vars);
+    assertEquals(Arrays.asList(true, true, true, true, false), Arrays.asList(results));
+    assertEquals(1, order.totalCalls);
+    assertEquals(1, customer.tierReads);
+
+    assertEquals(Arrays.asList("gold", "bigGold", "big", "huge"), set.matching(null, vars));
+    assertEquals(2, order.totalCalls);
+  }
+
+  public void testResultsMatchIndividualEvaluation() {
+    ParserContext ctx = new ParserContext().addPureMethods("total");
+    CompiledRuleSet set = MVEL.compileRuleSet(rules(), ctx);
+
+    String[] tiers = {"gold", "silver", "bronze"};
+    int[][] lines = {{10}, {60, 70}, {900, 200}};
+    for (String tier : tiers) {
+      for (int[] l : lines) {
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("order", new Order(new Customer(tier), l));
+
+        Map<String, Object> shared = set.executeAll(null, vars);
+        for (Map.Entry<String, String> rule : rules().entrySet()) {
+          assertEquals(rule.getKey(), MVEL.eval(rule.getValue(), vars), shared.get(rule.getKey()));
+        }
+      }
+    }
+  }
+
+  public void testImpureRulesAreNotShared() {
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    rules.put("count", "hits = hits + 1; hits");
+    rules.put("check", "order.total() > 10");
+    rules.put("again", "order.total() > 10");
+
+    CompiledRuleSet set = MVEL.compileRuleSet(rules, new ParserContext().addPureMethods("total"));
+    assertEquals(2, set.getSharingRuleCount());
+    assertEquals(1, set.getSharedCount());
+
+    Order order = new Order(new Customer("gold"), 20);
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("order", order);
+    vars.put("hits", 0);
+
+    assertEquals(Arrays.asList(1, true, true), Arrays.asList(set.execute(null, vars)));
+    assertEquals(1, vars.get("hits"));
+    assertEquals(1, order.totalCalls);
+
+    // without declaring total() as pure, the calls are not shared
+    set = MVEL.compileRuleSet(rules, null);
+    assertEquals(0, set.getSharingRuleCount());
+    set.execute(null, vars);
+    assertEquals(3, order.totalCalls);
+  }
+
+  public void testImpureRuleInvalidatesSharedResults() {
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    rules.put("r1", "count > 1");
+    rules.put("bump", "count = 5");
+    rules.put("r3", "count > 1");
+    rules.put("r4", "count > 1 && order.total() > 10");
+
+    CompiledRuleSet set = MVEL.compileRuleSet(rules, new ParserContext().addPureMethods("total"));
+    assertEquals(3, set.getSharingRuleCount());
+    assertTrue(set.getSharedCount() >= 1);
+
+    Order order = new Order(new Customer("gold"), 20);
+    for (int run = 0; run < 3; run++) {
+      Map<String, Object> vars = new HashMap<String, Object>();
+      vars.put("order", order);
+      vars.put("count", 0);
+
+      assertEquals(Arrays.asList(false, 5, true, true), Arrays.asList(set.execute(null, vars)));
+      assertEquals(5, vars.get("count"));
+    }
+  }
+
+  public void testSharedRulesSeeImports() {
+    ParserContext ctx = new ParserContext().addPureMethods("max");
+    ctx.addImport("M", Math.class);
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    rules.put("high", "M.max(x, 2) > 3");
+    rules.put("low", "M.max(x, 2) < 3");
+
+    CompiledRuleSet set = MVEL.compileRuleSet(rules, ctx);
+    assertEquals(2, set.getSharingRuleCount());
+
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("x", 5);
+    assertEquals(Arrays.asList("high"), set.matching(null, vars));
+    vars.put("x", 1);
+    assertEquals(Arrays.asList("low"), set.matching(null, vars));
+  }
+}
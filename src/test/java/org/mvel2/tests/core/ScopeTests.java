@@ -3,10 +3,18 @@ package org.mvel2.tests.core;
 import junit.framework.TestCase;
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
+import org.mvel2.ast.ASTNode;
+import org.mvel2.ast.BlockNode;
+import org.mvel2.compiler.CompiledExpression;
 import org.mvel2.integration.VariableResolver;
 import org.mvel2.integration.impl.IndexVariableResolver;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Mike Brock .
@@ -35,4 +43,50 @@ public class ScopeTests extends TestCase {
       e.printStackTrace();
     }
   }
+
+  public void testBlockLocalsAnalyzedAtCompileTime() {
+    List<String[]> locals = blockLocals("if (a > 0) { b = a * 2; int c = b; } while (a < 3) { a++ }");
+    assertEquals(2, locals.size());
+    assertEquals(Arrays.asList("b", "c"), Arrays.asList(locals.get(0)));
+    assertEquals(0, locals.get(1).length);
+  }
+
+  public void testBlockWithoutLocalsUsesParentScope() {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("a", 0);
+    vars.put("sum", 0);
+
+    Serializable s = MVEL.compileExpression("while (a < 5) { sum += a; a++ }; if (sum > 5) { sum = sum * 2 }; sum");
+    assertEquals(20, MVEL.executeExpression(s, vars));
+    assertEquals(5, vars.get("a"));
+    assertEquals(20, vars.get("sum"));
+  }
+
+  public void testBlockLocalsDoNotLeak() {
+    Map<String, Object> vars = new HashMap<String, Object>();
+    vars.put("total", 0);
+
+    Serializable s = MVEL.compileExpression("for (int i = 0; i < 4; i++) { var sq = i * i; total = total + sq; }\n" +
+        "for (int i = 0; i < 2; i++) { var sq = i; total = total + sq; }\n" +
+        "if (total > 0) { var label = 'positive'; result = label } else { var label = 'none'; result = label }; total");
+    assertEquals(15, MVEL.executeExpression(s, vars));
+    assertFalse(vars.containsKey("sq"));
+    assertFalse(vars.containsKey("i"));
+    assertFalse(vars.containsKey("label"));
+  }
+
+  public void testReturnFromAnalyzedBlocks() {
+    Serializable s = MVEL.compileExpression("def first(list) { foreach (x : list) { if (x > 1) { return x; } } return -1; };\n" +
+        "def answer() { return 42; };\n" +
+        "first([1, 5, 7]) + answer()");
+    assertEquals(47, MVEL.executeExpression(s, new HashMap<String, Object>()));
+  }
+
+  private static List<String[]> blockLocals(String expr) {
+    List<String[]> locals = new ArrayList<String[]>();
+    for (ASTNode n = ((CompiledExpression) MVEL.compileExpression(expr)).getFirstNode(); n != null; n = n.nextASTNode) {
+      if (n instanceof BlockNode) locals.add(((BlockNode) n).getBlockLocals());
+    }
+    return locals;
+  }
 }